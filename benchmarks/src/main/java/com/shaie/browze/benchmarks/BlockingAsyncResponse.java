@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.benchmarks;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * An {@link AsyncResponse} which lets the benchmarks call asynchronous resource methods directly, and wait for the
+ * response they resume. Timeouts are not enforced, and callbacks cannot be registered.
+ */
+class BlockingAsyncResponse implements AsyncResponse {
+
+    private final SettableFuture<Response> response = SettableFuture.create();
+
+    /** Returns the resumed response, or throws the exception which it was resumed with. */
+    public Response get() throws InterruptedException, ExecutionException {
+        return response.get();
+    }
+
+    @Override
+    public boolean resume(Object entity) {
+        return response.set(entity instanceof Response ? (Response) entity : Response.ok(entity).build());
+    }
+
+    @Override
+    public boolean resume(Throwable t) {
+        return response.setException(t);
+    }
+
+    @Override
+    public boolean cancel() {
+        return response.cancel(false);
+    }
+
+    @Override
+    public boolean cancel(int retryAfter) {
+        return cancel();
+    }
+
+    @Override
+    public boolean cancel(Date retryAfter) {
+        return cancel();
+    }
+
+    @Override
+    public boolean isSuspended() {
+        return !response.isDone();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return response.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return response.isDone();
+    }
+
+    @Override
+    public boolean setTimeout(long time, TimeUnit unit) {
+        return isSuspended();
+    }
+
+    @Override
+    public void setTimeoutHandler(TimeoutHandler handler) {
+        // timeouts are not enforced
+    }
+
+    @Override
+    public Collection<Class<?>> register(Class<?> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<Class<?>> register(Object callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.core.Response;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.shaie.browze.backup.BackupConfiguration;
+import com.shaie.browze.backup.Backups;
+import com.shaie.browze.batch.BatchConfiguration;
+import com.shaie.browze.cache.ZnodeCacheConfiguration;
+import com.shaie.browze.changes.ChangeFeedConfiguration;
+import com.shaie.browze.data.DataConfiguration;
+import com.shaie.browze.monitor.EnsembleMonitor;
+import com.shaie.browze.monitor.MonitorConfiguration;
+import com.shaie.browze.offline.OfflineConfiguration;
+import com.shaie.browze.offline.SnapshotImages;
+import com.shaie.browze.resources.ZooResource;
+import com.shaie.browze.search.SearchConfiguration;
+import com.shaie.browze.stats.StatsConfiguration;
+import com.shaie.browze.stats.SubtreeStatistics;
+import com.shaie.browze.write.SubtreeImports;
+import com.shaie.browze.write.WriteConfiguration;
+import com.shaie.browze.zk.ZkMetrics;
+import com.shaie.browze.zk.ZkSessions;
+import com.shaie.browze.zk.ZooKeeperConfiguration;
+
+import io.dropwizard.jackson.Jackson;
+
+/**
+ * Measures {@link ZooResource#browse} and {@link ZooResource#batchBrowse} end to end, including the serialization of
+ * the response, against an in-process ZooKeeper server which is filled with a synthetic wide node and a synthetic deep
+ * path. With the cache enabled, the measurements are of browsing nodes which were already cached.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class BrowseBenchmark {
+
+    private static final String WIDE = "/wide";
+    private static final String DEEP = "/deep";
+
+    /** The number of levels below {@link #DEEP}, each of which has {@link #DEEP_SIBLINGS} children. */
+    private static final int DEEP_LEVELS = 32;
+    private static final int DEEP_SIBLINGS = 10;
+
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_IN_FLIGHT_CREATES = 1000;
+
+    @Param({ "1000", "10000" })
+    private int wideChildren;
+
+    @Param({ "true", "false" })
+    private boolean cache;
+
+    private TestingServer server;
+    private ZkSessions zkSessions;
+    private ZooResource resource;
+    private ObjectMapper objectMapper;
+    private String cluster;
+    private String deepestPath;
+    private List<String> deepestSiblings;
+    private SubtreeStatistics subtreeStatistics;
+    private SubtreeImports subtreeImports;
+    private Backups backups;
+    private EnsembleMonitor ensembleMonitor;
+    private ExecutorService responseExecutor;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new TestingServer(true);
+        try (final CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(),
+                new RetryOneTime(1000))) {
+            client.start();
+            populate(client);
+        }
+
+        final ZnodeCacheConfiguration cacheConfig = new ZnodeCacheConfiguration();
+        cacheConfig.setEnabled(cache);
+        cacheConfig.setMaxSize(Math.max(cacheConfig.getMaxSize(), 2 * wideChildren));
+        final ZooKeeperConfiguration zkConfig = new ZooKeeperConfiguration();
+        cluster = "benchmark";
+        zkConfig.getClusters().put(cluster, server.getConnectString());
+        zkSessions = new ZkSessions(zkConfig, cacheConfig, new SearchConfiguration(), new ChangeFeedConfiguration(),
+                new ZkMetrics(new MetricRegistry()));
+        objectMapper = Jackson.newObjectMapper();
+        final BatchConfiguration batchConfig = new BatchConfiguration();
+        subtreeStatistics = new SubtreeStatistics(new StatsConfiguration());
+        subtreeImports = new SubtreeImports(new WriteConfiguration(), objectMapper);
+        backups = new Backups(new BackupConfiguration(), zkConfig);
+        ensembleMonitor = new EnsembleMonitor(new MonitorConfiguration(), zkSessions);
+        responseExecutor = Executors.newFixedThreadPool(zkConfig.getResponseThreads());
+        resource = new ZooResource(zkSessions, new SnapshotImages(new OfflineConfiguration()), zkConfig,
+                new DataConfiguration(), batchConfig, subtreeStatistics, subtreeImports, backups, ensembleMonitor,
+                objectMapper, responseExecutor);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        subtreeStatistics.stop();
+        subtreeImports.stop();
+        backups.stop();
+        ensembleMonitor.stop();
+        responseExecutor.shutdown();
+        zkSessions.stop();
+        server.close();
+    }
+
+    @Benchmark
+    public long browseWide() throws Exception {
+        return write(browse(WIDE, false, null));
+    }
+
+    @Benchmark
+    public long browseWidePage() throws Exception {
+        return write(browse(WIDE, false, PAGE_SIZE));
+    }
+
+    /** Browses the deepest node along with all its ancestors, the way the UI browses a node by its URL. */
+    @Benchmark
+    public long browseDeepFullHierarchy() throws Exception {
+        return write(browse(deepestPath, true, null));
+    }
+
+    /** Browses the deepest node and its siblings along with all their ancestors, one request per node. */
+    @Benchmark
+    public long browseDeepSiblingsFullHierarchy() throws Exception {
+        long size = 0;
+        for (final String path : deepestSiblings) {
+            size += write(browse(path, true, null));
+        }
+        return size;
+    }
+
+    /** Browses the deepest node and its siblings along with all their ancestors, in a single batch. */
+    @Benchmark
+    public long batchBrowseDeepSiblingsFullHierarchy() throws Exception {
+        return write(batchBrowse(deepestSiblings));
+    }
+
+    private Response browse(String path, boolean fullHierarchy, Integer limit) throws Exception {
+        final BlockingAsyncResponse response = new BlockingAsyncResponse();
+        resource.browse(path, cluster, null, null, fullHierarchy, null, null, limit, false, null, null, response);
+        return response.get();
+    }
+
+    private Response batchBrowse(List<String> paths) throws Exception {
+        final BlockingAsyncResponse response = new BlockingAsyncResponse();
+        resource.batchBrowse(paths, cluster, null, null, true, null, null, null, response);
+        return response.get();
+    }
+
+    private long write(Response response) throws IOException {
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            throw new IllegalStateException("Browse failed: " + response.getEntity());
+        }
+        final SyntheticTrees.CountingNullOutputStream out = new SyntheticTrees.CountingNullOutputStream();
+        objectMapper.writeValue(out, response.getEntity());
+        return out.getCount();
+    }
+
+    private void populate(CuratorFramework client) throws Exception {
+        final byte[] data = SyntheticTrees.textData(256);
+        client.create().forPath(WIDE, data);
+        final List<String> names = SyntheticTrees.childNames(wideChildren);
+        createAll(client, WIDE, names, data);
+
+        String parent = DEEP;
+        client.create().forPath(parent, data);
+        final List<String> siblings = SyntheticTrees.childNames(DEEP_SIBLINGS);
+        for (int level = 0; level < DEEP_LEVELS; level++) {
+            createAll(client, parent, siblings, data);
+            parent = ZKPaths.makePath(parent, siblings.get(level % DEEP_SIBLINGS));
+        }
+        deepestPath = parent;
+        deepestSiblings = Lists.newArrayListWithCapacity(DEEP_SIBLINGS);
+        for (final String sibling : siblings) {
+            deepestSiblings.add(ZKPaths.makePath(ZKPaths.getPathAndNode(deepestPath).getPath(), sibling));
+        }
+    }
+
+    /** Creates the children of the parent with pipelined background creates. */
+    private static void createAll(CuratorFramework client, String parent, List<String> children, byte[] data)
+            throws Exception {
+        final Semaphore permits = new Semaphore(MAX_IN_FLIGHT_CREATES);
+        final AtomicReference<KeeperException> error = new AtomicReference<>();
+        final BackgroundCallback callback = new BackgroundCallback() {
+            @Override
+            public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                final Code code = Code.get(event.getResultCode());
+                if (code != Code.OK) {
+                    error.compareAndSet(null, KeeperException.create(code, event.getPath()));
+                }
+                permits.release();
+            }
+        };
+        for (final String child : children) {
+            permits.acquire();
+            client.create().inBackground(callback).forPath(ZKPaths.makePath(parent, child), data);
+        }
+        if (!permits.tryAcquire(MAX_IN_FLIGHT_CREATES, 1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException(String.format(Locale.ROOT, "Timed out creating the children of [%s]",
+                    parent));
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+}
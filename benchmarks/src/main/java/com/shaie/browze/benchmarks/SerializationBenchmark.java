@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.utils.ZKPaths.PathAndNode;
+import org.apache.zookeeper.data.Stat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shaie.browze.data.DataPreviews;
+import com.shaie.browze.model.Tree;
+import com.shaie.browze.model.ZkNode;
+
+import io.dropwizard.jackson.Jackson;
+
+/**
+ * Measures the serialization of browse responses by an {@link ObjectMapper} which is configured the same as the
+ * application's.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    private static final String PARENT = "/benchmark";
+
+    /** The size of the data of the browsed node, which is larger than the default preview size. */
+    private static final int DATA_SIZE = 8192;
+    private static final int PREVIEW_SIZE = 4096;
+
+    @Param({ "10", "1000", "100000" })
+    private int numChildren;
+
+    private ObjectMapper objectMapper;
+    private Tree tree;
+    private ZkNode zkNode;
+
+    @Setup
+    public void setup() {
+        objectMapper = Jackson.newObjectMapper();
+        final Stat stat = SyntheticTrees.stats(1).get(0);
+        stat.setNumChildren(numChildren);
+        stat.setDataLength(DATA_SIZE);
+        tree = new Tree(new PathAndNode("/", PARENT.substring(1)), SyntheticTrees.childStats(numChildren), stat, null);
+        zkNode = new ZkNode(tree, DataPreviews.create(SyntheticTrees.textData(DATA_SIZE), PREVIEW_SIZE), stat);
+    }
+
+    @Benchmark
+    public long serializeTree() throws IOException {
+        final SyntheticTrees.CountingNullOutputStream out = new SyntheticTrees.CountingNullOutputStream();
+        objectMapper.writeValue(out, tree);
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long serializeZkNode() throws IOException {
+        final SyntheticTrees.CountingNullOutputStream out = new SyntheticTrees.CountingNullOutputStream();
+        objectMapper.writeValue(out, zkNode);
+        return out.getCount();
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Generates synthetic node names and stats. All generators are seeded, so every run of a benchmark sees exactly the
+ * same data, and results are comparable between runs.
+ */
+final class SyntheticTrees {
+
+    static final long SEED = 0x5EEDL;
+
+    /** The fraction of generated children which have children of their own. */
+    private static final double DIRECTORY_RATIO = 0.25;
+
+    private SyntheticTrees() {
+        // no instances
+    }
+
+    /** Returns the given number of distinct child names, in a random but reproducible order. */
+    static List<String> childNames(int numChildren) {
+        final List<String> names = Lists.newArrayListWithCapacity(numChildren);
+        for (int i = 0; i < numChildren; i++) {
+            names.add(String.format(Locale.ROOT, "node-%08d", i));
+        }
+        Collections.shuffle(names, new Random(SEED));
+        return names;
+    }
+
+    /** Returns the stats of the given number of nodes, some of which have children. */
+    static List<Stat> stats(int numNodes) {
+        final Random random = new Random(SEED);
+        final List<Stat> stats = Lists.newArrayListWithCapacity(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            final long zxid = 0x100000000L + i;
+            final int numChildren = random.nextDouble() < DIRECTORY_RATIO ? 1 + random.nextInt(10) : 0;
+            stats.add(new Stat(zxid, zxid, 1444000000000L + i, 1444000000000L + i, random.nextInt(5), numChildren, 0,
+                    0, random.nextInt(1024), numChildren, zxid));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the given number of distinct child names with their stats, in a random but reproducible order, as they
+     * are returned by a {@code ZnodeReader}.
+     */
+    static Map<String, Stat> childStats(int numChildren) {
+        final List<String> names = childNames(numChildren);
+        final List<Stat> stats = stats(numChildren);
+        final Map<String, Stat> childStats = Maps.newLinkedHashMap();
+        for (int i = 0; i < numChildren; i++) {
+            childStats.put(names.get(i), stats.get(i));
+        }
+        return childStats;
+    }
+
+    /** Returns reproducible text data of the given size. */
+    static byte[] textData(int size) {
+        final Random random = new Random(SEED);
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(26));
+        }
+        return data;
+    }
+
+    /** An output stream which discards what is written to it, but counts it so that the writes are not eliminated. */
+    static final class CountingNullOutputStream extends OutputStream {
+
+        private long count = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.utils.ZKPaths.PathAndNode;
+import org.apache.zookeeper.data.Stat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.shaie.browze.model.Tree;
+
+/**
+ * Measures the construction of a {@link Tree} with many children, which sorts them, the way browse builds the tree of
+ * a node from the names and stats of its children.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class TreeBenchmark {
+
+    private static final String PARENT = "/benchmark";
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    private int numChildren;
+
+    private Map<String, Stat> childStats;
+    private Stat parentStat;
+
+    @Setup
+    public void setup() {
+        childStats = SyntheticTrees.childStats(numChildren);
+        parentStat = new Stat();
+        parentStat.setNumChildren(numChildren);
+    }
+
+    /** Builds the tree from the names and stats of the children. */
+    @Benchmark
+    public Tree buildTree() {
+        return new Tree(new PathAndNode("/", PARENT.substring(1)), childStats, parentStat, null);
+    }
+
+}
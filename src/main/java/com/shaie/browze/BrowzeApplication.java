@@ -16,11 +16,28 @@
  */
 package com.shaie.browze;
 
+import java.util.concurrent.ExecutorService;
+
+import org.glassfish.jersey.media.sse.SseFeature;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.shaie.browze.admission.AdmissionFilter;
+import com.shaie.browze.backup.Backups;
+import com.shaie.browze.monitor.EnsembleMonitor;
+import com.shaie.browze.offline.SnapshotImages;
+import com.shaie.browze.resources.CborMessageBodyWriter;
+import com.shaie.browze.resources.RoundTripsFilter;
 import com.shaie.browze.resources.ZooResource;
+import com.shaie.browze.stats.SubtreeStatistics;
 import com.shaie.browze.validation.GeneralExceptionMapper;
+import com.shaie.browze.write.SubtreeImports;
+import com.shaie.browze.zk.ZkMetrics;
+import com.shaie.browze.zk.ZkSessions;
 
 import io.dropwizard.Application;
 import io.dropwizard.assets.AssetsBundle;
+import io.dropwizard.jackson.Jackson;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 
@@ -44,13 +61,46 @@ public class BrowzeApplication extends Application<BrowzeConfiguration> {
 
     @Override
     public void run(BrowzeConfiguration configuration, Environment environment) {
-        final ZooResource resource = new ZooResource();
+        final ZkMetrics zkMetrics = new ZkMetrics(environment.metrics());
+        final ZkSessions zkSessions = new ZkSessions(configuration.getZooKeeper(), configuration.getCache(),
+                configuration.getSearch(), configuration.getChanges(), zkMetrics);
+        environment.lifecycle().manage(zkSessions);
+
+        final SnapshotImages snapshotImages = new SnapshotImages(configuration.getOffline());
+
+        final SubtreeStatistics subtreeStatistics = new SubtreeStatistics(configuration.getStats());
+        environment.lifecycle().manage(subtreeStatistics);
+
+        final SubtreeImports subtreeImports = new SubtreeImports(configuration.getWrites(),
+                environment.getObjectMapper());
+        environment.lifecycle().manage(subtreeImports);
+
+        final Backups backups = new Backups(configuration.getBackups(), configuration.getZooKeeper());
+        environment.lifecycle().manage(backups);
+
+        final EnsembleMonitor ensembleMonitor = new EnsembleMonitor(configuration.getMonitor(), zkSessions);
+        environment.lifecycle().manage(ensembleMonitor);
+
+        final int responseThreads = configuration.getZooKeeper().getResponseThreads();
+        final ExecutorService responseExecutor = environment.lifecycle().executorService("zoo-response-%d")
+                .minThreads(responseThreads)
+                .maxThreads(responseThreads)
+                .build();
+        final ZooResource resource = new ZooResource(zkSessions, snapshotImages, configuration.getZooKeeper(),
+                configuration.getData(), configuration.getBatch(), subtreeStatistics, subtreeImports, backups,
+                ensembleMonitor, environment.getObjectMapper(), responseExecutor);
         environment.jersey().register(resource);
 
-        final BrowzeHealthCheck healthCheck = new BrowzeHealthCheck();
+        final BrowzeHealthCheck healthCheck = new BrowzeHealthCheck(zkSessions);
         environment.healthChecks().register("healthcheck", healthCheck);
 
         environment.jersey().register(new GeneralExceptionMapper());
+        environment.jersey().register(SseFeature.class);
+        environment.jersey().register(new JacksonSmileProvider(Jackson.newObjectMapper(new SmileFactory())));
+        environment.jersey().register(new CborMessageBodyWriter());
+        environment.jersey().register(new RoundTripsFilter(zkMetrics));
+        environment.jersey().register(new AdmissionFilter(configuration.getAdmission(), zkMetrics,
+                environment.metrics()));
     }
 
 }
\ No newline at end of file
@@ -16,10 +16,181 @@
  */
 package com.shaie.browze;
 
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.shaie.browze.admission.AdmissionConfiguration;
+import com.shaie.browze.backup.BackupConfiguration;
+import com.shaie.browze.batch.BatchConfiguration;
+import com.shaie.browze.cache.ZnodeCacheConfiguration;
+import com.shaie.browze.changes.ChangeFeedConfiguration;
+import com.shaie.browze.data.DataConfiguration;
+import com.shaie.browze.monitor.MonitorConfiguration;
+import com.shaie.browze.offline.OfflineConfiguration;
+import com.shaie.browze.search.SearchConfiguration;
+import com.shaie.browze.stats.StatsConfiguration;
+import com.shaie.browze.write.WriteConfiguration;
+import com.shaie.browze.zk.ZooKeeperConfiguration;
+
 import io.dropwizard.Configuration;
 
 public class BrowzeConfiguration extends Configuration {
 
-    // Currently empty
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ZooKeeperConfiguration zooKeeper = new ZooKeeperConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ZnodeCacheConfiguration cache = new ZnodeCacheConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private OfflineConfiguration offline = new OfflineConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private SearchConfiguration search = new SearchConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private DataConfiguration data = new DataConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ChangeFeedConfiguration changes = new ChangeFeedConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BatchConfiguration batch = new BatchConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private StatsConfiguration stats = new StatsConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private WriteConfiguration writes = new WriteConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private AdmissionConfiguration admission = new AdmissionConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BackupConfiguration backups = new BackupConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private MonitorConfiguration monitor = new MonitorConfiguration();
+
+    public ZooKeeperConfiguration getZooKeeper() {
+        return zooKeeper;
+    }
+
+    public void setZooKeeper(ZooKeeperConfiguration zooKeeper) {
+        this.zooKeeper = zooKeeper;
+    }
+
+    public ZnodeCacheConfiguration getCache() {
+        return cache;
+    }
+
+    public void setCache(ZnodeCacheConfiguration cache) {
+        this.cache = cache;
+    }
+
+    public OfflineConfiguration getOffline() {
+        return offline;
+    }
+
+    public void setOffline(OfflineConfiguration offline) {
+        this.offline = offline;
+    }
+
+    public SearchConfiguration getSearch() {
+        return search;
+    }
+
+    public void setSearch(SearchConfiguration search) {
+        this.search = search;
+    }
+
+    public DataConfiguration getData() {
+        return data;
+    }
+
+    public void setData(DataConfiguration data) {
+        this.data = data;
+    }
+
+    public ChangeFeedConfiguration getChanges() {
+        return changes;
+    }
+
+    public void setChanges(ChangeFeedConfiguration changes) {
+        this.changes = changes;
+    }
+
+    public BatchConfiguration getBatch() {
+        return batch;
+    }
+
+    public void setBatch(BatchConfiguration batch) {
+        this.batch = batch;
+    }
+
+    public StatsConfiguration getStats() {
+        return stats;
+    }
+
+    public void setStats(StatsConfiguration stats) {
+        this.stats = stats;
+    }
+
+    public WriteConfiguration getWrites() {
+        return writes;
+    }
+
+    public void setWrites(WriteConfiguration writes) {
+        this.writes = writes;
+    }
+
+    public AdmissionConfiguration getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(AdmissionConfiguration admission) {
+        this.admission = admission;
+    }
+
+    public BackupConfiguration getBackups() {
+        return backups;
+    }
+
+    public void setBackups(BackupConfiguration backups) {
+        this.backups = backups;
+    }
+
+    public MonitorConfiguration getMonitor() {
+        return monitor;
+    }
+
+    public void setMonitor(MonitorConfiguration monitor) {
+        this.monitor = monitor;
+    }
 
 }
\ No newline at end of file
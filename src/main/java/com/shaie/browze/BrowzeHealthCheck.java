@@ -16,14 +16,64 @@
  */
 package com.shaie.browze;
 
+import java.util.Locale;
+
+import org.apache.zookeeper.ZooKeeper;
+
 import com.codahale.metrics.health.HealthCheck;
+import com.shaie.browze.zk.ZkSession;
+import com.shaie.browze.zk.ZkSessions;
 
+/**
+ * Checks the connection of every open session, and measures its latency by a round trip to the ensemble. Sessions are
+ * opened lazily, so clusters which were not used recently are not checked.
+ */
 public class BrowzeHealthCheck extends HealthCheck {
 
+    private final ZkSessions zkSessions;
+
+    public BrowzeHealthCheck(ZkSessions zkSessions) {
+        this.zkSessions = zkSessions;
+    }
+
     @Override
     protected Result check() throws Exception {
-        // Nothing special to check yet.
-        return Result.healthy();
+        final StringBuilder message = new StringBuilder();
+        boolean healthy = true;
+        for (final String cluster : zkSessions.getClusters()) {
+            final ZkSession session = zkSessions.getOpenSession(cluster);
+            if (session == null) {
+                continue;
+            }
+            if (message.length() > 0) {
+                message.append("; ");
+            }
+            message.append(cluster).append(": ");
+            if (!session.isConnected()) {
+                healthy = false;
+                message.append("disconnected");
+                continue;
+            }
+            try {
+                final long pingNanos = ping(session);
+                message.append(String.format(Locale.ROOT, "connected, ping %.2f ms", pingNanos / 1e6));
+            } catch (final Exception e) {
+                healthy = false;
+                message.append("ping failed: ").append(e.getMessage());
+            }
+        }
+        if (message.length() == 0) {
+            return Result.healthy("No open sessions");
+        }
+        return healthy ? Result.healthy(message.toString()) : Result.unhealthy(message.toString());
+    }
+
+    /** Returns the time a round trip to the ensemble takes, bypassing Curator's retries. */
+    private static long ping(ZkSession session) throws Exception {
+        final ZooKeeper zooKeeper = session.getCuratorFramework().getZookeeperClient().getZooKeeper();
+        final long start = System.nanoTime();
+        zooKeeper.exists("/", false);
+        return System.nanoTime() - start;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.admission;
+
+import javax.validation.constraints.Min;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configures which requests are admitted, so that a surge of requests is turned away with 429 rather than queued up
+ * against the ensembles.
+ */
+public class AdmissionConfiguration {
+
+    @JsonProperty
+    private boolean enabled = true;
+
+    /**
+     * The number of ZooKeeper operations, across all clusters, which may be in flight for new requests to be admitted.
+     * Requests which are served by offline snapshots or backup archives are admitted regardless.
+     */
+    @Min(1)
+    @JsonProperty
+    private int maxInFlightOperations = 5000;
+
+    /** The rate at which each client's tokens are refilled, where each request takes a token. */
+    @Min(1)
+    @JsonProperty
+    private int clientRequestsPerSecond = 20;
+
+    /** The number of tokens a client may accumulate, and so the number of requests it may make in a burst. */
+    @Min(1)
+    @JsonProperty
+    private int clientBurst = 100;
+
+    /** The maximum number of clients whose tokens are tracked. The least recently seen clients are forgotten. */
+    @Min(1)
+    @JsonProperty
+    private int maxClients = 10000;
+
+    /**
+     * The request header which identifies the client, e.g. {@code X-Forwarded-For} behind a proxy. The remote address
+     * of the request identifies it if not set.
+     */
+    @JsonProperty
+    private String clientHeader;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxInFlightOperations() {
+        return maxInFlightOperations;
+    }
+
+    public void setMaxInFlightOperations(int maxInFlightOperations) {
+        this.maxInFlightOperations = maxInFlightOperations;
+    }
+
+    public int getClientRequestsPerSecond() {
+        return clientRequestsPerSecond;
+    }
+
+    public void setClientRequestsPerSecond(int clientRequestsPerSecond) {
+        this.clientRequestsPerSecond = clientRequestsPerSecond;
+    }
+
+    public int getClientBurst() {
+        return clientBurst;
+    }
+
+    public void setClientBurst(int clientBurst) {
+        this.clientBurst = clientBurst;
+    }
+
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    public String getClientHeader() {
+        return clientHeader;
+    }
+
+    public void setClientHeader(String clientHeader) {
+        this.clientHeader = clientHeader;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("enabled", enabled)
+                .append("maxInFlightOperations", maxInFlightOperations)
+                .append("clientRequestsPerSecond", clientRequestsPerSecond)
+                .append("clientBurst", clientBurst)
+                .append("maxClients", maxClients)
+                .append("clientHeader", clientHeader)
+                .build();
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.admission;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.shaie.browze.zk.ZkMetrics;
+
+/**
+ * Turns requests away with 429 before they are handled, rather than letting them queue up against the ensembles: when
+ * too many ZooKeeper operations are in flight already, or when the client has used up its tokens. Each client has a
+ * bucket of tokens which is refilled at a constant rate, and each request takes a token. A bucket which was not used
+ * for long enough to be refilled completely is forgotten, since it is no different from a new one.
+ */
+@Provider
+@Priority(Priorities.AUTHORIZATION)
+public class AdmissionFilter implements ContainerRequestFilter {
+
+    /** The status of responses to requests which are turned away, which JAX-RS 2.0 does not define. */
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private final AdmissionConfiguration config;
+    private final ZkMetrics zkMetrics;
+    private final LoadingCache<String, TokenBucket> clientBuckets;
+    private final Meter inFlightRejections;
+    private final Meter clientRejections;
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    public AdmissionFilter(final AdmissionConfiguration config, ZkMetrics zkMetrics, MetricRegistry registry) {
+        this.config = config;
+        this.zkMetrics = zkMetrics;
+        final long refillNanos = TimeUnit.SECONDS.toNanos(config.getClientBurst())
+                / config.getClientRequestsPerSecond();
+        this.clientBuckets = CacheBuilder.newBuilder()
+                .maximumSize(config.getMaxClients())
+                .expireAfterAccess(refillNanos, TimeUnit.NANOSECONDS)
+                .build(new CacheLoader<String, TokenBucket>() {
+                    @Override
+                    public TokenBucket load(String client) {
+                        return new TokenBucket(config.getClientBurst(), config.getClientRequestsPerSecond());
+                    }
+                });
+        this.inFlightRejections = registry.meter(MetricRegistry.name(AdmissionFilter.class, "rejected", "inFlight"));
+        this.clientRejections = registry.meter(MetricRegistry.name(AdmissionFilter.class, "rejected", "client"));
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        final int inFlightOperations = zkMetrics.getInFlightOperations();
+        if (inFlightOperations >= config.getMaxInFlightOperations() && !isOffline(requestContext)) {
+            inFlightRejections.mark();
+            requestContext.abortWith(tooManyRequests(1, String.format(Locale.ROOT,
+                    "Too many ZooKeeper operations in flight: %d, at most %d are allowed", inFlightOperations,
+                    config.getMaxInFlightOperations())));
+            return;
+        }
+
+        final String client = getClient(requestContext);
+        final long waitNanos = clientBuckets.getUnchecked(client).tryTake();
+        if (waitNanos > 0) {
+            clientRejections.mark();
+            final long retryAfterSeconds = (long) Math.ceil(waitNanos / (double) TimeUnit.SECONDS.toNanos(1));
+            requestContext.abortWith(tooManyRequests(retryAfterSeconds, String.format(Locale.ROOT,
+                    "Too many requests from [%s], at most %d per second are allowed", client,
+                    config.getClientRequestsPerSecond())));
+        }
+    }
+
+    /** Returns whether the request reads an offline snapshot or archive, which involves no ZooKeeper operations. */
+    private static boolean isOffline(ContainerRequestContext requestContext) {
+        final MultivaluedMap<String, String> params = requestContext.getUriInfo().getQueryParameters();
+        return params.containsKey("snapshot") || params.containsKey("archive");
+    }
+
+    private String getClient(ContainerRequestContext requestContext) {
+        if (config.getClientHeader() != null) {
+            // proxies append to X-Forwarded-For, so the first address is the client's
+            final String client = StringUtils.substringBefore(
+                    Strings.nullToEmpty(requestContext.getHeaderString(config.getClientHeader())), ",").trim();
+            if (!client.isEmpty()) {
+                return client;
+            }
+        }
+        return servletRequest.getRemoteAddr();
+    }
+
+    private static Response tooManyRequests(long retryAfterSeconds, String message) {
+        return Response.status(TOO_MANY_REQUESTS)
+                .header(RETRY_AFTER_HEADER, retryAfterSeconds)
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .type(MediaType.TEXT_PLAIN)
+                .entity(message)
+                .build();
+    }
+
+}
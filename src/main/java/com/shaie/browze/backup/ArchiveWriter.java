@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.backup;
+
+import static com.shaie.browze.backup.BackupArchive.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Charsets;
+import com.shaie.browze.backup.BackupArchive.Metadata;
+
+/**
+ * Writes a {@link BackupArchive}. Entries may be written in any order, and the index and the labels are collected in
+ * temporary files of their own, which are appended to the archive once all the entries were written. Data is
+ * appended to the current block, which is compressed and written once it reaches the block size, so only a single
+ * block is ever held in memory. Not thread-safe.
+ */
+class ArchiveWriter implements Closeable {
+
+    private final File file;
+    private final File entriesFile;
+    private final File labelsFile;
+    private final FileChannel channel;
+    private final FileChannel entries;
+    private final FileChannel labels;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] entryBytes = new byte[ENTRY_SIZE];
+
+    private final byte[] block;
+    private int blockLength = 0;
+    private byte[] compressed;
+    private long[] blockOffsets = new long[16];
+    private int numBlocks = 0;
+    private long labelsLength = 0;
+    private long highWaterMark = 0;
+
+    ArchiveWriter(File file, int blockSize) throws IOException {
+        this.file = file;
+        this.entriesFile = new File(file.getPath() + ".entries");
+        this.labelsFile = new File(file.getPath() + ".labels");
+        this.block = new byte[blockSize];
+        this.compressed = new byte[blockSize];
+        this.channel = open(file);
+        this.entries = open(entriesFile);
+        this.labels = open(labelsFile);
+        write(channel, ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC).putInt(Integer.BYTES, VERSION));
+    }
+
+    /**
+     * Writes the entry with the given id. A {@code null} stat writes the entry of a node which was deleted while the
+     * archive was written, which is only kept so that its siblings remain sorted by label.
+     */
+    void writeEntry(int id, String label, Stat stat, byte[] data, int firstChild, int childCount) throws IOException {
+        final byte[] labelBytes = label.getBytes(Charsets.UTF_8);
+        final long labelOffset = labelsLength;
+        write(labels, ByteBuffer.wrap(labelBytes));
+        labelsLength += labelBytes.length;
+
+        Arrays.fill(entryBytes, (byte) 0);
+        final ByteBuffer entry = ByteBuffer.wrap(entryBytes);
+        entry.putInt(ENTRY_FLAGS, stat == null ? 0 : FLAG_PRESENT);
+        entry.putInt(ENTRY_FIRST_CHILD, firstChild);
+        entry.putInt(ENTRY_CHILD_COUNT, childCount);
+        entry.putLong(ENTRY_LABEL_OFFSET, labelOffset);
+        entry.putInt(ENTRY_LABEL_LENGTH, labelBytes.length);
+        entry.putInt(ENTRY_DATA_LENGTH, data == null ? -1 : data.length);
+        if (data != null) {
+            appendData(entry, data);
+        }
+        if (stat != null) {
+            entry.putLong(ENTRY_CZXID, stat.getCzxid());
+            entry.putLong(ENTRY_MZXID, stat.getMzxid());
+            entry.putLong(ENTRY_CTIME, stat.getCtime());
+            entry.putLong(ENTRY_MTIME, stat.getMtime());
+            entry.putInt(ENTRY_VERSION, stat.getVersion());
+            entry.putInt(ENTRY_CVERSION, stat.getCversion());
+            entry.putInt(ENTRY_AVERSION, stat.getAversion());
+            entry.putLong(ENTRY_EPHEMERAL_OWNER, stat.getEphemeralOwner());
+            entry.putLong(ENTRY_PZXID, stat.getPzxid());
+            highWaterMark = Math.max(highWaterMark,
+                    Math.max(stat.getCzxid(), Math.max(stat.getMzxid(), stat.getPzxid())));
+        }
+        while (entry.hasRemaining()) {
+            entries.write(entry, (long) id * ENTRY_SIZE + entry.position());
+        }
+    }
+
+    /**
+     * Returns the highest zxid of the entries written so far, see {@link BackupArchive#getHighWaterMark()}.
+     */
+    long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Completes the archive of {@code numEntries} entries, all of which must have been written. The archive file is
+     * complete once this method returns, but the writer must still be closed.
+     */
+    void finish(int numEntries, Metadata metadata) throws IOException {
+        flushBlock();
+
+        final long entriesOffset = channel.position();
+        final long entriesLength = (long) numEntries * ENTRY_SIZE;
+        if (entries.size() != entriesLength) {
+            throw new IllegalStateException(String.format(Locale.ROOT, "Wrote %d bytes of entries instead of %d to %s",
+                    entries.size(), entriesLength, file));
+        }
+        transfer(entries, entriesLength);
+
+        final long labelsOffset = channel.position();
+        transfer(labels, labelsLength);
+
+        final long blocksOffset = channel.position();
+        final ByteBuffer blockTable = ByteBuffer.allocate(numBlocks * Long.BYTES);
+        for (int i = 0; i < numBlocks; i++) {
+            blockTable.putLong(i * Long.BYTES, blockOffsets[i]);
+        }
+        write(channel, blockTable);
+
+        final long metadataOffset = channel.position();
+        write(channel, ByteBuffer.wrap(metadata.toBytes()));
+
+        final ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        trailer.putLong(TRAILER_ENTRIES_OFFSET, entriesOffset);
+        trailer.putInt(TRAILER_NUM_ENTRIES, numEntries);
+        trailer.putLong(TRAILER_LABELS_OFFSET, labelsOffset);
+        trailer.putLong(TRAILER_BLOCKS_OFFSET, blocksOffset);
+        trailer.putInt(TRAILER_NUM_BLOCKS, numBlocks);
+        trailer.putLong(TRAILER_METADATA_OFFSET, metadataOffset);
+        trailer.putLong(TRAILER_HIGH_WATER_MARK, highWaterMark);
+        trailer.putInt(TRAILER_MAGIC, MAGIC);
+        write(channel, trailer);
+        channel.force(true);
+    }
+
+    /** Closes the writer and deletes its temporary files, but not the archive file. */
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        try {
+            channel.close();
+        } finally {
+            try {
+                entries.close();
+                labels.close();
+            } finally {
+                entriesFile.delete();
+                labelsFile.delete();
+            }
+        }
+    }
+
+    private void appendData(ByteBuffer entry, byte[] data) throws IOException {
+        if (blockLength > 0 && blockLength + data.length > block.length) {
+            flushBlock();
+        }
+        entry.putInt(ENTRY_BLOCK, numBlocks);
+        entry.putInt(ENTRY_BLOCK_OFFSET, blockLength);
+        if (data.length > block.length) {
+            // a block of its own, which is compressed straight from the data
+            compress(data, data.length);
+        } else {
+            System.arraycopy(data, 0, block, blockLength, data.length);
+            blockLength += data.length;
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockLength > 0) {
+            compress(block, blockLength);
+            blockLength = 0;
+        }
+    }
+
+    /** Writes {@code length} bytes of {@code data} as the next block. */
+    private void compress(byte[] data, int length) throws IOException {
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                final byte[] larger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, larger, 0, compressedLength);
+                compressed = larger;
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        if (numBlocks == blockOffsets.length) {
+            final long[] larger = new long[blockOffsets.length * 2];
+            System.arraycopy(blockOffsets, 0, larger, 0, numBlocks);
+            blockOffsets = larger;
+        }
+        blockOffsets[numBlocks++] = channel.position();
+        final ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        header.putInt(0, length).putInt(Integer.BYTES, compressedLength);
+        write(channel, header);
+        write(channel, ByteBuffer.wrap(compressed, 0, compressedLength));
+    }
+
+    /** Appends the first {@code length} bytes of {@code source} to the archive. */
+    private void transfer(FileChannel source, long length) throws IOException {
+        long position = 0;
+        while (position < length) {
+            position += source.transferTo(position, length - position, channel);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+}
@@ -0,0 +1,476 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.shaie.browze.offline.MappedFile;
+import com.shaie.browze.zk.ZnodeReader;
+
+/**
+ * A {@link ZnodeReader} over an archive of a subtree, as written by a {@link SubtreeBackup}. The nodes above the
+ * subtree's root are presented as empty nodes, each with a single child on the way to the root, so that the subtree
+ * can be browsed by its ZooKeeper paths.
+ * <p>
+ * An archive consists of a header, the data of the nodes in compressed blocks, an index of the nodes, their labels, a
+ * table of the blocks' offsets, the archive's metadata and a fixed-size trailer which locates all of them. The index
+ * holds a fixed-size entry per node, with its stat, the location of its data and the range of its children's entries,
+ * which are consecutive and sorted by label. The index is read from the memory-mapped file as it is, so looking up a
+ * node only reads the entries along its path, and reading its data only decompresses its own block. Entries of nodes
+ * which were deleted while the archive was written are not {@link #FLAG_PRESENT present}.
+ */
+public class BackupArchive implements ZnodeReader {
+
+    static final int MAGIC = 0x5a4b4241; // "ZKBA"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8; // magic, version
+    static final int NO_ENTRY = -1;
+    static final int ROOT = 0;
+
+    static final int FLAG_PRESENT = 1;
+
+    // offsets of the fields of an index entry
+    static final int ENTRY_FLAGS = 0;
+    static final int ENTRY_FIRST_CHILD = 4;
+    static final int ENTRY_CHILD_COUNT = 8;
+    static final int ENTRY_LABEL_OFFSET = 12;
+    static final int ENTRY_LABEL_LENGTH = 20;
+    static final int ENTRY_BLOCK = 24;
+    static final int ENTRY_BLOCK_OFFSET = 28;
+    static final int ENTRY_DATA_LENGTH = 32;
+    static final int ENTRY_CZXID = 36;
+    static final int ENTRY_MZXID = 44;
+    static final int ENTRY_CTIME = 52;
+    static final int ENTRY_MTIME = 60;
+    static final int ENTRY_VERSION = 68;
+    static final int ENTRY_CVERSION = 72;
+    static final int ENTRY_AVERSION = 76;
+    static final int ENTRY_EPHEMERAL_OWNER = 80;
+    static final int ENTRY_PZXID = 88;
+    static final int ENTRY_SIZE = 96;
+
+    // offsets of the fields of the trailer, from its start
+    static final int TRAILER_ENTRIES_OFFSET = 0;
+    static final int TRAILER_NUM_ENTRIES = 8;
+    static final int TRAILER_LABELS_OFFSET = 12;
+    static final int TRAILER_BLOCKS_OFFSET = 20;
+    static final int TRAILER_NUM_BLOCKS = 28;
+    static final int TRAILER_METADATA_OFFSET = 32;
+    static final int TRAILER_HIGH_WATER_MARK = 40;
+    static final int TRAILER_MAGIC = 48;
+    static final int TRAILER_SIZE = 52;
+
+    private final String name;
+    private final MappedFile file;
+    private final long entriesOffset;
+    private final int numEntries;
+    private final long labelsOffset;
+    private final long blocksOffset;
+    private final int numBlocks;
+    private final long highWaterMark;
+    private final Metadata metadata;
+    private final Cache<Integer, byte[]> blocks;
+
+    private BackupArchive(String name, MappedFile file, int blockCacheSize) throws IOException {
+        this.name = name;
+        this.file = file;
+        final long trailer = file.size() - TRAILER_SIZE;
+        if (file.size() < HEADER_SIZE + TRAILER_SIZE || file.getInt(0) != MAGIC
+                || file.getInt(trailer + TRAILER_MAGIC) != MAGIC) {
+            throw new IOException("Not a complete backup archive: " + file.getFile());
+        }
+        if (file.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException(String.format(Locale.ROOT, "Unsupported version %d of backup archive: %s",
+                    file.getInt(Integer.BYTES), file.getFile()));
+        }
+        this.entriesOffset = file.getLong(trailer + TRAILER_ENTRIES_OFFSET);
+        this.numEntries = file.getInt(trailer + TRAILER_NUM_ENTRIES);
+        this.labelsOffset = file.getLong(trailer + TRAILER_LABELS_OFFSET);
+        this.blocksOffset = file.getLong(trailer + TRAILER_BLOCKS_OFFSET);
+        this.numBlocks = file.getInt(trailer + TRAILER_NUM_BLOCKS);
+        this.highWaterMark = file.getLong(trailer + TRAILER_HIGH_WATER_MARK);
+        this.metadata = Metadata.read(file, file.getLong(trailer + TRAILER_METADATA_OFFSET));
+        this.blocks = CacheBuilder.newBuilder().maximumSize(blockCacheSize).build();
+    }
+
+    /** Opens the archive in the given file, whose name without its extension is the archive's name. */
+    public static BackupArchive open(File file, int blockCacheSize) throws IOException {
+        final String fileName = file.getName();
+        final int dot = fileName.lastIndexOf('.');
+        return new BackupArchive(dot == -1 ? fileName : fileName.substring(0, dot), MappedFile.open(file),
+                blockCacheSize);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public File getFile() {
+        return file.getFile();
+    }
+
+    public long getSize() {
+        return file.size();
+    }
+
+    /** Returns the cluster which the subtree was backed up from. */
+    public String getCluster() {
+        return metadata.cluster;
+    }
+
+    /** Returns the path of the subtree's root. */
+    public String getPath() {
+        return metadata.path;
+    }
+
+    /**
+     * Returns the highest zxid which created or changed a node of the archive, or the children of one, i.e. the zxid
+     * of the latest change to the subtree which the archive reflects.
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /** Returns the name of the archive which the backup was incremental to, or {@code null} if it was a full one. */
+    public String getBase() {
+        return metadata.base;
+    }
+
+    public long getCreated() {
+        return metadata.created;
+    }
+
+    public int getNumNodes() {
+        return metadata.numNodes;
+    }
+
+    /** Returns the number of nodes whose data was read from ZooKeeper, rather than copied from the base archive. */
+    public int getNumDataReads() {
+        return metadata.numDataReads;
+    }
+
+    /** Returns the number of nodes whose children were listed in ZooKeeper, rather than copied from the base. */
+    public int getNumChildrenReads() {
+        return metadata.numChildrenReads;
+    }
+
+    @Override
+    public byte[] getData(String path, Stat stat) throws Exception {
+        final int entry = lookup(path);
+        if (entry != NO_ENTRY) {
+            copyStat(entry, stat);
+            return data(entry);
+        }
+        if (!isAncestorOfRoot(path)) {
+            throw new NoNodeException(path);
+        }
+        stat.setNumChildren(1);
+        return null;
+    }
+
+    @Override
+    public List<String> getChildren(String path) throws Exception {
+        final int entry = lookup(path);
+        if (entry != NO_ENTRY) {
+            final List<String> labels = Lists.newArrayList();
+            for (final int child : children(entry)) {
+                labels.add(label(child));
+            }
+            return labels;
+        }
+        if (!isAncestorOfRoot(path)) {
+            throw new NoNodeException(path);
+        }
+        return ImmutableList.of(nextLabelTowardsRoot(path));
+    }
+
+    @Override
+    public Stat checkExists(String path) throws Exception {
+        final int entry = lookup(path);
+        if (entry != NO_ENTRY) {
+            return stat(entry);
+        }
+        if (!isAncestorOfRoot(path)) {
+            return null;
+        }
+        final Stat stat = new Stat();
+        stat.setNumChildren(1);
+        return stat;
+    }
+
+    @Override
+    public Map<String, Stat> getChildStats(String parent, List<String> children) throws Exception {
+        final Map<String, Stat> stats = Maps.newHashMapWithExpectedSize(children.size());
+        for (final String child : children) {
+            final Stat stat = checkExists(ZKPaths.makePath(parent, child));
+            if (stat != null) {
+                stats.put(child, stat);
+            }
+        }
+        return stats;
+    }
+
+    /** Returns the entry of the node at the given path, or {@link #NO_ENTRY} if it is not in the archive. */
+    int lookup(String path) {
+        final String rootPath = metadata.path;
+        final int start;
+        if (path.equals(rootPath)) {
+            return ROOT;
+        } else if (rootPath.equals("/") && path.startsWith("/")) {
+            start = 1;
+        } else if (path.startsWith(rootPath) && path.charAt(rootPath.length()) == '/') {
+            start = rootPath.length() + 1;
+        } else {
+            return NO_ENTRY;
+        }
+
+        int entry = ROOT;
+        for (final String label : path.substring(start).split("/", -1)) {
+            entry = child(entry, label);
+            if (entry == NO_ENTRY) {
+                return NO_ENTRY;
+            }
+        }
+        return entry;
+    }
+
+    /** Returns the entry of the child of {@code entry} with the given label, or {@link #NO_ENTRY} if there is none. */
+    int child(int entry, String label) {
+        final long pos = entryOffset(entry);
+        int low = file.getInt(pos + ENTRY_FIRST_CHILD);
+        int high = low + file.getInt(pos + ENTRY_CHILD_COUNT) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = label(mid).compareTo(label);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return isPresent(mid) ? mid : NO_ENTRY;
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    /** Returns the entries of the present children of {@code entry}, in label order. */
+    List<Integer> children(int entry) {
+        final long pos = entryOffset(entry);
+        final int firstChild = file.getInt(pos + ENTRY_FIRST_CHILD);
+        final int childCount = file.getInt(pos + ENTRY_CHILD_COUNT);
+        if (childCount == 0) {
+            return Collections.emptyList();
+        }
+        final List<Integer> children = Lists.newArrayListWithCapacity(childCount);
+        for (int child = firstChild; child < firstChild + childCount; child++) {
+            if (isPresent(child)) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    boolean isPresent(int entry) {
+        return (file.getInt(entryOffset(entry) + ENTRY_FLAGS) & FLAG_PRESENT) != 0;
+    }
+
+    String label(int entry) {
+        final long pos = entryOffset(entry);
+        final byte[] bytes = new byte[file.getInt(pos + ENTRY_LABEL_LENGTH)];
+        file.get(labelsOffset + file.getLong(pos + ENTRY_LABEL_OFFSET), bytes, 0, bytes.length);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    long getMzxid(int entry) {
+        return file.getLong(entryOffset(entry) + ENTRY_MZXID);
+    }
+
+    long getPzxid(int entry) {
+        return file.getLong(entryOffset(entry) + ENTRY_PZXID);
+    }
+
+    Stat stat(int entry) {
+        final Stat stat = new Stat();
+        copyStat(entry, stat);
+        return stat;
+    }
+
+    byte[] data(final int entry) throws IOException {
+        final long pos = entryOffset(entry);
+        final int length = file.getInt(pos + ENTRY_DATA_LENGTH);
+        if (length < 0) {
+            return null;
+        }
+        final int blockOffset = file.getInt(pos + ENTRY_BLOCK_OFFSET);
+        final byte[] block;
+        try {
+            block = blocks.get(file.getInt(pos + ENTRY_BLOCK), new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return readBlock(file.getInt(pos + ENTRY_BLOCK));
+                }
+            });
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+        final byte[] data = new byte[length];
+        System.arraycopy(block, blockOffset, data, 0, length);
+        return data;
+    }
+
+    private void copyStat(int entry, Stat stat) {
+        final long pos = entryOffset(entry);
+        stat.setCzxid(file.getLong(pos + ENTRY_CZXID));
+        stat.setMzxid(file.getLong(pos + ENTRY_MZXID));
+        stat.setCtime(file.getLong(pos + ENTRY_CTIME));
+        stat.setMtime(file.getLong(pos + ENTRY_MTIME));
+        stat.setVersion(file.getInt(pos + ENTRY_VERSION));
+        stat.setCversion(file.getInt(pos + ENTRY_CVERSION));
+        stat.setAversion(file.getInt(pos + ENTRY_AVERSION));
+        stat.setEphemeralOwner(file.getLong(pos + ENTRY_EPHEMERAL_OWNER));
+        stat.setPzxid(file.getLong(pos + ENTRY_PZXID));
+        stat.setDataLength(Math.max(0, file.getInt(pos + ENTRY_DATA_LENGTH)));
+        stat.setNumChildren(children(entry).size());
+    }
+
+    private byte[] readBlock(int block) throws IOException {
+        if (block < 0 || block >= numBlocks) {
+            throw new IOException(String.format(Locale.ROOT, "Corrupt backup archive, no block %d in %s", block,
+                    file.getFile()));
+        }
+        final long pos = file.getLong(blocksOffset + (long) block * Long.BYTES);
+        final byte[] compressed = new byte[file.getInt(pos + Integer.BYTES)];
+        file.get(pos + 2 * Integer.BYTES, compressed, 0, compressed.length);
+        final byte[] uncompressed = new byte[file.getInt(pos)];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < uncompressed.length) {
+                final int inflated = inflater.inflate(uncompressed, length, uncompressed.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException(String.format(Locale.ROOT,
+                            "Corrupt backup archive, truncated block %d in %s", block, file.getFile()));
+                }
+                length += inflated;
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException(String.format(Locale.ROOT, "Corrupt backup archive, bad block %d in %s", block,
+                    file.getFile()), e);
+        } finally {
+            inflater.end();
+        }
+        return uncompressed;
+    }
+
+    private long entryOffset(int entry) {
+        if (entry < 0 || entry >= numEntries) {
+            throw new IndexOutOfBoundsException(String.format(Locale.ROOT, "No entry %d in %s", entry,
+                    file.getFile()));
+        }
+        return entriesOffset + (long) entry * ENTRY_SIZE;
+    }
+
+    private boolean isAncestorOfRoot(String path) {
+        final String rootPath = metadata.path;
+        return !path.equals(rootPath) && (path.equals("/") || rootPath.startsWith(path + "/"));
+    }
+
+    /** Returns the label of the child of {@code path} on the way to the root of the subtree. */
+    private String nextLabelTowardsRoot(String path) {
+        final String rest = metadata.path.substring(path.equals("/") ? 1 : path.length() + 1);
+        final int slash = rest.indexOf('/');
+        return slash == -1 ? rest : rest.substring(0, slash);
+    }
+
+    /** The metadata of an archive, which is written as a sequence of strings and numbers. */
+    static final class Metadata {
+        final String cluster;
+        final String path;
+        final String base;
+        final long created;
+        final int numNodes;
+        final int numDataReads;
+        final int numChildrenReads;
+
+        Metadata(String cluster, String path, String base, long created, int numNodes, int numDataReads,
+                int numChildrenReads) {
+            this.cluster = cluster;
+            this.path = path;
+            this.base = base;
+            this.created = created;
+            this.numNodes = numNodes;
+            this.numDataReads = numDataReads;
+            this.numChildrenReads = numChildrenReads;
+        }
+
+        /** Returns the metadata as it is written to the archive. */
+        byte[] toBytes() {
+            final byte[] cluster = this.cluster.getBytes(Charsets.UTF_8);
+            final byte[] path = this.path.getBytes(Charsets.UTF_8);
+            final byte[] base = this.base == null ? new byte[0] : this.base.getBytes(Charsets.UTF_8);
+            final ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + cluster.length
+                    + path.length + base.length + Long.BYTES + 3 * Integer.BYTES);
+            buffer.putInt(cluster.length).put(cluster);
+            buffer.putInt(path.length).put(path);
+            buffer.putInt(base.length).put(base);
+            buffer.putLong(created).putInt(numNodes).putInt(numDataReads).putInt(numChildrenReads);
+            return buffer.array();
+        }
+
+        static Metadata read(MappedFile file, long pos) {
+            final String cluster = readString(file, pos);
+            pos += Integer.BYTES + file.getInt(pos);
+            final String path = readString(file, pos);
+            pos += Integer.BYTES + file.getInt(pos);
+            final String base = readString(file, pos);
+            pos += Integer.BYTES + file.getInt(pos);
+            return new Metadata(cluster, path, base.isEmpty() ? null : base, file.getLong(pos),
+                    file.getInt(pos + Long.BYTES), file.getInt(pos + Long.BYTES + Integer.BYTES),
+                    file.getInt(pos + Long.BYTES + 2 * Integer.BYTES));
+        }
+
+        private static String readString(MappedFile file, long pos) {
+            final byte[] bytes = new byte[file.getInt(pos)];
+            file.get(pos + Integer.BYTES, bytes, 0, bytes.length);
+            return new String(bytes, Charsets.UTF_8);
+        }
+    }
+
+}
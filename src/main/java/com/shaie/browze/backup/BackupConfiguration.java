@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.backup;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Size;
+
+/** Configures the {@link BackupArchive backup archives} of subtrees. */
+public class BackupConfiguration {
+
+    /** The directory which holds the archives. It is created if it does not exist. */
+    @NotNull
+    @JsonProperty
+    private String directory = "./backups";
+
+    /** The amount of node data which is compressed together, and decompressed to read the data of a single node. */
+    @NotNull
+    @JsonProperty
+    private Size blockSize = Size.kilobytes(64);
+
+    /** The number of decompressed blocks which are kept per archive, for browsing it. */
+    @Min(0)
+    @JsonProperty
+    private int blockCacheSize = 16;
+
+    /** The number of backups which may run at the same time. */
+    @Min(1)
+    @JsonProperty
+    private int concurrency = 2;
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public Size getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(Size blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    public void setBlockCacheSize(int blockCacheSize) {
+        this.blockCacheSize = blockCacheSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("directory", directory)
+                .append("blockSize", blockSize)
+                .append("blockCacheSize", blockCacheSize)
+                .append("concurrency", concurrency)
+                .build();
+    }
+
+}
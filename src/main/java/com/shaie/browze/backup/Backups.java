@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.backup;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.shaie.browze.zk.AsyncZnodeReader;
+import com.shaie.browze.zk.ZooKeeperConfiguration;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * The {@link BackupArchive backup archives} in the configured directory, by name, and the {@link SubtreeBackup
+ * backups} which add to them. At most {@link BackupConfiguration#getConcurrency()} backups run at a time, and at most
+ * one of each subtree.
+ */
+public class Backups implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Backups.class);
+
+    private final BackupConfiguration config;
+    private final ZooKeeperConfiguration zkConfig;
+    private final ListeningExecutorService executor;
+    private final ConcurrentMap<String, BackupArchive> archives = new ConcurrentHashMap<>();
+
+    /** The subtrees which are being backed up, by cluster and path. */
+    private final Set<List<String>> running = Collections.newSetFromMap(new ConcurrentHashMap<List<String>, Boolean>());
+
+    public Backups(BackupConfiguration config, ZooKeeperConfiguration zkConfig) {
+        this.config = config;
+        this.zkConfig = zkConfig;
+        this.executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(config.getConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("subtree-backup-%d").setDaemon(true).build()));
+    }
+
+    /** Loads the archives in the directory, and deletes the temporary files of backups which did not complete. */
+    @Override
+    public void start() throws IOException {
+        final File directory = new File(config.getDirectory());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create the backups directory " + directory);
+        }
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SubtreeBackup.EXTENSION) || name.endsWith(".tmp")
+                        || name.endsWith(".tmp.entries") || name.endsWith(".tmp.labels");
+            }
+        });
+        for (final File file : files) {
+            if (!file.getName().endsWith(SubtreeBackup.EXTENSION)) {
+                LOGGER.info("Deleting incomplete backup file {}", file);
+                file.delete();
+                continue;
+            }
+            try {
+                final BackupArchive archive = BackupArchive.open(file, config.getBlockCacheSize());
+                archives.put(archive.getName(), archive);
+            } catch (final Exception e) {
+                LOGGER.warn("Skipping broken backup archive {}", file, e);
+            }
+        }
+        LOGGER.info("Loaded {} backup archives from {}", archives.size(), directory);
+    }
+
+    @Override
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public BackupArchive get(String name) {
+        final BackupArchive archive = archives.get(name);
+        if (archive == null) {
+            throw new IllegalArgumentException("Unknown archive: " + name);
+        }
+        return archive;
+    }
+
+    /** Returns the archives, ordered by name, so that the archives of a subtree are ordered by high-water mark. */
+    public Collection<BackupArchive> getArchives() {
+        return new Ordering<BackupArchive>() {
+            @Override
+            public int compare(BackupArchive left, BackupArchive right) {
+                return left.getName().compareTo(right.getName());
+            }
+        }.sortedCopy(archives.values());
+    }
+
+    /** Returns the latest archive of the given subtree, or {@code null} if there is none. */
+    public BackupArchive getLatest(String cluster, String path) {
+        BackupArchive latest = null;
+        for (final BackupArchive archive : archives.values()) {
+            if (archive.getCluster().equals(cluster) && archive.getPath().equals(path)
+                    && (latest == null || archive.getHighWaterMark() > latest.getHighWaterMark())) {
+                latest = archive;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Backs up the subtree at {@code path} of the given cluster, incrementally to its latest archive. The returned
+     * future yields the new archive, or the latest one if the subtree did not change since. Returns {@code null} if
+     * the subtree is already being backed up.
+     */
+    public ListenableFuture<BackupArchive> backup(AsyncZnodeReader reader, final String cluster, final String path) {
+        final List<String> subtree = Lists.newArrayList(cluster, path);
+        if (!running.add(subtree)) {
+            return null;
+        }
+        final SubtreeBackup backup = new SubtreeBackup(reader, cluster, path, getLatest(cluster, path), config,
+                zkConfig.getMaxInFlightRequests(), zkConfig.getRequestTimeout().toMilliseconds());
+        final ListenableFuture<BackupArchive> archive;
+        try {
+            archive = executor.submit(new Callable<BackupArchive>() {
+                @Override
+                public BackupArchive call() throws Exception {
+                    try {
+                        final BackupArchive archive = backup.call();
+                        archives.put(archive.getName(), archive);
+                        return archive;
+                    } finally {
+                        running.remove(subtree);
+                    }
+                }
+            });
+        } catch (final RuntimeException e) {
+            running.remove(subtree);
+            throw e;
+        }
+        return archive;
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.backup;
+
+import static com.shaie.browze.backup.BackupArchive.NO_ENTRY;
+import static com.shaie.browze.backup.BackupArchive.ROOT;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.shaie.browze.backup.BackupArchive.Metadata;
+import com.shaie.browze.zk.AsyncTreeWalk;
+import com.shaie.browze.zk.AsyncZnodeReader;
+
+/**
+ * Backs up a subtree into a new {@link BackupArchive}, incrementally to the latest archive of the same subtree, if
+ * there is one.
+ * <p>
+ * The subtree is walked by an {@link AsyncTreeWalk}, which keeps up to {@code maxInFlightRequests} background reads
+ * outstanding while the nodes which were already read are written to the archive. A node which is in the base
+ * archive is first only checked for existence; its data is copied from the base archive if its {@code mzxid} did not
+ * change since, and so are the names of its children if its {@code pzxid} did not change. Only nodes which were
+ * created or changed since the base archive are therefore read in full. If nothing changed at all, no archive is
+ * written and the base archive is returned.
+ */
+class SubtreeBackup implements Callable<BackupArchive> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubtreeBackup.class);
+
+    static final String EXTENSION = ".zkb";
+
+    private final AsyncZnodeReader reader;
+    private final String cluster;
+    private final String rootPath;
+    private final BackupArchive base;
+    private final BackupConfiguration config;
+    private final AsyncTreeWalk<PendingNode, ReadResult> walk;
+
+    /** The id of the next entry, allocated to children as they are listed. The root's entry is {@link #ROOT}. */
+    private final AtomicInteger nextId = new AtomicInteger(ROOT + 1);
+
+    /** @param base the latest archive of the subtree, or {@code null} to back it up in full. */
+    SubtreeBackup(AsyncZnodeReader reader, String cluster, String rootPath, BackupArchive base,
+            BackupConfiguration config, int maxInFlightRequests, long timeoutMs) {
+        this.reader = reader;
+        this.cluster = cluster;
+        this.rootPath = rootPath;
+        this.base = base;
+        this.config = config;
+        this.walk = new AsyncTreeWalk<PendingNode, ReadResult>(maxInFlightRequests, timeoutMs,
+                "backing up [" + rootPath + "]") {
+            @Override
+            protected ListenableFuture<ReadResult> read(PendingNode node) {
+                return SubtreeBackup.this.read(node);
+            }
+
+            @Override
+            protected ReadResult deleted(PendingNode node) {
+                return new ReadResult(node, null, null, false, 0, 0, false);
+            }
+        };
+    }
+
+    /** Returns the name of the archive of the given subtree whose high-water mark is {@code highWaterMark}. */
+    static String archiveName(String cluster, String path, long highWaterMark) {
+        return String.format(Locale.ROOT, "%s-%016x", (cluster + path).replaceAll("[^A-Za-z0-9.]+", "_"),
+                highWaterMark);
+    }
+
+    @Override
+    public BackupArchive call() throws Exception {
+        final File directory = new File(config.getDirectory());
+        final File tmpFile = File.createTempFile(archiveName(cluster, rootPath, 0), ".tmp", directory);
+        int numNodes = 0;
+        int numDataReads = 0;
+        int numChildrenReads = 0;
+        try {
+            final long highWaterMark;
+            final boolean upToDate;
+            try (final ArchiveWriter writer = new ArchiveWriter(tmpFile, (int) config.getBlockSize().toBytes())) {
+                walk.push(new PendingNode(rootPath, ROOT, rootPath, base == null ? NO_ENTRY : ROOT));
+                ReadResult result;
+                while ((result = walk.next(null)) != null) {
+                    if (result.stat == null) {
+                        if (result.node.id == ROOT) {
+                            throw new NoNodeException(rootPath);
+                        }
+                        writer.writeEntry(result.node.id, result.node.label, null, null, 0, 0);
+                        continue;
+                    }
+                    final byte[] data = result.copyData ? base.data(result.node.baseEntry) : result.data;
+                    writer.writeEntry(result.node.id, result.node.label, result.stat, data, result.firstChild,
+                            result.childCount);
+                    ++numNodes;
+                    if (!result.copyData) {
+                        ++numDataReads;
+                    }
+                    if (result.childrenRead) {
+                        ++numChildrenReads;
+                    }
+                }
+
+                highWaterMark = writer.getHighWaterMark();
+                upToDate = base != null && highWaterMark == base.getHighWaterMark();
+                if (!upToDate) {
+                    writer.finish(nextId.get(), new Metadata(cluster, rootPath,
+                            base == null ? null : base.getName(), System.currentTimeMillis(), numNodes, numDataReads,
+                            numChildrenReads));
+                }
+            }
+
+            if (upToDate) {
+                LOGGER.info("Backup of [{}] is up to date with {} after checking {} nodes", rootPath,
+                        base.getName(), numNodes);
+                Files.delete(tmpFile.toPath());
+                return base;
+            }
+            final File file = new File(directory, archiveName(cluster, rootPath, highWaterMark) + EXTENSION);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Backed up {} nodes of [{}] to {}, reading the data of {} and the children of {}", numNodes,
+                    rootPath, file, numDataReads, numChildrenReads);
+            return BackupArchive.open(file, config.getBlockCacheSize());
+        } catch (final Exception e) {
+            LOGGER.warn("Failed to back up [{}] after {} nodes", rootPath, numNodes, e);
+            Files.deleteIfExists(tmpFile.toPath());
+            throw e;
+        }
+    }
+
+    private ListenableFuture<ReadResult> read(final PendingNode node) {
+        if (node.baseEntry == NO_ENTRY) {
+            return readData(node);
+        }
+        return Futures.transform(reader.checkExistsAsync(node.path), new AsyncFunction<Stat, ReadResult>() {
+            @Override
+            public ListenableFuture<ReadResult> apply(Stat stat) throws NoNodeException {
+                if (stat == null) {
+                    throw new NoNodeException(node.path);
+                }
+                if (stat.getMzxid() == base.getMzxid(node.baseEntry)) {
+                    return readChildren(node, stat, null, true);
+                }
+                return readData(node);
+            }
+        });
+    }
+
+    private ListenableFuture<ReadResult> readData(final PendingNode node) {
+        final Stat stat = new Stat();
+        return Futures.transform(reader.getDataAsync(node.path, stat),
+                new AsyncFunction<byte[], ReadResult>() {
+                    @Override
+                    public ListenableFuture<ReadResult> apply(byte[] data) {
+                        return readChildren(node, stat, data, false);
+                    }
+                });
+    }
+
+    private ListenableFuture<ReadResult> readChildren(final PendingNode node, final Stat stat, final byte[] data,
+            final boolean copyData) {
+        if (stat.getNumChildren() == 0) {
+            return Futures.immediateFuture(new ReadResult(node, stat, data, copyData, 0, 0, false));
+        }
+        if (node.baseEntry != NO_ENTRY && stat.getPzxid() == base.getPzxid(node.baseEntry)) {
+            final List<Integer> baseChildren = base.children(node.baseEntry);
+            final List<String> children = Lists.newArrayListWithCapacity(baseChildren.size());
+            for (final int baseChild : baseChildren) {
+                children.add(base.label(baseChild));
+            }
+            return Futures.immediateFuture(addChildren(node, stat, data, copyData, children, baseChildren, false));
+        }
+        return Futures.transform(reader.getChildrenAsync(node.path),
+                new AsyncFunction<List<String>, ReadResult>() {
+                    @Override
+                    public ListenableFuture<ReadResult> apply(List<String> names) {
+                        final List<String> children = Lists.newArrayList(names);
+                        Collections.sort(children);
+                        final List<Integer> baseChildren = Lists.newArrayListWithCapacity(children.size());
+                        for (final String child : children) {
+                            baseChildren.add(node.baseEntry == NO_ENTRY ? NO_ENTRY : base.child(node.baseEntry, child));
+                        }
+                        return Futures.immediateFuture(
+                                addChildren(node, stat, data, copyData, children, baseChildren, true));
+                    }
+                });
+    }
+
+    /**
+     * Allocates the entries of the children, which are sorted by name, and pushes them in reverse order, so that they
+     * are read in name order.
+     */
+    private ReadResult addChildren(PendingNode node, Stat stat, byte[] data, boolean copyData, List<String> children,
+            List<Integer> baseChildren, boolean childrenRead) {
+        final int firstChild = nextId.getAndAdd(children.size());
+        for (int i = children.size() - 1; i >= 0; i--) {
+            final String child = children.get(i);
+            walk.push(new PendingNode(ZKPaths.makePath(node.path, child), firstChild + i, child,
+                    baseChildren.get(i)));
+        }
+        return new ReadResult(node, stat, data, copyData, firstChild, children.size(), childrenRead);
+    }
+
+    private static final class PendingNode {
+        final String path;
+        final int id;
+        final String label;
+        /** The entry of the node in the base archive, or {@link BackupArchive#NO_ENTRY} if it is not there. */
+        final int baseEntry;
+
+        PendingNode(String path, int id, String label, int baseEntry) {
+            this.path = path;
+            this.id = id;
+            this.label = label;
+            this.baseEntry = baseEntry;
+        }
+    }
+
+    private static final class ReadResult {
+        final PendingNode node;
+        /** The node's stat, or {@code null} if it was deleted. */
+        final Stat stat;
+        final byte[] data;
+        /** Whether the node's data is unchanged, and should be copied from the base archive. */
+        final boolean copyData;
+        final int firstChild;
+        final int childCount;
+        final boolean childrenRead;
+
+        ReadResult(PendingNode node, Stat stat, byte[] data, boolean copyData, int firstChild, int childCount,
+                boolean childrenRead) {
+            this.node = node;
+            this.stat = stat;
+            this.data = data;
+            this.copyData = copyData;
+            this.firstChild = firstChild;
+            this.childCount = childCount;
+            this.childrenRead = childrenRead;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.batch;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.DataTree;
+
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.shaie.browze.zk.AsyncZnodeReader;
+
+/**
+ * Reads znodes on behalf of a single batch, whose paths are browsed concurrently. Each distinct read is made only
+ * once, however many paths of the batch need it, e.g. the root and the other nodes above several paths with
+ * {@code full_hierarchy}. A path which needs a read that is already in flight shares its result.
+ * <p>
+ * The results are kept for as long as the reader is, so a reader must not outlive its batch.
+ */
+public class BatchReader implements AsyncZnodeReader {
+
+    private final AsyncZnodeReader reader;
+    private final ConcurrentMap<List<Object>, ListenableFuture<?>> reads = new ConcurrentHashMap<>();
+
+    public BatchReader(AsyncZnodeReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public ListenableFuture<byte[]> getDataAsync(final String path, final Stat stat) {
+        final ListenableFuture<DataAndStat> read = read(ImmutableList.<Object> of("getData", path),
+                new Supplier<ListenableFuture<DataAndStat>>() {
+                    @Override
+                    public ListenableFuture<DataAndStat> get() {
+                        final Stat readStat = new Stat();
+                        return Futures.transform(reader.getDataAsync(path, readStat),
+                                new Function<byte[], DataAndStat>() {
+                                    @Override
+                                    public DataAndStat apply(byte[] data) {
+                                        return new DataAndStat(data, readStat);
+                                    }
+                                });
+                    }
+                });
+        return Futures.transform(read, new Function<DataAndStat, byte[]>() {
+            @Override
+            public byte[] apply(DataAndStat dataAndStat) {
+                DataTree.copyStat(dataAndStat.stat, stat);
+                return dataAndStat.data;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<String>> getChildrenAsync(final String path) {
+        return read(ImmutableList.<Object> of("getChildren", path), new Supplier<ListenableFuture<List<String>>>() {
+            @Override
+            public ListenableFuture<List<String>> get() {
+                return reader.getChildrenAsync(path);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Stat> checkExistsAsync(final String path) {
+        return read(ImmutableList.<Object> of("checkExists", path), new Supplier<ListenableFuture<Stat>>() {
+            @Override
+            public ListenableFuture<Stat> get() {
+                return reader.checkExistsAsync(path);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Stat>> getChildStatsAsync(final String parent, final List<String> children) {
+        return read(ImmutableList.<Object> of("getChildStats", parent, children),
+                new Supplier<ListenableFuture<Map<String, Stat>>>() {
+                    @Override
+                    public ListenableFuture<Map<String, Stat>> get() {
+                        return reader.getChildStatsAsync(parent, children);
+                    }
+                });
+    }
+
+    /** Makes the read with the given key, unless it was already made, and returns the future of its result. */
+    @SuppressWarnings("unchecked")
+    private <T> ListenableFuture<T> read(List<Object> key, Supplier<ListenableFuture<T>> read) {
+        final SettableFuture<T> result = SettableFuture.create();
+        final ListenableFuture<T> existing = (ListenableFuture<T>) reads.putIfAbsent(key, result);
+        if (existing != null) {
+            return existing;
+        }
+        Futures.addCallback(read.get(), new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.setException(t);
+            }
+        });
+        return result;
+    }
+
+    private static final class DataAndStat {
+        private final byte[] data;
+        private final Stat stat;
+
+        DataAndStat(byte[] data, Stat stat) {
+            this.data = data;
+            this.stat = stat;
+        }
+    }
+
+}
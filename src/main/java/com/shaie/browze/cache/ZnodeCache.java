@@ -0,0 +1,541 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.cache;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.shaie.browze.zk.AsyncZnodeReader;
+import com.shaie.browze.zk.PipelinedStatFetcher;
+import com.shaie.browze.zk.ZkMetrics;
+import com.shaie.browze.zk.ZnodeReader;
+
+/**
+ * A {@link ZnodeReader} which keeps recently browsed znodes in memory. Every read which misses the cache registers a
+ * watch on the node, and the entry is invalidated when the watch fires, so a cached entry always reflects the node's
+ * latest state as far as ZooKeeper reported it. Entries are evicted in LRU order once the configured size is
+ * exceeded.
+ * <p>
+ * Child stats are cached with an exists watch, which does not fire when the child's own children change. Such changes
+ * are picked up when the child itself is browsed, or once the entry expires.
+ * <p>
+ * A watch is only set on a path which does not have one outstanding already, rather than on every load. Otherwise,
+ * whether reloading an unchanged node, e.g. after its entry expired or was evicted, adds another copy of its watch
+ * would depend on whether Curator reuses the object it wraps the watcher in, and every copy would invalidate the node
+ * again once it changes.
+ */
+public class ZnodeCache implements ZnodeReader, AsyncZnodeReader, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZnodeCache.class);
+
+    private static final int NUM_EPOCH_STRIPES = 64;
+
+    private final CuratorFramework curatorFramework;
+    private final PipelinedStatFetcher statFetcher;
+    private final ZkMetrics metrics;
+
+    /** Holds the data, stat and children of browsed nodes. */
+    private final Cache<String, CachedZnode> nodes;
+
+    /** Holds the stats of nodes, usually the children of browsed nodes. */
+    private final Cache<String, Stat> stats;
+
+    /**
+     * Bumped whenever a watch fires on a path which hashes to the stripe. A load only stores its result if no watch
+     * fired on its stripe while it was reading, since otherwise it may store a value which is already stale.
+     */
+    private final AtomicLongArray epochs = new AtomicLongArray(NUM_EPOCH_STRIPES);
+
+    /** The paths which have an outstanding data or exists watch. */
+    private final Set<String> dataWatches = Sets.newConcurrentHashSet();
+
+    /** The paths which have an outstanding child watch. */
+    private final Set<String> childWatches = Sets.newConcurrentHashSet();
+
+    private final CuratorWatcher watcher = new CuratorWatcher() {
+        @Override
+        public void process(WatchedEvent event) throws Exception {
+            final String path = event.getPath();
+            if (path == null) {
+                return;
+            }
+            // the watch is gone once it fired, so the next read of the path must set it again
+            if (event.getType() == EventType.NodeChildrenChanged) {
+                childWatches.remove(path);
+            } else {
+                dataWatches.remove(path);
+                if (event.getType() == EventType.NodeDeleted) {
+                    childWatches.remove(path);
+                }
+            }
+            invalidate(path);
+        }
+    };
+
+    private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+            // Watches do not survive a lost session, therefore nothing in the cache can be trusted anymore.
+            if (newState == ConnectionState.LOST || newState == ConnectionState.RECONNECTED) {
+                LOGGER.info("Connection state changed to [{}], invalidating all cached nodes", newState);
+                if (newState == ConnectionState.LOST) {
+                    dataWatches.clear();
+                    childWatches.clear();
+                }
+                invalidateAll();
+            }
+        }
+    };
+
+    public ZnodeCache(CuratorFramework curatorFramework, PipelinedStatFetcher statFetcher, ZkMetrics metrics,
+            ZnodeCacheConfiguration config) {
+        this.curatorFramework = curatorFramework;
+        this.statFetcher = statFetcher;
+        this.metrics = metrics;
+        final long expireAfterWriteMs = config.getExpireAfterWrite().toMilliseconds();
+        this.nodes = CacheBuilder.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(expireAfterWriteMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.stats = CacheBuilder.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(expireAfterWriteMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        curatorFramework.getConnectionStateListenable().addListener(connectionStateListener);
+    }
+
+    @Override
+    public byte[] getData(String path, Stat stat) throws Exception {
+        final CachedZnode node = getNode(path);
+        copyStat(node.stat, stat);
+        return node.data;
+    }
+
+    @Override
+    public List<String> getChildren(String path) throws Exception {
+        return getNode(path).children;
+    }
+
+    @Override
+    public Stat checkExists(String path) throws Exception {
+        // Don't count a lookup in the nodes cache as a miss, since the node may only ever be seen as a child.
+        final CachedZnode node = nodes.asMap().get(path);
+        if (node != null) {
+            return node.stat;
+        }
+        final Stat stat = stats.getIfPresent(path);
+        return stat != null ? stat : loadStat(path);
+    }
+
+    @Override
+    public Map<String, Stat> getChildStats(String parent, List<String> children) throws Exception {
+        final Map<String, Stat> result = Maps.newHashMapWithExpectedSize(children.size());
+        final List<String> missing = Lists.newArrayList();
+        for (final String child : children) {
+            final Stat stat = stats.getIfPresent(ZKPaths.makePath(parent, child));
+            if (stat != null) {
+                result.put(child, stat);
+            } else {
+                missing.add(child);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        final long[] epochsBefore = new long[NUM_EPOCH_STRIPES];
+        for (int i = 0; i < NUM_EPOCH_STRIPES; i++) {
+            epochsBefore[i] = epochs.get(i);
+        }
+        final List<String> unwatched = Lists.newArrayList();
+        final List<String> watched = Lists.newArrayList();
+        splitByWatch(parent, missing, unwatched, watched);
+        final Map<String, Stat> fetched = Maps.newHashMapWithExpectedSize(missing.size());
+        if (!unwatched.isEmpty()) {
+            try {
+                fetched.putAll(statFetcher.fetch(curatorFramework, parent, unwatched, watcher));
+            } catch (final Exception e) {
+                unwatchChildren(parent, unwatched);
+                throw e;
+            }
+        }
+        if (!watched.isEmpty()) {
+            fetched.putAll(statFetcher.fetch(curatorFramework, parent, watched, null));
+        }
+        for (final Map.Entry<String, Stat> entry : fetched.entrySet()) {
+            final String childPath = ZKPaths.makePath(parent, entry.getKey());
+            final int stripe = stripe(childPath);
+            if (epochs.get(stripe) == epochsBefore[stripe]) {
+                stats.put(childPath, entry.getValue());
+            }
+        }
+        result.putAll(fetched);
+        return result;
+    }
+
+    @Override
+    public ListenableFuture<byte[]> getDataAsync(String path, final Stat stat) {
+        return Futures.transform(getNodeAsync(path), new Function<CachedZnode, byte[]>() {
+            @Override
+            public byte[] apply(CachedZnode node) {
+                copyStat(node.stat, stat);
+                return node.data;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<String>> getChildrenAsync(String path) {
+        return Futures.transform(getNodeAsync(path), new Function<CachedZnode, List<String>>() {
+            @Override
+            public List<String> apply(CachedZnode node) {
+                return node.children;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Stat> checkExistsAsync(final String path) {
+        final CachedZnode node = nodes.asMap().get(path);
+        if (node != null) {
+            return Futures.immediateFuture(node.stat);
+        }
+        final Stat stat = stats.getIfPresent(path);
+        if (stat != null) {
+            return Futures.immediateFuture(stat);
+        }
+
+        final int stripe = stripe(path);
+        final long epoch = epochs.get(stripe);
+        final CuratorWatcher existsWatcher = watch(dataWatches, path);
+        return Futures.transform(
+                unwatchOnFailure(metrics.checkExistsAsync(curatorFramework, path, existsWatcher), existsWatcher,
+                        dataWatches, path),
+                new Function<Stat, Stat>() {
+                    @Override
+                    public Stat apply(Stat loaded) {
+                        if (loaded != null && epochs.get(stripe) == epoch) {
+                            stats.put(path, loaded);
+                        }
+                        return loaded;
+                    }
+                });
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Stat>> getChildStatsAsync(final String parent, List<String> children) {
+        final Map<String, Stat> result = Maps.newHashMapWithExpectedSize(children.size());
+        final List<String> missing = Lists.newArrayList();
+        for (final String child : children) {
+            final Stat stat = stats.getIfPresent(ZKPaths.makePath(parent, child));
+            if (stat != null) {
+                result.put(child, stat);
+            } else {
+                missing.add(child);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Futures.immediateFuture(result);
+        }
+
+        final long[] epochsBefore = new long[NUM_EPOCH_STRIPES];
+        for (int i = 0; i < NUM_EPOCH_STRIPES; i++) {
+            epochsBefore[i] = epochs.get(i);
+        }
+        final List<String> unwatched = Lists.newArrayList();
+        final List<String> watched = Lists.newArrayList();
+        splitByWatch(parent, missing, unwatched, watched);
+        final List<ListenableFuture<Map<String, Stat>>> fetches = Lists.newArrayListWithCapacity(2);
+        if (!unwatched.isEmpty()) {
+            final ListenableFuture<Map<String, Stat>> fetch = statFetcher.fetchAsync(curatorFramework, parent,
+                    unwatched, watcher);
+            Futures.addCallback(fetch, new FutureCallback<Map<String, Stat>>() {
+                @Override
+                public void onSuccess(Map<String, Stat> fetched) {
+                    // the watches are set
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    unwatchChildren(parent, unwatched);
+                }
+            });
+            fetches.add(fetch);
+        }
+        if (!watched.isEmpty()) {
+            fetches.add(statFetcher.fetchAsync(curatorFramework, parent, watched, null));
+        }
+        return Futures.transform(Futures.allAsList(fetches),
+                new Function<List<Map<String, Stat>>, Map<String, Stat>>() {
+                    @Override
+                    public Map<String, Stat> apply(List<Map<String, Stat>> results) {
+                        final Map<String, Stat> fetched = Maps.newHashMapWithExpectedSize(missing.size());
+                        for (final Map<String, Stat> childStats : results) {
+                            fetched.putAll(childStats);
+                        }
+                        for (final Map.Entry<String, Stat> entry : fetched.entrySet()) {
+                            final String childPath = ZKPaths.makePath(parent, entry.getKey());
+                            final int stripe = stripe(childPath);
+                            if (epochs.get(stripe) == epochsBefore[stripe]) {
+                                stats.put(childPath, entry.getValue());
+                            }
+                        }
+                        result.putAll(fetched);
+                        return result;
+                    }
+                });
+    }
+
+    /** Returns the statistics of the nodes cache. */
+    public CacheStats getNodeCacheStats() {
+        return nodes.stats();
+    }
+
+    /** Returns the statistics of the stats cache. */
+    public CacheStats getStatCacheStats() {
+        return stats.stats();
+    }
+
+    public long getNodeCacheSize() {
+        return nodes.size();
+    }
+
+    public long getStatCacheSize() {
+        return stats.size();
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < NUM_EPOCH_STRIPES; i++) {
+            epochs.incrementAndGet(i);
+        }
+        nodes.invalidateAll();
+        stats.invalidateAll();
+    }
+
+    @Override
+    public void close() {
+        curatorFramework.getConnectionStateListenable().removeListener(connectionStateListener);
+        invalidateAll();
+    }
+
+    private CachedZnode getNode(String path) throws Exception {
+        final CachedZnode node = nodes.getIfPresent(path);
+        return node != null ? node : loadNode(path);
+    }
+
+    private ListenableFuture<CachedZnode> getNodeAsync(String path) {
+        final CachedZnode node = nodes.getIfPresent(path);
+        return node != null ? Futures.immediateFuture(node) : loadNodeAsync(path);
+    }
+
+    private CachedZnode loadNode(String path) throws Exception {
+        final int stripe = stripe(path);
+        final long epoch = epochs.get(stripe);
+        final Stat stat = new Stat();
+        final CuratorWatcher dataWatcher = watch(dataWatches, path);
+        final byte[] data;
+        try {
+            data = metrics.getData(curatorFramework, path, stat, dataWatcher);
+        } catch (final Exception e) {
+            unwatch(dataWatcher, dataWatches, path);
+            throw e;
+        }
+        // Always list the children, even if there are none, so that a child watch is registered.
+        final CuratorWatcher childWatcher = watch(childWatches, path);
+        final List<String> children;
+        try {
+            children = metrics.getChildren(curatorFramework, path, childWatcher);
+        } catch (final Exception e) {
+            unwatch(childWatcher, childWatches, path);
+            throw e;
+        }
+        final CachedZnode node = new CachedZnode(data, stat, ImmutableList.copyOf(children));
+        if (epochs.get(stripe) == epoch) {
+            nodes.put(path, node);
+        }
+        return node;
+    }
+
+    /** Loads the node like {@link #loadNode} does, but reads its data and children concurrently. */
+    private ListenableFuture<CachedZnode> loadNodeAsync(final String path) {
+        final int stripe = stripe(path);
+        final long epoch = epochs.get(stripe);
+        final Stat stat = new Stat();
+        final CuratorWatcher dataWatcher = watch(dataWatches, path);
+        final ListenableFuture<byte[]> data = unwatchOnFailure(
+                metrics.getDataAsync(curatorFramework, path, stat, dataWatcher), dataWatcher, dataWatches, path);
+        final CuratorWatcher childWatcher = watch(childWatches, path);
+        final ListenableFuture<List<String>> children = unwatchOnFailure(
+                metrics.getChildrenAsync(curatorFramework, path, childWatcher), childWatcher, childWatches, path);
+        return Futures.transform(data, new AsyncFunction<byte[], CachedZnode>() {
+            @Override
+            public ListenableFuture<CachedZnode> apply(final byte[] nodeData) {
+                return Futures.transform(children, new Function<List<String>, CachedZnode>() {
+                    @Override
+                    public CachedZnode apply(List<String> nodeChildren) {
+                        final CachedZnode node = new CachedZnode(nodeData, stat, ImmutableList.copyOf(nodeChildren));
+                        if (epochs.get(stripe) == epoch) {
+                            nodes.put(path, node);
+                        }
+                        return node;
+                    }
+                });
+            }
+        });
+    }
+
+    private Stat loadStat(String path) throws Exception {
+        final int stripe = stripe(path);
+        final long epoch = epochs.get(stripe);
+        final CuratorWatcher existsWatcher = watch(dataWatches, path);
+        final Stat stat;
+        try {
+            stat = metrics.checkExists(curatorFramework, path, existsWatcher);
+        } catch (final Exception e) {
+            unwatch(existsWatcher, dataWatches, path);
+            throw e;
+        }
+        if (stat != null && epochs.get(stripe) == epoch) {
+            stats.put(path, stat);
+        }
+        return stat;
+    }
+
+    /**
+     * Returns the watcher to set on a read of the path, or {@code null} if the path has such a watch outstanding
+     * already. The epoch of a load must be read before, so that a watch which fires in between discards the load.
+     */
+    private CuratorWatcher watch(Set<String> watches, String path) {
+        return watches.add(path) ? watcher : null;
+    }
+
+    /**
+     * Forgets the watch which a failed read may not have set, if it was to set one. Reads which relied on that watch
+     * meanwhile may have loaded entries which nothing would invalidate, so the path is invalidated as well.
+     */
+    private void unwatch(CuratorWatcher readWatcher, Set<String> watches, String path) {
+        if (readWatcher != null && watches.remove(path)) {
+            invalidate(path);
+        }
+    }
+
+    /** Calls {@link #unwatch} if the read fails. An {@code exists} of a missing node succeeds, and sets its watch. */
+    private <T> ListenableFuture<T> unwatchOnFailure(ListenableFuture<T> read, final CuratorWatcher readWatcher,
+            final Set<String> watches, final String path) {
+        if (readWatcher != null) {
+            Futures.addCallback(read, new FutureCallback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    // the watch is set
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    unwatch(readWatcher, watches, path);
+                }
+            });
+        }
+        return read;
+    }
+
+    /**
+     * Adds the children which need an exists watch to {@code unwatched}, marking them as watched, and the rest to
+     * {@code watched}.
+     */
+    private void splitByWatch(String parent, List<String> children, List<String> unwatched, List<String> watched) {
+        for (final String child : children) {
+            if (dataWatches.add(ZKPaths.makePath(parent, child))) {
+                unwatched.add(child);
+            } else {
+                watched.add(child);
+            }
+        }
+    }
+
+    /** Forgets the watches which a failed fetch of the stats of the given children may not have set. */
+    private void unwatchChildren(String parent, List<String> children) {
+        for (final String child : children) {
+            unwatch(watcher, dataWatches, ZKPaths.makePath(parent, child));
+        }
+    }
+
+    private void invalidate(String path) {
+        epochs.incrementAndGet(stripe(path));
+        nodes.invalidate(path);
+        stats.invalidate(path);
+    }
+
+    private static int stripe(String path) {
+        return (path.hashCode() & Integer.MAX_VALUE) % NUM_EPOCH_STRIPES;
+    }
+
+    private static void copyStat(Stat from, Stat to) {
+        to.setCzxid(from.getCzxid());
+        to.setMzxid(from.getMzxid());
+        to.setCtime(from.getCtime());
+        to.setMtime(from.getMtime());
+        to.setVersion(from.getVersion());
+        to.setCversion(from.getCversion());
+        to.setAversion(from.getAversion());
+        to.setEphemeralOwner(from.getEphemeralOwner());
+        to.setDataLength(from.getDataLength());
+        to.setNumChildren(from.getNumChildren());
+        to.setPzxid(from.getPzxid());
+    }
+
+    private static final class CachedZnode {
+        final byte[] data;
+        final Stat stat;
+        final List<String> children;
+
+        CachedZnode(byte[] data, Stat stat, List<String> children) {
+            this.data = data;
+            this.stat = stat;
+            this.children = children;
+        }
+    }
+
+}
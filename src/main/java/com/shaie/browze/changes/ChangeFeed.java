@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.changes;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.shaie.browze.model.ChangeEvent;
+
+/**
+ * The changes of a single subtree, shared by all its subscribers. The subtree is watched by a {@link TreeCache},
+ * which re-registers a node's watches whenever they fire. Changes are collected for the configured batch window,
+ * starting with the first change, and the coalesced batch is then queued for every subscriber.
+ */
+final class ChangeFeed implements Closeable {
+
+    /** The pending change of a single node: whether it existed before the batch, and whether it exists now. */
+    private static final class PendingChange {
+
+        private final boolean existed;
+        private boolean exists;
+        private Stat stat;
+
+        PendingChange(boolean existed) {
+            this.existed = existed;
+        }
+
+        ChangeEvent toEvent(String path) {
+            if (!existed) {
+                return exists ? new ChangeEvent(ChangeEvent.CREATED, path, stat) : null;
+            }
+            return exists
+                    ? new ChangeEvent(ChangeEvent.CHANGED, path, stat)
+                    : new ChangeEvent(ChangeEvent.DELETED, path, null);
+        }
+
+    }
+
+    private final ChangeFeeds feeds;
+    private final String key;
+    private final String path;
+    private final int maxDepth;
+    private final ChangeFeedConfiguration config;
+    private final ScheduledExecutorService scheduler;
+    private final TreeCache treeCache;
+
+    // guarded by this
+    private final List<ChangeSubscription> subscribers = Lists.newArrayList();
+    private final Map<String, PendingChange> pending = Maps.newTreeMap();
+    private boolean initialized = false;
+    private boolean closed = false;
+    private long nextBatchId = 1;
+
+    private final Runnable flusher = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final TreeCacheListener listener = new TreeCacheListener() {
+        @Override
+        public void childEvent(CuratorFramework client, TreeCacheEvent event) throws Exception {
+            switch (event.getType()) {
+                case NODE_ADDED:
+                    record(event.getData().getPath(), false, true, event.getData().getStat());
+                    break;
+                case NODE_UPDATED:
+                    record(event.getData().getPath(), true, true, event.getData().getStat());
+                    break;
+                case NODE_REMOVED:
+                    record(event.getData().getPath(), true, false, null);
+                    break;
+                case INITIALIZED:
+                    ready();
+                    break;
+                case CONNECTION_SUSPENDED:
+                case CONNECTION_LOST:
+                case CONNECTION_RECONNECTED:
+                    // once reconnected, the tree cache refreshes the subtree and reports what changed meanwhile
+                    connectionChanged(event.getType());
+                    break;
+                default:
+                    break;
+            }
+        }
+    };
+
+    ChangeFeed(ChangeFeeds feeds, String key, CuratorFramework curatorFramework, String path, int maxDepth,
+            ChangeFeedConfiguration config, ScheduledExecutorService scheduler) {
+        this.feeds = feeds;
+        this.key = key;
+        this.path = path;
+        this.maxDepth = maxDepth;
+        this.config = config;
+        this.scheduler = scheduler;
+        this.treeCache = TreeCache.newBuilder(curatorFramework, path)
+                .setCacheData(false)
+                .setMaxDepth(maxDepth)
+                .setExecutor(new ThreadFactoryBuilder().setNameFormat("change-feed-%d").setDaemon(true).build())
+                .build();
+        treeCache.getListenable().addListener(listener);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    void start() throws Exception {
+        treeCache.start();
+    }
+
+    synchronized ChangeSubscription subscribe() {
+        final ChangeSubscription subscription = new ChangeSubscription(feeds, this, config.getMaxQueuedBatches());
+        subscribers.add(subscription);
+        if (initialized) {
+            subscription.offer(readyMessage());
+        }
+        return subscription;
+    }
+
+    /** Removes the subscriber and returns whether the feed has no more subscribers. */
+    synchronized boolean unsubscribe(ChangeSubscription subscription) {
+        subscribers.remove(subscription);
+        return subscribers.isEmpty();
+    }
+
+    /** Removes the feed's watches and sends a final {@link ChangeSubscription#CLOSED} to its subscribers. */
+    @Override
+    public void close() {
+        treeCache.close();
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+            broadcast(ChangeSubscription.CLOSED);
+            subscribers.clear();
+        }
+    }
+
+    /**
+     * Records a change of the node, coalescing it with the node's pending change if it has one. {@code existed} tells
+     * whether the node existed before this change, which only matters for the first change of the batch.
+     */
+    private synchronized void record(String nodePath, boolean existed, boolean exists, Stat stat) {
+        if (!initialized || closed) {
+            // the initial read of the subtree, which subscribers read by themselves
+            return;
+        }
+        PendingChange change = pending.get(nodePath);
+        if (change == null) {
+            change = new PendingChange(existed);
+            pending.put(nodePath, change);
+            if (pending.size() == 1) {
+                scheduler.schedule(flusher, config.getBatchWindow().toMilliseconds(), TimeUnit.MILLISECONDS);
+            }
+        }
+        change.exists = exists;
+        change.stat = stat;
+    }
+
+    private synchronized void flush() {
+        if (pending.isEmpty() || closed) {
+            return;
+        }
+        final List<ChangeEvent> changes = Lists.newArrayListWithCapacity(pending.size());
+        for (final Map.Entry<String, PendingChange> entry : pending.entrySet()) {
+            final ChangeEvent event = entry.getValue().toEvent(entry.getKey());
+            if (event != null) {
+                changes.add(event);
+            }
+        }
+        pending.clear();
+        if (!changes.isEmpty()) {
+            broadcast(new ChangeSubscription.Message("changes", nextBatchId++, changes));
+        }
+    }
+
+    private synchronized void ready() {
+        initialized = true;
+        broadcast(readyMessage());
+    }
+
+    private synchronized void connectionChanged(TreeCacheEvent.Type type) {
+        if (!initialized || closed) {
+            return;
+        }
+        // report the changes so far before the connection state, so that they are not mistaken for later changes
+        flush();
+        broadcast(new ChangeSubscription.Message("connection", 0,
+                ImmutableMap.of("state", type.name().substring("CONNECTION_".length()).toLowerCase(Locale.ROOT))));
+    }
+
+    private ChangeSubscription.Message readyMessage() {
+        return new ChangeSubscription.Message("ready", 0,
+                ImmutableMap.of("path", path, "depth", maxDepth));
+    }
+
+    private void broadcast(ChangeSubscription.Message message) {
+        for (final ChangeSubscription subscriber : subscribers) {
+            subscriber.offer(message);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.changes;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/** Configures the {@link ChangeFeeds change feeds}. */
+public class ChangeFeedConfiguration {
+
+    /** Changes are collected for this long and sent to subscribers as a single, coalesced batch. */
+    @NotNull
+    @JsonProperty
+    private Duration batchWindow = Duration.milliseconds(250);
+
+    /**
+     * The number of batches which may be queued for a single subscriber. A subscriber which falls further behind has
+     * its queue dropped and is sent a {@code reset} event instead, so that it re-reads the subtree.
+     */
+    @Min(1)
+    @JsonProperty
+    private int maxQueuedBatches = 64;
+
+    /** A heartbeat event is sent to idle subscribers at this interval, which also detects clients that went away. */
+    @NotNull
+    @JsonProperty
+    private Duration heartbeatInterval = Duration.seconds(15);
+
+    public Duration getBatchWindow() {
+        return batchWindow;
+    }
+
+    public void setBatchWindow(Duration batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    public int getMaxQueuedBatches() {
+        return maxQueuedBatches;
+    }
+
+    public void setMaxQueuedBatches(int maxQueuedBatches) {
+        this.maxQueuedBatches = maxQueuedBatches;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(Duration heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("batchWindow", batchWindow)
+                .append("maxQueuedBatches", maxQueuedBatches)
+                .append("heartbeatInterval", heartbeatInterval)
+                .build();
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.changes;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The change feeds of a single session. A feed watches a subtree, up to an optional depth, and is shared by all the
+ * subscribers of that subtree and depth, so that any number of subscribers cost ZooKeeper a single set of watches. A
+ * feed is opened by its first subscriber and closed, removing its watches, once its last subscriber is gone.
+ * <p>
+ * ZooKeeper's watches are one-shot, so a feed re-registers them whenever they fire. Changes which happen while
+ * reconnecting are still reported, since the feed refreshes the subtree once the session reconnects.
+ */
+public class ChangeFeeds implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeeds.class);
+
+    private final CuratorFramework curatorFramework;
+    private final ChangeFeedConfiguration config;
+
+    /** Flushes the batches of all feeds. Its thread is created on first use. */
+    private final ScheduledExecutorService scheduler;
+
+    /** Runs the {@link ChangeStream streams} to the subscribers, one thread each. */
+    private final ExecutorService streams;
+
+    // guarded by this
+    private final Map<String, ChangeFeed> feeds = Maps.newHashMap();
+    private boolean closed = false;
+
+    public ChangeFeeds(CuratorFramework curatorFramework, ChangeFeedConfiguration config) {
+        this.curatorFramework = curatorFramework;
+        this.config = config;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("change-feed-flusher-%d").setDaemon(true).build());
+        this.streams = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("change-stream-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Subscribes to the changes of the subtree rooted at {@code path}, up to {@code maxDepth} levels below it, or
+     * all levels if {@code maxDepth} is negative. The subscription must be {@link ChangeSubscription#close() closed}
+     * when done.
+     */
+    public synchronized ChangeSubscription subscribe(String path, int maxDepth) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("The session was closed");
+        }
+        final int depth = maxDepth < 0 ? Integer.MAX_VALUE : maxDepth;
+        final String key = path + "#" + depth;
+        ChangeFeed feed = feeds.get(key);
+        if (feed == null) {
+            LOGGER.info("Opening change feed of [{}] up to depth [{}]", path, depth);
+            feed = new ChangeFeed(this, key, curatorFramework, path, depth, config, scheduler);
+            feed.start();
+            feeds.put(key, feed);
+        }
+        return feed.subscribe();
+    }
+
+    /**
+     * Streams the subscription to the client as server-sent events, until the client goes away or the feed is closed.
+     * The subscription is then closed and {@code onClose} is run. The {@code name} of the stream is only logged.
+     */
+    public void stream(ChangeSubscription subscription, EventOutput output, String name, Runnable onClose) {
+        try {
+            streams.execute(new ChangeStream(subscription, output, name,
+                    config.getHeartbeatInterval().toMilliseconds(), onClose));
+        } catch (@SuppressWarnings("unused") final RejectedExecutionException e) {
+            subscription.close();
+            throw new IllegalStateException("The session was closed");
+        }
+    }
+
+    /** Closes all feeds, ending all their subscriptions. */
+    @Override
+    public void close() {
+        final ImmutableList<ChangeFeed> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = ImmutableList.copyOf(feeds.values());
+            feeds.clear();
+        }
+        for (final ChangeFeed feed : toClose) {
+            feed.close();
+        }
+        scheduler.shutdownNow();
+        // the streams end by themselves once they sent the feeds' final message
+        streams.shutdown();
+    }
+
+    synchronized void unsubscribe(ChangeFeed feed, ChangeSubscription subscription) {
+        if (feed.unsubscribe(subscription) && feeds.remove(feed.getKey(), feed)) {
+            LOGGER.info("Closing change feed [{}], which has no more subscribers", feed.getKey());
+            feed.close();
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.changes;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Streams a {@link ChangeSubscription} to a client as server-sent events. Each stream runs on a thread of its own and
+ * drains only its own subscription, so a client which reads slowly holds up nobody but itself. The subscription is
+ * closed once the client goes away, which is noticed at the latest by the next heartbeat.
+ */
+final class ChangeStream implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeStream.class);
+
+    /** Sent to idle clients. A comment would do, but Jersey cannot write events without data. */
+    private static final OutboundEvent HEARTBEAT = new OutboundEvent.Builder()
+            .name("heartbeat")
+            .mediaType(MediaType.APPLICATION_JSON_TYPE)
+            .data(Object.class, ImmutableMap.of())
+            .build();
+
+    private final ChangeSubscription subscription;
+    private final EventOutput output;
+    private final String name;
+    private final long heartbeatMs;
+    private final Runnable onClose;
+
+    ChangeStream(ChangeSubscription subscription, EventOutput output, String name, long heartbeatMs,
+            Runnable onClose) {
+        this.subscription = subscription;
+        this.output = output;
+        this.name = name;
+        this.heartbeatMs = heartbeatMs;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public void run() {
+        try {
+            // sent right away, so that the client receives the response before the first change
+            output.write(HEARTBEAT);
+            while (true) {
+                final ChangeSubscription.Message message = subscription.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                output.write(message == null ? HEARTBEAT : toEvent(message));
+                if (message == ChangeSubscription.CLOSED) {
+                    return;
+                }
+            }
+        } catch (@SuppressWarnings("unused") final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final IOException e) {
+            // the client went away
+            LOGGER.debug("Failed to write to change stream [{}]", name, e);
+        } finally {
+            subscription.close();
+            try {
+                output.close();
+            } catch (final IOException e) {
+                LOGGER.debug("Failed to close change stream [{}]", name, e);
+            }
+            onClose.run();
+        }
+    }
+
+    private static OutboundEvent toEvent(ChangeSubscription.Message message) {
+        final OutboundEvent.Builder builder = new OutboundEvent.Builder()
+                .name(message.getEvent())
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(Object.class, message.getData() == null ? ImmutableMap.of() : message.getData());
+        if (message.getId() > 0) {
+            builder.id(Long.toString(message.getId()));
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.changes;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * A single subscriber of a {@link ChangeFeeds change feed}. Messages are queued for the subscriber without ever
+ * blocking the feed, and the subscriber drains its queue at its own pace. The first message is a {@code ready} event,
+ * sent once the subtree was read, from which point on all its changes are sent. If the subscriber falls too far
+ * behind, its queued messages are replaced by a single {@link #RESET} message.
+ */
+public class ChangeSubscription implements Closeable {
+
+    /** A message to the subscriber, which is sent as a server-sent event. */
+    public static final class Message {
+
+        private final String event;
+        private final long id;
+        private final Object data;
+
+        Message(String event, long id, Object data) {
+            this.event = event;
+            this.id = id;
+            this.data = data;
+        }
+
+        /** Returns the name of the event. */
+        public String getEvent() {
+            return event;
+        }
+
+        /** Returns the id of the event, or {@code 0} if it has none. */
+        public long getId() {
+            return id;
+        }
+
+        /** Returns the payload of the event, or {@code null} if it has none. */
+        public Object getData() {
+            return data;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("event", event)
+                    .append("id", id)
+                    .build();
+        }
+
+    }
+
+    /** Sent instead of the changes which were dropped because the subscriber fell behind. */
+    public static final Message RESET = new Message("reset", 0, null);
+
+    /** The last message of a feed which was closed, e.g. because its session was closed. */
+    public static final Message CLOSED = new Message("closed", 0, null);
+
+    private final ChangeFeeds feeds;
+    private final ChangeFeed feed;
+    private final int maxQueuedMessages;
+    private final BlockingQueue<Message> queue;
+
+    ChangeSubscription(ChangeFeeds feeds, ChangeFeed feed, int maxQueuedMessages) {
+        this.feeds = feeds;
+        this.feed = feed;
+        this.maxQueuedMessages = maxQueuedMessages;
+        // room for the final CLOSED message
+        this.queue = new ArrayBlockingQueue<>(maxQueuedMessages + 1);
+    }
+
+    /** Returns the next message, waiting up to the given time for one, or {@code null} if there was none. */
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /** Cancels the subscription. The feed's watches are removed once it has no more subscribers. */
+    @Override
+    public void close() {
+        feeds.unsubscribe(feed, this);
+    }
+
+    /** Queues the message, replacing all queued messages with a {@link #RESET} if the queue is full. */
+    synchronized void offer(Message message) {
+        if (message == CLOSED) {
+            queue.offer(message);
+            return;
+        }
+        if (queue.size() >= maxQueuedMessages) {
+            queue.clear();
+            queue.offer(RESET);
+            return;
+        }
+        queue.offer(message);
+    }
+
+}
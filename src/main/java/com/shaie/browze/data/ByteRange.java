@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.data;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** A single byte range of an HTTP {@code Range} header, resolved against the length of the data. */
+public final class ByteRange {
+
+    private static final Pattern SINGLE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private final int first;
+    private final int last;
+    private final int length;
+
+    private ByteRange(int first, int last, int length) {
+        this.first = first;
+        this.last = last;
+        this.length = length;
+    }
+
+    /**
+     * Parses the header for data of the given length. Returns {@code null} if there is no header, or if it is not a
+     * single byte range, in which case it may be ignored and the entire data returned.
+     */
+    public static ByteRange parse(String header, int length) {
+        if (header == null) {
+            return null;
+        }
+        final Matcher matcher = SINGLE_RANGE.matcher(header.trim());
+        if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            return null;
+        }
+        try {
+            if (matcher.group(1).isEmpty()) {
+                // a suffix range, i.e. the last N bytes
+                final long suffixLength = Long.parseLong(matcher.group(2));
+                if (suffixLength == 0) {
+                    return new ByteRange(length, length - 1, length);
+                }
+                return new ByteRange((int) Math.max(0, length - suffixLength), length - 1, length);
+            }
+            final long first = Long.parseLong(matcher.group(1));
+            final long last = matcher.group(2).isEmpty() ? Long.MAX_VALUE : Long.parseLong(matcher.group(2));
+            if (last < first) {
+                // syntactically invalid, which must be ignored
+                return null;
+            }
+            return new ByteRange((int) Math.min(first, length), (int) Math.min(last, length - 1), length);
+        } catch (@SuppressWarnings("unused") final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Returns whether any byte of the data is in the range. */
+    public boolean isSatisfiable() {
+        return first < length && first <= last;
+    }
+
+    public int getOffset() {
+        return first;
+    }
+
+    public int getLength() {
+        return last - first + 1;
+    }
+
+    /** Returns the value of the {@code Content-Range} header of the response. */
+    public String toContentRange() {
+        if (!isSatisfiable()) {
+            return "bytes */" + length;
+        }
+        return String.format(Locale.ROOT, "bytes %d-%d/%d", first, last, length);
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Streams a range of a node's data, optionally decompressing it and encoding it as text. The data is written in
+ * chunks straight from its {@code byte[]}, so neither the data nor its encoding is ever copied as a whole.
+ */
+public class DataOutput implements StreamingOutput {
+
+    /** How the data is written. */
+    public enum Encoding {
+        RAW(null),
+        HEX(BaseEncoding.base16().lowerCase()),
+        BASE64(BaseEncoding.base64());
+
+        private final BaseEncoding baseEncoding;
+
+        private Encoding(BaseEncoding baseEncoding) {
+            this.baseEncoding = baseEncoding;
+        }
+    }
+
+    /** The size of the chunks which are encoded, a multiple of 3 so that base64 chunks are not padded. */
+    private static final int CHUNK_SIZE = 3 * 4096;
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+    private final Encoding encoding;
+    private final boolean gunzip;
+
+    public DataOutput(byte[] data, int offset, int length, Encoding encoding, boolean gunzip) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.encoding = encoding;
+        this.gunzip = gunzip;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException, WebApplicationException {
+        final InputStream in = gunzip
+                ? DataPreviews.gunzip(data)
+                : new ByteArrayInputStream(data, offset, length);
+        if (encoding == Encoding.RAW) {
+            if (gunzip) {
+                ByteStreams.copy(in, out);
+            } else {
+                out.write(data, offset, length);
+            }
+            return;
+        }
+
+        final byte[] chunk = new byte[CHUNK_SIZE];
+        int numRead;
+        while ((numRead = ByteStreams.read(in, chunk, 0, chunk.length)) > 0) {
+            out.write(encoding.baseEncoding.encode(chunk, 0, numRead).getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+}
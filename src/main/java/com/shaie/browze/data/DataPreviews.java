@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.shaie.browze.model.DataPreview;
+
+/**
+ * Creates bounded previews of node data. Only the leading bytes of the data are ever decoded, so a large value is
+ * never copied into a {@code String} as a whole. Gzipped data is previewed by its decompressed content.
+ */
+public final class DataPreviews {
+
+    private static final String APPLICATION_GZIP = "application/gzip";
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    /** The number of leading bytes of decompressed data which are sniffed to tell its media type. */
+    private static final int GZIP_SNIFF_SIZE = 8192;
+
+    private DataPreviews() {
+        // no instances
+    }
+
+    /** Returns a preview of at most {@code previewSize} bytes of the data, or {@code null} if there is no data. */
+    public static DataPreview create(byte[] data, int previewSize) {
+        if (data == null) {
+            return null;
+        }
+
+        byte[] content = data;
+        int length = Math.min(data.length, previewSize);
+        boolean complete = data.length <= previewSize;
+        boolean gzip = false;
+        if (DataType.isGzip(data)) {
+            try {
+                // read one more byte than needed to tell whether the content was read completely
+                final byte[] inflated = new byte[previewSize + 1];
+                final int numRead = ByteStreams.read(gunzip(data), inflated, 0, inflated.length);
+                content = inflated;
+                length = Math.min(numRead, previewSize);
+                complete = numRead <= previewSize;
+                gzip = true;
+            } catch (@SuppressWarnings("unused") final IOException e) {
+                // corrupt, or merely starts with the magic bytes; preview the data as is
+            }
+        }
+
+        final DataType type = DataType.sniff(content, length, complete);
+        if (type == DataType.BINARY) {
+            // hex doubles the size, so only encode half as many bytes
+            final int numBytes = Math.min(length, Math.max(1, previewSize / 2));
+            return new DataPreview(HEX.encode(content, 0, numBytes), type.getName(), gzip, "hex",
+                    !complete || numBytes < length);
+        }
+        final int textLength = complete ? length : DataType.utf8Boundary(content, length);
+        return new DataPreview(new String(content, 0, textLength, StandardCharsets.UTF_8), type.getName(), gzip,
+                "utf-8", !complete);
+    }
+
+    /** Returns the media type of the data, or of its decompressed content if {@code gunzip}. */
+    public static String mediaType(byte[] data, boolean gunzip) throws IOException {
+        if (!gunzip) {
+            return DataType.isGzip(data) ? APPLICATION_GZIP : DataType.sniff(data, data.length, true).getMediaType();
+        }
+        final byte[] inflated = new byte[GZIP_SNIFF_SIZE + 1];
+        final int numRead = ByteStreams.read(gunzip(data), inflated, 0, inflated.length);
+        return DataType.sniff(inflated, Math.min(numRead, GZIP_SNIFF_SIZE), numRead <= GZIP_SNIFF_SIZE)
+                .getMediaType();
+    }
+
+    static InputStream gunzip(byte[] data) throws IOException {
+        return new GZIPInputStream(new ByteArrayInputStream(data));
+    }
+
+}
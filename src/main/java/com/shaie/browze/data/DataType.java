@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import javax.ws.rs.core.MediaType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+/** The kind of content a znode holds, as sniffed from its leading bytes. */
+public enum DataType {
+
+    JSON(MediaType.APPLICATION_JSON),
+    TEXT(MediaType.TEXT_PLAIN + "; charset=UTF-8"),
+    BINARY(MediaType.APPLICATION_OCTET_STREAM);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** The number of leading bytes which are decoded to tell text from binary data. */
+    private static final int SNIFF_SIZE = 8192;
+
+    private final String mediaType;
+
+    private DataType(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /** Returns the name of the type as it appears in responses. */
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /** Returns whether the data starts with the gzip magic bytes. */
+    public static boolean isGzip(byte[] data) {
+        return data != null && data.length >= 2 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b;
+    }
+
+    /**
+     * Sniffs the type of the first {@code length} bytes of {@code data}. If {@code complete}, these are all the bytes
+     * of the content, and JSON is validated in full, otherwise it is only recognized by its leading character.
+     */
+    public static DataType sniff(byte[] data, int length, boolean complete) {
+        final int sniffLength = Math.min(length, SNIFF_SIZE);
+        if (!isUtf8Text(data, sniffLength, complete && sniffLength == length)) {
+            return BINARY;
+        }
+        final int first = firstNonWhitespace(data, sniffLength);
+        if (first == -1 || (data[first] != '{' && data[first] != '[')) {
+            return TEXT;
+        }
+        if (!complete) {
+            return JSON;
+        }
+        return isJson(data, length) ? JSON : TEXT;
+    }
+
+    /** Returns the number of leading bytes of {@code data} which end on a UTF-8 character boundary. */
+    static int utf8Boundary(byte[] data, int length) {
+        if (length >= data.length) {
+            return data.length;
+        }
+        int end = length;
+        // back off continuation bytes (10xxxxxx) of a character which is cut
+        while (end > 0 && end > length - 4 && (data[end] & 0xc0) == 0x80) {
+            --end;
+        }
+        return end;
+    }
+
+    private static boolean isUtf8Text(byte[] data, int length, boolean endOfInput) {
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        final CharBuffer chars = CharBuffer.allocate(length);
+        final CoderResult result = decoder.decode(ByteBuffer.wrap(data, 0, length), chars, endOfInput);
+        if (result.isError()) {
+            return false;
+        }
+        for (int i = 0; i < chars.position(); i++) {
+            final char c = chars.get(i);
+            if (Character.isISOControl(c) && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int firstNonWhitespace(byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(data[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isJson(byte[] data, int length) {
+        try (final JsonParser parser = JSON_FACTORY.createParser(data, 0, length)) {
+            while (parser.nextToken() != null) {
+                // only validating
+            }
+            return true;
+        } catch (@SuppressWarnings("unused") final IOException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.diff;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.shaie.browze.model.DiffRecord;
+import com.shaie.browze.zk.AsyncTreeWalk;
+import com.shaie.browze.zk.AsyncZnodeReader;
+
+/**
+ * Streams the differences between two subtrees as newline-delimited JSON, one {@link DiffRecord} per line. Either
+ * side may be read from a cluster, a snapshot image or a backup archive.
+ * <p>
+ * Both subtrees are walked at the same time by an {@link AsyncTreeWalk}, which keeps up to
+ * {@code maxInFlightRequests} pairs of nodes being compared. The children of a pair are listed on both sides, and the
+ * stats of the children of each side are read in a single batch. Data is only read when the stats cannot tell whether
+ * it is the same: when the data lengths differ, the data differs, and when both sides are the same node at the same
+ * path and its {@code mzxid} did not move, it does not. Likewise, the children of the same node whose {@code pzxid}
+ * and {@code cversion} did not move are only listed once. Subtrees which were added or removed are reported by their
+ * root alone, and are not descended into. Nodes which change on a live cluster while it is diffed may or may not be
+ * reflected, as in an export.
+ */
+public class SubtreeDiff implements StreamingOutput {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubtreeDiff.class);
+
+    private final AsyncZnodeReader left;
+    private final String leftRoot;
+    private final Stat leftRootStat;
+    private final AsyncZnodeReader right;
+    private final String rightRoot;
+    private final Stat rightRootStat;
+    private final ObjectMapper objectMapper;
+    private final AsyncTreeWalk<PendingPair, List<DiffRecord>> walk;
+
+    public SubtreeDiff(AsyncZnodeReader left, String leftRoot, Stat leftRootStat, AsyncZnodeReader right,
+            String rightRoot, Stat rightRootStat, ObjectMapper objectMapper, int maxInFlightRequests,
+            long timeoutMs) {
+        this.left = left;
+        this.leftRoot = leftRoot;
+        this.leftRootStat = leftRootStat;
+        this.right = right;
+        this.rightRoot = rightRoot;
+        this.rightRootStat = rightRootStat;
+        this.objectMapper = objectMapper;
+        this.walk = new AsyncTreeWalk<PendingPair, List<DiffRecord>>(maxInFlightRequests, timeoutMs,
+                "diffing [" + leftRoot + "] and [" + rightRoot + "]") {
+            @Override
+            protected ListenableFuture<List<DiffRecord>> read(PendingPair pair) {
+                return compare(pair);
+            }
+
+            @Override
+            protected List<DiffRecord> deleted(PendingPair pair) {
+                return ImmutableList.of();
+            }
+        };
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException, WebApplicationException {
+        final JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+
+        long numCompared = 0;
+        long numRecords = 0;
+        try {
+            walk.push(new PendingPair("/", leftRoot, leftRootStat, rightRoot, rightRootStat));
+            List<DiffRecord> records;
+            // Whenever nothing is left to write until the next comparison completes, push what we have to the client.
+            while ((records = walk.next(generator)) != null) {
+                ++numCompared;
+                for (final DiffRecord record : records) {
+                    generator.writeObject(record);
+                    generator.writeRaw('\n');
+                    ++numRecords;
+                }
+            }
+        } catch (final IOException e) {
+            // Most likely the client went away, there is no one left to report the error to.
+            LOGGER.info("Aborted diff of [{}] and [{}] after {} records: {}", leftRoot, rightRoot, numRecords,
+                    e.getMessage());
+            throw e;
+        } catch (final Exception e) {
+            LOGGER.warn("Failed to diff [{}] and [{}] after {} records", leftRoot, rightRoot, numRecords, e);
+            generator.writeObject(ImmutableMap.of("error", String.valueOf(e.getMessage())));
+            generator.writeRaw('\n');
+        }
+
+        generator.flush();
+        LOGGER.info("Diffed [{}] and [{}], {} differences in {} compared nodes", leftRoot, rightRoot, numRecords,
+                numCompared);
+    }
+
+    /** Compares the pair, and returns the records of its differences and those of its added or removed children. */
+    private ListenableFuture<List<DiffRecord>> compare(final PendingPair pair) {
+        return Futures.transform(compareData(pair), new AsyncFunction<Boolean, List<DiffRecord>>() {
+            @Override
+            public ListenableFuture<List<DiffRecord>> apply(Boolean dataChanged) {
+                return compareChildren(pair, dataChanged);
+            }
+        });
+    }
+
+    /** Returns whether the data of the pair differs, reading it only if the stats cannot tell. */
+    private ListenableFuture<Boolean> compareData(PendingPair pair) {
+        if (pair.leftStat.getDataLength() != pair.rightStat.getDataLength()) {
+            return Futures.immediateFuture(true);
+        }
+        if (pair.leftStat.getDataLength() == 0
+                || (pair.isSameNode() && pair.leftStat.getMzxid() == pair.rightStat.getMzxid()
+                        && pair.leftStat.getMtime() == pair.rightStat.getMtime())) {
+            return Futures.immediateFuture(false);
+        }
+        @SuppressWarnings("unchecked")
+        final ListenableFuture<List<byte[]>> data = Futures.allAsList(left.getDataAsync(pair.leftPath, new Stat()),
+                right.getDataAsync(pair.rightPath, new Stat()));
+        return Futures.transform(data, new Function<List<byte[]>, Boolean>() {
+            @Override
+            public Boolean apply(List<byte[]> data) {
+                return !Arrays.equals(data.get(0), data.get(1));
+            }
+        });
+    }
+
+    private ListenableFuture<List<DiffRecord>> compareChildren(final PendingPair pair, final boolean dataChanged) {
+        final List<DiffRecord> records = Lists.newArrayList();
+        if (dataChanged) {
+            records.add(new DiffRecord(pair.path, DiffRecord.CHANGED, pair.leftStat, pair.rightStat));
+        }
+        if (pair.leftStat.getNumChildren() == 0 && pair.rightStat.getNumChildren() == 0) {
+            return Futures.immediateFuture(records);
+        }
+
+        final ListenableFuture<List<String>> leftChildren = listChildren(left, pair.leftPath, pair.leftStat);
+        final ListenableFuture<List<String>> rightChildren;
+        if (pair.isSameNode() && pair.leftStat.getPzxid() == pair.rightStat.getPzxid()
+                && pair.leftStat.getCversion() == pair.rightStat.getCversion()) {
+            rightChildren = leftChildren;
+        } else {
+            rightChildren = listChildren(right, pair.rightPath, pair.rightStat);
+        }
+        final ListenableFuture<Map<String, Stat>> leftStats = childStats(left, pair.leftPath, leftChildren);
+        final ListenableFuture<Map<String, Stat>> rightStats = childStats(right, pair.rightPath, rightChildren);
+        @SuppressWarnings("unchecked")
+        final ListenableFuture<List<Object>> all = Futures.allAsList(leftChildren, rightChildren, leftStats,
+                rightStats);
+        return Futures.transform(all, new Function<List<Object>, List<DiffRecord>>() {
+            @Override
+            public List<DiffRecord> apply(List<Object> input) {
+                @SuppressWarnings("unchecked")
+                final Map<String, Stat> leftStats = (Map<String, Stat>) input.get(2);
+                @SuppressWarnings("unchecked")
+                final Map<String, Stat> rightStats = (Map<String, Stat>) input.get(3);
+                final List<String> names = Lists.newArrayList(leftStats.keySet());
+                for (final String name : rightStats.keySet()) {
+                    if (!leftStats.containsKey(name)) {
+                        names.add(name);
+                    }
+                }
+                Collections.sort(names);
+
+                // push the common children in reverse order, so that they are compared in name order
+                final List<PendingPair> pairs = Lists.newArrayList();
+                for (final String name : names) {
+                    final String path = ZKPaths.makePath(pair.path, name);
+                    final Stat leftStat = leftStats.get(name);
+                    final Stat rightStat = rightStats.get(name);
+                    if (rightStat == null) {
+                        records.add(new DiffRecord(path, DiffRecord.REMOVED, leftStat, null));
+                    } else if (leftStat == null) {
+                        records.add(new DiffRecord(path, DiffRecord.ADDED, null, rightStat));
+                    } else {
+                        pairs.add(new PendingPair(path, ZKPaths.makePath(pair.leftPath, name), leftStat,
+                                ZKPaths.makePath(pair.rightPath, name), rightStat));
+                    }
+                }
+                for (final PendingPair child : Lists.reverse(pairs)) {
+                    walk.push(child);
+                }
+                return records;
+            }
+        });
+    }
+
+    private static ListenableFuture<List<String>> listChildren(AsyncZnodeReader reader, String path, Stat stat) {
+        if (stat.getNumChildren() == 0) {
+            return Futures.<List<String>> immediateFuture(ImmutableList.<String> of());
+        }
+        return reader.getChildrenAsync(path);
+    }
+
+    private static ListenableFuture<Map<String, Stat>> childStats(final AsyncZnodeReader reader, final String path,
+            ListenableFuture<List<String>> children) {
+        return Futures.transform(children, new AsyncFunction<List<String>, Map<String, Stat>>() {
+            @Override
+            public ListenableFuture<Map<String, Stat>> apply(List<String> names) {
+                if (names.isEmpty()) {
+                    return Futures.<Map<String, Stat>> immediateFuture(ImmutableMap.<String, Stat> of());
+                }
+                return reader.getChildStatsAsync(path, names);
+            }
+        });
+    }
+
+    private static final class PendingPair {
+        /** The path of the pair relative to the roots, which is {@code /} for the roots themselves. */
+        final String path;
+        final String leftPath;
+        final Stat leftStat;
+        final String rightPath;
+        final Stat rightStat;
+
+        PendingPair(String path, String leftPath, Stat leftStat, String rightPath, Stat rightStat) {
+            this.path = path;
+            this.leftPath = leftPath;
+            this.leftStat = leftStat;
+            this.rightPath = rightPath;
+            this.rightStat = rightStat;
+        }
+
+        /**
+         * Returns whether both sides are the same node, at different points in time, so their zxids are comparable.
+         * Nodes of different ensembles, or different nodes which were created by the same transaction, may have the
+         * same {@code czxid}, so the path and the creation time must match as well.
+         */
+        boolean isSameNode() {
+            return leftPath.equals(rightPath) && leftStat.getCzxid() == rightStat.getCzxid()
+                    && leftStat.getCtime() == rightStat.getCtime();
+        }
+    }
+
+}
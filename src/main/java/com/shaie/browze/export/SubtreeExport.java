@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.shaie.browze.model.ExportRecord;
+import com.shaie.browze.zk.AsyncTreeWalk;
+import com.shaie.browze.zk.AsyncZnodeReader;
+
+/**
+ * Streams a subtree as newline-delimited JSON, one {@link ExportRecord} per line.
+ * <p>
+ * The subtree is walked by an {@link AsyncTreeWalk}, which keeps up to {@code maxInFlightRequests} background reads
+ * outstanding while the records which were already read are written out, so memory use is not bounded by the size of
+ * the subtree. Records are not strictly in depth-first order, but a node is always written before its children. If
+ * the export fails midway, a final {@code {"error": "..."}} line is written.
+ */
+public class SubtreeExport implements StreamingOutput {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubtreeExport.class);
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final AsyncZnodeReader reader;
+    private final ObjectMapper objectMapper;
+    private final String rootPath;
+    private final int maxDepth;
+    private final boolean gzip;
+    private final AsyncTreeWalk<PendingNode, ExportRecord> walk;
+
+    /**
+     * @param maxDepth the maximum depth of exported nodes relative to {@code rootPath}, or a negative value to export
+     *            the entire subtree.
+     */
+    public SubtreeExport(AsyncZnodeReader reader, ObjectMapper objectMapper, String rootPath, int maxDepth,
+            boolean gzip, int maxInFlightRequests, long timeoutMs) {
+        this.reader = reader;
+        this.objectMapper = objectMapper;
+        this.rootPath = rootPath;
+        this.maxDepth = maxDepth;
+        this.gzip = gzip;
+        this.walk = new AsyncTreeWalk<PendingNode, ExportRecord>(maxInFlightRequests, timeoutMs,
+                "exporting [" + rootPath + "]") {
+            @Override
+            protected ListenableFuture<ExportRecord> read(PendingNode node) {
+                return SubtreeExport.this.read(node);
+            }
+
+            @Override
+            protected ExportRecord deleted(PendingNode node) {
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        final OutputStream out = gzip ? new GZIPOutputStream(output, GZIP_BUFFER_SIZE) : output;
+        final JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+
+        long numRecords = 0;
+        try {
+            walk.push(new PendingNode(rootPath, 0));
+            ExportRecord record;
+            // Whenever nothing is left to write until the next read completes, push what we have to the client.
+            while ((record = walk.next(generator)) != null) {
+                generator.writeObject(record);
+                generator.writeRaw('\n');
+                ++numRecords;
+            }
+        } catch (final IOException e) {
+            // Most likely the client went away, there is no one left to report the error to.
+            LOGGER.info("Aborted export of [{}] after {} records: {}", rootPath, numRecords, e.getMessage());
+            throw e;
+        } catch (final Exception e) {
+            LOGGER.warn("Failed to export [{}] after {} records", rootPath, numRecords, e);
+            generator.writeObject(ImmutableMap.of("error", String.valueOf(e.getMessage())));
+            generator.writeRaw('\n');
+        }
+
+        generator.flush();
+        if (gzip) {
+            ((GZIPOutputStream) out).finish();
+        }
+        LOGGER.info("Exported {} records under [{}]", numRecords, rootPath);
+    }
+
+    private ListenableFuture<ExportRecord> read(final PendingNode node) {
+        final Stat stat = new Stat();
+        return Futures.transform(reader.getDataAsync(node.path, stat), new AsyncFunction<byte[], ExportRecord>() {
+            @Override
+            public ListenableFuture<ExportRecord> apply(byte[] data) {
+                final ExportRecord record = new ExportRecord(node.path, stat, data);
+                if (stat.getNumChildren() == 0 || (maxDepth >= 0 && node.depth >= maxDepth)) {
+                    return Futures.immediateFuture(record);
+                }
+                return Futures.transform(reader.getChildrenAsync(node.path),
+                        new AsyncFunction<List<String>, ExportRecord>() {
+                            @Override
+                            public ListenableFuture<ExportRecord> apply(List<String> names) {
+                                pushChildren(node, names);
+                                return Futures.immediateFuture(record);
+                            }
+                        });
+            }
+        });
+    }
+
+    private void pushChildren(PendingNode node, List<String> names) {
+        // push the children in reverse order, so that they are read in name order
+        final List<String> children = Lists.newArrayList(names);
+        Collections.sort(children, Collections.reverseOrder());
+        for (final String child : children) {
+            walk.push(new PendingNode(ZKPaths.makePath(node.path, child), node.depth + 1));
+        }
+    }
+
+    private static final class PendingNode {
+        final String path;
+        final int depth;
+
+        PendingNode(String path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+    }
+
+}
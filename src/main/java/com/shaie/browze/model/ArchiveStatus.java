@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ArchiveStatus {
+
+    @JsonProperty("name")
+    private final String name;
+
+    @JsonProperty("cluster")
+    private final String cluster;
+
+    @JsonProperty("path")
+    private final String path;
+
+    @JsonProperty("highWaterMark")
+    private final long highWaterMark;
+
+    @JsonProperty("created")
+    private final long created;
+
+    @JsonProperty("base")
+    private final String base;
+
+    @JsonProperty("nodes")
+    private final int nodes;
+
+    @JsonProperty("dataReads")
+    private final int dataReads;
+
+    @JsonProperty("childrenReads")
+    private final int childrenReads;
+
+    @JsonProperty("size")
+    private final long size;
+
+    public ArchiveStatus(String name, String cluster, String path, long highWaterMark, long created, String base,
+            int nodes, int dataReads, int childrenReads, long size) {
+        this.name = name;
+        this.cluster = cluster;
+        this.path = path;
+        this.highWaterMark = highWaterMark;
+        this.created = created;
+        this.base = base;
+        this.nodes = nodes;
+        this.dataReads = dataReads;
+        this.childrenReads = childrenReads;
+        this.size = size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCluster() {
+        return cluster;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public String getBase() {
+        return base;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getDataReads() {
+        return dataReads;
+    }
+
+    public int getChildrenReads() {
+        return childrenReads;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("name", name)
+                .append("cluster", cluster)
+                .append("path", path)
+                .append("highWaterMark", highWaterMark)
+                .append("created", created)
+                .append("base", base)
+                .append("nodes", nodes)
+                .append("dataReads", dataReads)
+                .append("childrenReads", childrenReads)
+                .append("size", size)
+                .build();
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The result of browsing one path of a batch: either the node, as browse would return it, or the status and message
+ * of the error which browse would have responded with.
+ */
+@JsonInclude(Include.NON_NULL)
+public class BrowseResult {
+
+    @JsonProperty("path")
+    private final String path;
+
+    @JsonProperty("status")
+    private final int status;
+
+    @JsonProperty("node")
+    private final ZkNode node;
+
+    @JsonProperty("error")
+    private final String error;
+
+    public BrowseResult(String path, int status, ZkNode node, String error) {
+        this.path = path;
+        this.status = status;
+        this.node = node;
+        this.error = error;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public ZkNode getNode() {
+        return node;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("path", path)
+                .append("status", status)
+                .append("node", node)
+                .append("error", error)
+                .build();
+    }
+
+}
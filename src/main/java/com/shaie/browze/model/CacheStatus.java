@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.CacheStats;
+
+public class CacheStatus {
+
+    @JsonProperty("enabled")
+    private final boolean enabled;
+
+    @JsonProperty("nodes")
+    private final Counters nodes;
+
+    @JsonProperty("stats")
+    private final Counters stats;
+
+    public CacheStatus(boolean enabled, Counters nodes, Counters stats) {
+        this.enabled = enabled;
+        this.nodes = nodes;
+        this.stats = stats;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Counters getNodes() {
+        return nodes;
+    }
+
+    public Counters getStats() {
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("enabled", enabled)
+                .append("nodes", nodes)
+                .append("stats", stats)
+                .build();
+    }
+
+    public static class Counters {
+
+        @JsonProperty("size")
+        private final long size;
+
+        @JsonProperty("hits")
+        private final long hits;
+
+        @JsonProperty("misses")
+        private final long misses;
+
+        @JsonProperty("evictions")
+        private final long evictions;
+
+        public Counters(long size, CacheStats cacheStats) {
+            this.size = size;
+            this.hits = cacheStats.hitCount();
+            this.misses = cacheStats.missCount();
+            this.evictions = cacheStats.evictionCount();
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("size", size)
+                    .append("hits", hits)
+                    .append("misses", misses)
+                    .append("evictions", evictions)
+                    .build();
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.zookeeper.data.Stat;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A change to a single node of a watched subtree. Changes which happen within the same batch window are coalesced, so
+ * that a node which was created and then modified is reported once as {@code created}, and a node which was created
+ * and deleted again is not reported at all.
+ */
+@JsonInclude(Include.NON_NULL)
+public class ChangeEvent {
+
+    public static final String CREATED = "created";
+    public static final String DELETED = "deleted";
+    public static final String CHANGED = "changed";
+
+    /** One of {@code created}, {@code deleted} or {@code changed}. */
+    @JsonProperty("type")
+    private final String type;
+
+    @JsonProperty("path")
+    private final String path;
+
+    /** The latest stat of the node, or {@code null} if it was deleted. */
+    @JsonProperty("stat")
+    private final Stat stat;
+
+    public ChangeEvent(String type, String path, Stat stat) {
+        this.type = type;
+        this.path = path;
+        this.stat = stat;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Stat getStat() {
+        return stat;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("type", type)
+                .append("path", path)
+                .append("stat", stat)
+                .build();
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Describes the preview of a node's data which is returned by browse. The preview text itself is returned as the
+ * node's {@code data}, and the full data is available from the data endpoint.
+ */
+public class DataPreview {
+
+    @JsonIgnore
+    private final String text;
+
+    /** The sniffed type of the data, after decompressing it if it is gzipped. */
+    @JsonProperty("type")
+    private final String type;
+
+    @JsonProperty("gzip")
+    private final boolean gzip;
+
+    /** How the preview text encodes the data, {@code utf-8} for text or {@code hex} for binary data. */
+    @JsonProperty("encoding")
+    private final String encoding;
+
+    @JsonProperty("truncated")
+    private final boolean truncated;
+
+    public DataPreview(String text, String type, boolean gzip, String encoding, boolean truncated) {
+        this.text = text;
+        this.type = type;
+        this.gzip = gzip;
+        this.encoding = encoding;
+        this.truncated = truncated;
+    }
+
+    @JsonIgnore
+    public String getText() {
+        return text;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("type", type)
+                .append("gzip", gzip)
+                .append("encoding", encoding)
+                .append("truncated", truncated)
+                .build();
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.zookeeper.data.Stat;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A node which differs between the two sides of a subtree diff, by its path relative to the roots of the sides. An
+ * added node only has a right stat and a removed node only a left one; their subtrees are not listed.
+ */
+@JsonInclude(Include.NON_NULL)
+public class DiffRecord {
+
+    public static final String ADDED = "added";
+    public static final String REMOVED = "removed";
+    public static final String CHANGED = "changed";
+
+    @JsonProperty("path")
+    private final String path;
+
+    @JsonProperty("change")
+    private final String change;
+
+    @JsonProperty("left")
+    private final Stat left;
+
+    @JsonProperty("right")
+    private final Stat right;
+
+    public DiffRecord(String path, String change, Stat left, Stat right) {
+        this.path = path;
+        this.change = change;
+        this.left = left;
+        this.right = right;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getChange() {
+        return change;
+    }
+
+    public Stat getLeft() {
+        return left;
+    }
+
+    public Stat getRight() {
+        return right;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("path", path)
+                .append("change", change)
+                .append("left", left)
+                .append("right", right)
+                .build();
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class EnsembleStatus {
+
+    @JsonProperty("cluster")
+    private final String cluster;
+
+    @JsonProperty("connectString")
+    private final String connectString;
+
+    @JsonProperty("interval")
+    private final long interval;
+
+    @JsonProperty("servers")
+    private final List<Server> servers;
+
+    /** @param interval the polling interval, in milliseconds. */
+    public EnsembleStatus(String cluster, String connectString, long interval, List<Server> servers) {
+        this.cluster = cluster;
+        this.connectString = connectString;
+        this.interval = interval;
+        this.servers = servers;
+    }
+
+    public String getCluster() {
+        return cluster;
+    }
+
+    public String getConnectString() {
+        return connectString;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public List<Server> getServers() {
+        return servers;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("cluster", cluster)
+                .append("connectString", connectString)
+                .append("interval", interval)
+                .append("servers", servers)
+                .build();
+    }
+
+    /**
+     * The latest poll of a server. Its {@code current} values are those of its latest sample, and its
+     * {@code history} holds its recent samples, oldest first.
+     */
+    @JsonInclude(Include.NON_NULL)
+    public static class Server {
+
+        @JsonProperty("server")
+        private final String server;
+
+        @JsonProperty("polled")
+        private final long polled;
+
+        @JsonProperty("reachable")
+        private final boolean reachable;
+
+        @JsonProperty("mode")
+        private final String mode;
+
+        @JsonProperty("version")
+        private final String version;
+
+        @JsonProperty("error")
+        private final String error;
+
+        @JsonProperty("current")
+        private final Map<String, Long> current;
+
+        @JsonProperty("history")
+        private final History history;
+
+        public Server(String server, long polled, boolean reachable, String mode, String version, String error,
+                Map<String, Long> current, History history) {
+            this.server = server;
+            this.polled = polled;
+            this.reachable = reachable;
+            this.mode = mode;
+            this.version = version;
+            this.error = error;
+            this.current = current;
+            this.history = history;
+        }
+
+        public String getServer() {
+            return server;
+        }
+
+        public long getPolled() {
+            return polled;
+        }
+
+        public boolean isReachable() {
+            return reachable;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public Map<String, Long> getCurrent() {
+            return current;
+        }
+
+        public History getHistory() {
+            return history;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("server", server)
+                    .append("polled", polled)
+                    .append("reachable", reachable)
+                    .append("mode", mode)
+                    .append("version", version)
+                    .append("error", error)
+                    .append("current", current)
+                    .append("history", history)
+                    .build();
+        }
+
+    }
+
+    /**
+     * Samples of a server, as the times at which they were taken and a series of values per metric, each of which is
+     * {@code -1} where it is unknown.
+     */
+    public static class History {
+
+        @JsonProperty("times")
+        private final long[] times;
+
+        @JsonProperty("values")
+        private final Map<String, long[]> values;
+
+        public History(long[] times, Map<String, long[]> values) {
+            this.times = times;
+            this.values = values;
+        }
+
+        public long[] getTimes() {
+            return times;
+        }
+
+        public Map<String, long[]> getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("times", times.length)
+                    .append("values", values.keySet())
+                    .build();
+        }
+
+    }
+
+}
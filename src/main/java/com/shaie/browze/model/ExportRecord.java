@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.zookeeper.data.Stat;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * A single znode in a subtree export. Data which is valid UTF-8 is exported as text, and any other data as base64,
+ * with an {@code encoding} of {@value #BASE64}, so that every record can be imported back byte for byte.
+ */
+public class ExportRecord {
+
+    /** The {@code encoding} of data which is exported as base64. Text data has no {@code encoding}. */
+    public static final String BASE64 = "base64";
+
+    @JsonProperty("path")
+    private final String path;
+
+    @JsonProperty("stat")
+    private final Stat stat;
+
+    @JsonProperty("data")
+    private final String data;
+
+    @JsonProperty("encoding")
+    @JsonInclude(Include.NON_NULL)
+    private final String encoding;
+
+    public ExportRecord(String path, Stat stat, byte[] data) {
+        this.path = path;
+        this.stat = stat;
+        final String text = data == null ? null : decodeUtf8(data);
+        this.data = data == null || text != null ? text : BaseEncoding.base64().encode(data);
+        this.encoding = data == null || text != null ? null : BASE64;
+    }
+
+    /** Returns the data as text, or {@code null} if it is not valid UTF-8 and would not survive being decoded. */
+    private static String decodeUtf8(byte[] data) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(data))
+                    .toString();
+        } catch (@SuppressWarnings("unused") final CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Stat getStat() {
+        return stat;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    /** Returns {@value #BASE64} if the data is base64, or {@code null} if it is text. */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("path", path)
+                .append("stat", stat)
+                .append("data", data)
+                .append("encoding", encoding)
+                .build();
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The progress of an import, as sent after each transaction, or the failure of one of its transactions, in which
+ * case {@code path} is the node whose operation failed, if known, and {@code error} why it failed.
+ */
+@JsonInclude(Include.NON_NULL)
+public class ImportProgress {
+
+    /** The number of nodes which were read so far, whether or not they were imported yet. */
+    @JsonProperty("read")
+    private final long read;
+
+    @JsonProperty("created")
+    private final long created;
+
+    @JsonProperty("updated")
+    private final long updated;
+
+    /** The number of nodes which were not imported on purpose, i.e. ephemeral nodes and an existing root. */
+    @JsonProperty("skipped")
+    private final long skipped;
+
+    /** The number of nodes of the transactions which failed. */
+    @JsonProperty("failed")
+    private final long failed;
+
+    @JsonProperty("transactions")
+    private final long transactions;
+
+    @JsonProperty("path")
+    private final String path;
+
+    @JsonProperty("error")
+    private final String error;
+
+    public ImportProgress(long read, long created, long updated, long skipped, long failed, long transactions,
+            String path, String error) {
+        this.read = read;
+        this.created = created;
+        this.updated = updated;
+        this.skipped = skipped;
+        this.failed = failed;
+        this.transactions = transactions;
+        this.path = path;
+        this.error = error;
+    }
+
+    public long getRead() {
+        return read;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("read", read)
+                .append("created", created)
+                .append("updated", updated)
+                .append("skipped", skipped)
+                .append("failed", failed)
+                .append("transactions", transactions)
+                .append("path", path)
+                .append("error", error)
+                .build();
+    }
+
+}
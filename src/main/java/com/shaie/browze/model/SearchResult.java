@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.zookeeper.data.Stat;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class SearchResult {
+
+    @JsonProperty("cluster")
+    private final String cluster;
+
+    @JsonProperty("initialized")
+    private final boolean initialized;
+
+    @JsonProperty("indexedNodes")
+    private final long indexedNodes;
+
+    @JsonProperty("truncated")
+    private final boolean truncated;
+
+    @JsonProperty("hits")
+    private final List<Hit> hits;
+
+    public SearchResult(String cluster, boolean initialized, long indexedNodes, boolean truncated, List<Hit> hits) {
+        this.cluster = cluster;
+        this.initialized = initialized;
+        this.indexedNodes = indexedNodes;
+        this.truncated = truncated;
+        this.hits = hits;
+    }
+
+    public String getCluster() {
+        return cluster;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public long getIndexedNodes() {
+        return indexedNodes;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public List<Hit> getHits() {
+        return hits;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("cluster", cluster)
+                .append("initialized", initialized)
+                .append("indexedNodes", indexedNodes)
+                .append("truncated", truncated)
+                .append("hits", hits)
+                .build();
+    }
+
+    public static class Hit {
+
+        @JsonProperty("path")
+        private final String path;
+
+        @JsonProperty("stat")
+        private final Stat stat;
+
+        public Hit(String path, Stat stat) {
+            this.path = path;
+            this.stat = stat;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Stat getStat() {
+            return stat;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("path", path)
+                    .append("stat", stat)
+                    .build();
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class SnapshotStatus {
+
+    @JsonProperty("name")
+    private final String name;
+
+    @JsonProperty("location")
+    private final String location;
+
+    @JsonProperty("loaded")
+    private final boolean loaded;
+
+    @JsonProperty("snapshotFile")
+    private final String snapshotFile;
+
+    @JsonProperty("snapshotZxid")
+    private final long snapshotZxid;
+
+    @JsonProperty("lastZxid")
+    private final long lastZxid;
+
+    @JsonProperty("snapshotNodes")
+    private final int snapshotNodes;
+
+    @JsonProperty("replayedTxns")
+    private final int replayedTxns;
+
+    public SnapshotStatus(String name, String location, boolean loaded, String snapshotFile, long snapshotZxid,
+            long lastZxid, int snapshotNodes, int replayedTxns) {
+        this.name = name;
+        this.location = location;
+        this.loaded = loaded;
+        this.snapshotFile = snapshotFile;
+        this.snapshotZxid = snapshotZxid;
+        this.lastZxid = lastZxid;
+        this.snapshotNodes = snapshotNodes;
+        this.replayedTxns = replayedTxns;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public String getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public long getSnapshotZxid() {
+        return snapshotZxid;
+    }
+
+    public long getLastZxid() {
+        return lastZxid;
+    }
+
+    public int getSnapshotNodes() {
+        return snapshotNodes;
+    }
+
+    public int getReplayedTxns() {
+        return replayedTxns;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("name", name)
+                .append("location", location)
+                .append("loaded", loaded)
+                .append("snapshotFile", snapshotFile)
+                .append("snapshotZxid", snapshotZxid)
+                .append("lastZxid", lastZxid)
+                .append("snapshotNodes", snapshotNodes)
+                .append("replayedTxns", replayedTxns)
+                .build();
+    }
+
+}
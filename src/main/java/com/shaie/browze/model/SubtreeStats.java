@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.model;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/** Aggregates over all the nodes of a subtree, including its root. */
+public class SubtreeStats {
+
+    /** A node which ranks among the top of the subtree by some value, e.g. its data length. */
+    public static class Hotspot {
+
+        @JsonProperty("path")
+        private final String path;
+
+        @JsonProperty("value")
+        private final long value;
+
+        public Hotspot(String path, long value) {
+            this.path = path;
+            this.value = value;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("path", path)
+                    .append("value", value)
+                    .build();
+        }
+
+    }
+
+    @JsonProperty("path")
+    private final String path;
+
+    /** When the subtree was crawled, which is also what the {@link #modified} ages are relative to. */
+    @JsonProperty("computedAt")
+    private final long computedAt;
+
+    @JsonProperty("numNodes")
+    private final long numNodes;
+
+    @JsonProperty("totalDataLength")
+    private final long totalDataLength;
+
+    @JsonProperty("numEphemerals")
+    private final long numEphemerals;
+
+    /** The nodes with the most data, largest first. */
+    @JsonProperty("largest")
+    private final List<Hotspot> largest;
+
+    /** The nodes with the most children, widest first. */
+    @JsonProperty("widest")
+    private final List<Hotspot> widest;
+
+    /** The number of ephemeral nodes which each session owns, keyed by hex session ID, most first. */
+    @JsonProperty("ephemeralOwners")
+    private final Map<String, Long> ephemeralOwners;
+
+    /** The number of nodes by the age of their last modification, e.g. {@code 1h} for less than an hour old. */
+    @JsonProperty("modified")
+    private final Map<String, Long> modified;
+
+    public SubtreeStats(String path, long computedAt, long numNodes, long totalDataLength, long numEphemerals,
+            List<Hotspot> largest, List<Hotspot> widest, Map<String, Long> ephemeralOwners,
+            Map<String, Long> modified) {
+        this.path = path;
+        this.computedAt = computedAt;
+        this.numNodes = numNodes;
+        this.totalDataLength = totalDataLength;
+        this.numEphemerals = numEphemerals;
+        this.largest = largest;
+        this.widest = widest;
+        this.ephemeralOwners = ephemeralOwners;
+        this.modified = modified;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getComputedAt() {
+        return computedAt;
+    }
+
+    public long getNumNodes() {
+        return numNodes;
+    }
+
+    public long getTotalDataLength() {
+        return totalDataLength;
+    }
+
+    public long getNumEphemerals() {
+        return numEphemerals;
+    }
+
+    public List<Hotspot> getLargest() {
+        return largest;
+    }
+
+    public List<Hotspot> getWidest() {
+        return widest;
+    }
+
+    public Map<String, Long> getEphemeralOwners() {
+        return ephemeralOwners;
+    }
+
+    public Map<String, Long> getModified() {
+        return modified;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("path", path)
+                .append("computedAt", computedAt)
+                .append("numNodes", numNodes)
+                .append("totalDataLength", totalDataLength)
+                .append("numEphemerals", numEphemerals)
+                .append("largest", largest)
+                .append("widest", widest)
+                .append("ephemeralOwners", ephemeralOwners)
+                .append("modified", modified)
+                .build();
+    }
+
+}
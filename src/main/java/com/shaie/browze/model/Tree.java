@@ -16,82 +16,192 @@
  */
 package com.shaie.browze.model;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.curator.utils.ZKPaths.PathAndNode;
 import org.apache.zookeeper.data.Stat;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
 
+/**
+ * A node and its children, as returned by browse. The children are not trees of their own: they are kept as a single
+ * array of labels, sorted once with 'directories' first and then by label, and a child's stat is reduced to whether
+ * it is a leaf, which is all that is returned of it. Only the children which are {@link #expand(Tree) expanded}, i.e.
+ * the nodes along the browsed path, are trees, and their path is only held once by the tree itself. A browse response
+ * for a node with millions of children therefore holds little more than their labels.
+ * <p>
+ * The tree is written straight to JSON by its {@link Serializer}, as if every child was a tree without children.
+ */
+@JsonSerialize(using = Tree.Serializer.class)
 public class Tree {
 
-    @JsonProperty("label")
+    private static final String[] NO_LABELS = new String[0];
+
     private final String label;
+    private final String parent;
+    private final String path;
+    private final boolean isLeaf;
+    private final String next;
 
-    @JsonProperty("children")
-    private final List<Tree> children;
+    /** The labels of the children, the first {@link #numDirectories} of which have children of their own. */
+    private final String[] childLabels;
+    private final int numDirectories;
 
-    @JsonProperty("leaf")
-    private final boolean isLeaf;
+    /** The index of the expanded child in {@link #childLabels}, or {@code -1} if no child was expanded. */
+    private int expandedIndex = -1;
+    private Tree expandedChild;
 
-    @JsonProperty("parent")
-    private final String parent;
+    /** Creates a tree of a node whose children are not returned, e.g. because it has none. */
+    public Tree(PathAndNode pathAndNode, Stat stat) {
+        this(pathAndNode, Collections.<String, Stat> emptyMap(), stat, null);
+    }
 
-    public Tree(PathAndNode pathAndNode, List<Tree> children, Stat stat) {
+    /**
+     * Creates a tree whose children are a page of the node's children, given with their stats. {@code next} is the
+     * cursor of the next page, or {@code null} if there are no more children.
+     */
+    public Tree(PathAndNode pathAndNode, Map<String, Stat> childStats, Stat stat, String next) {
         if (Strings.isNullOrEmpty(pathAndNode.getNode())) {
             // root node
             this.label = pathAndNode.getPath();
             this.parent = null;
+            this.path = pathAndNode.getPath();
         } else {
             this.label = pathAndNode.getNode();
             this.parent = pathAndNode.getPath();
+            this.path = ZKPaths.makePath(parent, label);
         }
-        this.children = Lists.newArrayList(children);
-        Collections.sort(this.children, new Comparator<Tree>() {
-            @Override
-            public int compare(Tree o1, Tree o2) {
-                // if one of the nodes is a leaf and one isn't, favor 'directories' first
-                if (o1.isLeaf != o2.isLeaf) {
-                    return o1.isLeaf ? 1 : -1;
-                }
+        this.isLeaf = childStats.isEmpty() && stat.getNumChildren() == 0;
+        this.next = next;
 
-                // both nodes are either leaves or directories, sort by nodeName
-                return o1.label.compareTo(o2.label);
+        if (childStats.isEmpty()) {
+            this.childLabels = NO_LABELS;
+            this.numDirectories = 0;
+            return;
+        }
+        // directories are filled in from the start and leaves from the end, and each part is then sorted by label
+        this.childLabels = new String[childStats.size()];
+        int numDirectories = 0;
+        int firstLeaf = childLabels.length;
+        for (final Map.Entry<String, Stat> child : childStats.entrySet()) {
+            if (child.getValue().getNumChildren() > 0) {
+                childLabels[numDirectories++] = child.getKey();
+            } else {
+                childLabels[--firstLeaf] = child.getKey();
             }
-        });
-        this.isLeaf = children.isEmpty() && stat.getNumChildren() == 0;
+        }
+        Arrays.sort(childLabels, 0, numDirectories);
+        Arrays.sort(childLabels, numDirectories, childLabels.length);
+        this.numDirectories = numDirectories;
     }
 
     public String getLabel() {
         return label;
     }
 
-    public List<Tree> getChildren() {
-        return children;
+    /** Returns the path of the node's parent, or {@code null} if this is the root node. */
+    public String getParent() {
+        return parent;
+    }
+
+    public String getPath() {
+        return path;
     }
 
     public boolean isLeaf() {
         return isLeaf;
     }
 
-    public String getParent() {
-        return parent;
+    public String getNext() {
+        return next;
+    }
+
+    /** Returns the labels of the children, in the order in which they are returned. */
+    public List<String> getChildLabels() {
+        return Collections.unmodifiableList(Arrays.asList(childLabels));
+    }
+
+    /** Returns the expanded child, or {@code null} if no child was expanded. */
+    public Tree getExpandedChild() {
+        return expandedChild;
+    }
+
+    /**
+     * Replaces the child with the same label as {@code child} by the given tree, so that its own children are returned
+     * too. At most one child is expanded, which is the next node on the browsed path. Returns {@code false} if there
+     * is no such child.
+     */
+    public boolean expand(Tree child) {
+        int index = Arrays.binarySearch(childLabels, 0, numDirectories, child.getLabel());
+        if (index < 0) {
+            index = Arrays.binarySearch(childLabels, numDirectories, childLabels.length, child.getLabel());
+        }
+        if (index < 0) {
+            return false;
+        }
+        expandedIndex = index;
+        expandedChild = child;
+        return true;
     }
 
     @Override
     public String toString() {
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
                 .append("label", label)
-                .append("children", children)
+                .append("numChildren", childLabels.length)
+                .append("expandedChild", expandedChild)
                 .append("parent", parent)
                 .append("leaf", isLeaf)
+                .append("next", next)
                 .build();
     }
 
-}
\ No newline at end of file
+    /** Writes a tree along with its children, without creating any objects per child. */
+    public static final class Serializer extends JsonSerializer<Tree> {
+
+        @Override
+        public void serialize(Tree tree, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartObject();
+            gen.writeBooleanField("leaf", tree.isLeaf);
+            gen.writeStringField("label", tree.label);
+            gen.writeArrayFieldStart("children");
+            for (int i = 0; i < tree.childLabels.length; i++) {
+                if (i == tree.expandedIndex) {
+                    serialize(tree.expandedChild, gen, serializers);
+                } else {
+                    writeChild(tree.childLabels[i], i >= tree.numDirectories, tree.path, gen);
+                }
+            }
+            gen.writeEndArray();
+            gen.writeStringField("parent", tree.parent);
+            if (tree.next != null) {
+                gen.writeStringField("next", tree.next);
+            }
+            gen.writeEndObject();
+        }
+
+        private static void writeChild(String label, boolean isLeaf, String parent, JsonGenerator gen)
+                throws IOException {
+            gen.writeStartObject();
+            gen.writeBooleanField("leaf", isLeaf);
+            gen.writeStringField("label", label);
+            gen.writeArrayFieldStart("children");
+            gen.writeEndArray();
+            gen.writeStringField("parent", parent);
+            gen.writeEndObject();
+        }
+
+    }
+
+}
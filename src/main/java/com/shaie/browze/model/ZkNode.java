@@ -20,23 +20,30 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.apache.zookeeper.data.Stat;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.google.common.base.Charsets;
 
 public class ZkNode {
 
     @JsonProperty("tree")
     private final Tree tree;
 
+    /** A preview of the node's data, whose full data is available from the data endpoint. */
     @JsonProperty("data")
-    private final Object data;
+    private final String data;
+
+    @JsonInclude(Include.NON_NULL)
+    @JsonProperty("dataInfo")
+    private final DataPreview dataInfo;
 
     @JsonProperty("stat")
     private final Stat stat;
 
-    public ZkNode(Tree tree, byte[] data, Stat stat) {
+    public ZkNode(Tree tree, DataPreview preview, Stat stat) {
         this.tree = tree;
-        this.data = resolveData(data);
+        this.data = preview == null ? null : preview.getText();
+        this.dataInfo = preview;
         this.stat = stat;
     }
 
@@ -44,10 +51,14 @@ public class ZkNode {
         return tree;
     }
 
-    public Object getData() {
+    public String getData() {
         return data;
     }
 
+    public DataPreview getDataInfo() {
+        return dataInfo;
+    }
+
     public Stat getStat() {
         return stat;
     }
@@ -57,20 +68,9 @@ public class ZkNode {
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
                 .append("treeInfo", tree)
                 .append("data", data)
+                .append("dataInfo", dataInfo)
                 .append("stat", stat)
                 .build();
     }
 
-    private static Object resolveData(byte[] data) {
-        if (data == null) {
-            return null;
-        }
-
-        if (data.length == 0) {
-            return "";
-        }
-
-        return new String(data, Charsets.UTF_8);
-    }
-
-}
\ No newline at end of file
+}
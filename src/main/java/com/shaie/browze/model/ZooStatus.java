@@ -16,29 +16,117 @@
  */
 package com.shaie.browze.model;
 
+import java.util.List;
+
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class ZooStatus {
 
+    @JsonProperty("cluster")
+    private final String cluster;
+
     @JsonProperty("connectString")
     private final String connectString;
 
-    public ZooStatus(String connectString) {
+    @JsonProperty("connected")
+    private final boolean connected;
+
+    /** The servers which reads are routed to, if the cluster has an open session and its reads are routed. */
+    @JsonProperty("readServers")
+    @JsonInclude(Include.NON_NULL)
+    private final List<ReadServer> readServers;
+
+    public ZooStatus(String cluster, String connectString, boolean connected) {
+        this(cluster, connectString, connected, null);
+    }
+
+    public ZooStatus(String cluster, String connectString, boolean connected, List<ReadServer> readServers) {
+        this.cluster = cluster;
         this.connectString = connectString;
+        this.connected = connected;
+        this.readServers = readServers;
+    }
+
+    public String getCluster() {
+        return cluster;
     }
 
     public String getConnectString() {
         return connectString;
     }
 
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public List<ReadServer> getReadServers() {
+        return readServers;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("cluster", cluster)
                 .append("connectString", connectString)
+                .append("connected", connected)
+                .append("readServers", readServers)
                 .build();
     }
 
+    /** A server which reads are routed to, with its current load. */
+    public static class ReadServer {
+
+        @JsonProperty("server")
+        private final String server;
+
+        @JsonProperty("connected")
+        private final boolean connected;
+
+        @JsonProperty("outstanding")
+        private final int outstanding;
+
+        /** The moving average of the latency of the server's reads, in milliseconds. */
+        @JsonProperty("latencyMs")
+        private final double latencyMs;
+
+        public ReadServer(String server, boolean connected, int outstanding, double latencyMs) {
+            this.server = server;
+            this.connected = connected;
+            this.outstanding = outstanding;
+            this.latencyMs = latencyMs;
+        }
+
+        public String getServer() {
+            return server;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public int getOutstanding() {
+            return outstanding;
+        }
+
+        public double getLatencyMs() {
+            return latencyMs;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("server", server)
+                    .append("connected", connected)
+                    .append("outstanding", outstanding)
+                    .append("latencyMs", latencyMs)
+                    .build();
+        }
+
+    }
+
 }
\ No newline at end of file
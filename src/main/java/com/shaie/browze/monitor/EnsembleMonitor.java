@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.monitor;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.client.ConnectStringParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.shaie.browze.model.EnsembleStatus;
+import com.shaie.browze.zk.ZkSessions;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Polls every server of every known cluster with four-letter-word commands at a fixed interval, see
+ * {@link ServerMonitor}. Servers are polled concurrently, and a server whose previous poll did not end yet is skipped,
+ * so an unresponsive server delays neither the other servers nor the next rounds. A server which is in the connect
+ * strings of several clusters is polled once.
+ */
+public class EnsembleMonitor implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EnsembleMonitor.class);
+
+    private final MonitorConfiguration config;
+    private final ZkSessions zkSessions;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService pollers;
+
+    /** The monitors of the servers, by host and port. */
+    private final ConcurrentMap<String, ServerMonitor> servers = new ConcurrentHashMap<>();
+
+    public EnsembleMonitor(MonitorConfiguration config, ZkSessions zkSessions) {
+        this.config = config;
+        this.zkSessions = zkSessions;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("ensemble-monitor").setDaemon(true).build());
+        this.pollers = Executors.newFixedThreadPool(config.getConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("ensemble-poller-%d").setDaemon(true).build());
+    }
+
+    public MonitorConfiguration getConfig() {
+        return config;
+    }
+
+    @Override
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pollAll();
+                } catch (final RuntimeException e) {
+                    // must not escape, or no further rounds would run
+                    LOGGER.warn("Failed to poll the ensembles", e);
+                }
+            }
+        }, 0, config.getInterval().toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        pollers.shutdownNow();
+    }
+
+    /** Returns the status of the servers of the given cluster, each with its latest {@code history} samples. */
+    public EnsembleStatus getStatus(String cluster, int history) {
+        final String connectString = zkSessions.getConnectString(cluster);
+        final List<EnsembleStatus.Server> statuses = Lists.newArrayList();
+        for (final ServerMonitor server : getServers(connectString)) {
+            statuses.add(server.toStatus(history));
+        }
+        return new EnsembleStatus(cluster, connectString, config.getInterval().toMilliseconds(), statuses);
+    }
+
+    private void pollAll() {
+        final int timeoutMs = (int) config.getTimeout().toMilliseconds();
+        final List<ServerMonitor> polled = Lists.newArrayList();
+        for (final String cluster : zkSessions.getClusters()) {
+            final String connectString = zkSessions.getConnectString(cluster);
+            if (connectString == null) {
+                // an ad-hoc cluster which was just unregistered
+                continue;
+            }
+            polled.addAll(getServers(connectString));
+        }
+        // forget the servers of the clusters which were unregistered
+        servers.values().retainAll(polled);
+        for (final ServerMonitor server : polled) {
+            if (!server.tryStartPoll()) {
+                LOGGER.debug("Skipping {}, whose previous poll did not end yet", server.getServer());
+                continue;
+            }
+            try {
+                pollers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        server.poll(timeoutMs);
+                    }
+                });
+            } catch (@SuppressWarnings("unused") final RejectedExecutionException e) {
+                // stopped
+                return;
+            }
+        }
+    }
+
+    /** Returns the monitors of the servers in the given connect string, in its order. */
+    private List<ServerMonitor> getServers(String connectString) {
+        final List<ServerMonitor> monitors = Lists.newArrayList();
+        for (final InetSocketAddress address : new ConnectStringParser(connectString).getServerAddresses()) {
+            final String key = address.getHostString() + ":" + address.getPort();
+            ServerMonitor monitor = servers.get(key);
+            if (monitor == null) {
+                final ServerMonitor newMonitor = new ServerMonitor(address.getHostString(), address.getPort(),
+                        config.getHistory());
+                monitor = servers.putIfAbsent(key, newMonitor);
+                if (monitor == null) {
+                    monitor = newMonitor;
+                }
+            }
+            monitors.add(monitor);
+        }
+        return monitors;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.monitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+/** Sends the four-letter-word commands of ZooKeeper's admin port, and parses their responses. */
+final class FourLetterWords {
+
+    /** Responses are small; anything beyond this is not read. */
+    private static final int MAX_RESPONSE_SIZE = 64 * 1024;
+
+    private static final Splitter LINES = Splitter.on('\n').trimResults().omitEmptyStrings();
+
+    private FourLetterWords() {
+        // no instances
+    }
+
+    /** Sends {@code command} to the server and returns its response, which the server ends by closing the socket. */
+    static String send(String host, int port, String command, int timeoutMs) throws IOException {
+        try (final Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            final OutputStream out = socket.getOutputStream();
+            out.write(command.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            final InputStream in = ByteStreams.limit(socket.getInputStream(), MAX_RESPONSE_SIZE);
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Parses a response of lines of a key and a value, separated by {@code separator}, e.g. of {@code mntr} and
+     * {@code srvr}. Lines without the separator are skipped.
+     */
+    static Map<String, String> parse(String response, char separator) {
+        final Map<String, String> values = Maps.newLinkedHashMap();
+        for (final String line : LINES.split(response)) {
+            final int i = line.indexOf(separator);
+            if (i > 0) {
+                values.put(line.substring(0, i).trim(), line.substring(i + 1).trim());
+            }
+        }
+        return values;
+    }
+
+    /** Returns the value as a number, or {@code -1} if it is missing or not a number. */
+    static long toLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return value.startsWith("0x") ? Long.parseLong(value.substring(2), 16) : Long.parseLong(value);
+        } catch (@SuppressWarnings("unused") final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.monitor;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/** Configures the {@link EnsembleMonitor polling} of the servers of the known clusters. */
+public class MonitorConfiguration {
+
+    @JsonProperty
+    private boolean enabled = true;
+
+    /** How often each server is polled. */
+    @NotNull
+    @JsonProperty
+    private Duration interval = Duration.seconds(10);
+
+    /** The number of samples which are kept per server, e.g. an hour's worth at the default interval. */
+    @Min(1)
+    @JsonProperty
+    private int history = 360;
+
+    /** Bounds connecting to a server and reading its response to a single command. */
+    @NotNull
+    @JsonProperty
+    private Duration timeout = Duration.seconds(2);
+
+    /** The number of servers which are polled at the same time. */
+    @Min(1)
+    @JsonProperty
+    private int concurrency = 4;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public void setInterval(Duration interval) {
+        this.interval = interval;
+    }
+
+    public int getHistory() {
+        return history;
+    }
+
+    public void setHistory(int history) {
+        this.history = history;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("enabled", enabled)
+                .append("interval", interval)
+                .append("history", history)
+                .append("timeout", timeout)
+                .append("concurrency", concurrency)
+                .build();
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.monitor;
+
+/**
+ * A fixed number of the most recent samples of a fixed number of series, each sample being a time and a value per
+ * series. The samples are held in primitive arrays which are allocated up front, so adding a sample allocates
+ * nothing, and once the ring is full each sample overwrites the oldest one. Thread-safe.
+ */
+final class SampleRing {
+
+    private final int capacity;
+    private final int numSeries;
+    private final long[] times;
+    /** The values of sample {@code i} of series {@code s} are at {@code i * numSeries + s}. */
+    private final long[] values;
+
+    private int next = 0;
+    private int size = 0;
+
+    SampleRing(int capacity, int numSeries) {
+        this.capacity = capacity;
+        this.numSeries = numSeries;
+        this.times = new long[capacity];
+        this.values = new long[capacity * numSeries];
+    }
+
+    /** Adds a sample, whose values are copied from {@code sample}, one per series. */
+    synchronized void add(long time, long[] sample) {
+        times[next] = time;
+        System.arraycopy(sample, 0, values, next * numSeries, numSeries);
+        next = (next + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Copies the latest {@code count} samples, oldest first, to {@code times} and to {@code series}, which holds an
+     * array per series. Returns the number of samples which were copied, which is less than {@code count} if there are
+     * fewer samples.
+     */
+    synchronized int copyLatest(int count, long[] times, long[][] series) {
+        final int n = Math.min(count, size);
+        int i = (next - n + capacity) % capacity;
+        for (int j = 0; j < n; j++) {
+            times[j] = this.times[i];
+            for (int s = 0; s < numSeries; s++) {
+                series[s][j] = values[i * numSeries + s];
+            }
+            i = (i + 1) % capacity;
+        }
+        return n;
+    }
+
+}
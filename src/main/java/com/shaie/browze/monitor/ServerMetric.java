@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.monitor;
+
+/** The metrics of a server which are sampled, by their names in responses and in {@code mntr}. */
+public enum ServerMetric {
+    MIN_LATENCY("minLatency", "zk_min_latency"),
+    AVG_LATENCY("avgLatency", "zk_avg_latency"),
+    MAX_LATENCY("maxLatency", "zk_max_latency"),
+    OUTSTANDING_REQUESTS("outstandingRequests", "zk_outstanding_requests"),
+    CONNECTIONS("connections", "zk_num_alive_connections"),
+    PACKETS_RECEIVED("packetsReceived", "zk_packets_received"),
+    PACKETS_SENT("packetsSent", "zk_packets_sent"),
+    ZNODE_COUNT("znodeCount", "zk_znode_count"),
+    EPHEMERALS_COUNT("ephemeralsCount", "zk_ephemerals_count"),
+    APPROXIMATE_DATA_SIZE("approximateDataSize", "zk_approximate_data_size"),
+    WATCH_COUNT("watchCount", "zk_watch_count"),
+    /** The number of paths with watches, from {@code wchs}. */
+    WATCHED_PATHS("watchedPaths", null),
+    /** The number of connections with watches, from {@code wchs}. */
+    WATCHING_CONNECTIONS("watchingConnections", null),
+    /** Reported by the leader only. */
+    FOLLOWERS("followers", "zk_followers"),
+    /** Reported by the leader only. */
+    SYNCED_FOLLOWERS("syncedFollowers", "zk_synced_followers"),
+    /** The last zxid the server processed, from {@code srvr}. */
+    ZXID("zxid", null);
+
+    private final String name;
+    private final String mntrKey;
+
+    private ServerMetric(String name, String mntrKey) {
+        this.name = name;
+        this.mntrKey = mntrKey;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    String getMntrKey() {
+        return mntrKey;
+    }
+
+}
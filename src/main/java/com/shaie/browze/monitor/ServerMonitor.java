@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.monitor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.shaie.browze.model.EnsembleStatus;
+
+/**
+ * Polls a single server with {@code mntr}, {@code srvr} and {@code wchs}, and keeps its recent samples in a
+ * {@link SampleRing}. Servers which do not serve {@code mntr} are sampled from {@code srvr} alone, which reports
+ * fewer metrics. A server which is up but not serving requests, e.g. while it has no quorum, is reachable but not
+ * sampled.
+ */
+final class ServerMonitor {
+
+    private static final ServerMetric[] METRICS = ServerMetric.values();
+
+    private static final Pattern WATCHES = Pattern.compile("(\\d+) connections watching (\\d+) paths");
+
+    private final String host;
+    private final int port;
+    private final SampleRing samples;
+
+    /** The values of the sample which is being taken, reused by every poll. */
+    private final long[] sample = new long[METRICS.length];
+
+    private final AtomicBoolean polling = new AtomicBoolean();
+
+    private volatile long polled = 0;
+    private volatile boolean reachable = false;
+    private volatile String mode = null;
+    private volatile String version = null;
+    private volatile String error = null;
+
+    ServerMonitor(String host, int port, int history) {
+        this.host = host;
+        this.port = port;
+        this.samples = new SampleRing(history, METRICS.length);
+    }
+
+    String getServer() {
+        return host + ":" + port;
+    }
+
+    /** Returns whether the server should be polled now, i.e. that it is not being polled already. */
+    boolean tryStartPoll() {
+        return polling.compareAndSet(false, true);
+    }
+
+    /**
+     * Polls the server, which must have been {@link #tryStartPoll() started}, waiting up to {@code timeoutMs} for each
+     * command.
+     */
+    void poll(int timeoutMs) {
+        final long now = System.currentTimeMillis();
+        try {
+            Arrays.fill(sample, -1);
+            final Map<String, String> mntr = FourLetterWords.parse(send("mntr", timeoutMs), '\t');
+            for (final ServerMetric metric : METRICS) {
+                if (metric.getMntrKey() != null) {
+                    sample[metric.ordinal()] = FourLetterWords.toLong(mntr.get(metric.getMntrKey()));
+                }
+            }
+            String mode = mntr.get("zk_server_state");
+            String version = mntr.get("zk_version");
+
+            final String srvrResponse = send("srvr", timeoutMs);
+            final Map<String, String> srvr = FourLetterWords.parse(srvrResponse, ':');
+            set(ServerMetric.ZXID, srvr.get("Zxid"));
+            if (mode == null) {
+                mode = srvr.get("Mode");
+                version = srvr.get("Zookeeper version");
+                final String latency = srvr.get("Latency min/avg/max");
+                if (latency != null) {
+                    final List<String> latencies = Splitter.on('/').splitToList(latency);
+                    if (latencies.size() == 3) {
+                        set(ServerMetric.MIN_LATENCY, latencies.get(0));
+                        set(ServerMetric.AVG_LATENCY, latencies.get(1));
+                        set(ServerMetric.MAX_LATENCY, latencies.get(2));
+                    }
+                }
+                set(ServerMetric.OUTSTANDING_REQUESTS, srvr.get("Outstanding"));
+                set(ServerMetric.CONNECTIONS, srvr.get("Connections"));
+                set(ServerMetric.PACKETS_RECEIVED, srvr.get("Received"));
+                set(ServerMetric.PACKETS_SENT, srvr.get("Sent"));
+                set(ServerMetric.ZNODE_COUNT, srvr.get("Node count"));
+            }
+
+            final String wchs = send("wchs", timeoutMs);
+            final Matcher matcher = WATCHES.matcher(wchs);
+            if (matcher.find()) {
+                set(ServerMetric.WATCHING_CONNECTIONS, matcher.group(1));
+                set(ServerMetric.WATCHED_PATHS, matcher.group(2));
+            }
+            if (sample[ServerMetric.WATCH_COUNT.ordinal()] == -1) {
+                set(ServerMetric.WATCH_COUNT, FourLetterWords.parse(wchs, ':').get("Total watches"));
+            }
+
+            this.reachable = true;
+            this.mode = mode;
+            this.version = version;
+            if (mode == null) {
+                // e.g. "This ZooKeeper instance is not currently serving requests"
+                this.error = StringUtils.defaultIfBlank(srvrResponse.trim(), "Empty response to srvr");
+            } else {
+                this.error = null;
+                samples.add(now, sample);
+            }
+        } catch (final IOException e) {
+            this.reachable = false;
+            this.mode = null;
+            this.error = e.toString();
+        } finally {
+            polled = now;
+            polling.set(false);
+        }
+    }
+
+    /** Returns the server's status, with its latest {@code history} samples. */
+    EnsembleStatus.Server toStatus(int history) {
+        final int capacity = Math.max(history, 1);
+        final long[] times = new long[capacity];
+        final long[][] series = new long[METRICS.length][capacity];
+        final int numSamples = samples.copyLatest(capacity, times, series);
+
+        final Map<String, Long> current = Maps.newLinkedHashMap();
+        if (numSamples > 0) {
+            for (final ServerMetric metric : METRICS) {
+                final long value = series[metric.ordinal()][numSamples - 1];
+                if (value != -1) {
+                    current.put(metric.getName(), value);
+                }
+            }
+        }
+
+        EnsembleStatus.History samplesHistory = null;
+        if (history > 0) {
+            final Map<String, long[]> values = Maps.newLinkedHashMap();
+            for (final ServerMetric metric : METRICS) {
+                final long[] metricValues = Arrays.copyOf(series[metric.ordinal()], numSamples);
+                if (isKnown(metricValues)) {
+                    values.put(metric.getName(), metricValues);
+                }
+            }
+            samplesHistory = new EnsembleStatus.History(Arrays.copyOf(times, numSamples), values);
+        }
+        return new EnsembleStatus.Server(getServer(), polled, reachable, mode, version, error, current,
+                samplesHistory);
+    }
+
+    private String send(String command, int timeoutMs) throws IOException {
+        return FourLetterWords.send(host, port, command, timeoutMs);
+    }
+
+    private void set(ServerMetric metric, String value) {
+        sample[metric.ordinal()] = FourLetterWords.toLong(value);
+    }
+
+    private static boolean isKnown(long[] values) {
+        for (final long value : values) {
+            if (value != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.offline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A read-only, memory-mapped view of a file of any size. Since a single mapping is limited to 2GB, the file is mapped
+ * in segments. Consecutive segments overlap by a few bytes, so that primitives are always read from a single segment.
+ * All reads are absolute and therefore safe to be called concurrently.
+ */
+public final class MappedFile {
+
+    private static final int SEGMENT_SIZE = 1 << 30;
+    private static final int SEGMENT_OVERLAP = Long.BYTES;
+
+    private final File file;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+
+    private MappedFile(File file, long size, MappedByteBuffer[] segments) {
+        this.file = file;
+        this.size = size;
+        this.segments = segments;
+    }
+
+    public static MappedFile open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            final long size = channel.size();
+            final int numSegments = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            final MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                final long start = (long) i * SEGMENT_SIZE;
+                final long length = Math.min(size - start, SEGMENT_SIZE + SEGMENT_OVERLAP);
+                segments[i] = channel.map(MapMode.READ_ONLY, start, Math.max(0, length));
+            }
+            // The mappings remain valid after the channel is closed.
+            return new MappedFile(file, size, segments);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public byte getByte(long pos) {
+        return segment(pos).get(offset(pos));
+    }
+
+    public int getInt(long pos) {
+        checkBounds(pos, Integer.BYTES);
+        return segment(pos).getInt(offset(pos));
+    }
+
+    public long getLong(long pos) {
+        checkBounds(pos, Long.BYTES);
+        return segment(pos).getLong(offset(pos));
+    }
+
+    /** Copies {@code length} bytes starting at {@code pos} into {@code dst}. */
+    public void get(long pos, byte[] dst, int dstOffset, int length) {
+        checkBounds(pos, length);
+        while (length > 0) {
+            final ByteBuffer segment = ((ByteBuffer) segment(pos)).duplicate();
+            final int offset = offset(pos);
+            final int chunk = Math.min(length, SEGMENT_SIZE - offset);
+            ((Buffer) segment).position(offset);
+            segment.get(dst, dstOffset, chunk);
+            pos += chunk;
+            dstOffset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void checkBounds(long pos, int length) {
+        if (pos < 0 || pos + length > size) {
+            throw new IndexOutOfBoundsException("Cannot read " + length + " bytes at " + pos + " from " + file
+                    + " of size " + size);
+        }
+    }
+
+    private MappedByteBuffer segment(long pos) {
+        return segments[(int) (pos / SEGMENT_SIZE)];
+    }
+
+    private static int offset(long pos) {
+        return (int) (pos % SEGMENT_SIZE);
+    }
+
+}
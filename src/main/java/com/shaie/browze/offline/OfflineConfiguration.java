@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.offline;
+
+import java.util.Map;
+
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.Maps;
+
+/** Configures the on-disk images which can be browsed without a ZooKeeper server. */
+public class OfflineConfiguration {
+
+    /** Snapshot locations by name. A location is a ZooKeeper data directory, or a snapshot file in one. */
+    @NotNull
+    @JsonProperty
+    private Map<String, String> snapshots = Maps.newLinkedHashMap();
+
+    public Map<String, String> getSnapshots() {
+        return snapshots;
+    }
+
+    public void setSnapshots(Map<String, String> snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("snapshots", snapshots)
+                .build();
+    }
+
+}
@@ -0,0 +1,520 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.offline;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+
+import org.apache.curator.utils.ZKPaths;
+import org.apache.curator.utils.ZKPaths.PathAndNode;
+import org.apache.jute.BinaryInputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.DataTree;
+import org.apache.zookeeper.server.util.SerializeUtils;
+import org.apache.zookeeper.txn.CheckVersionTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.ErrorTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.shaie.browze.zk.ZnodeReader;
+
+/**
+ * A {@link ZnodeReader} over the image of an ensemble's data tree as recorded on disk, without any ZooKeeper server.
+ * The image is the latest snapshot in a data directory (or a given snapshot file), with the transactions which follow
+ * it in the directory's transaction logs replayed on top of it.
+ * <p>
+ * Nothing is read until the image is first browsed. Even then the snapshot is only {@link SnapshotIndex indexed},
+ * and the data and stat of its nodes are read from the memory-mapped file on demand. The nodes changed by the
+ * replayed transactions are kept in an in-memory overlay, which takes precedence over the snapshot.
+ */
+public class SnapshotImage implements ZnodeReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotImage.class);
+
+    private static final String SNAPSHOT_PREFIX = "snapshot.";
+    private static final String LOG_PREFIX = "log.";
+    private static final int LOG_MAGIC = 0x5a4b4c47; // "ZKLG"
+    private static final int FILE_HEADER_SIZE = 16; // magic, version, dbid
+    private static final byte END_OF_RECORD = 0x42; // 'B'
+
+    private final String name;
+    private final File location;
+
+    private volatile Image image;
+
+    /**
+     * @param location a ZooKeeper data directory (e.g. {@code version-2}) or a snapshot file in such a directory.
+     */
+    public SnapshotImage(String name, File location) {
+        this.name = name;
+        this.location = location;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public File getLocation() {
+        return location;
+    }
+
+    public boolean isLoaded() {
+        return image != null;
+    }
+
+    /** Returns the snapshot file of a loaded image, or {@code null} if it wasn't loaded yet. */
+    public File getSnapshotFile() {
+        final Image image = this.image;
+        return image == null ? null : image.snapshot.getFile();
+    }
+
+    /** Returns the zxid of a loaded image's snapshot, or -1 if it wasn't loaded yet. */
+    public long getSnapshotZxid() {
+        final Image image = this.image;
+        return image == null ? -1 : image.snapshotZxid;
+    }
+
+    /** Returns the zxid of the last transaction of a loaded image, or -1 if it wasn't loaded yet. */
+    public long getLastZxid() {
+        final Image image = this.image;
+        return image == null ? -1 : image.lastZxid;
+    }
+
+    /** Returns the number of nodes in a loaded image's snapshot, or -1 if it wasn't loaded yet. */
+    public int getNumSnapshotNodes() {
+        final Image image = this.image;
+        return image == null ? -1 : image.index.size();
+    }
+
+    /** Returns the number of transactions replayed on top of a loaded image's snapshot. */
+    public int getNumReplayedTxns() {
+        final Image image = this.image;
+        return image == null ? 0 : image.numTxns;
+    }
+
+    @Override
+    public byte[] getData(String path, Stat stat) throws Exception {
+        final Image image = load();
+        final OverlayNode node = image.overlay.get(path);
+        if (node != null) {
+            DataTree.copyStat(node.stat, stat);
+            toClientStat(stat);
+            return node.data;
+        }
+        final int index = image.lookup(path);
+        if (index == SnapshotIndex.NO_NODE) {
+            throw new NoNodeException(path);
+        }
+        DataTree.copyStat(image.index.stat(index), stat);
+        toClientStat(stat);
+        return image.index.data(index);
+    }
+
+    @Override
+    public List<String> getChildren(String path) throws Exception {
+        final Image image = load();
+        final OverlayNode node = image.overlay.get(path);
+        if (node != null) {
+            return Lists.newArrayList(node.children);
+        }
+        final int index = image.lookup(path);
+        if (index == SnapshotIndex.NO_NODE) {
+            throw new NoNodeException(path);
+        }
+        return image.index.childLabels(index);
+    }
+
+    @Override
+    public Stat checkExists(String path) throws Exception {
+        final Image image = load();
+        final OverlayNode node = image.overlay.get(path);
+        if (node != null) {
+            return toClientStat(copyOf(node.stat));
+        }
+        final int index = image.lookup(path);
+        return index == SnapshotIndex.NO_NODE ? null : toClientStat(image.index.stat(index));
+    }
+
+    @Override
+    public Map<String, Stat> getChildStats(String parent, List<String> children) throws Exception {
+        final Image image = load();
+        final Map<String, Stat> stats = Maps.newHashMapWithExpectedSize(children.size());
+        final List<String> inSnapshot = Lists.newArrayList();
+        for (final String child : children) {
+            final String childPath = ZKPaths.makePath(parent, child);
+            final OverlayNode node = image.overlay.get(childPath);
+            if (node != null) {
+                stats.put(child, toClientStat(copyOf(node.stat)));
+            } else if (!image.deleted.contains(childPath)) {
+                inSnapshot.add(child);
+            }
+        }
+        if (!inSnapshot.isEmpty()) {
+            final int parentIndex = image.index.lookup(parent);
+            if (parentIndex != SnapshotIndex.NO_NODE) {
+                for (final Map.Entry<String, Integer> child : image.index.children(parentIndex, inSnapshot)
+                        .entrySet()) {
+                    stats.put(child.getKey(), toClientStat(image.index.stat(child.getValue())));
+                }
+            }
+        }
+        return stats;
+    }
+
+    private Image load() throws IOException {
+        Image image = this.image;
+        if (image == null) {
+            synchronized (this) {
+                image = this.image;
+                if (image == null) {
+                    image = loadImage();
+                    this.image = image;
+                }
+            }
+        }
+        return image;
+    }
+
+    private Image loadImage() throws IOException {
+        final long start = System.nanoTime();
+        final File snapshotFile;
+        final File dataDir;
+        if (location.isDirectory()) {
+            dataDir = location;
+            final List<File> snapshots = listFiles(dataDir, SNAPSHOT_PREFIX);
+            if (snapshots.isEmpty()) {
+                throw new IOException("No snapshot files found in " + dataDir);
+            }
+            snapshotFile = snapshots.get(snapshots.size() - 1);
+        } else {
+            snapshotFile = location;
+            dataDir = location.getAbsoluteFile().getParentFile();
+        }
+
+        final long snapshotZxid = zxidOf(snapshotFile, SNAPSHOT_PREFIX);
+        LOGGER.info("Indexing snapshot [{}] of [{}]", snapshotFile, name);
+        final MappedFile snapshot = MappedFile.open(snapshotFile);
+        final Image image = new Image(snapshot, snapshotZxid, SnapshotIndex.build(snapshot));
+
+        // Replay the log which contains the snapshot's zxid, as well as all following logs.
+        final List<File> logs = listFiles(dataDir, LOG_PREFIX);
+        int firstLog = 0;
+        for (int i = 0; i < logs.size(); i++) {
+            if (zxidOf(logs.get(i), LOG_PREFIX) <= snapshotZxid) {
+                firstLog = i;
+            }
+        }
+        for (final File log : logs.subList(firstLog, logs.size())) {
+            image.replay(MappedFile.open(log));
+        }
+
+        LOGGER.info(String.format(Locale.ROOT,
+                "Loaded [%s]: %d nodes in snapshot 0x%x, %d transactions replayed up to 0x%x, in %d ms", name,
+                image.index.size(), snapshotZxid, image.numTxns, image.lastZxid,
+                (System.nanoTime() - start) / 1000000));
+        return image;
+    }
+
+    /** Returns the files in {@code dir} with the given prefix, sorted by their zxid. */
+    private static List<File> listFiles(File dir, final String prefix) {
+        final File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().startsWith(prefix) && zxidOf(file, prefix) >= 0;
+            }
+        });
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        final List<File> sorted = Arrays.asList(files);
+        Collections.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(zxidOf(f1, prefix), zxidOf(f2, prefix));
+            }
+        });
+        return sorted;
+    }
+
+    private static long zxidOf(File file, String prefix) {
+        try {
+            return Long.parseLong(file.getName().substring(prefix.length()), 16);
+        } catch (@SuppressWarnings("unused") final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Turns a persisted stat into the one ZooKeeper returns to clients. The persisted cversion only counts the created
+     * children, and like {@code DataNode.copyStat} every created child which is gone counts as a deleted one too.
+     */
+    private static Stat toClientStat(Stat stat) {
+        stat.setCversion(stat.getCversion() * 2 - stat.getNumChildren());
+        return stat;
+    }
+
+    private static Stat copyOf(Stat stat) {
+        final Stat copy = new Stat();
+        DataTree.copyStat(stat, copy);
+        return copy;
+    }
+
+    /** A node which was changed by the replayed transactions. */
+    private static final class OverlayNode {
+        byte[] data;
+        final Stat stat;
+        final Set<String> children;
+
+        OverlayNode(byte[] data, Stat stat, Set<String> children) {
+            this.data = data;
+            this.stat = stat;
+            this.children = children;
+        }
+    }
+
+    /** A loaded image. It is only modified while it is being loaded, and read-only afterwards. */
+    private static final class Image {
+        final MappedFile snapshot;
+        final long snapshotZxid;
+        final SnapshotIndex index;
+        final Map<String, OverlayNode> overlay = Maps.newHashMap();
+        final Set<String> deleted = Sets.newHashSet();
+        final Map<Long, Set<String>> ephemerals = Maps.newHashMap();
+        long lastZxid;
+        int numTxns = 0;
+
+        Image(MappedFile snapshot, long snapshotZxid, SnapshotIndex index) {
+            this.snapshot = snapshot;
+            this.snapshotZxid = snapshotZxid;
+            this.index = index;
+            this.lastZxid = snapshotZxid;
+            for (final Map.Entry<Long, List<String>> entry : index.getEphemerals().entrySet()) {
+                ephemerals.put(entry.getKey(), Sets.newHashSet(entry.getValue()));
+            }
+        }
+
+        /** Returns the node of the given path in the snapshot, unless the replayed transactions deleted it. */
+        int lookup(String path) {
+            return deleted.contains(path) ? SnapshotIndex.NO_NODE : index.lookup(path);
+        }
+
+        boolean exists(String path) {
+            return overlay.containsKey(path) || lookup(path) != SnapshotIndex.NO_NODE;
+        }
+
+        /** Returns the node at the given path in the overlay, copying it from the snapshot if needed. */
+        OverlayNode materialize(String path) {
+            OverlayNode node = overlay.get(path);
+            if (node == null) {
+                final int index = lookup(path);
+                if (index == SnapshotIndex.NO_NODE) {
+                    return null;
+                }
+                node = new OverlayNode(this.index.data(index), this.index.stat(index),
+                        Sets.newHashSet(this.index.childLabels(index)));
+                overlay.put(path, node);
+            }
+            return node;
+        }
+
+        /** Replays the transactions of a log file, which are newer than the snapshot. */
+        void replay(MappedFile log) throws IOException {
+            if (log.size() < FILE_HEADER_SIZE || log.getInt(0) != LOG_MAGIC) {
+                LOGGER.warn("Skipping [{}], not a ZooKeeper transaction log", log.getFile());
+                return;
+            }
+            long pos = FILE_HEADER_SIZE;
+            final Adler32 checksum = new Adler32();
+            // Logs are preallocated with zeros, so a zero length marks the end of the log.
+            while (pos + Long.BYTES + Integer.BYTES <= log.size()) {
+                final long crc = log.getLong(pos);
+                final int length = log.getInt(pos + Long.BYTES);
+                pos += Long.BYTES + Integer.BYTES;
+                if (length <= 0 || pos + length + 1 > log.size()) {
+                    break;
+                }
+                final byte[] bytes = new byte[length];
+                log.get(pos, bytes, 0, length);
+                pos += length;
+                checksum.reset();
+                checksum.update(bytes, 0, length);
+                if (log.getByte(pos++) != END_OF_RECORD || checksum.getValue() != crc) {
+                    LOGGER.warn("Stopped replaying [{}] at a partially written transaction", log.getFile());
+                    break;
+                }
+
+                final TxnHeader header = new TxnHeader();
+                final Record txn = SerializeUtils.deserializeTxn(bytes, header);
+                if (header.getZxid() > snapshotZxid) {
+                    apply(header, header.getType(), txn);
+                    lastZxid = header.getZxid();
+                    ++numTxns;
+                }
+            }
+        }
+
+        void apply(TxnHeader header, int type, Record txn) throws IOException {
+            switch (type) {
+                case OpCode.create: {
+                    final CreateTxn create = (CreateTxn) txn;
+                    create(create.getPath(), create.getData(), create.getEphemeral() ? header.getClientId() : 0,
+                            create.getParentCVersion(), header.getZxid(), header.getTime());
+                    break;
+                }
+                case OpCode.delete:
+                    delete(((DeleteTxn) txn).getPath(), header.getZxid());
+                    break;
+                case OpCode.setData: {
+                    final SetDataTxn setData = (SetDataTxn) txn;
+                    final OverlayNode node = materialize(setData.getPath());
+                    if (node != null) {
+                        node.data = setData.getData();
+                        node.stat.setMzxid(header.getZxid());
+                        node.stat.setMtime(header.getTime());
+                        node.stat.setVersion(setData.getVersion());
+                        node.stat.setDataLength(setData.getData() == null ? 0 : setData.getData().length);
+                    }
+                    break;
+                }
+                case OpCode.setACL: {
+                    final SetACLTxn setAcl = (SetACLTxn) txn;
+                    final OverlayNode node = materialize(setAcl.getPath());
+                    if (node != null) {
+                        node.stat.setAversion(setAcl.getVersion());
+                    }
+                    break;
+                }
+                case OpCode.closeSession: {
+                    final Set<String> owned = ephemerals.remove(header.getClientId());
+                    if (owned != null) {
+                        for (final String path : owned) {
+                            delete(path, header.getZxid());
+                        }
+                    }
+                    break;
+                }
+                case OpCode.multi: {
+                    // A failed multi logs the operations before the failed one too, but none of them is applied.
+                    final List<Txn> subTxns = ((MultiTxn) txn).getTxns();
+                    for (final Txn subTxn : subTxns) {
+                        if (subTxn.getType() == OpCode.error) {
+                            return;
+                        }
+                    }
+                    for (final Txn subTxn : subTxns) {
+                        final Record record = newTxnRecord(subTxn.getType());
+                        if (record != null) {
+                            record.deserialize(BinaryInputArchive.getArchive(
+                                    new ByteArrayInputStream(subTxn.getData())), "txn");
+                            apply(header, subTxn.getType(), record);
+                        }
+                    }
+                    break;
+                }
+                default:
+                    // sessions, errors and checks do not change the tree
+                    break;
+            }
+        }
+
+        private void create(String path, byte[] data, long ephemeralOwner, int parentCVersion, long zxid,
+                long time) {
+            if (exists(path)) {
+                // already in the snapshot, which is fuzzy
+                return;
+            }
+            final PathAndNode pathAndNode = ZKPaths.getPathAndNode(path);
+            final OverlayNode parent = materialize(pathAndNode.getPath());
+            if (parent == null) {
+                return;
+            }
+            final int dataLength = data == null ? 0 : data.length;
+            final Stat stat = new Stat(zxid, zxid, time, time, 0, 0, 0, ephemeralOwner, dataLength, 0, zxid);
+            overlay.put(path, new OverlayNode(data, stat, Sets.<String> newHashSet()));
+            deleted.remove(path);
+
+            parent.children.add(pathAndNode.getNode());
+            parent.stat.setCversion(parentCVersion == -1 ? parent.stat.getCversion() + 1 : parentCVersion);
+            parent.stat.setPzxid(zxid);
+            parent.stat.setNumChildren(parent.children.size());
+            if (ephemeralOwner != 0) {
+                Set<String> owned = ephemerals.get(ephemeralOwner);
+                if (owned == null) {
+                    owned = Sets.newHashSet();
+                    ephemerals.put(ephemeralOwner, owned);
+                }
+                owned.add(path);
+            }
+        }
+
+        private void delete(String path, long zxid) {
+            if (!exists(path)) {
+                return;
+            }
+            final PathAndNode pathAndNode = ZKPaths.getPathAndNode(path);
+            final OverlayNode parent = materialize(pathAndNode.getPath());
+            overlay.remove(path);
+            deleted.add(path);
+            if (parent != null) {
+                parent.children.remove(pathAndNode.getNode());
+                parent.stat.setPzxid(zxid);
+                parent.stat.setNumChildren(parent.children.size());
+            }
+        }
+
+        private static Record newTxnRecord(int type) {
+            switch (type) {
+                case OpCode.create:
+                    return new CreateTxn();
+                case OpCode.delete:
+                    return new DeleteTxn();
+                case OpCode.setData:
+                    return new SetDataTxn();
+                case OpCode.check:
+                    return new CheckVersionTxn();
+                case OpCode.error:
+                    return new ErrorTxn();
+                default:
+                    return null;
+            }
+        }
+    }
+
+}
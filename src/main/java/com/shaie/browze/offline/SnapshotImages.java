@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.offline;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/** The configured {@link SnapshotImage snapshot images}, by name. */
+public class SnapshotImages {
+
+    private final Map<String, SnapshotImage> images;
+
+    public SnapshotImages(OfflineConfiguration config) {
+        final ImmutableMap.Builder<String, SnapshotImage> images = ImmutableMap.builder();
+        for (final Map.Entry<String, String> snapshot : config.getSnapshots().entrySet()) {
+            images.put(snapshot.getKey(), new SnapshotImage(snapshot.getKey(), new File(snapshot.getValue())));
+        }
+        this.images = images.build();
+    }
+
+    public SnapshotImage get(String name) {
+        final SnapshotImage image = images.get(name);
+        if (image == null) {
+            throw new IllegalArgumentException("Unknown snapshot: " + name);
+        }
+        return image;
+    }
+
+    public Collection<SnapshotImage> getImages() {
+        return images.values();
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.offline;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * An index over the nodes of a ZooKeeper snapshot file. Building the index reads the file once, but decodes nothing
+ * but the paths. Only the offset of every node and the tree structure are kept in memory, in primitive arrays. A
+ * node's data and stat are decoded from the mapped file when they are asked for.
+ * <p>
+ * A snapshot (as written by ZooKeeper 3.4's {@code FileSnap}) consists of a file header, the sessions, the ACL cache
+ * and then the nodes in depth-first order, each written as its path followed by its data, ACL reference and persisted
+ * stat. The root's path is written as the empty string, and a path of {@code "/"} terminates the nodes.
+ */
+final class SnapshotIndex {
+
+    static final int ROOT = 0;
+    static final int NO_NODE = -1;
+
+    private static final int SNAP_MAGIC = 0x5a4b534e; // "ZKSN"
+    private static final int FILE_HEADER_SIZE = 16; // magic, version, dbid
+
+    // offsets of the fields of the persisted stat
+    private static final int STAT_CZXID = 0;
+    private static final int STAT_MZXID = 8;
+    private static final int STAT_CTIME = 16;
+    private static final int STAT_MTIME = 24;
+    private static final int STAT_VERSION = 32;
+    private static final int STAT_CVERSION = 36;
+    private static final int STAT_AVERSION = 40;
+    private static final int STAT_EPHEMERAL_OWNER = 44;
+    private static final int STAT_PZXID = 52;
+
+    private final MappedFile file;
+
+    /** The offset of each node's record, which begins with its path. */
+    private long[] offsets = new long[1024];
+    private int[] firstChild = new int[1024];
+    private int[] nextSibling = new int[1024];
+    private int[] numChildren = new int[1024];
+    private int size = 0;
+
+    /** The paths of the ephemeral nodes, by the session which owns them. */
+    private final Map<Long, List<String>> ephemerals = Maps.newHashMap();
+
+    private SnapshotIndex(MappedFile file) {
+        this.file = file;
+    }
+
+    static SnapshotIndex build(MappedFile file) throws IOException {
+        final SnapshotIndex index = new SnapshotIndex(file);
+        index.scan();
+        return index;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Returns the ephemeral nodes in the snapshot, by owning session. */
+    Map<Long, List<String>> getEphemerals() {
+        return ephemerals;
+    }
+
+    /** Returns the node at the given path, or {@link #NO_NODE} if it does not exist. */
+    int lookup(String path) {
+        int node = ROOT;
+        int start = 1;
+        while (node != NO_NODE && start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            node = child(node, path.substring(start, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /** Returns the child of {@code node} with the given label, or {@link #NO_NODE} if there is no such child. */
+    int child(int node, String label) {
+        final byte[] labelBytes = label.getBytes(Charsets.UTF_8);
+        final int childPathLength = pathLength(node) + 1 + labelBytes.length;
+        final byte[] candidate = new byte[labelBytes.length];
+        for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child]) {
+            // compare the lengths first, which rules out most children without reading their labels
+            if (pathLength(child) == childPathLength) {
+                file.get(offsets[child] + Integer.BYTES + childPathLength - labelBytes.length, candidate, 0,
+                        candidate.length);
+                if (Arrays.equals(candidate, labelBytes)) {
+                    return child;
+                }
+            }
+        }
+        return NO_NODE;
+    }
+
+    /** Returns the labels of the children of the given node. */
+    List<String> childLabels(int node) {
+        final List<String> labels = Lists.newArrayListWithCapacity(numChildren[node]);
+        final int labelOffset = pathLength(node) + 1;
+        for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child]) {
+            labels.add(readString(offsets[child]).substring(labelOffset));
+        }
+        return labels;
+    }
+
+    /**
+     * Returns the children of {@code node} with the given labels, keyed by label. Reads through the children once,
+     * and only decodes the labels of children whose path length matches one of the given labels.
+     */
+    Map<String, Integer> children(int node, Collection<String> labels) {
+        final int labelOffset = pathLength(node) + 1;
+        final Set<Integer> pathLengths = Sets.newHashSet();
+        for (final String label : labels) {
+            pathLengths.add(labelOffset + label.getBytes(Charsets.UTF_8).length);
+        }
+        final Set<String> wanted = Sets.newHashSet(labels);
+        final Map<String, Integer> found = Maps.newHashMapWithExpectedSize(labels.size());
+        for (int child = firstChild[node]; child != NO_NODE && found.size() < wanted.size();
+                child = nextSibling[child]) {
+            if (pathLengths.contains(pathLength(child))) {
+                final String label = readString(offsets[child]).substring(labelOffset);
+                if (wanted.contains(label)) {
+                    found.put(label, child);
+                }
+            }
+        }
+        return found;
+    }
+
+    byte[] data(int node) {
+        final long dataOffset = dataOffset(node);
+        final int length = file.getInt(dataOffset);
+        if (length < 0) {
+            return null;
+        }
+        final byte[] data = new byte[length];
+        file.get(dataOffset + Integer.BYTES, data, 0, length);
+        return data;
+    }
+
+    Stat stat(int node) {
+        final long dataOffset = dataOffset(node);
+        final int dataLength = Math.max(0, file.getInt(dataOffset));
+        final long statOffset = dataOffset + Integer.BYTES + dataLength + Long.BYTES;
+        final Stat stat = new Stat();
+        stat.setCzxid(file.getLong(statOffset + STAT_CZXID));
+        stat.setMzxid(file.getLong(statOffset + STAT_MZXID));
+        stat.setCtime(file.getLong(statOffset + STAT_CTIME));
+        stat.setMtime(file.getLong(statOffset + STAT_MTIME));
+        stat.setVersion(file.getInt(statOffset + STAT_VERSION));
+        stat.setCversion(file.getInt(statOffset + STAT_CVERSION));
+        stat.setAversion(file.getInt(statOffset + STAT_AVERSION));
+        stat.setEphemeralOwner(file.getLong(statOffset + STAT_EPHEMERAL_OWNER));
+        stat.setPzxid(file.getLong(statOffset + STAT_PZXID));
+        stat.setDataLength(dataLength);
+        stat.setNumChildren(numChildren[node]);
+        return stat;
+    }
+
+    private void scan() throws IOException {
+        final int magic = file.getInt(0);
+        if (magic != SNAP_MAGIC) {
+            throw new IOException(String.format(Locale.ROOT, "Not a ZooKeeper snapshot file: %s (magic=0x%x)",
+                    file.getFile(), magic));
+        }
+        long pos = FILE_HEADER_SIZE;
+
+        // sessions: count, followed by (id, timeout) pairs
+        final int numSessions = file.getInt(pos);
+        pos += Integer.BYTES + (long) numSessions * (Long.BYTES + Integer.BYTES);
+
+        // ACL cache: count, followed by (id, ACL list) pairs, where each ACL is (perms, scheme, id)
+        final int numAclLists = file.getInt(pos);
+        pos += Integer.BYTES;
+        for (int i = 0; i < numAclLists; i++) {
+            pos += Long.BYTES;
+            final int numAcls = file.getInt(pos);
+            pos += Integer.BYTES;
+            for (int j = 0; j < numAcls; j++) {
+                pos += Integer.BYTES;
+                pos = skipString(pos);
+                pos = skipString(pos);
+            }
+        }
+
+        // nodes, in depth-first order; the stack holds the path from the root to the last node
+        final Deque<Integer> stack = new ArrayDeque<>();
+        final Deque<String> stackPaths = new ArrayDeque<>();
+        while (true) {
+            final String path = readString(pos);
+            if (path.equals("/")) {
+                break;
+            }
+            final int node = add(pos);
+            if (node != ROOT) {
+                final String parentPath = path.substring(0, path.lastIndexOf('/'));
+                while (!stackPaths.isEmpty() && !stackPaths.peek().equals(parentPath)) {
+                    stack.pop();
+                    stackPaths.pop();
+                }
+                if (stack.isEmpty()) {
+                    throw new IOException("Corrupt snapshot, no parent for " + path + " in " + file.getFile());
+                }
+                final int parent = stack.peek();
+                nextSibling[node] = firstChild[parent];
+                firstChild[parent] = node;
+                ++numChildren[parent];
+            }
+            stack.push(node);
+            stackPaths.push(path);
+
+            final long dataOffset = pos + Integer.BYTES + file.getInt(pos);
+            final long statOffset = dataOffset + Integer.BYTES + Math.max(0, file.getInt(dataOffset)) + Long.BYTES;
+            final long ephemeralOwner = file.getLong(statOffset + STAT_EPHEMERAL_OWNER);
+            if (ephemeralOwner != 0) {
+                List<String> paths = ephemerals.get(ephemeralOwner);
+                if (paths == null) {
+                    paths = Lists.newArrayList();
+                    ephemerals.put(ephemeralOwner, paths);
+                }
+                paths.add(path);
+            }
+            pos = statOffset + STAT_PZXID + Long.BYTES;
+        }
+    }
+
+    private int add(long offset) {
+        if (size == offsets.length) {
+            final int newLength = size + (size >> 1);
+            offsets = Arrays.copyOf(offsets, newLength);
+            firstChild = Arrays.copyOf(firstChild, newLength);
+            nextSibling = Arrays.copyOf(nextSibling, newLength);
+            numChildren = Arrays.copyOf(numChildren, newLength);
+        }
+        offsets[size] = offset;
+        firstChild[size] = NO_NODE;
+        nextSibling[size] = NO_NODE;
+        numChildren[size] = 0;
+        return size++;
+    }
+
+    private int pathLength(int node) {
+        return file.getInt(offsets[node]);
+    }
+
+    private long dataOffset(int node) {
+        return offsets[node] + Integer.BYTES + pathLength(node);
+    }
+
+    private String readString(long pos) {
+        final int length = file.getInt(pos);
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        file.get(pos + Integer.BYTES, bytes, 0, length);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private long skipString(long pos) {
+        return pos + Integer.BYTES + Math.max(0, file.getInt(pos));
+    }
+
+}
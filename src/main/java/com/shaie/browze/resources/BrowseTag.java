@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.resources;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Builds the entity tag of a browse response from the stats of the nodes it returns: the browsed node, and with
+ * {@code full_hierarchy} also each node above it, whose children are returned too. A node's {@code mzxid} and
+ * {@code version} change with its data, and its {@code pzxid} and {@code cversion} with its children, so the tag
+ * changes whenever the node or its list of children does.
+ * <p>
+ * The tag is weak: it does not change when a child turns from a leaf to a directory or back, and the same tag is
+ * returned for every representation of the response, which is why browse responses declare that they vary by
+ * {@code Accept}.
+ */
+final class BrowseTag {
+
+    private final Hasher hasher = Hashing.murmur3_128().newHasher();
+
+    /** Creates a tag of a response of the given cluster or snapshot, whose zxids are unrelated to other sources. */
+    BrowseTag(String source) {
+        hasher.putString(source, StandardCharsets.UTF_8);
+    }
+
+    /** Adds the stat of the next node of the response, from the root down. */
+    BrowseTag add(Stat stat) {
+        hasher.putLong(stat.getMzxid())
+                .putLong(stat.getPzxid())
+                .putInt(stat.getVersion())
+                .putInt(stat.getCversion());
+        return this;
+    }
+
+    EntityTag toEntityTag() {
+        return new EntityTag(hasher.hash().toString(), true);
+    }
+
+}
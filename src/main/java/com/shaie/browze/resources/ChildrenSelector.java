@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.resources;
+
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+
+/**
+ * Selects the children of a node which are returned by browse. Children are filtered by an optional name prefix, and
+ * paged in name order: a page holds the first {@code limit} matching children whose name is greater than the
+ * {@code after} cursor, and the last name on a page is the cursor of the next one. Selecting a page only orders the
+ * children which make it into the page, rather than sorting them all.
+ */
+final class ChildrenSelector {
+
+    static final ChildrenSelector ALL = new ChildrenSelector(null, null, null);
+
+    private final String prefix;
+    private final String after;
+    private final Integer limit;
+
+    ChildrenSelector(String prefix, String after, Integer limit) {
+        this.prefix = Strings.emptyToNull(prefix);
+        this.after = Strings.emptyToNull(after);
+        this.limit = limit;
+    }
+
+    Selection select(List<String> children) {
+        if (prefix == null && after == null && limit == null) {
+            return new Selection(children, null);
+        }
+
+        final Iterable<String> matching = Iterables.filter(children, new Predicate<String>() {
+            @Override
+            public boolean apply(String input) {
+                return (prefix == null || input.startsWith(prefix)) && (after == null || input.compareTo(after) > 0);
+            }
+        });
+        if (limit == null) {
+            return new Selection(ImmutableList.copyOf(matching), null);
+        }
+
+        // Ask for one extra child to tell whether there is a next page.
+        final List<String> least = Ordering.natural().leastOf(matching, limit + 1);
+        if (least.size() <= limit) {
+            return new Selection(least, null);
+        }
+        final List<String> page = least.subList(0, limit);
+        return new Selection(page, page.get(limit - 1));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ChildrenSelector)) {
+            return false;
+        }
+        final ChildrenSelector other = (ChildrenSelector) obj;
+        return Objects.equal(prefix, other.prefix) && Objects.equal(after, other.after)
+                && Objects.equal(limit, other.limit);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(prefix, after, limit);
+    }
+
+    static final class Selection {
+        private final List<String> names;
+        private final String next;
+
+        Selection(List<String> names, String next) {
+            this.names = names;
+            this.next = next;
+        }
+
+        List<String> getNames() {
+            return names;
+        }
+
+        /** Returns the cursor of the next page, or {@code null} if this is the last page. */
+        String getNext() {
+            return next;
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.resources;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+import com.shaie.browze.zk.ZkMetrics;
+
+/**
+ * Counts the ZooKeeper operations which are made by each request, and returns their number in the
+ * {@value #ROUND_TRIPS_HEADER} response header. Streamed responses only count the operations which are made before
+ * the response is committed, and asynchronous responses the operations which are made before they are resumed.
+ */
+@Provider
+public class RoundTripsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String ROUND_TRIPS_HEADER = "X-ZooKeeper-Round-Trips";
+
+    private static final String REQUEST_OPERATIONS_PROPERTY = RoundTripsFilter.class.getName() + ".operations";
+
+    private final ZkMetrics metrics;
+
+    public RoundTripsFilter(ZkMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        requestContext.setProperty(REQUEST_OPERATIONS_PROPERTY, ZkMetrics.beginRequest());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+            throws IOException {
+        // the response of an asynchronous request is filtered on the thread which resumed it
+        final AtomicInteger requestOperations = (AtomicInteger) requestContext.getProperty(
+                REQUEST_OPERATIONS_PROPERTY);
+        if (requestOperations != null) {
+            responseContext.getHeaders().putSingle(ROUND_TRIPS_HEADER, metrics.endRequest(requestOperations));
+        }
+    }
+
+}
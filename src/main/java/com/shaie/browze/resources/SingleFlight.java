@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.resources;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Coalesces concurrent computations of the same key into a single flight, whose result all of them share. A
+ * computation which starts while a flight of its key is in progress joins it, rather than starting another, so its
+ * result may reflect reads which were made somewhat before it started. Nothing is kept once a flight lands, so this is
+ * not a cache.
+ * <p>
+ * Each caller gets its own future of the result. Cancelling it only cancels the flight once all its callers cancelled
+ * theirs, e.g. when all of them timed out.
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Flight> flights = Maps.newConcurrentMap();
+
+    /** Returns the result of the flight of {@code key}, joining the flight in progress or starting one. */
+    ListenableFuture<V> join(final K key, Supplier<ListenableFuture<V>> computation) {
+        while (true) {
+            final Flight flight = new Flight();
+            final Flight inProgress = flights.putIfAbsent(key, flight);
+            if (inProgress != null) {
+                final ListenableFuture<V> result = inProgress.join();
+                if (result != null) {
+                    return result;
+                }
+                // the flight was cancelled, and is about to be removed
+                flights.remove(key, inProgress);
+                continue;
+            }
+
+            final ListenableFuture<V> result = flight.join();
+            flight.shared.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    flights.remove(key, flight);
+                }
+            }, MoreExecutors.directExecutor());
+            flight.start(computation.get());
+            return result;
+        }
+    }
+
+    private final class Flight {
+
+        private final SettableFuture<V> shared = SettableFuture.create();
+        private ListenableFuture<V> computation;
+        private int callers;
+
+        /** Returns a future of the flight's result for another caller, or {@code null} if it was cancelled. */
+        synchronized ListenableFuture<V> join() {
+            if (shared.isCancelled()) {
+                return null;
+            }
+            ++callers;
+            final SettableFuture<V> result = SettableFuture.create();
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isCancelled()) {
+                        leave();
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+            Futures.addCallback(shared, new FutureCallback<V>() {
+                @Override
+                public void onSuccess(V value) {
+                    result.set(value);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    result.setException(t);
+                }
+            });
+            return result;
+        }
+
+        void start(ListenableFuture<V> future) {
+            synchronized (this) {
+                computation = future;
+                if (shared.isCancelled()) {
+                    future.cancel(false);
+                    return;
+                }
+            }
+            Futures.addCallback(future, new FutureCallback<V>() {
+                @Override
+                public void onSuccess(V value) {
+                    shared.set(value);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (t instanceof CancellationException) {
+                        shared.cancel(false);
+                    } else {
+                        shared.setException(t);
+                    }
+                }
+            });
+        }
+
+        private synchronized void leave() {
+            if (--callers == 0 && !shared.isDone()) {
+                shared.cancel(false);
+                if (computation != null) {
+                    computation.cancel(false);
+                }
+            }
+        }
+
+    }
+
+}
@@ -16,40 +16,121 @@
  */
 package com.shaie.browze.resources;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.framework.listen.Listenable;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.curator.utils.ZKPaths.PathAndNode;
+import org.apache.zookeeper.KeeperException.BadVersionException;
 import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.KeeperException.NodeExistsException;
+import org.apache.zookeeper.KeeperException.NotEmptyException;
 import org.apache.zookeeper.data.Stat;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import com.google.common.base.Function;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.shaie.browze.backup.BackupArchive;
+import com.shaie.browze.backup.Backups;
+import com.shaie.browze.batch.BatchConfiguration;
+import com.shaie.browze.batch.BatchReader;
+import com.shaie.browze.cache.ZnodeCache;
+import com.shaie.browze.changes.ChangeSubscription;
+import com.shaie.browze.data.ByteRange;
+import com.shaie.browze.data.DataConfiguration;
+import com.shaie.browze.data.DataOutput;
+import com.shaie.browze.data.DataPreviews;
+import com.shaie.browze.data.DataType;
+import com.shaie.browze.diff.SubtreeDiff;
+import com.shaie.browze.export.SubtreeExport;
+import com.shaie.browze.monitor.EnsembleMonitor;
+import com.shaie.browze.monitor.MonitorConfiguration;
+import com.shaie.browze.offline.SnapshotImage;
+import com.shaie.browze.offline.SnapshotImages;
+import com.shaie.browze.model.ArchiveStatus;
+import com.shaie.browze.model.BrowseResult;
+import com.shaie.browze.model.CacheStatus;
+import com.shaie.browze.model.SearchResult;
+import com.shaie.browze.model.SnapshotStatus;
+import com.shaie.browze.model.SubtreeStats;
 import com.shaie.browze.model.Tree;
 import com.shaie.browze.model.ZkNode;
 import com.shaie.browze.model.ZooStatus;
-
-import jersey.repackaged.com.google.common.collect.ImmutableList;
+import com.shaie.browze.search.SearchIndex;
+import com.shaie.browze.stats.StatsConfiguration;
+import com.shaie.browze.stats.SubtreeStatistics;
+import com.shaie.browze.write.SubtreeImports;
+import com.shaie.browze.zk.AsyncZnodeReader;
+import com.shaie.browze.zk.RoutingZnodeReader;
+import com.shaie.browze.zk.ImmediateZnodeReader;
+import com.shaie.browze.zk.ZkMetrics;
+import com.shaie.browze.zk.ZkSession;
+import com.shaie.browze.zk.ZkSessions;
+import com.shaie.browze.zk.ZnodeReader;
+import com.shaie.browze.zk.ZooKeeperConfiguration;
 
 @Path("/zoo")
 @Produces(MediaType.APPLICATION_JSON)
@@ -57,151 +138,1368 @@ public class ZooResource {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ZooResource.class);
 
-    private CuratorFramework curatorFramework;
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final String APPLICATION_GZIP = "application/gzip";
+
+    /** Lets clients keep browse responses, as long as they revalidate them with their entity tag. */
+    private static final CacheControl REVALIDATE = CacheControl.valueOf("no-cache");
+
+    private final ZkSessions zkSessions;
+    private final SnapshotImages snapshotImages;
+    private final ZooKeeperConfiguration zkConfig;
+    private final DataConfiguration dataConfig;
+    private final BatchConfiguration batchConfig;
+    private final SubtreeStatistics subtreeStatistics;
+    private final SubtreeImports subtreeImports;
+    private final Backups backups;
+    private final EnsembleMonitor ensembleMonitor;
+    private final ObjectMapper objectMapper;
+
+    /** Resumes asynchronous responses, which must never be written by the ZooKeeper callbacks that complete them. */
+    private final Executor responseExecutor;
+
+    /** Browses which are in progress, by source, path and parameters, shared by identical concurrent browses. */
+    private final SingleFlight<List<Object>, TaggedNode> browseFlights = new SingleFlight<>();
+
+    /** Checks of browse tags which are in progress, see {@link #browseFlights}. */
+    private final SingleFlight<List<Object>, EntityTag> tagFlights = new SingleFlight<>();
+
+    public ZooResource(ZkSessions zkSessions, SnapshotImages snapshotImages, ZooKeeperConfiguration zkConfig,
+            DataConfiguration dataConfig, BatchConfiguration batchConfig, SubtreeStatistics subtreeStatistics,
+            SubtreeImports subtreeImports, Backups backups, EnsembleMonitor ensembleMonitor,
+            ObjectMapper objectMapper, Executor responseExecutor) {
+        this.zkSessions = zkSessions;
+        this.snapshotImages = snapshotImages;
+        this.zkConfig = zkConfig;
+        this.dataConfig = dataConfig;
+        this.batchConfig = batchConfig;
+        this.subtreeStatistics = subtreeStatistics;
+        this.subtreeImports = subtreeImports;
+        this.backups = backups;
+        this.ensembleMonitor = ensembleMonitor;
+        this.objectMapper = objectMapper;
+        this.responseExecutor = responseExecutor;
+    }
 
     @Path("status")
     @GET
     @Timed
-    public Response status() {
+    public Response status(@QueryParam("cluster") String cluster) {
         final ZooStatus status;
-        if (curatorFramework != null) {
-            status = new ZooStatus(curatorFramework.getZookeeperClient().getCurrentConnectionString());
+        if (cluster == null && zkConfig.getDefaultCluster() == null && zkSessions.getClusters().size() != 1) {
+            status = new ZooStatus(null, null, false);
         } else {
-            status = new ZooStatus(null);
+            status = getStatus(zkSessions.resolve(cluster));
         }
 
         return Response.ok().entity(status).build();
     }
 
-    @Path("connect/{connectString}")
+    @Path("clusters")
+    @GET
+    @Timed
+    public Response clusters() {
+        final List<ZooStatus> statuses = Lists.newArrayList();
+        for (final String cluster : zkSessions.getClusters()) {
+            statuses.add(getStatus(cluster));
+        }
+
+        return Response.ok().entity(statuses).build();
+    }
+
+    /**
+     * Returns the status of each server of the given cluster, as it is polled in the background: its mode, latency,
+     * outstanding requests, watches, node count and more, along with its latest {@code history} samples of them, see
+     * {@link EnsembleMonitor}.
+     */
+    @Path("ensemble")
+    @GET
+    @Timed
+    public Response ensemble(@QueryParam("cluster") String cluster,
+            @DefaultValue("60") @QueryParam("history") int history) {
+        final MonitorConfiguration monitorConfig = ensembleMonitor.getConfig();
+        if (!monitorConfig.isEnabled()) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("Ensemble monitoring is not enabled")
+                    .build();
+        }
+        if (history < 0 || history > monitorConfig.getHistory()) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity(String.format(Locale.ROOT, "history must be between 0 and %d: %d",
+                            monitorConfig.getHistory(), history))
+                    .build();
+        }
+
+        return Response.ok().entity(ensembleMonitor.getStatus(zkSessions.resolve(cluster), history)).build();
+    }
+
+    @Path("snapshots")
+    @GET
+    @Timed
+    public Response snapshots() {
+        final List<SnapshotStatus> statuses = Lists.newArrayList();
+        for (final SnapshotImage image : snapshotImages.getImages()) {
+            final File snapshotFile = image.getSnapshotFile();
+            statuses.add(new SnapshotStatus(image.getName(), image.getLocation().getPath(), image.isLoaded(),
+                    snapshotFile == null ? null : snapshotFile.getPath(), image.getSnapshotZxid(),
+                    image.getLastZxid(), image.getNumSnapshotNodes(), image.getNumReplayedTxns()));
+        }
+
+        return Response.ok().entity(statuses).build();
+    }
+
+    @Path("archives")
+    @GET
+    @Timed
+    public Response archives() {
+        final List<ArchiveStatus> statuses = Lists.newArrayList();
+        for (final BackupArchive archive : backups.getArchives()) {
+            statuses.add(toArchiveStatus(archive));
+        }
+
+        return Response.ok().entity(statuses).build();
+    }
+
+    @Path("cache")
     @GET
     @Timed
-    public Response connect(@PathParam("connectString") final String connectString) {
-        if (curatorFramework != null) {
-            disconnectFromZk();
+    public Response cache(@QueryParam("cluster") String cluster) {
+        final ZkSession session = zkSessions.getOpenSession(zkSessions.resolve(cluster));
+        final ZnodeCache cache = session == null ? null : session.getZnodeCache();
+        final CacheStatus status;
+        if (cache != null) {
+            status = new CacheStatus(true,
+                    new CacheStatus.Counters(cache.getNodeCacheSize(), cache.getNodeCacheStats()),
+                    new CacheStatus.Counters(cache.getStatCacheSize(), cache.getStatCacheStats()));
+        } else {
+            status = new CacheStatus(false, null, null);
         }
 
-        connectToZk(connectString);
-        return Response.ok()
-                .entity(ImmutableMap.of("msg", "Successfully connected to ZooKeeper at " + connectString))
+        return Response.ok().entity(status).build();
+    }
+
+    /**
+     * Registers the ensemble at {@code connectString} as a cluster, unless it is already known, and waits until its
+     * session is connected. Sessions of other clusters are not affected. No thread waits for the connection, the
+     * response is resumed by the session's connection state listener.
+     */
+    @Path("connect/{connectString}")
+    @GET
+    @Timed
+    public void connect(@PathParam("connectString") final String connectString,
+            @Suspended final AsyncResponse asyncResponse) {
+        final ZkSession session = zkSessions.connect(connectString);
+        final String cluster = session.getCluster();
+        final Response connected = Response.ok()
+                .entity(ImmutableMap.of(
+                        "msg", "Successfully connected to ZooKeeper at " + connectString,
+                        "cluster", cluster))
                 .build();
+        final SettableFuture<Response> response = SettableFuture.create();
+        final ConnectionStateListener listener = new ConnectionStateListener() {
+            @Override
+            public void stateChanged(CuratorFramework client, ConnectionState newState) {
+                if (newState == ConnectionState.CONNECTED || newState == ConnectionState.RECONNECTED) {
+                    response.set(connected);
+                }
+            }
+        };
+        final Listenable<ConnectionStateListener> listenable = session.getCuratorFramework()
+                .getConnectionStateListenable();
+        listenable.addListener(listener);
+        response.addListener(new Runnable() {
+            @Override
+            public void run() {
+                listenable.removeListener(listener);
+                session.release();
+            }
+        }, MoreExecutors.directExecutor());
+
+        asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+            @Override
+            public void handleTimeout(AsyncResponse asyncResponse) {
+                response.cancel(false);
+                asyncResponse.resume(new IllegalStateException(String.format(Locale.ROOT,
+                        "Failed to establish connection with ZooKeeper at [%s] for %s", connectString,
+                        zkConfig.getConnectTimeout())));
+            }
+        });
+        asyncResponse.setTimeout(zkConfig.getConnectTimeout().toMilliseconds(), TimeUnit.MILLISECONDS);
+        Futures.addCallback(response, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response result) {
+                asyncResponse.resume(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // cancelled by the timeout handler, which resumed the response already
+            }
+        }, responseExecutor);
+        if (session.isConnected()) {
+            response.set(connected);
+        } else {
+            LOGGER.info("Waiting for connection with ZooKeeper at [{}]", connectString);
+        }
     }
 
+    /**
+     * Browses the node at {@code path} of the given cluster, or of the given offline snapshot image or backup archive,
+     * neither of which touches any ZooKeeper server. Only a preview of the node's data is returned, see {@link #data}.
+     * <p>
+     * The response is tagged by the stats of the returned nodes, see {@link BrowseTag}. A request with a matching
+     * {@code If-None-Match} header is answered with 304 after only checking that the nodes exist, without reading
+     * their data or children. Besides JSON, the response may be requested as Smile or CBOR. All of them carry the same
+     * tag, so the response varies by the {@code Accept} header, which caches must key it by as well.
+     * <p>
+     * The nodes are read asynchronously, so no thread waits for ZooKeeper, and with {@code full_hierarchy} all the
+     * nodes along the path are read concurrently. The response fails with 504 if it is not ready within the request
+     * timeout. With {@code sync}, the nodes are read past the cache, from servers which first caught up with the
+     * leader, so that the response reflects every write which completed before the request.
+     */
     @Path("browse/{path:.*}")
     @GET
     @Timed
-    public Response browse(@PathParam("path") final String path,
-            @DefaultValue("false") @QueryParam("full_hierarchy") boolean fullHierarchy) throws Exception {
-        if (curatorFramework == null) {
-            throw new IllegalStateException("Must first /connect to ZK!");
+    @Produces({ MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+            CborMessageBodyWriter.APPLICATION_CBOR })
+    public void browse(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @QueryParam("snapshot") String snapshot,
+            @QueryParam("archive") String archive,
+            @DefaultValue("false") @QueryParam("full_hierarchy") final boolean fullHierarchy,
+            @QueryParam("prefix") String prefix,
+            @QueryParam("after") String after,
+            @QueryParam("limit") Integer limit,
+            @DefaultValue("false") @QueryParam("sync") final boolean sync,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) final String ifNoneMatch,
+            @Context final Request request,
+            @Suspended AsyncResponse asyncResponse) {
+        if (limit != null && limit < 1) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("limit must be positive: " + limit)
+                    .build());
+            return;
+        }
+        if (countSources(cluster, snapshot, archive) > 1) {
+            asyncResponse.resume(tooManySources());
+            return;
+        }
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ChildrenSelector selector = new ChildrenSelector(prefix, after, limit);
+        final ZkSession session = snapshot == null && archive == null ? zkSessions.acquire(cluster) : null;
+        final AsyncZnodeReader reader = session != null
+                ? (sync ? session.getSyncedReader() : session.getAsyncZnodeReader())
+                : new ImmediateZnodeReader(offlineReader(snapshot, archive));
+        final String source = session != null ? session.getCluster() : offlineSource(snapshot, archive);
+        final Executor requestExecutor = ZkMetrics.requestExecutor(ZkMetrics.currentRequest());
+
+        final ListenableFuture<EntityTag> currentTag = ifNoneMatch != null
+                ? checkBrowseTag(reader, source, zkPath, fullHierarchy, sync)
+                : Futures.<EntityTag> immediateFuture(null);
+        final ListenableFuture<Response> response = Futures.transform(currentTag,
+                new AsyncFunction<EntityTag, Response>() {
+                    @Override
+                    public ListenableFuture<Response> apply(EntityTag current) throws Exception {
+                        if (ifNoneMatch != null) {
+                            if (current == null) {
+                                throw new NoNodeException(zkPath);
+                            }
+                            final ResponseBuilder notModified = request.evaluatePreconditions(current);
+                            if (notModified != null) {
+                                return Futures.immediateFuture(notModified
+                                        .cacheControl(REVALIDATE)
+                                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                                        .build());
+                            }
+                        }
+
+                        return Futures.transform(
+                                browseShared(reader, source, zkPath, fullHierarchy, selector, sync,
+                                        requestExecutor),
+                                new Function<TaggedNode, Response>() {
+                                    @Override
+                                    public Response apply(TaggedNode node) {
+                                        return Response.ok(node.zkNode)
+                                                .tag(node.tag)
+                                                .cacheControl(REVALIDATE)
+                                                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                                                .build();
+                                    }
+                                });
+                    }
+                }, requestExecutor);
+        resume(asyncResponse, response, session, zkPath);
+    }
+
+    /**
+     * Browses each of the given paths the way {@link #browse} does, with the same parameters for all of them, and
+     * returns their results in the order of the paths. The paths are browsed concurrently through a single session,
+     * and each distinct read is made once for the entire batch, see {@link BatchReader}. A path which fails, e.g.
+     * because it does not exist, gets the status and message of its error in its result, and does not fail the batch.
+     * Paths which are not browsed within the request timeout fail with 504.
+     */
+    @Path("batch")
+    @POST
+    @Timed
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+            CborMessageBodyWriter.APPLICATION_CBOR })
+    public void batchBrowse(List<String> paths,
+            @QueryParam("cluster") String cluster,
+            @QueryParam("snapshot") String snapshot,
+            @QueryParam("archive") String archive,
+            @DefaultValue("false") @QueryParam("full_hierarchy") final boolean fullHierarchy,
+            @QueryParam("prefix") String prefix,
+            @QueryParam("after") String after,
+            @QueryParam("limit") Integer limit,
+            @Suspended final AsyncResponse asyncResponse) {
+        if (paths == null || paths.isEmpty()) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("Specify a JSON array of the paths to browse")
+                    .build());
+            return;
+        }
+        if (paths.size() > batchConfig.getMaxPaths()) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity(String.format(Locale.ROOT, "Too many paths: %d, at most %d are allowed", paths.size(),
+                            batchConfig.getMaxPaths()))
+                    .build());
+            return;
+        }
+        if (limit != null && limit < 1) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("limit must be positive: " + limit)
+                    .build());
+            return;
+        }
+        if (countSources(cluster, snapshot, archive) > 1) {
+            asyncResponse.resume(tooManySources());
+            return;
+        }
+        final Set<String> zkPaths = Sets.newLinkedHashSet();
+        for (final String path : paths) {
+            zkPaths.add("/" + StringUtils.strip(Strings.nullToEmpty(path), "/"));
+        }
+        final ChildrenSelector selector = new ChildrenSelector(prefix, after, limit);
+        final ZkSession session = snapshot == null && archive == null ? zkSessions.acquire(cluster) : null;
+        final AsyncZnodeReader reader = new BatchReader(session != null
+                ? session.getAsyncZnodeReader()
+                : new ImmediateZnodeReader(offlineReader(snapshot, archive)));
+        final String source = session != null ? session.getCluster() : offlineSource(snapshot, archive);
+        final Executor requestExecutor = ZkMetrics.requestExecutor(ZkMetrics.currentRequest());
+
+        // A path is browsed once the path which is batchConfig.getConcurrency() places ahead of it is done, so that at
+        // most that many paths are browsed at a time.
+        final List<ListenableFuture<ZkNode>> nodes = Lists.newArrayListWithCapacity(zkPaths.size());
+        final List<ListenableFuture<BrowseResult>> results = Lists.newArrayListWithCapacity(zkPaths.size());
+        for (final String zkPath : zkPaths) {
+            final ListenableFuture<?> ahead = results.size() >= batchConfig.getConcurrency()
+                    ? results.get(results.size() - batchConfig.getConcurrency())
+                    : Futures.immediateFuture(null);
+            final ListenableFuture<ZkNode> node = Futures.transform(ahead, new AsyncFunction<Object, ZkNode>() {
+                @Override
+                public ListenableFuture<ZkNode> apply(Object input) {
+                    return Futures.transform(
+                            browseShared(reader, source, zkPath, fullHierarchy, selector, false, requestExecutor),
+                            TaggedNode.TO_NODE);
+                }
+            }, requestExecutor);
+            nodes.add(node);
+            results.add(Futures.withFallback(Futures.transform(node, new Function<ZkNode, BrowseResult>() {
+                @Override
+                public BrowseResult apply(ZkNode zkNode) {
+                    return new BrowseResult(zkPath, Status.OK.getStatusCode(), zkNode, null);
+                }
+            }), new FutureFallback<BrowseResult>() {
+                @Override
+                public ListenableFuture<BrowseResult> create(Throwable t) {
+                    return Futures.immediateFuture(toBrowseResult(zkPath, t));
+                }
+            }));
+        }
+
+        final ListenableFuture<List<BrowseResult>> allResults = Futures.allAsList(results);
+        if (session != null) {
+            allResults.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    session.release();
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+            @Override
+            public void handleTimeout(AsyncResponse asyncResponse) {
+                // answer with what is done by now, and stop browsing the rest
+                final List<BrowseResult> partialResults = Lists.newArrayListWithCapacity(results.size());
+                int i = 0;
+                for (final String zkPath : zkPaths) {
+                    final ListenableFuture<BrowseResult> result = results.get(i);
+                    if (result.isDone()) {
+                        partialResults.add(Futures.getUnchecked(result));
+                    } else {
+                        partialResults.add(new BrowseResult(zkPath, Status.GATEWAY_TIMEOUT.getStatusCode(), null,
+                                "Timed out after " + zkConfig.getRequestTimeout()));
+                    }
+                    ++i;
+                }
+                asyncResponse.resume(Response.ok(partialResults).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build());
+                // cancel the last paths first, so that cancelling a path does not start the paths behind it
+                for (i = nodes.size() - 1; i >= 0; i--) {
+                    nodes.get(i).cancel(false);
+                }
+            }
+        });
+        asyncResponse.setTimeout(zkConfig.getRequestTimeout().toMilliseconds(), TimeUnit.MILLISECONDS);
+        Futures.addCallback(allResults, new FutureCallback<List<BrowseResult>>() {
+            @Override
+            public void onSuccess(List<BrowseResult> batchResults) {
+                asyncResponse.resume(Response.ok(batchResults).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                asyncResponse.resume(t);
+            }
+        }, responseExecutor);
+    }
+
+    /**
+     * Returns aggregates over the subtree at {@code path}: its number of nodes and total data length, its {@code top}
+     * largest and widest nodes, its ephemeral nodes by owning session and its nodes by the age of their last
+     * modification. The subtree is crawled in parallel, and its stats are reused while its root does not change, see
+     * {@link SubtreeStatistics}. A live subtree is crawled past the cache, so that it neither sets watches on every
+     * node nor evicts the browsed nodes. The crawl runs off the request thread, and is cancelled if the stats are not
+     * ready within the request timeout, which fails the response with 504.
+     */
+    @Path("stats/{path:.*}")
+    @GET
+    @Timed
+    public void stats(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @QueryParam("snapshot") String snapshot,
+            @QueryParam("archive") String archive,
+            @QueryParam("top") Integer top,
+            @Suspended AsyncResponse asyncResponse) {
+        final StatsConfiguration statsConfig = subtreeStatistics.getConfig();
+        if (top != null && (top < 1 || top > statsConfig.getMaxTop())) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity(String.format(Locale.ROOT, "top must be between 1 and %d: %d", statsConfig.getMaxTop(),
+                            top))
+                    .build());
+            return;
+        }
+        if (countSources(cluster, snapshot, archive) > 1) {
+            asyncResponse.resume(tooManySources());
+            return;
+        }
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ZkSession session = snapshot == null && archive == null ? zkSessions.acquire(cluster) : null;
+        final ZnodeReader reader = session != null ? session.getRoutedReader() : offlineReader(snapshot, archive);
+        final String source = session != null ? session.getCluster() : offlineSource(snapshot, archive);
+        final ListenableFuture<SubtreeStats> stats = subtreeStatistics.get(reader, source, zkPath,
+                top != null ? top : statsConfig.getTop());
+        final ListenableFuture<Response> response = Futures.transform(stats, new Function<SubtreeStats, Response>() {
+            @Override
+            public Response apply(SubtreeStats subtreeStats) {
+                return Response.ok(subtreeStats).build();
+            }
+        });
+        resume(asyncResponse, response, session, zkPath);
+    }
+
+    /**
+     * Returns the data of the node at {@code path}, with a media type sniffed from its content. A single byte range
+     * of the raw data may be requested with the {@code Range} header. Alternatively, binary data may be returned as
+     * {@code hex} or {@code base64} text, and gzipped data may be decompressed by the server with {@code gunzip}.
+     * With {@code sync}, the data is read the way {@link #browse} reads it with {@code sync}.
+     */
+    @Path("data/{path:.*}")
+    @GET
+    @Timed
+    @Produces(MediaType.WILDCARD)
+    public void data(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @QueryParam("snapshot") String snapshot,
+            @QueryParam("archive") String archive,
+            @DefaultValue("raw") @QueryParam("encoding") String encoding,
+            @DefaultValue("false") @QueryParam("gunzip") final boolean gunzip,
+            @DefaultValue("false") @QueryParam("sync") boolean sync,
+            @HeaderParam("Range") final String range,
+            @Suspended AsyncResponse asyncResponse) {
+        final DataOutput.Encoding dataEncoding;
+        try {
+            dataEncoding = DataOutput.Encoding.valueOf(encoding.toUpperCase(Locale.ROOT));
+        } catch (@SuppressWarnings("unused") final IllegalArgumentException e) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("encoding must be one of raw, hex or base64: " + encoding)
+                    .build());
+            return;
+        }
+        if (countSources(cluster, snapshot, archive) > 1) {
+            asyncResponse.resume(tooManySources());
+            return;
+        }
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ZkSession session = snapshot == null && archive == null ? zkSessions.acquire(cluster) : null;
+        final AsyncZnodeReader reader = session != null
+                ? (sync ? session.getSyncedReader() : session.getAsyncZnodeReader())
+                : new ImmediateZnodeReader(offlineReader(snapshot, archive));
+        final ListenableFuture<Response> response = Futures.transform(reader.getDataAsync(zkPath, new Stat()),
+                new AsyncFunction<byte[], Response>() {
+                    @Override
+                    public ListenableFuture<Response> apply(byte[] nodeData) throws Exception {
+                        return Futures.immediateFuture(dataResponse(zkPath, nodeData == null ? new byte[0] : nodeData,
+                                dataEncoding, gunzip, range));
+                    }
+                });
+        resume(asyncResponse, response, session, zkPath);
+    }
+
+    /**
+     * Sets the data of the node at {@code path} of the given cluster to the request body, and returns the node's new
+     * stat. If {@code version} is given, the data is set only if it is still the node's version.
+     */
+    @Path("data/{path:.*}")
+    @PUT
+    @Timed
+    @Consumes(MediaType.WILDCARD)
+    public Response setData(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @DefaultValue("-1") @QueryParam("version") int version,
+            byte[] data) throws Exception {
+        if (!subtreeImports.getConfig().isEnabled()) {
+            return writesDisabled();
         }
         final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ZkSession session = zkSessions.acquire(cluster);
         try {
-            final Stat stat = new Stat();
-            final byte[] data = curatorFramework.getData().storingStatIn(stat).forPath(zkPath);
-            final Tree tree;
-            if (!fullHierarchy) {
-                final List<Tree> childNodes = getChildren(zkPath, stat);
-                final PathAndNode pathAndNode = ZKPaths.getPathAndNode(zkPath);
-                tree = new Tree(pathAndNode, childNodes, stat);
-            } else {
-                tree = getRootNode();
-                buildRecursiveTree(tree, zkPath.substring(1));
-            }
-            final ZkNode zkNode = new ZkNode(tree, data, stat);
-            return Response.ok(zkNode).build();
+            return Response.ok(zkSessions.getMetrics().setData(session.getCuratorFramework(), zkPath, data, version))
+                    .build();
         } catch (@SuppressWarnings("unused") final NoNodeException e) {
             return Response.status(Status.NOT_FOUND)
                     .type(MediaType.TEXT_PLAIN)
                     .entity("Path not found in ZooKeeper: " + zkPath)
                     .build();
+        } catch (@SuppressWarnings("unused") final BadVersionException e) {
+            return versionMismatch(zkPath, version);
+        } finally {
+            session.release();
+        }
+    }
+
+    /**
+     * Streams the subtree rooted at {@code path} as newline-delimited JSON records of path, stat and data. If
+     * {@code depth} is given, only nodes up to that depth below {@code path} are exported. The nodes are read past the
+     * cache, spread across the servers of the ensemble, which first catch up with the leader if {@code sync}.
+     */
+    @Path("export/{path:.*}")
+    @GET
+    @Timed
+    @Produces({ APPLICATION_NDJSON, APPLICATION_GZIP })
+    public Response export(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @QueryParam("depth") Integer depth,
+            @DefaultValue("false") @QueryParam("gzip") boolean gzip,
+            @DefaultValue("false") @QueryParam("sync") boolean sync) throws Exception {
+        if (depth != null && depth < 0) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("depth must not be negative: " + depth)
+                    .build();
+        }
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ZkSession session = zkSessions.acquire(cluster);
+        boolean streaming = false;
+        try {
+            final RoutingZnodeReader reader = sync ? session.getSyncedReader() : session.getRoutedReader();
+            if (reader.checkExists(zkPath) == null) {
+                return Response.status(Status.NOT_FOUND)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("Path not found in ZooKeeper: " + zkPath)
+                        .build();
+            }
+
+            final SubtreeExport export = new SubtreeExport(reader, objectMapper, zkPath, depth == null ? -1 : depth,
+                    gzip, zkConfig.getMaxInFlightRequests(), zkConfig.getRequestTimeout().toMilliseconds());
+            // The session is released once the export is written.
+            final StreamingOutput output = new StreamingOutput() {
+                @Override
+                public void write(OutputStream out) throws IOException, WebApplicationException {
+                    try {
+                        export.write(out);
+                    } finally {
+                        session.release();
+                    }
+                }
+            };
+            streaming = true;
+            if (!gzip) {
+                return Response.ok(output, APPLICATION_NDJSON).build();
+            }
+            final String fileName = zkPath.equals("/") ? "root" : zkPath.substring(1).replace('/', '_');
+            return Response.ok(output, APPLICATION_GZIP)
+                    .header("Content-Disposition", "attachment; filename=\"" + fileName + ".ndjson.gz\"")
+                    .build();
+        } finally {
+            if (!streaming) {
+                session.release();
+            }
+        }
+    }
+
+    /**
+     * Streams the differences between the subtree rooted at {@code path} and the one rooted at {@code to} as
+     * newline-delimited JSON records of the nodes which were added, removed or changed, see {@link SubtreeDiff}. The
+     * left side is read from the given cluster, snapshot or archive, and the right side from {@code to_cluster},
+     * {@code to_snapshot} or {@code to_archive}, or from the same source as the left side if none is given. {@code to}
+     * defaults to {@code path}, so a subtree may be diffed against an earlier snapshot or archive of itself. Live
+     * subtrees are read past the cache, like {@link #export} reads them.
+     */
+    @Path("diff/{path:.*}")
+    @GET
+    @Timed
+    @Produces(APPLICATION_NDJSON)
+    public Response diff(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @QueryParam("snapshot") String snapshot,
+            @QueryParam("archive") String archive,
+            @QueryParam("to") String to,
+            @QueryParam("to_cluster") String toCluster,
+            @QueryParam("to_snapshot") String toSnapshot,
+            @QueryParam("to_archive") String toArchive) throws Exception {
+        if (countSources(cluster, snapshot, archive) > 1 || countSources(toCluster, toSnapshot, toArchive) > 1) {
+            return tooManySources();
+        }
+        if (countSources(toCluster, toSnapshot, toArchive) == 0) {
+            toCluster = cluster;
+            toSnapshot = snapshot;
+            toArchive = archive;
+        }
+        final String leftPath = "/" + StringUtils.strip(path, "/");
+        final String rightPath = to == null ? leftPath : "/" + StringUtils.strip(to, "/");
+        final ZkSession leftSession = snapshot == null && archive == null ? zkSessions.acquire(cluster) : null;
+        ZkSession rightSession = null;
+        boolean streaming = false;
+        try {
+            if (toSnapshot == null && toArchive == null) {
+                rightSession = zkSessions.acquire(toCluster);
+            }
+            final String leftSource = leftSession != null ? leftSession.getCluster() : offlineSource(snapshot, archive);
+            final String rightSource = rightSession != null
+                    ? rightSession.getCluster()
+                    : offlineSource(toSnapshot, toArchive);
+            if (leftSource.equals(rightSource) && leftPath.equals(rightPath)) {
+                return Response.status(Status.BAD_REQUEST)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("Specify another path or source to diff against")
+                        .build();
+            }
+
+            final ZnodeReader leftReader = leftSession != null
+                    ? leftSession.getRoutedReader()
+                    : offlineReader(snapshot, archive);
+            final ZnodeReader rightReader = rightSession != null
+                    ? rightSession.getRoutedReader()
+                    : offlineReader(toSnapshot, toArchive);
+            final Stat leftStat = leftReader.checkExists(leftPath);
+            final Stat rightStat = rightReader.checkExists(rightPath);
+            if (leftStat == null || rightStat == null) {
+                return Response.status(Status.NOT_FOUND)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("Path not found in ZooKeeper: " + (leftStat == null ? leftPath : rightPath))
+                        .build();
+            }
+
+            final SubtreeDiff diff = new SubtreeDiff(
+                    leftSession != null ? leftSession.getRoutedReader() : new ImmediateZnodeReader(leftReader),
+                    leftPath, leftStat,
+                    rightSession != null ? rightSession.getRoutedReader() : new ImmediateZnodeReader(rightReader),
+                    rightPath, rightStat, objectMapper, zkConfig.getMaxInFlightRequests(),
+                    zkConfig.getRequestTimeout().toMilliseconds());
+            // The sessions are released once the diff is written.
+            final ZkSession finalRightSession = rightSession;
+            final StreamingOutput output = new StreamingOutput() {
+                @Override
+                public void write(OutputStream out) throws IOException, WebApplicationException {
+                    try {
+                        diff.write(out);
+                    } finally {
+                        release(leftSession, finalRightSession);
+                    }
+                }
+            };
+            streaming = true;
+            return Response.ok(output, APPLICATION_NDJSON).build();
+        } finally {
+            if (!streaming) {
+                release(leftSession, rightSession);
+            }
         }
     }
 
-    private void buildRecursiveTree(Tree parent, String path) throws Exception {
-        if (path.isEmpty()) {
+    /**
+     * Backs up the subtree rooted at {@code path} of the given cluster into a new archive, which may then be browsed
+     * like a snapshot. The backup is incremental to the latest archive of the subtree, so only the nodes which changed
+     * since are read in full, see {@link Backups}. Answers with 201 and the new archive, or with 200 and the latest
+     * archive if the subtree did not change since. The backup is not bound by the request timeout, only each of its
+     * reads is.
+     */
+    @Path("backup/{path:.*}")
+    @POST
+    @Timed
+    public void backup(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @Suspended AsyncResponse asyncResponse) {
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ZkSession session = zkSessions.acquire(cluster);
+        final ListenableFuture<BackupArchive> archive;
+        final BackupArchive latest = backups.getLatest(session.getCluster(), zkPath);
+        try {
+            archive = backups.backup(session.getRoutedReader(), session.getCluster(), zkPath);
+        } catch (final RuntimeException e) {
+            session.release();
+            throw e;
+        }
+        if (archive == null) {
+            session.release();
+            asyncResponse.resume(Response.status(Status.CONFLICT)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("A backup of the path is already running: " + zkPath)
+                    .build());
             return;
         }
-        final String label = extractLabel(path);
-        final String zkPath = ZKPaths.makePath(ZKPaths.makePath(parent.getParent(), parent.getLabel()), label);
-        final Stat stat = curatorFramework.checkExists().forPath(zkPath);
-        final Tree node = new Tree(ZKPaths.getPathAndNode(zkPath), getChildren(zkPath, stat), stat);
-        final List<Tree> parentChildren = parent.getChildren();
-        for (int i = 0; i < parentChildren.size(); i++) {
-            final Tree child = parentChildren.get(i);
-            if (child.getLabel().equals(label)) {
-                parentChildren.set(i, node); // replace the child node
-                buildRecursiveTree(node, StringUtils.substring(path, label.length() + 1));
-                return;
+        final ListenableFuture<Response> response = Futures.transform(archive, new Function<BackupArchive, Response>() {
+            @Override
+            public Response apply(BackupArchive result) {
+                return Response.status(result == latest ? Status.OK : Status.CREATED)
+                        .entity(toArchiveStatus(result))
+                        .build();
+            }
+        });
+        resume(asyncResponse, response, session, zkPath, false);
+    }
+
+    /**
+     * Creates the node at {@code path} of the given cluster, with the request body as its data. Missing parents are
+     * created as well if {@code parents}, with no data.
+     */
+    @Path("node/{path:.*}")
+    @POST
+    @Timed
+    @Consumes(MediaType.WILDCARD)
+    public Response create(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @DefaultValue("false") @QueryParam("parents") boolean parents,
+            byte[] data) throws Exception {
+        if (!subtreeImports.getConfig().isEnabled()) {
+            return writesDisabled();
+        }
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ZkSession session = zkSessions.acquire(cluster);
+        try {
+            final String createdPath = zkSessions.getMetrics().create(session.getCuratorFramework(), zkPath, data,
+                    parents);
+            return Response.status(Status.CREATED).entity(ImmutableMap.of("path", createdPath)).build();
+        } catch (@SuppressWarnings("unused") final NodeExistsException e) {
+            return Response.status(Status.CONFLICT)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("Path already exists in ZooKeeper: " + zkPath)
+                    .build();
+        } catch (@SuppressWarnings("unused") final NoNodeException e) {
+            return Response.status(Status.NOT_FOUND)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("Parent not found in ZooKeeper: " + ZKPaths.getPathAndNode(zkPath).getPath())
+                    .build();
+        } finally {
+            session.release();
+        }
+    }
+
+    /**
+     * Deletes the node at {@code path} of the given cluster, along with its subtree if {@code recursive}. If
+     * {@code version} is given, the node is deleted only if it is still the node's version.
+     */
+    @Path("node/{path:.*}")
+    @DELETE
+    @Timed
+    public Response delete(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @DefaultValue("-1") @QueryParam("version") int version,
+            @DefaultValue("false") @QueryParam("recursive") boolean recursive) throws Exception {
+        if (!subtreeImports.getConfig().isEnabled()) {
+            return writesDisabled();
+        }
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        if (zkPath.equals("/")) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("The root node cannot be deleted")
+                    .build();
+        }
+        final ZkSession session = zkSessions.acquire(cluster);
+        try {
+            zkSessions.getMetrics().delete(session.getCuratorFramework(), zkPath, version, recursive);
+            return Response.noContent().build();
+        } catch (@SuppressWarnings("unused") final NoNodeException e) {
+            return Response.status(Status.NOT_FOUND)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("Path not found in ZooKeeper: " + zkPath)
+                    .build();
+        } catch (@SuppressWarnings("unused") final NotEmptyException e) {
+            return Response.status(Status.CONFLICT)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("Path has children, delete it recursively: " + zkPath)
+                    .build();
+        } catch (@SuppressWarnings("unused") final BadVersionException e) {
+            return versionMismatch(zkPath, version);
+        } finally {
+            session.release();
+        }
+    }
+
+    /**
+     * Imports a subtree under {@code path} of the given cluster from the request body, which holds the records of an
+     * export, optionally gzipped. The subtree's root is imported as {@code path}, whose parent must exist. Nodes are
+     * created in batched transactions, and existing nodes fail the import unless they are {@code overwrite}n, in
+     * which case they are also required to be of their exported version if {@code check_versions}, see
+     * {@link SubtreeImports}. The progress is streamed as server-sent events.
+     */
+    @Path("import/{path:.*}")
+    @POST
+    @Consumes({ APPLICATION_NDJSON, APPLICATION_GZIP })
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public Response importSubtree(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @DefaultValue("false") @QueryParam("overwrite") boolean overwrite,
+            @DefaultValue("false") @QueryParam("check_versions") boolean checkVersions,
+            @Context HttpHeaders headers,
+            InputStream body) throws Exception {
+        if (!subtreeImports.getConfig().isEnabled()) {
+            return writesDisabled();
+        }
+        if (checkVersions && !overwrite) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("check_versions applies only with overwrite")
+                    .build();
+        }
+        final InputStream in;
+        if (MediaType.valueOf(APPLICATION_GZIP).isCompatible(headers.getMediaType())) {
+            try {
+                in = new GZIPInputStream(body);
+            } catch (@SuppressWarnings("unused") final IOException e) {
+                return Response.status(Status.BAD_REQUEST)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("The request body is not gzipped")
+                        .build();
+            }
+        } else {
+            in = body;
+        }
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ZkSession session = zkSessions.acquire(cluster);
+        boolean streaming = false;
+        try {
+            final ZnodeReader reader = session.getZnodeReader();
+            final String parentPath = ZKPaths.getPathAndNode(zkPath).getPath();
+            if (!zkPath.equals("/") && reader.checkExists(parentPath) == null) {
+                return Response.status(Status.NOT_FOUND)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("Parent not found in ZooKeeper: " + parentPath)
+                        .build();
+            }
+
+            final EventOutput output = new EventOutput();
+            // The session is held until the import ends.
+            subtreeImports.submit(session.getCuratorFramework(), zkSessions.getMetrics(), in, zkPath,
+                    reader.checkExists(zkPath) != null, overwrite, checkVersions,
+                    zkConfig.getRequestTimeout().toMilliseconds(), output, session.getCluster() + ":" + zkPath,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            session.release();
+                        }
+                    });
+            streaming = true;
+            return Response.ok(output).header("Cache-Control", "no-cache").build();
+        } finally {
+            if (!streaming) {
+                session.release();
+            }
+        }
+    }
+
+    /**
+     * Streams the changes of the subtree rooted at {@code path} as server-sent events. If {@code depth} is given, only
+     * nodes up to that depth below {@code path} are watched. A {@code ready} event is sent once the subtree was read,
+     * followed by {@code changes} events, each of which holds the coalesced changes of one batch window. A
+     * {@code reset} event means that changes were dropped because the client fell behind, so it should re-read the
+     * subtree. All clients of the same subtree and depth share a single set of watches.
+     */
+    @Path("changes/{path:.*}")
+    @GET
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public Response changes(@PathParam("path") final String path,
+            @QueryParam("cluster") String cluster,
+            @QueryParam("depth") Integer depth) throws Exception {
+        if (depth != null && depth < 0) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("depth must not be negative: " + depth)
+                    .build();
+        }
+        final String zkPath = "/" + StringUtils.strip(path, "/");
+        final ZkSession session = zkSessions.acquire(cluster);
+        boolean streaming = false;
+        try {
+            if (session.getZnodeReader().checkExists(zkPath) == null) {
+                return Response.status(Status.NOT_FOUND)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("Path not found in ZooKeeper: " + zkPath)
+                        .build();
+            }
+
+            final ChangeSubscription subscription = session.getChangeFeeds().subscribe(zkPath,
+                    depth == null ? -1 : depth);
+            final EventOutput output = new EventOutput();
+            // The session is held for as long as the client is subscribed, so that it is not closed as idle.
+            session.getChangeFeeds().stream(subscription, output,
+                    session.getCluster() + ":" + zkPath, new Runnable() {
+                        @Override
+                        public void run() {
+                            session.release();
+                        }
+                    });
+            streaming = true;
+            return Response.ok(output).header("Cache-Control", "no-cache").build();
+        } finally {
+            if (!streaming) {
+                session.release();
             }
         }
     }
 
-    private Tree getRootNode() throws Exception {
-        final Stat stat = curatorFramework.checkExists().forPath("/");
-        if (stat == null) {
-            throw new IllegalStateException("Cannot get stat of root node!");
+    /**
+     * Searches the given cluster for nodes whose path matches the glob {@code path}, whose path starts with
+     * {@code prefix} and whose data contains all the tokens of {@code q}. Any of the criteria may be omitted, but not
+     * all of them. Searches are served from an in-memory index, whose build is started by the first search of the
+     * cluster; until it completes, only the nodes indexed so far are found.
+     */
+    @Path("search")
+    @GET
+    @Timed
+    public Response search(@QueryParam("cluster") String cluster,
+            @QueryParam("q") String query,
+            @QueryParam("path") String glob,
+            @QueryParam("prefix") String prefix,
+            @DefaultValue("100") @QueryParam("limit") int limit) throws Exception {
+        query = StringUtils.trimToNull(query);
+        glob = StringUtils.trimToNull(glob);
+        prefix = StringUtils.trimToNull(prefix);
+        if (limit < 1) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("limit must be positive: " + limit)
+                    .build();
+        }
+        if (query == null && glob == null && prefix == null) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("Specify at least one of q, path or prefix")
+                    .build();
+        }
+        final ZkSession session = zkSessions.acquire(cluster);
+        try {
+            final SearchIndex index = session.getSearchIndex();
+            if (index == null) {
+                return Response.status(Status.BAD_REQUEST)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity("Search is not enabled")
+                        .build();
+            }
+            index.start();
+            final SearchIndex.Result result = index.search(glob,
+                    prefix == null ? null : "/" + StringUtils.stripStart(prefix, "/"), query, limit);
+            final List<SearchResult.Hit> hits = Lists.newArrayListWithCapacity(result.getHits().size());
+            for (final Map.Entry<String, Stat> hit : result.getHits().entrySet()) {
+                hits.add(new SearchResult.Hit(hit.getKey(), hit.getValue()));
+            }
+            return Response.ok(new SearchResult(session.getCluster(), index.isInitialized(), index.getNumNodes(),
+                    result.isTruncated(), hits)).build();
+        } finally {
+            session.release();
         }
+    }
 
-        return new Tree(ZKPaths.getPathAndNode("/"), getChildren("/", stat), stat);
+    /** Releases the given sessions, either of which may be {@code null}. */
+    private static void release(ZkSession... sessions) {
+        for (final ZkSession session : sessions) {
+            if (session != null) {
+                session.release();
+            }
+        }
     }
 
-    private List<Tree> getChildren(final String zkPath, final Stat stat) throws Exception {
-        if (stat.getNumChildren() == 0) {
-            return ImmutableList.of();
+    /** Returns the number of the given sources of nodes which are specified. */
+    private static int countSources(String cluster, String snapshot, String archive) {
+        return (cluster != null ? 1 : 0) + (snapshot != null ? 1 : 0) + (archive != null ? 1 : 0);
+    }
+
+    private static Response tooManySources() {
+        return Response.status(Status.BAD_REQUEST)
+                .type(MediaType.TEXT_PLAIN)
+                .entity("Specify only one of a cluster, a snapshot or an archive")
+                .build();
+    }
+
+    /** Returns the reader of the given snapshot image or backup archive, whichever is specified. */
+    private ZnodeReader offlineReader(String snapshot, String archive) {
+        return snapshot != null ? snapshotImages.get(snapshot) : backups.get(archive);
+    }
+
+    private static String offlineSource(String snapshot, String archive) {
+        return snapshot != null ? "snapshot:" + snapshot : "archive:" + archive;
+    }
+
+    private static ArchiveStatus toArchiveStatus(BackupArchive archive) {
+        return new ArchiveStatus(archive.getName(), archive.getCluster(), archive.getPath(),
+                archive.getHighWaterMark(), archive.getCreated(), archive.getBase(), archive.getNumNodes(),
+                archive.getNumDataReads(), archive.getNumChildrenReads(), archive.getSize());
+    }
+
+    private static Response writesDisabled() {
+        return Response.status(Status.FORBIDDEN)
+                .type(MediaType.TEXT_PLAIN)
+                .entity("Writes are not enabled")
+                .build();
+    }
+
+    private static Response versionMismatch(String zkPath, int version) {
+        return Response.status(Status.CONFLICT)
+                .type(MediaType.TEXT_PLAIN)
+                .entity(String.format(Locale.ROOT, "Version of [%s] is no longer %d", zkPath, version))
+                .build();
+    }
+
+    private ZooStatus getStatus(String cluster) {
+        final ZkSession session = zkSessions.getOpenSession(cluster);
+        if (session == null) {
+            return new ZooStatus(cluster, zkSessions.getConnectString(cluster), false);
+        }
+        final List<ZooStatus.ReadServer> readServers = session.getReadRouter().getStatus();
+        return new ZooStatus(cluster, zkSessions.getConnectString(cluster), session.isConnected(),
+                readServers.isEmpty() ? null : readServers);
+    }
+
+    /**
+     * Resumes the response once the given future completes, and releases the session, if any. A missing node is
+     * answered with 404. If the future does not complete within the request timeout, the response fails with 504 and
+     * the future is cancelled. The response is written on the {@link #responseExecutor}.
+     */
+    private void resume(final AsyncResponse asyncResponse, final ListenableFuture<Response> response,
+            final ZkSession session, final String zkPath) {
+        resume(asyncResponse, response, session, zkPath, true);
+    }
+
+    /**
+     * Resumes the response like {@link #resume(AsyncResponse, ListenableFuture, ZkSession, String)}, but without a
+     * timeout unless {@code timed}.
+     */
+    private void resume(final AsyncResponse asyncResponse, final ListenableFuture<Response> response,
+            final ZkSession session, final String zkPath, boolean timed) {
+        if (session != null) {
+            response.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    session.release();
+                }
+            }, MoreExecutors.directExecutor());
         }
+        if (timed) {
+            asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+                @Override
+                public void handleTimeout(AsyncResponse asyncResponse) {
+                    response.cancel(false);
+                    asyncResponse.resume(Response.status(Status.GATEWAY_TIMEOUT)
+                            .type(MediaType.TEXT_PLAIN)
+                            .entity("Timed out waiting for ZooKeeper after " + zkConfig.getRequestTimeout())
+                            .build());
+                }
+            });
+            asyncResponse.setTimeout(zkConfig.getRequestTimeout().toMilliseconds(), TimeUnit.MILLISECONDS);
+        }
+        Futures.addCallback(response, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response result) {
+                asyncResponse.resume(result);
+            }
 
-        final List<String> children = curatorFramework.getChildren().forPath(zkPath);
-        return Lists.transform(children, new Function<String, Tree>() {
             @Override
-            public Tree apply(String input) {
-                try {
-                    final Stat childStat = curatorFramework.checkExists().forPath(ZKPaths.makePath(zkPath, input));
-                    return new Tree(new PathAndNode(zkPath, input), ImmutableList.<Tree> of(), childStat);
-                } catch (final Exception e) {
-                    // not expected
-                    throw new RuntimeException(e);
+            public void onFailure(Throwable t) {
+                if (t instanceof NoNodeException) {
+                    asyncResponse.resume(Response.status(Status.NOT_FOUND)
+                            .type(MediaType.TEXT_PLAIN)
+                            .entity("Path not found in ZooKeeper: " + zkPath)
+                            .build());
+                } else if (!(t instanceof CancellationException)) {
+                    // a cancelled response timed out, and was resumed by the timeout handler already
+                    asyncResponse.resume(t);
                 }
             }
-        });
+        }, responseExecutor);
     }
 
-    private void connectToZk(String connectString) {
-        LOGGER.info("Connecting to ZooKeeper at [{}]", connectString);
-        this.curatorFramework = CuratorFrameworkFactory.builder()
-                .connectString(connectString)
-                .connectionTimeoutMs(30000)
-                .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+    /** Returns the response of {@link #data}, given the node's data. */
+    private static Response dataResponse(String zkPath, byte[] data, DataOutput.Encoding dataEncoding, boolean gunzip,
+            String range) throws IOException {
+        if (gunzip && !DataType.isGzip(data)) {
+            return Response.status(Status.BAD_REQUEST)
+                    .type(MediaType.TEXT_PLAIN)
+                    .entity("Data is not gzipped: " + zkPath)
+                    .build();
+        }
+
+        final String mediaType = dataEncoding == DataOutput.Encoding.RAW
+                ? DataPreviews.mediaType(data, gunzip)
+                : MediaType.TEXT_PLAIN;
+        final boolean ranged = dataEncoding == DataOutput.Encoding.RAW && !gunzip;
+        final ByteRange byteRange = ranged ? ByteRange.parse(range, data.length) : null;
+        if (byteRange == null) {
+            return Response.ok(new DataOutput(data, 0, data.length, dataEncoding, gunzip), mediaType)
+                    .header("Accept-Ranges", ranged ? "bytes" : "none")
+                    .build();
+        }
+        if (!byteRange.isSatisfiable()) {
+            return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", byteRange.toContentRange())
+                    .build();
+        }
+        final DataOutput output = new DataOutput(data, byteRange.getOffset(), byteRange.getLength(),
+                DataOutput.Encoding.RAW, false);
+        return Response.status(Status.PARTIAL_CONTENT)
+                .entity(output)
+                .type(mediaType)
+                .header("Accept-Ranges", "bytes")
+                .header("Content-Range", byteRange.toContentRange())
                 .build();
-        curatorFramework.start();
-        try {
-            LOGGER.info("Blocking until connection with ZooKeeper is established");
-            if (!curatorFramework.blockUntilConnected(10, TimeUnit.SECONDS)) {
-                throw new IllegalStateException(String.format(Locale.ROOT,
-                        "Failed to establish connection with ZooKeeper at [%s] for 10 seconds", connectString));
+    }
+
+    /**
+     * Returns the node at {@code zkPath}, as browse returns it, and adds the stats of the returned nodes to
+     * {@code tag}. Fails with {@link NoNodeException} if the node does not exist.
+     */
+    private ListenableFuture<ZkNode> browseNode(final AsyncZnodeReader reader, final String zkPath,
+            boolean fullHierarchy, final ChildrenSelector selector, final BrowseTag tag,
+            final Executor requestExecutor) {
+        final Stat stat = new Stat();
+        final ListenableFuture<byte[]> data = reader.getDataAsync(zkPath, stat);
+        final ListenableFuture<Tree> tree;
+        if (!fullHierarchy) {
+            tree = Futures.transform(data, new AsyncFunction<byte[], Tree>() {
+                @Override
+                public ListenableFuture<Tree> apply(byte[] input) {
+                    tag.add(stat);
+                    return newTree(reader, zkPath, stat, selector, requestExecutor);
+                }
+            }, requestExecutor);
+        } else {
+            tree = buildHierarchy(reader, zkPath, selector, tag, requestExecutor);
+        }
+        return Futures.transform(tree, new AsyncFunction<Tree, ZkNode>() {
+            @Override
+            public ListenableFuture<ZkNode> apply(final Tree root) {
+                return Futures.transform(data, new Function<byte[], ZkNode>() {
+                    @Override
+                    public ZkNode apply(byte[] nodeData) {
+                        return new ZkNode(root,
+                                DataPreviews.create(nodeData, (int) dataConfig.getPreviewSize().toBytes()), stat);
+                    }
+                });
+            }
+        });
+    }
+
+    /** Returns the result of a path of a batch which failed. */
+    private BrowseResult toBrowseResult(String zkPath, Throwable t) {
+        if (t instanceof NoNodeException) {
+            return new BrowseResult(zkPath, Status.NOT_FOUND.getStatusCode(), null,
+                    "Path not found in ZooKeeper: " + zkPath);
+        }
+        if (t instanceof CancellationException) {
+            return new BrowseResult(zkPath, Status.GATEWAY_TIMEOUT.getStatusCode(), null,
+                    "Timed out after " + zkConfig.getRequestTimeout());
+        }
+        LOGGER.warn("Failed to browse [{}] in a batch", zkPath, t);
+        return new BrowseResult(zkPath, Status.INTERNAL_SERVER_ERROR.getStatusCode(), null, String.valueOf(t));
+    }
+
+    /**
+     * Returns the tree of the root node, expanded along the path to the node at {@code zkPath}. The {@code selector}
+     * applies to the children of the last node on the path, which is the browsed node. All the nodes on the path are
+     * read concurrently, rather than one after the other.
+     */
+    private static ListenableFuture<Tree> buildHierarchy(AsyncZnodeReader reader, String zkPath,
+            ChildrenSelector selector, final BrowseTag tag, Executor requestExecutor) {
+        final List<String> paths = Lists.newArrayList(ancestorsAndSelf(zkPath));
+        final List<ListenableFuture<Stat>> stats = Lists.newArrayListWithCapacity(paths.size());
+        final List<ListenableFuture<Tree>> trees = Lists.newArrayListWithCapacity(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            final String nodePath = paths.get(i);
+            final ListenableFuture<Stat> stat = reader.checkExistsAsync(nodePath);
+            stats.add(stat);
+            trees.add(newTree(reader, nodePath, stat, i == paths.size() - 1 ? selector : ChildrenSelector.ALL,
+                    requestExecutor));
+        }
+        return Futures.transform(Futures.allAsList(trees), new Function<List<Tree>, Tree>() {
+            @Override
+            public Tree apply(List<Tree> nodes) {
+                final Tree root = nodes.get(0);
+                tag.add(Futures.getUnchecked(stats.get(0)));
+                for (int i = 1; i < nodes.size(); i++) {
+                    tag.add(Futures.getUnchecked(stats.get(i)));
+                    if (!nodes.get(i - 1).expand(nodes.get(i))) {
+                        break;
+                    }
+                }
+                return root;
+            }
+        });
+    }
+
+    /**
+     * Browses the node at {@code zkPath} through {@link #browseNode}, unless an identical browse is in progress, in
+     * which case its result is shared rather than read again, see {@link SingleFlight}. Synced browses are never
+     * shared, as a browse which is already in progress may have synced before the writes which they must see.
+     */
+    private ListenableFuture<TaggedNode> browseShared(final AsyncZnodeReader reader, final String source,
+            final String zkPath, final boolean fullHierarchy, final ChildrenSelector selector, boolean sync,
+            final Executor requestExecutor) {
+        final List<Object> key = Arrays.<Object> asList(source, zkPath, fullHierarchy, selector);
+        final Supplier<ListenableFuture<TaggedNode>> browse = new Supplier<ListenableFuture<TaggedNode>>() {
+            @Override
+            public ListenableFuture<TaggedNode> get() {
+                final BrowseTag tag = new BrowseTag(source);
+                return Futures.transform(browseNode(reader, zkPath, fullHierarchy, selector, tag, requestExecutor),
+                        new Function<ZkNode, TaggedNode>() {
+                            @Override
+                            public TaggedNode apply(ZkNode zkNode) {
+                                return new TaggedNode(zkNode, tag.toEntityTag());
+                            }
+                        });
+            }
+        };
+        return sync ? browse.get() : browseFlights.join(key, browse);
+    }
+
+    /**
+     * Returns the tag which browsing the node at {@code zkPath} would return, by only checking that the nodes of the
+     * response exist, or {@code null} if one of them does not. The nodes are checked concurrently, and identical
+     * checks which are in progress are shared, unless {@code sync}, see {@link #browseShared}.
+     */
+    private ListenableFuture<EntityTag> checkBrowseTag(final AsyncZnodeReader reader, final String source,
+            final String zkPath, final boolean fullHierarchy, boolean sync) {
+        final List<Object> key = Arrays.<Object> asList(source, zkPath, fullHierarchy);
+        final Supplier<ListenableFuture<EntityTag>> check = new Supplier<ListenableFuture<EntityTag>>() {
+            @Override
+            public ListenableFuture<EntityTag> get() {
+                final List<ListenableFuture<Stat>> stats = Lists.newArrayList();
+                for (final String path : fullHierarchy ? ancestorsAndSelf(zkPath) : ImmutableList.of(zkPath)) {
+                    stats.add(reader.checkExistsAsync(path));
+                }
+                return Futures.transform(Futures.allAsList(stats), new Function<List<Stat>, EntityTag>() {
+                    @Override
+                    public EntityTag apply(List<Stat> nodeStats) {
+                        final BrowseTag tag = new BrowseTag(source);
+                        for (final Stat stat : nodeStats) {
+                            if (stat == null) {
+                                return null;
+                            }
+                            tag.add(stat);
+                        }
+                        return tag.toEntityTag();
+                    }
+                });
             }
-            LOGGER.info("Started CuratorFramework");
-        } catch (final InterruptedException e) {
-            throw new IllegalStateException("Interrupted while waiting for connection with ZooKeeper", e);
+        };
+        return sync ? check.get() : tagFlights.join(key, check);
+    }
+
+    /** Returns the paths from the root down to {@code zkPath}, inclusive. */
+    private static Deque<String> ancestorsAndSelf(String zkPath) {
+        final Deque<String> paths = new ArrayDeque<>();
+        String nodePath = zkPath;
+        paths.push(nodePath);
+        while (!nodePath.equals("/")) {
+            nodePath = ZKPaths.getPathAndNode(nodePath).getPath();
+            paths.push(nodePath);
         }
+        return paths;
+    }
+
+    /** Returns the tree of the node at the given path, with the selected children, once its stat is read. */
+    private static ListenableFuture<Tree> newTree(final AsyncZnodeReader reader, final String zkPath,
+            ListenableFuture<Stat> stat, final ChildrenSelector selector, final Executor requestExecutor) {
+        return Futures.transform(stat, new AsyncFunction<Stat, Tree>() {
+            @Override
+            public ListenableFuture<Tree> apply(Stat nodeStat) throws Exception {
+                if (nodeStat == null) {
+                    throw new NoNodeException(zkPath);
+                }
+                return newTree(reader, zkPath, nodeStat, selector, requestExecutor);
+            }
+        }, requestExecutor);
     }
 
-    private void disconnectFromZk() {
-        if (curatorFramework != null) {
-            LOGGER.info("Disconnecting from ZooKeeper at [{}]",
-                    curatorFramework.getZookeeperClient().getCurrentConnectionString());
-            curatorFramework.close();
-            curatorFramework = null;
+    /** Returns the tree of the node at the given path, with the selected children. */
+    private static ListenableFuture<Tree> newTree(final AsyncZnodeReader reader, final String zkPath,
+            final Stat stat, final ChildrenSelector selector, Executor requestExecutor) {
+        final PathAndNode pathAndNode = ZKPaths.getPathAndNode(zkPath);
+        if (stat.getNumChildren() == 0) {
+            return Futures.immediateFuture(new Tree(pathAndNode, stat));
         }
+
+        return Futures.transform(reader.getChildrenAsync(zkPath), new AsyncFunction<List<String>, Tree>() {
+            @Override
+            public ListenableFuture<Tree> apply(List<String> children) {
+                final ChildrenSelector.Selection selection = selector.select(children);
+                return Futures.transform(reader.getChildStatsAsync(zkPath, selection.getNames()),
+                        new Function<Map<String, Stat>, Tree>() {
+                            @Override
+                            public Tree apply(Map<String, Stat> childStats) {
+                                return new Tree(pathAndNode, childStats, stat, selection.getNext());
+                            }
+                        });
+            }
+        }, requestExecutor);
     }
 
-    private static String extractLabel(String path) {
-        int idx = path.indexOf('/');
-        if (idx == -1) {
-            idx = path.length();
+    /** A browsed node and the tag of its response. */
+    private static final class TaggedNode {
+
+        static final Function<TaggedNode, ZkNode> TO_NODE = new Function<TaggedNode, ZkNode>() {
+            @Override
+            public ZkNode apply(TaggedNode node) {
+                return node.zkNode;
+            }
+        };
+
+        final ZkNode zkNode;
+        final EntityTag tag;
+
+        TaggedNode(ZkNode zkNode, EntityTag tag) {
+            this.zkNode = zkNode;
+            this.tag = tag;
         }
-        final String label = path.substring(0, idx);
-        return label.isEmpty() ? "/" : label;
+
     }
 
-}
\ No newline at end of file
+}
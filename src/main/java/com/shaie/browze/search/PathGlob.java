@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.search;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+/**
+ * A glob over znode paths. Within a path segment, {@code *} matches any characters and {@code ?} matches a single
+ * character, while a {@code **} segment matches any number of segments. A glob which does not start with {@code /}
+ * may match at any depth, e.g. <code>*&#47;leader*</code> is the same as <code>/**&#47;*&#47;leader*</code>.
+ */
+final class PathGlob {
+
+    private static final String ANY_PATH = "**";
+    private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+
+    // How a segment matches a label. Most segments are a literal with a leading or trailing *, which are matched
+    // without a regex since they are evaluated against every label of a subtree.
+    private static final int LITERAL = 0;
+    private static final int ANY_LABEL = 1;
+    private static final int PREFIX = 2;
+    private static final int SUFFIX = 3;
+    private static final int INFIX = 4;
+    private static final int REGEX = 5;
+
+    private final String[] segments;
+    private final int[] kinds;
+
+    /** The literal part of every segment, i.e. without its leading and trailing {@code *}. */
+    private final String[] literals;
+
+    /** The pattern of every {@link #REGEX} segment. */
+    private final Pattern[] patterns;
+
+    private PathGlob(List<String> segments) {
+        this.segments = segments.toArray(new String[segments.size()]);
+        this.kinds = new int[this.segments.length];
+        this.literals = new String[this.segments.length];
+        this.patterns = new Pattern[this.segments.length];
+        for (int i = 0; i < this.segments.length; i++) {
+            final String segment = this.segments[i];
+            final boolean leadingStar = segment.startsWith("*");
+            final boolean trailingStar = segment.length() > 1 && segment.endsWith("*");
+            final String literal = segment.substring(leadingStar ? 1 : 0,
+                    trailingStar ? segment.length() - 1 : segment.length());
+            literals[i] = literal;
+            if (segment.equals(ANY_PATH) || segment.equals("*")) {
+                kinds[i] = ANY_LABEL;
+            } else if (literal.indexOf('*') != -1 || literal.indexOf('?') != -1) {
+                kinds[i] = REGEX;
+                patterns[i] = Pattern.compile(toRegex(segment));
+            } else if (leadingStar) {
+                kinds[i] = trailingStar ? INFIX : SUFFIX;
+            } else {
+                kinds[i] = trailingStar ? PREFIX : LITERAL;
+            }
+        }
+    }
+
+    static PathGlob compile(String glob) {
+        final List<String> segments = Lists.newArrayList();
+        if (!glob.startsWith("/")) {
+            segments.add(ANY_PATH);
+        }
+        for (final String segment : PATH_SPLITTER.split(glob)) {
+            // consecutive ** segments only multiply the ways to match the same path
+            if (segment.equals(ANY_PATH) && !segments.isEmpty() && Iterables.getLast(segments).equals(ANY_PATH)) {
+                continue;
+            }
+            segments.add(segment);
+        }
+        return new PathGlob(segments);
+    }
+
+    int size() {
+        return segments.length;
+    }
+
+    boolean isAnyPath(int segment) {
+        return segments[segment].equals(ANY_PATH);
+    }
+
+    /** Returns the segment if it matches only itself, or {@code null} otherwise. */
+    String literal(int segment) {
+        return kinds[segment] == LITERAL ? segments[segment] : null;
+    }
+
+    /** Returns the literal which the segment matches as a prefix, e.g. {@code leader} for {@code leader*}. */
+    String labelPrefix(int segment) {
+        return kinds[segment] == PREFIX ? literals[segment] : null;
+    }
+
+    /** Returns whether the given label matches the segment, which must not be {@link #isAnyPath(int) **}. */
+    boolean matches(int segment, String label) {
+        switch (kinds[segment]) {
+            case LITERAL:
+                return label.equals(literals[segment]);
+            case ANY_LABEL:
+                return true;
+            case PREFIX:
+                return label.startsWith(literals[segment]);
+            case SUFFIX:
+                return label.endsWith(literals[segment]);
+            case INFIX:
+                return label.contains(literals[segment]);
+            default:
+                return patterns[segment].matcher(label).matches();
+        }
+    }
+
+    boolean matches(String path) {
+        return matches(PATH_SPLITTER.splitToList(path), 0, 0);
+    }
+
+    private boolean matches(List<String> labels, int label, int segment) {
+        if (segment == segments.length) {
+            return label == labels.size();
+        }
+        if (isAnyPath(segment)) {
+            for (int next = label; next <= labels.size(); next++) {
+                if (matches(labels, next, segment + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return label < labels.size() && matches(segment, labels.get(label)) && matches(labels, label + 1, segment + 1);
+    }
+
+    private static String toRegex(String segment) {
+        final StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            final char c = segment.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(segment.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < segment.length()) {
+            regex.append(Pattern.quote(segment.substring(literalStart)));
+        }
+        return regex.toString();
+    }
+
+}
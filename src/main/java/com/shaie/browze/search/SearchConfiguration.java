@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.search;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Size;
+
+/** Configures the {@link SearchIndex}. */
+public class SearchConfiguration {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    /** Only this many leading bytes of a node's data are tokenized. */
+    @NotNull
+    @JsonProperty
+    private Size maxIndexedDataSize = Size.kilobytes(64);
+
+    @Min(1)
+    @JsonProperty
+    private int maxTokensPerNode = 256;
+
+    @Min(1)
+    @JsonProperty
+    private int maxResults = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Size getMaxIndexedDataSize() {
+        return maxIndexedDataSize;
+    }
+
+    public void setMaxIndexedDataSize(Size maxIndexedDataSize) {
+        this.maxIndexedDataSize = maxIndexedDataSize;
+    }
+
+    public int getMaxTokensPerNode() {
+        return maxTokensPerNode;
+    }
+
+    public void setMaxTokensPerNode(int maxTokensPerNode) {
+        this.maxTokensPerNode = maxTokensPerNode;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("enabled", enabled)
+                .append("maxIndexedDataSize", maxIndexedDataSize)
+                .append("maxTokensPerNode", maxTokensPerNode)
+                .append("maxResults", maxResults)
+                .build();
+    }
+
+}
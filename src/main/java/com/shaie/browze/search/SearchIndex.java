@@ -0,0 +1,542 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.search;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.curator.utils.ZKPaths.PathAndNode;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An in-memory index of all the znodes of an ensemble, which answers path and data queries without touching
+ * ZooKeeper. Paths are kept in a trie of node labels, which serves prefix and {@link PathGlob glob} queries, and the
+ * {@link Tokenizer tokens} of every node's data are kept in an inverted index. Nodes are also indexed by their label,
+ * so that a glob which may match at any depth, such as {@code **}{@code /leader*}, only looks at the nodes whose label
+ * matches its last segment, rather than at the entire tree.
+ * <p>
+ * The index is built on its first use by a {@link TreeCache}, which crawls the tree with pipelined background reads
+ * and then keeps a data and a child watch on every node. Every change reported by the watches is applied to the
+ * index, so it is eventually consistent with the ensemble. The cache does not hold node data, only stats.
+ * <p>
+ * Posting lists are not updated in place when a node's tokens change. Instead, stale postings are skipped by the
+ * queries and dropped once they make up half of their list.
+ */
+public class SearchIndex implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchIndex.class);
+
+    private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+    private static final String[] NO_TOKENS = new String[0];
+
+    private final SearchConfiguration config;
+    private final TreeCache treeCache;
+
+    /** Guards the trie and postings, which are only modified by the single thread delivering cache events. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node("/", null);
+    private final Map<String, Postings> postings = Maps.newHashMap();
+    private final NavigableMap<String, Postings> labels = Maps.newTreeMap();
+    private long numNodes = 1;
+
+    private boolean started = false;
+    private long startNanos;
+    private volatile boolean initialized = false;
+
+    private final TreeCacheListener listener = new TreeCacheListener() {
+        @Override
+        public void childEvent(CuratorFramework client, TreeCacheEvent event) throws Exception {
+            switch (event.getType()) {
+                case NODE_ADDED:
+                case NODE_UPDATED:
+                    index(event.getData());
+                    break;
+                case NODE_REMOVED:
+                    remove(event.getData().getPath());
+                    break;
+                case INITIALIZED:
+                    initialized = true;
+                    LOGGER.info("Indexed [{}] nodes in [{}] ms", getNumNodes(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                    break;
+                default:
+                    // the tree cache refreshes all nodes once reconnected
+                    break;
+            }
+        }
+    };
+
+    public SearchIndex(CuratorFramework curatorFramework, SearchConfiguration config) {
+        this.config = config;
+        this.treeCache = TreeCache.newBuilder(curatorFramework, "/")
+                .setCacheData(false)
+                .setExecutor(new ThreadFactoryBuilder().setNameFormat("search-index-%d").setDaemon(true).build())
+                .build();
+        treeCache.getListenable().addListener(listener);
+    }
+
+    /** Starts building the index, unless it was already started. Queries see the nodes indexed so far. */
+    public synchronized void start() throws Exception {
+        if (!started) {
+            started = true;
+            startNanos = System.nanoTime();
+            treeCache.start();
+        }
+    }
+
+    /** Returns whether the initial crawl completed, i.e. whether queries see the entire tree. */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public long getNumNodes() {
+        lock.readLock().lock();
+        try {
+            return numNodes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the nodes which match all the given criteria, any of which may be {@code null}:
+     * <ul>
+     * <li>{@code glob}: the node's path matches the {@link PathGlob glob}.</li>
+     * <li>{@code prefix}: the node's path starts with the prefix.</li>
+     * <li>{@code query}: the node's data contains all the tokens of the query.</li>
+     * </ul>
+     * At most {@code limit} hits are returned, or the configured maximum if it is lower. Hits are sorted by path.
+     */
+    public Result search(String glob, String prefix, String query, int limit) {
+        final PathGlob pathGlob = glob == null ? null : PathGlob.compile(glob);
+        final boolean walkGlob = query == null && pathGlob != null && !isLabelSearch(pathGlob);
+        // a glob which is walked along the trie need not be matched again by the collector
+        final Collector collector = new Collector(Math.min(limit, config.getMaxResults()),
+                walkGlob ? null : pathGlob, prefix);
+        lock.readLock().lock();
+        try {
+            if (query != null) {
+                searchData(query, collector);
+            } else if (walkGlob) {
+                searchPath(root, pathGlob, 0, collector);
+            } else if (pathGlob != null) {
+                searchLabels(pathGlob, collector);
+            } else if (prefix != null) {
+                searchPrefix(prefix, collector);
+            } else {
+                throw new IllegalArgumentException("No search criteria");
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        final List<String> paths = collector.paths;
+        Collections.sort(paths);
+        final Map<String, Stat> hits = Maps.newLinkedHashMap();
+        for (final String path : paths) {
+            // the tree cache holds the latest stats, including of changes to children which do not modify the data
+            final ChildData data = treeCache.getCurrentData(path);
+            if (data != null && data.getStat() != null) {
+                hits.put(path, data.getStat());
+            }
+        }
+        return new Result(hits, collector.truncated);
+    }
+
+    @Override
+    public void close() {
+        treeCache.close();
+    }
+
+    private void searchData(String query, Collector collector) {
+        final List<String> tokens = Lists.newArrayList();
+        for (final String token : Tokenizer.tokenizeQuery(query)) {
+            if (postings.containsKey(token)) {
+                tokens.add(token);
+            } else {
+                // the token may still appear as a part of a longer token, e.g. a domain of a host name
+                tokens.addAll(Tokenizer.parts(token));
+            }
+        }
+        Postings shortest = null;
+        for (final String token : tokens) {
+            final Postings tokenPostings = postings.get(token);
+            if (tokenPostings == null) {
+                return;
+            }
+            if (shortest == null || tokenPostings.size < shortest.size) {
+                shortest = tokenPostings;
+            }
+        }
+        if (shortest == null) {
+            return;
+        }
+
+        for (int i = 0; i < shortest.size && !collector.truncated; i++) {
+            final Node node = shortest.nodes[i];
+            if (!node.removed && node.hasTokens(tokens)) {
+                collector.collect(node);
+            }
+        }
+    }
+
+    /** Returns whether the glob may match at any depth, and its last segment selects nodes by their label. */
+    private static boolean isLabelSearch(PathGlob glob) {
+        final int last = glob.size() - 1;
+        return glob.size() > 1 && glob.isAnyPath(0)
+                && (glob.literal(last) != null || glob.labelPrefix(last) != null);
+    }
+
+    private void searchLabels(PathGlob glob, Collector collector) {
+        final int last = glob.size() - 1;
+        final Collection<Postings> candidates;
+        final String literal = glob.literal(last);
+        if (literal != null) {
+            final Postings labelPostings = labels.get(literal);
+            candidates = labelPostings == null
+                    ? Collections.<Postings> emptyList()
+                    : Collections.singleton(labelPostings);
+        } else {
+            final String labelPrefix = glob.labelPrefix(last);
+            candidates = labels.subMap(labelPrefix, true, labelPrefix + Character.MAX_VALUE, false).values();
+        }
+        for (final Postings labelPostings : candidates) {
+            for (int i = 0; i < labelPostings.size && !collector.truncated; i++) {
+                final Node node = labelPostings.nodes[i];
+                if (labelPostings.contains(node)) {
+                    collector.collect(node);
+                }
+            }
+        }
+    }
+
+    private void searchPath(Node node, PathGlob glob, int segment, Collector collector) {
+        if (collector.truncated) {
+            return;
+        }
+        if (segment == glob.size()) {
+            collector.collect(node);
+            return;
+        }
+        if (glob.isAnyPath(segment)) {
+            searchPath(node, glob, segment + 1, collector);
+            if (node.children != null) {
+                for (final Node child : node.children.values()) {
+                    searchPath(child, glob, segment, collector);
+                }
+            }
+            return;
+        }
+        if (node.children == null) {
+            return;
+        }
+        final String literal = glob.literal(segment);
+        if (literal != null) {
+            final Node child = node.children.get(literal);
+            if (child != null) {
+                searchPath(child, glob, segment + 1, collector);
+            }
+        } else {
+            for (final Node child : node.children.values()) {
+                if (glob.matches(segment, child.label)) {
+                    searchPath(child, glob, segment + 1, collector);
+                }
+            }
+        }
+    }
+
+    private void searchPrefix(String prefix, Collector collector) {
+        if (prefix.equals("/")) {
+            collectSubtree(root, collector);
+            return;
+        }
+        final PathAndNode pathAndNode = ZKPaths.getPathAndNode(prefix);
+        final Node parent = find(pathAndNode.getPath());
+        if (parent == null || parent.children == null) {
+            return;
+        }
+        for (final Node child : parent.children.values()) {
+            if (child.label.startsWith(pathAndNode.getNode())) {
+                collectSubtree(child, collector);
+            }
+        }
+    }
+
+    private void collectSubtree(Node node, Collector collector) {
+        if (collector.truncated) {
+            return;
+        }
+        collector.collect(node);
+        if (node.children != null) {
+            for (final Node child : node.children.values()) {
+                collectSubtree(child, collector);
+            }
+        }
+    }
+
+    private Node find(String path) {
+        Node node = root;
+        for (final String label : PATH_SPLITTER.split(path)) {
+            node = node.children == null ? null : node.children.get(label);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private void index(ChildData data) {
+        final Set<String> tokens = Tokenizer.tokenize(data.getData(),
+                (int) config.getMaxIndexedDataSize().toBytes(), config.getMaxTokensPerNode());
+        lock.writeLock().lock();
+        try {
+            setTokens(getOrCreate(data.getPath()), tokens);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(String path) {
+        lock.writeLock().lock();
+        try {
+            final Node node = find(path);
+            if (node == null || node == root) {
+                return;
+            }
+            node.parent.children.remove(node.label);
+            removeSubtree(node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Node getOrCreate(String path) {
+        Node node = root;
+        for (final String label : PATH_SPLITTER.split(path)) {
+            if (node.children == null) {
+                node.children = Maps.newHashMap();
+            }
+            Node child = node.children.get(label);
+            if (child == null) {
+                Postings labelPostings = labels.get(label);
+                if (labelPostings == null) {
+                    labelPostings = new Postings(label, true);
+                    labels.put(label, labelPostings);
+                }
+                // share the label instance of the postings among all nodes
+                child = new Node(labelPostings.token, node);
+                labelPostings.add(child);
+                node.children.put(child.label, child);
+                ++numNodes;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private void removeSubtree(Node node) {
+        if (node.children != null) {
+            for (final Node child : node.children.values()) {
+                removeSubtree(child);
+            }
+        }
+        node.removed = true;
+        --numNodes;
+        setTokens(node, Collections.<String> emptySet());
+        retire(labels, labels.get(node.label));
+    }
+
+    /** Sets the node's tokens, where {@code tokens} is sorted. */
+    private void setTokens(Node node, Set<String> tokens) {
+        final String[] oldTokens = node.tokens;
+        final String[] newTokens = tokens.isEmpty() ? NO_TOKENS : new String[tokens.size()];
+        int i = 0;
+        for (final String token : tokens) {
+            Postings tokenPostings = postings.get(token);
+            if (tokenPostings == null) {
+                tokenPostings = new Postings(token, false);
+                postings.put(token, tokenPostings);
+            }
+            if (!node.hasToken(token)) {
+                tokenPostings.add(node);
+            }
+            // share the token instance of the postings among all nodes
+            newTokens[i++] = tokenPostings.token;
+        }
+        node.tokens = newTokens;
+        for (final String token : oldTokens) {
+            if (!tokens.contains(token)) {
+                retire(postings, postings.get(token));
+            }
+        }
+    }
+
+    /** Accounts for a stale posting in the list, and drops the stale postings once they are half of the list. */
+    private static void retire(Map<String, Postings> index, Postings stalePostings) {
+        if (++stalePostings.stale * 2 < stalePostings.size) {
+            return;
+        }
+        final Set<Node> live = Sets.newIdentityHashSet();
+        for (int i = 0; i < stalePostings.size; i++) {
+            final Node node = stalePostings.nodes[i];
+            if (stalePostings.contains(node)) {
+                live.add(node);
+            }
+        }
+        if (live.isEmpty()) {
+            index.remove(stalePostings.token);
+            return;
+        }
+        stalePostings.nodes = live.toArray(new Node[live.size()]);
+        stalePostings.size = stalePostings.nodes.length;
+        stalePostings.stale = 0;
+    }
+
+    /** The hits of a query, and whether there were more hits than the limit. */
+    public static final class Result {
+        private final Map<String, Stat> hits;
+        private final boolean truncated;
+
+        Result(Map<String, Stat> hits, boolean truncated) {
+            this.hits = hits;
+            this.truncated = truncated;
+        }
+
+        /** Returns the stats of the hits, keyed and sorted by path. */
+        public Map<String, Stat> getHits() {
+            return hits;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    private static final class Node {
+        final String label;
+        final Node parent;
+        Map<String, Node> children;
+        String[] tokens = NO_TOKENS;
+        boolean removed;
+
+        Node(String label, Node parent) {
+            this.label = label;
+            this.parent = parent;
+        }
+
+        String path() {
+            if (parent == null) {
+                return "/";
+            }
+            return ZKPaths.makePath(parent.path(), label);
+        }
+
+        boolean hasToken(String token) {
+            return Arrays.binarySearch(tokens, token) >= 0;
+        }
+
+        boolean hasTokens(List<String> tokens) {
+            for (final String token : tokens) {
+                if (!hasToken(token)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** The nodes which have a token in their data, or the nodes with a given label. */
+    private static final class Postings {
+        final String token;
+        final boolean label;
+        Node[] nodes = new Node[1];
+        int size;
+        int stale;
+
+        Postings(String token, boolean label) {
+            this.token = token;
+            this.label = label;
+        }
+
+        /** Returns whether the posting of the node is live, i.e. it has the token or label. */
+        boolean contains(Node node) {
+            return !node.removed && (label ? node.label.equals(token) : node.hasToken(token));
+        }
+
+        void add(Node node) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            nodes[size++] = node;
+        }
+    }
+
+    /** Collects the distinct nodes which match the glob and prefix, up to the limit. */
+    private static final class Collector {
+        final int limit;
+        final PathGlob glob;
+        final String prefix;
+        final Set<Node> seen = Sets.newIdentityHashSet();
+        final List<String> paths = Lists.newArrayList();
+        boolean truncated;
+
+        Collector(int limit, PathGlob glob, String prefix) {
+            this.limit = limit;
+            this.glob = glob;
+            this.prefix = prefix;
+        }
+
+        void collect(Node node) {
+            if (!seen.add(node)) {
+                return;
+            }
+            final String path = node.path();
+            if ((prefix != null && !path.startsWith(prefix)) || (glob != null && !glob.matches(path))) {
+                return;
+            }
+            if (paths.size() == limit) {
+                truncated = true;
+                return;
+            }
+            paths.add(path);
+        }
+    }
+
+}
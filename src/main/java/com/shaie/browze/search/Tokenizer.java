@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Splits znode data into lower-cased tokens. A token is a run of letters, digits and the separators {@code .-_},
+ * such as {@code kafka-1.example.com} or {@code 10.0.0.1}. Tokens which contain separators are also split into their
+ * parts, so that {@code example} finds the former as well. Data which does not look like text is not tokenized.
+ */
+final class Tokenizer {
+
+    static final int MAX_TOKEN_LENGTH = 64;
+
+    private Tokenizer() {
+        // no instances
+    }
+
+    /** Returns the sorted tokens of the first {@code maxBytes} bytes of {@code data}. */
+    static Set<String> tokenize(byte[] data, int maxBytes, int maxTokens) {
+        final Set<String> tokens = Sets.newTreeSet();
+        if (data == null || data.length == 0) {
+            return tokens;
+        }
+        final String text = new String(data, 0, Math.min(data.length, maxBytes), StandardCharsets.UTF_8);
+        if (!isText(text)) {
+            return tokens;
+        }
+        tokenize(text, true, maxTokens, tokens);
+        return tokens;
+    }
+
+    /** Returns the tokens of a query, without splitting them into their parts. */
+    static Set<String> tokenizeQuery(String query) {
+        final Set<String> tokens = Sets.newLinkedHashSet();
+        tokenize(query, false, Integer.MAX_VALUE, tokens);
+        return tokens;
+    }
+
+    /** Splits a token on its separators, e.g. into the labels of a host name. */
+    static Set<String> parts(String token) {
+        final Set<String> parts = Sets.newLinkedHashSet();
+        int start = 0;
+        for (int i = 0; i <= token.length(); i++) {
+            if (i == token.length() || isSeparator(token.charAt(i))) {
+                if (i > start) {
+                    parts.add(token.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return parts;
+    }
+
+    private static void tokenize(String text, boolean withParts, int maxTokens, Collection<String> tokens) {
+        int start = -1;
+        for (int i = 0; i <= text.length() && tokens.size() < maxTokens; i++) {
+            final boolean tokenChar = i < text.length() && isTokenChar(text.charAt(i));
+            if (tokenChar && start == -1) {
+                start = i;
+            } else if (!tokenChar && start != -1) {
+                addToken(text, start, i, withParts, tokens);
+                start = -1;
+            }
+        }
+    }
+
+    private static void addToken(String text, int start, int end, boolean withParts, Collection<String> tokens) {
+        while (start < end && isSeparator(text.charAt(start))) {
+            ++start;
+        }
+        while (end > start && isSeparator(text.charAt(end - 1))) {
+            --end;
+        }
+        if (start == end || end - start > MAX_TOKEN_LENGTH) {
+            return;
+        }
+        final String token = text.substring(start, end).toLowerCase(Locale.ROOT);
+        tokens.add(token);
+        if (withParts) {
+            final Set<String> parts = parts(token);
+            if (parts.size() > 1) {
+                tokens.addAll(parts);
+            }
+        }
+    }
+
+    /** Returns whether most characters are printable, i.e. the data was not binary. */
+    private static boolean isText(String text) {
+        int numBinary = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '\uFFFD' || (Character.isISOControl(c) && !Character.isWhitespace(c))) {
+                ++numBinary;
+            }
+        }
+        return numBinary * 10 <= text.length();
+    }
+
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || isSeparator(c);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '.' || c == '-' || c == '_';
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.stats;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+
+/** Configures the {@link SubtreeStatistics subtree statistics}. */
+public class StatsConfiguration {
+
+    /** The number of nodes of all crawls which are read concurrently. */
+    @Min(1)
+    @Max(256)
+    @JsonProperty
+    private int concurrency = 8;
+
+    /** The number of largest and widest nodes which are reported, unless a request asks for another number. */
+    @Min(1)
+    @JsonProperty
+    private int top = 20;
+
+    /** The maximum number of largest and widest nodes which a request may ask for. */
+    @Min(1)
+    @JsonProperty
+    private int maxTop = 1000;
+
+    /**
+     * Statistics are reused until the {@code pzxid} or {@code mzxid} of the subtree's root changes, or for at most this
+     * long, since changes further down the subtree do not change the root.
+     */
+    @NotNull
+    @JsonProperty
+    private Duration maxAge = Duration.minutes(1);
+
+    /** The number of computed statistics which are kept. */
+    @Min(0)
+    @JsonProperty
+    private int cacheSize = 100;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public void setTop(int top) {
+        this.top = top;
+    }
+
+    public int getMaxTop() {
+        return maxTop;
+    }
+
+    public void setMaxTop(int maxTop) {
+        this.maxTop = maxTop;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("concurrency", concurrency)
+                .append("top", top)
+                .append("maxTop", maxTop)
+                .append("maxAge", maxAge)
+                .append("cacheSize", cacheSize)
+                .build();
+    }
+
+}
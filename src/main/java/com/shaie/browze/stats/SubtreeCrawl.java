@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.stats;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.shaie.browze.zk.ZkMetrics;
+import com.shaie.browze.zk.ZnodeReader;
+
+/**
+ * Crawls the subtree of a node: reads its children with their stats, adds the leaves to its totals, and forks a crawl
+ * of each child which has children of its own. Nodes which are deleted while they are crawled are skipped. Once the
+ * crawl is cancelled, none of its nodes is read any more, and it fails with {@link CancellationException}.
+ */
+final class SubtreeCrawl extends RecursiveTask<SubtreeTotals> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ZnodeReader reader;
+    private final String path;
+    private final Stat stat;
+    private final int top;
+    private final long now;
+    private final AtomicInteger requestOperations;
+    private final AtomicBoolean cancelled;
+
+    SubtreeCrawl(ZnodeReader reader, String path, Stat stat, int top, long now, AtomicInteger requestOperations,
+            AtomicBoolean cancelled) {
+        this.reader = reader;
+        this.path = path;
+        this.stat = stat;
+        this.top = top;
+        this.now = now;
+        this.requestOperations = requestOperations;
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    protected SubtreeTotals compute() {
+        // a worker may run tasks of other crawls while it waits for its own, so restore what it counted towards
+        final AtomicInteger previous = ZkMetrics.currentRequest();
+        countTowards(requestOperations);
+        try {
+            return crawl();
+        } catch (final Exception e) {
+            throw Throwables.propagate(e);
+        } finally {
+            countTowards(previous);
+        }
+    }
+
+    private SubtreeTotals crawl() throws Exception {
+        if (cancelled.get()) {
+            throw new CancellationException("Crawl of " + path + " was cancelled");
+        }
+        final SubtreeTotals totals = new SubtreeTotals(top, now);
+        totals.add(path, null, stat);
+        if (stat.getNumChildren() == 0) {
+            return totals;
+        }
+
+        final List<String> children;
+        try {
+            children = reader.getChildren(path);
+        } catch (@SuppressWarnings("unused") final NoNodeException e) {
+            return totals;
+        }
+        final List<SubtreeCrawl> subtrees = Lists.newArrayList();
+        for (final Map.Entry<String, Stat> child : reader.getChildStats(path, children).entrySet()) {
+            if (child.getValue().getNumChildren() > 0) {
+                subtrees.add(new SubtreeCrawl(reader, ZKPaths.makePath(path, child.getKey()), child.getValue(), top,
+                        now, requestOperations, cancelled));
+            } else {
+                totals.add(path, child.getKey(), child.getValue());
+            }
+        }
+        for (final SubtreeCrawl subtree : invokeAll(subtrees)) {
+            totals.merge(subtree.join());
+        }
+        return totals;
+    }
+
+    private static void countTowards(AtomicInteger requestOperations) {
+        if (requestOperations == null) {
+            ZkMetrics.leaveRequest();
+        } else {
+            ZkMetrics.joinRequest(requestOperations);
+        }
+    }
+
+}
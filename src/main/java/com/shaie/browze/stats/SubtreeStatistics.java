@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.stats;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.shaie.browze.model.SubtreeStats;
+import com.shaie.browze.zk.ZkMetrics;
+import com.shaie.browze.zk.ZnodeReader;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Computes {@link SubtreeStats} by crawling subtrees in parallel on a fork-join pool, whose parallelism caps the
+ * number of nodes which all crawls read concurrently. The stats of a subtree are kept until its root's {@code pzxid}
+ * or {@code mzxid} changes, i.e. until a child of the root or the root itself changes, and for at most
+ * {@link StatsConfiguration#getMaxAge()}, which bounds how stale they are after changes further down. Concurrent
+ * requests for the same subtree share a single crawl, which is cancelled once all of them were cancelled.
+ */
+public class SubtreeStatistics implements Managed {
+
+    private final StatsConfiguration config;
+    private final ForkJoinPool pool;
+    private final Cache<List<Object>, SharedCrawl> crawls;
+
+    public SubtreeStatistics(StatsConfiguration config) {
+        this.config = config;
+        this.pool = new ForkJoinPool(config.getConcurrency(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("subtree-stats-" + thread.getPoolIndex());
+                return thread;
+            }
+        }, null, false);
+        this.crawls = CacheBuilder.newBuilder()
+                .maximumSize(config.getCacheSize())
+                .expireAfterWrite(config.getMaxAge().toMilliseconds(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public StatsConfiguration getConfig() {
+        return config;
+    }
+
+    @Override
+    public void start() {
+        // nothing to do
+    }
+
+    @Override
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Returns the stats of the subtree at {@code path} of the given cluster or snapshot, with the {@code top} largest
+     * and widest nodes. The subtree is read on the pool, never on the calling thread. The returned future fails with
+     * {@link NoNodeException} if the node does not exist. Cancelling it cancels the crawl, unless other requests still
+     * wait for it.
+     */
+    public ListenableFuture<SubtreeStats> get(final ZnodeReader reader, final String source, final String path,
+            final int top) {
+        final SettableFuture<SubtreeStats> result = SettableFuture.create();
+        final AtomicInteger requestOperations = ZkMetrics.currentRequest();
+        final Executor requestExecutor = ZkMetrics.requestExecutor(requestOperations);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                requestExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result.isCancelled()) {
+                            return;
+                        }
+                        try {
+                            final Stat stat = reader.checkExists(path);
+                            if (stat == null) {
+                                throw new NoNodeException(path);
+                            }
+                            follow(ImmutableList.<Object> of(source, path, stat.getPzxid(), stat.getMzxid(), top),
+                                    reader, path, stat, top, requestOperations, result);
+                        } catch (final Exception e) {
+                            result.setException(e);
+                        }
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    /** Completes {@code result} with the stats of the shared crawl of the given key, running it first if needed. */
+    private void follow(List<Object> key, ZnodeReader reader, String path, Stat stat, int top,
+            AtomicInteger requestOperations, SettableFuture<SubtreeStats> result) {
+        while (true) {
+            final SharedCrawl newCrawl = new SharedCrawl();
+            SharedCrawl crawl = crawls.asMap().putIfAbsent(key, newCrawl);
+            if (crawl == null) {
+                crawl = newCrawl;
+            }
+            if (crawl.follow(result)) {
+                if (crawl == newCrawl) {
+                    run(key, crawl, reader, path, stat, top, requestOperations);
+                }
+                return;
+            }
+            // cancelled by the requests which followed it, but not removed yet
+            crawls.asMap().remove(key, crawl);
+        }
+    }
+
+    private void run(List<Object> key, SharedCrawl crawl, ZnodeReader reader, String path, Stat stat, int top,
+            AtomicInteger requestOperations) {
+        try {
+            crawl.stats.set(new SubtreeCrawl(reader, path, stat, top, System.currentTimeMillis(), requestOperations,
+                    crawl.cancelled).invoke().toStats(path));
+        } catch (@SuppressWarnings("unused") final CancellationException e) {
+            crawls.asMap().remove(key, crawl);
+            crawl.stats.cancel(false);
+        } catch (final RuntimeException e) {
+            // only successful crawls are reused, a failed one is run again by the next request
+            crawls.asMap().remove(key, crawl);
+            crawl.stats.setException(Throwables.getRootCause(e));
+        }
+    }
+
+    /** A crawl which is shared by the requests for the same stats, and cancelled once none of them waits for it. */
+    private static final class SharedCrawl {
+
+        final SettableFuture<SubtreeStats> stats = SettableFuture.create();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        private int followers;
+
+        /**
+         * Completes {@code result} once the crawl completes, or returns {@code false} if it was cancelled already.
+         * Cancelling {@code result} stops following the crawl.
+         */
+        synchronized boolean follow(final SettableFuture<SubtreeStats> result) {
+            if (cancelled.get()) {
+                return false;
+            }
+            followers++;
+            Futures.addCallback(stats, new FutureCallback<SubtreeStats>() {
+                @Override
+                public void onSuccess(SubtreeStats subtreeStats) {
+                    result.set(subtreeStats);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (t instanceof CancellationException) {
+                        result.cancel(false);
+                    } else {
+                        result.setException(t);
+                    }
+                }
+            });
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isCancelled()) {
+                        unfollow();
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+            return true;
+        }
+
+        private synchronized void unfollow() {
+            if (--followers == 0 && !stats.isDone()) {
+                cancelled.set(true);
+            }
+        }
+
+    }
+
+}
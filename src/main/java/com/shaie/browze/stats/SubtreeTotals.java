@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.collect.Maps;
+import com.shaie.browze.model.SubtreeStats;
+import com.shaie.browze.model.SubtreeStats.Hotspot;
+
+/**
+ * Aggregates the stats of the nodes which one task of a crawl visits, and is then merged with the totals of the tasks
+ * it forked. Only the top hotspots are kept, in min-heaps, so a node's path is only built if it ranks among them.
+ */
+final class SubtreeTotals {
+
+    /** Orders hotspots by ascending value, so that the head of a heap is the first to be evicted. */
+    private static final Comparator<Hotspot> BY_VALUE = new Comparator<Hotspot>() {
+        @Override
+        public int compare(Hotspot o1, Hotspot o2) {
+            return Long.compare(o1.getValue(), o2.getValue());
+        }
+    };
+
+    /** The upper bounds of the modification age buckets, the last of which holds all older nodes. */
+    private static final long[] AGE_LIMITS = {
+            TimeUnit.MINUTES.toMillis(1),
+            TimeUnit.HOURS.toMillis(1),
+            TimeUnit.DAYS.toMillis(1),
+            TimeUnit.DAYS.toMillis(7),
+            TimeUnit.DAYS.toMillis(30),
+            TimeUnit.DAYS.toMillis(365) };
+    private static final String[] AGE_LABELS = { "1m", "1h", "1d", "7d", "30d", "365d", "older" };
+
+    private final int top;
+    private final long now;
+
+    private long numNodes = 0;
+    private long totalDataLength = 0;
+    private long numEphemerals = 0;
+    private final PriorityQueue<Hotspot> largest;
+    private final PriorityQueue<Hotspot> widest;
+    private final Map<Long, Long> ephemeralOwners = Maps.newHashMap();
+    private final long[] modified = new long[AGE_LABELS.length];
+
+    SubtreeTotals(int top, long now) {
+        this.top = top;
+        this.now = now;
+        this.largest = new PriorityQueue<>(top + 1, BY_VALUE);
+        this.widest = new PriorityQueue<>(top + 1, BY_VALUE);
+    }
+
+    /** Adds the child {@code name} of {@code parent}, or {@code parent} itself if {@code name} is {@code null}. */
+    void add(String parent, String name, Stat stat) {
+        ++numNodes;
+        totalDataLength += stat.getDataLength();
+        if (stat.getEphemeralOwner() != 0) {
+            ++numEphemerals;
+            addEphemerals(stat.getEphemeralOwner(), 1);
+        }
+        offer(largest, parent, name, stat.getDataLength());
+        offer(widest, parent, name, stat.getNumChildren());
+        ++modified[ageBucket(now - stat.getMtime())];
+    }
+
+    void merge(SubtreeTotals other) {
+        numNodes += other.numNodes;
+        totalDataLength += other.totalDataLength;
+        numEphemerals += other.numEphemerals;
+        for (final Hotspot hotspot : other.largest) {
+            offer(largest, hotspot);
+        }
+        for (final Hotspot hotspot : other.widest) {
+            offer(widest, hotspot);
+        }
+        for (final Map.Entry<Long, Long> owner : other.ephemeralOwners.entrySet()) {
+            addEphemerals(owner.getKey(), owner.getValue());
+        }
+        for (int i = 0; i < modified.length; i++) {
+            modified[i] += other.modified[i];
+        }
+    }
+
+    SubtreeStats toStats(String path) {
+        final List<Map.Entry<Long, Long>> owners = new ArrayList<>(ephemeralOwners.entrySet());
+        Collections.sort(owners, new Comparator<Map.Entry<Long, Long>>() {
+            @Override
+            public int compare(Map.Entry<Long, Long> o1, Map.Entry<Long, Long> o2) {
+                return Long.compare(o2.getValue(), o1.getValue());
+            }
+        });
+        final Map<String, Long> ownerCounts = Maps.newLinkedHashMap();
+        for (final Map.Entry<Long, Long> owner : owners) {
+            ownerCounts.put(String.format(Locale.ROOT, "0x%x", owner.getKey()), owner.getValue());
+        }
+        final Map<String, Long> modifiedCounts = Maps.newLinkedHashMap();
+        for (int i = 0; i < modified.length; i++) {
+            modifiedCounts.put(AGE_LABELS[i], modified[i]);
+        }
+        return new SubtreeStats(path, now, numNodes, totalDataLength, numEphemerals, descending(largest),
+                descending(widest), ownerCounts, modifiedCounts);
+    }
+
+    private void addEphemerals(long owner, long count) {
+        final Long current = ephemeralOwners.get(owner);
+        ephemeralOwners.put(owner, current == null ? count : current + count);
+    }
+
+    private void offer(PriorityQueue<Hotspot> hotspots, String parent, String name, long value) {
+        // nodes without data or children are not hotspots of either kind
+        if (value > 0 && (hotspots.size() < top || value > hotspots.peek().getValue())) {
+            offer(hotspots, new Hotspot(name == null ? parent : ZKPaths.makePath(parent, name), value));
+        }
+    }
+
+    private void offer(PriorityQueue<Hotspot> hotspots, Hotspot hotspot) {
+        hotspots.offer(hotspot);
+        if (hotspots.size() > top) {
+            hotspots.poll();
+        }
+    }
+
+    private static List<Hotspot> descending(PriorityQueue<Hotspot> hotspots) {
+        final List<Hotspot> sorted = new ArrayList<>(hotspots);
+        Collections.sort(sorted, Collections.reverseOrder(BY_VALUE));
+        return sorted;
+    }
+
+    private static int ageBucket(long ageMs) {
+        for (int i = 0; i < AGE_LIMITS.length; i++) {
+            if (ageMs < AGE_LIMITS[i]) {
+                return i;
+            }
+        }
+        return AGE_LIMITS.length;
+    }
+
+}
@@ -0,0 +1,458 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.write;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.OpResult;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.shaie.browze.model.ExportRecord;
+import com.shaie.browze.model.ImportProgress;
+import com.shaie.browze.zk.ZkMetrics;
+
+/**
+ * Imports a subtree from newline-delimited JSON {@link ExportRecord records}, as written by an export, under a
+ * target path. The first record's path is the root of the imported subtree, which is rebased onto the target path, and
+ * every following record must be below it and follow its parent. Ephemeral nodes and nodes under
+ * {@code /zookeeper} are skipped, and so is the root if the target exists and is not overwritten. Data is imported as
+ * UTF-8 text, or decoded from base64 if the record's {@code encoding} says so; a record with any other encoding fails
+ * the import rather than importing bytes which differ from the exported ones.
+ * <p>
+ * Nodes are created, or their data is set if {@code overwrite} and they exist, in transactions of up to
+ * {@link WriteConfiguration#getMaxTransactionOps()} operations and {@link WriteConfiguration#getMaxTransactionSize()}
+ * bytes, so each transaction takes a single round trip and is applied entirely or not at all. Up to
+ * {@link WriteConfiguration#getMaxInFlightTransactions()} transactions are committed concurrently while the input is
+ * read on; a transaction which creates children of nodes that another in-flight transaction creates is committed only
+ * after that transaction succeeds. If {@code checkVersions}, a node's data is set only if its version is still the
+ * exported one, which makes re-importing an edited export fail rather than lose changes made since.
+ * <p>
+ * A {@code progress} event is sent after each transaction, an {@code error} event for the first one which fails,
+ * after which the import stops, and a {@code done} event once all transactions completed. Transactions which were
+ * committed before a failure are not rolled back.
+ */
+final class SubtreeImport implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubtreeImport.class);
+
+    /** A rough estimate of the size of an operation of a transaction, besides its path and data. */
+    private static final int OP_OVERHEAD = 32;
+
+    private static final String ZOOKEEPER_PATH = "/zookeeper";
+
+    private final CuratorFramework curatorFramework;
+    private final ZkMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private final Executor executor;
+    private final InputStream in;
+    private final String targetPath;
+    private final boolean targetExists;
+    private final boolean overwrite;
+    private final boolean checkVersions;
+    private final int maxTransactionOps;
+    private final long maxTransactionSize;
+    private final int maxInFlightTransactions;
+    private final long timeoutMs;
+    private final EventOutput output;
+    private final String name;
+    private final Runnable onClose;
+
+    /** Bounds the number of transactions which are committed concurrently. */
+    private final Semaphore inFlight;
+
+    /**
+     * The transaction which creates each path, until it succeeds. A transaction which creates a child of one of these
+     * paths waits for that transaction first, and is not committed at all if it failed.
+     */
+    private final ConcurrentMap<String, SettableFuture<Boolean>> creators = new ConcurrentHashMap<>();
+
+    private final AtomicLong numRead = new AtomicLong();
+    private final AtomicLong numCreated = new AtomicLong();
+    private final AtomicLong numUpdated = new AtomicLong();
+    private final AtomicLong numSkipped = new AtomicLong();
+    private final AtomicLong numFailed = new AtomicLong();
+    private final AtomicLong numTransactions = new AtomicLong();
+
+    /** Set once a transaction failed or the client went away, after which no more transactions are committed. */
+    private final AtomicBoolean aborted = new AtomicBoolean();
+
+    /** The path of the first record, which is imported as the target path. Only accessed by the reading thread. */
+    private String sourcePath;
+
+    SubtreeImport(CuratorFramework curatorFramework, ZkMetrics metrics, ObjectMapper objectMapper,
+            WriteConfiguration config, Executor executor, InputStream in, String targetPath, boolean targetExists,
+            boolean overwrite, boolean checkVersions, long timeoutMs, EventOutput output, String name,
+            Runnable onClose) {
+        this.curatorFramework = curatorFramework;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+        this.in = in;
+        this.targetPath = targetPath;
+        this.targetExists = targetExists;
+        this.overwrite = overwrite;
+        this.checkVersions = checkVersions;
+        this.maxTransactionOps = config.getMaxTransactionOps();
+        this.maxTransactionSize = config.getMaxTransactionSize().toBytes();
+        this.maxInFlightTransactions = config.getMaxInFlightTransactions();
+        this.timeoutMs = timeoutMs;
+        this.output = output;
+        this.name = name;
+        this.onClose = onClose;
+        this.inFlight = new Semaphore(maxInFlightTransactions);
+    }
+
+    @Override
+    public void run() {
+        try {
+            // sent right away, so that the client receives the response before the first transaction completes
+            send("progress", null, null);
+            final MappingIterator<JsonNode> records = objectMapper.reader(JsonNode.class).readValues(in);
+            Transaction transaction = new Transaction();
+            while (!aborted.get() && records.hasNextValue()) {
+                final Op op = toOp(records.nextValue());
+                numRead.incrementAndGet();
+                if (op == null) {
+                    numSkipped.incrementAndGet();
+                    continue;
+                }
+                if (!transaction.ops.isEmpty() && (transaction.ops.size() >= maxTransactionOps
+                        || transaction.size + op.size() > maxTransactionSize)) {
+                    commit(transaction);
+                    transaction = new Transaction();
+                }
+                add(transaction, op);
+            }
+            if (!aborted.get() && !transaction.ops.isEmpty()) {
+                commit(transaction);
+            }
+        } catch (@SuppressWarnings("unused") final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final JsonProcessingException e) {
+            if (aborted.compareAndSet(false, true)) {
+                LOGGER.warn("Failed to parse import [{}] after {} records", name, numRead.get(), e);
+                send("error", null, String.format(Locale.ROOT, "Invalid record at line %d: %s",
+                        e.getLocation().getLineNr(), e.getOriginalMessage()));
+            }
+        } catch (final Exception e) {
+            if (aborted.compareAndSet(false, true)) {
+                LOGGER.warn("Failed to read import [{}] after {} records", name, numRead.get(), e);
+                send("error", null, String.valueOf(e.getMessage()));
+            }
+        } finally {
+            // wait for the in-flight transactions
+            inFlight.acquireUninterruptibly(maxInFlightTransactions);
+            final ImportProgress progress = send("done", null, null);
+            LOGGER.info("Imported [{}] into [{}]: {}", name, targetPath, progress);
+            try {
+                in.close();
+            } catch (final IOException e) {
+                LOGGER.debug("Failed to close the input of import [{}]", name, e);
+            }
+            try {
+                output.close();
+            } catch (final IOException e) {
+                LOGGER.debug("Failed to close the output of import [{}]", name, e);
+            }
+            onClose.run();
+        }
+    }
+
+    /** Returns the operation which imports the record, or {@code null} if it is skipped. */
+    private Op toOp(JsonNode record) {
+        if (!record.hasNonNull("path")) {
+            if (record.hasNonNull("error")) {
+                throw new IllegalArgumentException("The export failed: " + record.get("error").asText());
+            }
+            throw new IllegalArgumentException("Record " + (numRead.get() + 1) + " has no path");
+        }
+        final String path = record.get("path").asText();
+        if (sourcePath == null) {
+            sourcePath = path;
+        }
+        final String target = rebase(path);
+        final JsonNode stat = record.path("stat");
+        if (stat.path("ephemeralOwner").asLong() != 0
+                || target.equals(ZOOKEEPER_PATH) || target.startsWith(ZOOKEEPER_PATH + "/")
+                || (target.equals(targetPath) && targetExists && !overwrite)) {
+            return null;
+        }
+        final JsonNode data = record.get("data");
+        return new Op(target, data == null || data.isNull() ? null : decodeData(data, record.path("encoding")),
+                stat.path("version").asInt(-1));
+    }
+
+    /** Returns the bytes of a record's data, as encoded by {@link ExportRecord}. */
+    private byte[] decodeData(JsonNode data, JsonNode encoding) {
+        if (!data.isTextual()) {
+            throw new IllegalArgumentException("Record " + (numRead.get() + 1) + " has data which is not a string");
+        }
+        if (encoding.isMissingNode() || encoding.isNull()) {
+            return data.asText().getBytes(StandardCharsets.UTF_8);
+        }
+        if (!ExportRecord.BASE64.equals(encoding.asText())) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "Record %d has an unknown encoding: %s",
+                    numRead.get() + 1, encoding.asText()));
+        }
+        try {
+            return BaseEncoding.base64().decode(data.asText());
+        } catch (@SuppressWarnings("unused") final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Record " + (numRead.get() + 1) + " has invalid base64 data");
+        }
+    }
+
+    private String rebase(String path) {
+        if (path.equals(sourcePath)) {
+            return targetPath;
+        }
+        final String prefix = sourcePath.equals("/") ? "/" : sourcePath + "/";
+        if (!path.startsWith(prefix)) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT,
+                    "Record %d is not under the first record's path [%s]: %s", numRead.get() + 1, sourcePath, path));
+        }
+        return ZKPaths.makePath(targetPath, path.substring(prefix.length()));
+    }
+
+    private void add(Transaction transaction, Op op) {
+        final SettableFuture<Boolean> creator = creators.get(ZKPaths.getPathAndNode(op.path).getPath());
+        if (creator != null && creator != transaction.done) {
+            transaction.dependencies.add(creator);
+        }
+        creators.put(op.path, transaction.done);
+        transaction.ops.add(op);
+        transaction.size += op.size();
+    }
+
+    /** Commits the transaction on another thread, once fewer than the maximum number of transactions are in flight. */
+    private void commit(final Transaction transaction) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        commitTransaction(transaction);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void commitTransaction(Transaction transaction) {
+        final List<Op> ops = transaction.ops;
+        try {
+            for (final ListenableFuture<Boolean> dependency : transaction.dependencies) {
+                if (!dependency.get()) {
+                    // the failure of the transaction which this one depends on was already reported
+                    failed(transaction, null, null);
+                    return;
+                }
+            }
+            if (aborted.get()) {
+                failed(transaction, null, null);
+                return;
+            }
+
+            final boolean[] exists = overwrite ? checkExists(ops) : null;
+            CuratorTransaction curatorTransaction = curatorFramework.inTransaction();
+            CuratorTransactionFinal finalTransaction = null;
+            int numCreates = 0;
+            for (int i = 0; i < ops.size(); i++) {
+                final Op op = ops.get(i);
+                if (exists != null && exists[i]) {
+                    finalTransaction = curatorTransaction.setData().withVersion(checkVersions ? op.version : -1)
+                            .forPath(op.path, op.data).and();
+                } else {
+                    finalTransaction = curatorTransaction.create().forPath(op.path, op.data).and();
+                    ++numCreates;
+                }
+                curatorTransaction = finalTransaction;
+            }
+            metrics.commit(finalTransaction);
+
+            numCreated.addAndGet(numCreates);
+            numUpdated.addAndGet(ops.size() - numCreates);
+            numTransactions.incrementAndGet();
+            transaction.done.set(true);
+            for (final Op op : ops) {
+                creators.remove(op.path, transaction.done);
+            }
+            send("progress", null, null);
+        } catch (final KeeperException e) {
+            failed(transaction, failedPath(ops, e), e.getMessage());
+        } catch (@SuppressWarnings("unused") final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed(transaction, null, "Interrupted");
+        } catch (final Exception e) {
+            failed(transaction, null, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /** Checks which of the nodes exist, keeping all the checks in flight at once. */
+    private boolean[] checkExists(List<Op> ops) throws Exception {
+        final boolean[] exists = new boolean[ops.size()];
+        final CountDownLatch latch = new CountDownLatch(ops.size());
+        final AtomicReference<KeeperException> error = new AtomicReference<>();
+        for (int i = 0; i < ops.size(); i++) {
+            final int index = i;
+            final long startNanos = metrics.started(ZkMetrics.Operation.EXISTS);
+            try {
+                curatorFramework.checkExists().inBackground(new BackgroundCallback() {
+                    @Override
+                    public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                        metrics.completed(ZkMetrics.Operation.EXISTS, startNanos, event);
+                        final Code code = Code.get(event.getResultCode());
+                        if (code == Code.OK) {
+                            exists[index] = true;
+                        } else if (code != Code.NONODE) {
+                            error.compareAndSet(null, KeeperException.create(code, event.getPath()));
+                        }
+                        latch.countDown();
+                    }
+                }).forPath(ops.get(i).path);
+            } catch (final Exception e) {
+                metrics.failed(ZkMetrics.Operation.EXISTS, startNanos, e);
+                throw e;
+            }
+        }
+        if (!latch.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Timed out waiting for ZooKeeper while checking which nodes exist");
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return exists;
+    }
+
+    /** Returns the path of the operation which failed the transaction, or {@code null} if it is not known. */
+    private static String failedPath(List<Op> ops, KeeperException e) {
+        final List<OpResult> results = e.getResults();
+        if (results == null) {
+            return e.getPath();
+        }
+        for (int i = 0; i < results.size() && i < ops.size(); i++) {
+            final OpResult result = results.get(i);
+            if (result instanceof OpResult.ErrorResult) {
+                final int err = ((OpResult.ErrorResult) result).getErr();
+                if (err != Code.OK.intValue() && err != Code.RUNTIMEINCONSISTENCY.intValue()) {
+                    return ops.get(i).path;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Fails the transaction and aborts the import, reporting the error unless an earlier failure was reported. */
+    private void failed(Transaction transaction, String path, String error) {
+        numFailed.addAndGet(transaction.ops.size());
+        if (error != null && aborted.compareAndSet(false, true)) {
+            LOGGER.warn("Import [{}] failed at [{}]: {}", name, path, error);
+            send("error", path, error);
+        }
+        aborted.set(true);
+        // only now, so that the transactions which depend on this one do not abort the import before it is reported
+        transaction.done.set(false);
+    }
+
+    private ImportProgress send(String event, String path, String error) {
+        final ImportProgress progress = new ImportProgress(numRead.get(), numCreated.get(), numUpdated.get(),
+                numSkipped.get(), numFailed.get(), numTransactions.get(), path, error);
+        final OutboundEvent outboundEvent = new OutboundEvent.Builder()
+                .name(event)
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(ImportProgress.class, progress)
+                .build();
+        synchronized (output) {
+            try {
+                output.write(outboundEvent);
+            } catch (final IOException e) {
+                if (aborted.compareAndSet(false, true)) {
+                    // the client went away, there is no point in importing any further
+                    LOGGER.info("Aborting import [{}], since its client went away: {}", name, e.getMessage());
+                }
+            }
+        }
+        return progress;
+    }
+
+    /** Creates a node, or sets its data if it exists and is overwritten. */
+    private static final class Op {
+        final String path;
+        final byte[] data;
+        final int version;
+
+        Op(String path, byte[] data, int version) {
+            this.path = path;
+            this.data = data;
+            this.version = version;
+        }
+
+        int size() {
+            return OP_OVERHEAD + path.length() + (data == null ? 0 : data.length);
+        }
+    }
+
+    private static final class Transaction {
+        final List<Op> ops = Lists.newArrayList();
+        final Set<ListenableFuture<Boolean>> dependencies = Sets.newIdentityHashSet();
+        final SettableFuture<Boolean> done = SettableFuture.create();
+        long size = 0;
+    }
+
+}
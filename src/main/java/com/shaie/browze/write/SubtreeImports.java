@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.write;
+
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.glassfish.jersey.media.sse.EventOutput;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.shaie.browze.zk.ZkMetrics;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Runs {@link SubtreeImport imports}. Each import reads its input on a thread of its own and commits its transactions
+ * on further threads, at most {@link WriteConfiguration#getMaxInFlightTransactions()} at a time.
+ */
+public class SubtreeImports implements Managed {
+
+    private final WriteConfiguration config;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+
+    public SubtreeImports(WriteConfiguration config, ObjectMapper objectMapper) {
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("subtree-import-%d").setDaemon(true).build());
+    }
+
+    public WriteConfiguration getConfig() {
+        return config;
+    }
+
+    @Override
+    public void start() {
+        // nothing to do
+    }
+
+    @Override
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Imports the records which are read from {@code in} under {@code targetPath}, reporting the progress to the
+     * client as server-sent events, see {@link SubtreeImport}. Once the import ends, the input and the output are
+     * closed and {@code onClose} is run. {@code timeoutMs} bounds the wait for checking which nodes exist. The
+     * {@code name} of the import is only logged.
+     */
+    public void submit(CuratorFramework curatorFramework, ZkMetrics metrics, InputStream in, String targetPath,
+            boolean targetExists, boolean overwrite, boolean checkVersions, long timeoutMs, EventOutput output,
+            String name, Runnable onClose) {
+        try {
+            executor.execute(new SubtreeImport(curatorFramework, metrics, objectMapper, config, executor, in,
+                    targetPath, targetExists, overwrite, checkVersions, timeoutMs, output, name, onClose));
+        } catch (@SuppressWarnings("unused") final RejectedExecutionException e) {
+            throw new IllegalStateException("Imports were stopped");
+        }
+    }
+
+}
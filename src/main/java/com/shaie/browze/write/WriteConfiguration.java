@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.write;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Size;
+
+/** Configures the write endpoints and {@link SubtreeImport imports}. */
+public class WriteConfiguration {
+
+    /** Browze is read-only unless writes are explicitly enabled. */
+    @JsonProperty
+    private boolean enabled = false;
+
+    /** The maximum number of operations in a single transaction of an import. */
+    @Min(1)
+    @JsonProperty
+    private int maxTransactionOps = 1000;
+
+    /**
+     * The maximum size of the paths and data of a single transaction of an import, which must stay well below the
+     * {@code jute.maxbuffer} of the servers, 1MB by default.
+     */
+    @NotNull
+    @JsonProperty
+    private Size maxTransactionSize = Size.kilobytes(512);
+
+    /** The number of transactions of a single import which are committed concurrently. */
+    @Min(1)
+    @JsonProperty
+    private int maxInFlightTransactions = 4;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxTransactionOps() {
+        return maxTransactionOps;
+    }
+
+    public void setMaxTransactionOps(int maxTransactionOps) {
+        this.maxTransactionOps = maxTransactionOps;
+    }
+
+    public Size getMaxTransactionSize() {
+        return maxTransactionSize;
+    }
+
+    public void setMaxTransactionSize(Size maxTransactionSize) {
+        this.maxTransactionSize = maxTransactionSize;
+    }
+
+    public int getMaxInFlightTransactions() {
+        return maxInFlightTransactions;
+    }
+
+    public void setMaxInFlightTransactions(int maxInFlightTransactions) {
+        this.maxInFlightTransactions = maxInFlightTransactions;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("enabled", enabled)
+                .append("maxTransactionOps", maxTransactionOps)
+                .append("maxTransactionSize", maxTransactionSize)
+                .append("maxInFlightTransactions", maxInFlightTransactions)
+                .build();
+    }
+
+}
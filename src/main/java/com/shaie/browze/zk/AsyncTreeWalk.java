@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.KeeperException.NoNodeException;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Walks a tree depth-first with background reads, keeping up to {@code maxInFlightReads} of them outstanding while
+ * the walking thread consumes the results of those which completed, see {@link #next}. Memory use is therefore bounded
+ * by the number of in-flight reads and the nodes which are pending to be read, and not by the size of the tree. Since
+ * reads complete out of order, results are not strictly in depth-first order, but a node's result always comes before
+ * the results of its children.
+ *
+ * @param <N> the nodes to read, which carry whatever their read needs
+ * @param <R> the results of the reads
+ */
+public abstract class AsyncTreeWalk<N, R> {
+
+    private final int maxInFlightReads;
+    private final long timeoutMs;
+    private final String activity;
+
+    /** Nodes which are pending to be read, in depth-first order. Children are pushed by the read callbacks. */
+    private final Deque<N> pending = new LinkedBlockingDeque<>();
+
+    /** Every read which was issued adds exactly one completion to this queue. */
+    private final BlockingQueue<Completion<R>> completions = new LinkedBlockingQueue<>();
+
+    private int inFlight = 0;
+
+    /**
+     * @param timeoutMs how long {@link #next} waits for the next read to complete
+     * @param activity what the walk does, for the message of a timeout, e.g. {@code "exporting [/path]"}
+     */
+    protected AsyncTreeWalk(int maxInFlightReads, long timeoutMs, String activity) {
+        this.maxInFlightReads = maxInFlightReads;
+        this.timeoutMs = timeoutMs;
+        this.activity = activity;
+    }
+
+    /**
+     * Reads the given node. The children to read next must be {@link #push pushed} before the returned future
+     * completes, so that {@link #next} doesn't see an empty queue of pending nodes with no reads in flight. A read
+     * which fails with {@link NoNodeException} yields the result of {@link #deleted}.
+     */
+    protected abstract ListenableFuture<R> read(N node);
+
+    /**
+     * Returns the result of a node which was deleted since its parent was listed, or {@code null} to skip it.
+     */
+    protected abstract R deleted(N node);
+
+    /**
+     * Pushes a node to be read before the nodes which were pushed earlier. Siblings are therefore pushed in reverse
+     * order, so that they are read in order.
+     */
+    public void push(N node) {
+        pending.push(node);
+    }
+
+    /**
+     * Returns the result of the next read to complete, first issuing as many of the pending reads as the in-flight
+     * limit allows, or {@code null} once every node was read. If no result is ready yet, {@code beforeWait}, if any,
+     * is flushed before waiting for one, so that what was produced so far is not held back. Throws the error of a
+     * failed read, or {@link IllegalStateException} if no read completes within the timeout.
+     */
+    public R next(Flushable beforeWait) throws Exception {
+        while (true) {
+            N node;
+            while (inFlight < maxInFlightReads && (node = pending.poll()) != null) {
+                issue(node);
+                ++inFlight;
+            }
+            if (inFlight == 0) {
+                return null;
+            }
+
+            Completion<R> completion = completions.poll();
+            if (completion == null) {
+                flush(beforeWait);
+                completion = completions.poll(timeoutMs, TimeUnit.MILLISECONDS);
+                if (completion == null) {
+                    throw new IllegalStateException(String.format(Locale.ROOT,
+                            "Timed out waiting for ZooKeeper while %s", activity));
+                }
+            }
+            --inFlight;
+            if (completion.error != null) {
+                throw completion.error;
+            }
+            if (completion.result != null) {
+                return completion.result;
+            }
+        }
+    }
+
+    private void issue(final N node) {
+        Futures.addCallback(read(node), new FutureCallback<R>() {
+            @Override
+            public void onSuccess(R result) {
+                completions.add(new Completion<>(result, null));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof NoNodeException) {
+                    // deleted since its parent was listed
+                    completions.add(new Completion<>(deleted(node), null));
+                } else {
+                    completions.add(new Completion<R>(null, t instanceof Exception ? (Exception) t
+                            : new RuntimeException(t)));
+                }
+            }
+        });
+    }
+
+    private static void flush(Flushable flushable) throws IOException {
+        if (flushable != null) {
+            flushable.flush();
+        }
+    }
+
+    private static final class Completion<R> {
+        final R result;
+        final Exception error;
+
+        Completion(R result, Exception error) {
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Reads znodes like a {@link ZnodeReader}, but without blocking the calling thread. The returned futures are usually
+ * completed by ZooKeeper's callbacks, so code which is chained to them must not block either.
+ */
+public interface AsyncZnodeReader {
+
+    /**
+     * Reads the data of the node at the given path, and stores its stat in {@code stat} before the returned future
+     * completes. The future fails with {@link org.apache.zookeeper.KeeperException.NoNodeException} if the node does
+     * not exist.
+     */
+    ListenableFuture<byte[]> getDataAsync(String path, Stat stat);
+
+    /** Lists the names of the children of the node at the given path, in no particular order. */
+    ListenableFuture<List<String>> getChildrenAsync(String path);
+
+    /** Reads the stat of the node at the given path. The returned future yields {@code null} if it does not exist. */
+    ListenableFuture<Stat> checkExistsAsync(String path);
+
+    /**
+     * Reads the stats of the given children of {@code parent}, keyed by child name. Children which no longer exist
+     * are omitted from the result.
+     */
+    ListenableFuture<Map<String, Stat>> getChildStatsAsync(String parent, List<String> children);
+
+}
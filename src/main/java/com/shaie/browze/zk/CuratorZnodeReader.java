@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/** A {@link ZnodeReader} and {@link AsyncZnodeReader} which reads directly from ZooKeeper. */
+public class CuratorZnodeReader implements ZnodeReader, AsyncZnodeReader {
+
+    private final CuratorFramework curatorFramework;
+    private final PipelinedStatFetcher statFetcher;
+    private final ZkMetrics metrics;
+
+    public CuratorZnodeReader(CuratorFramework curatorFramework, PipelinedStatFetcher statFetcher,
+            ZkMetrics metrics) {
+        this.curatorFramework = curatorFramework;
+        this.statFetcher = statFetcher;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public byte[] getData(String path, Stat stat) throws Exception {
+        return metrics.getData(curatorFramework, path, stat, null);
+    }
+
+    @Override
+    public List<String> getChildren(String path) throws Exception {
+        return metrics.getChildren(curatorFramework, path, null);
+    }
+
+    @Override
+    public Stat checkExists(String path) throws Exception {
+        return metrics.checkExists(curatorFramework, path, null);
+    }
+
+    @Override
+    public Map<String, Stat> getChildStats(String parent, List<String> children) throws Exception {
+        return statFetcher.fetch(curatorFramework, parent, children, null);
+    }
+
+    @Override
+    public ListenableFuture<byte[]> getDataAsync(String path, Stat stat) {
+        return metrics.getDataAsync(curatorFramework, path, stat, null);
+    }
+
+    @Override
+    public ListenableFuture<List<String>> getChildrenAsync(String path) {
+        return metrics.getChildrenAsync(curatorFramework, path, null);
+    }
+
+    @Override
+    public ListenableFuture<Stat> checkExistsAsync(String path) {
+        return metrics.checkExistsAsync(curatorFramework, path, null);
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Stat>> getChildStatsAsync(String parent, List<String> children) {
+        return statFetcher.fetchAsync(curatorFramework, parent, children, null);
+    }
+
+}
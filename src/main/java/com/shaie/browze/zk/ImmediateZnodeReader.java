@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Adapts a {@link ZnodeReader} whose reads do not wait for ZooKeeper, e.g. of an offline snapshot image, to an
+ * {@link AsyncZnodeReader}. Each read is made right away on the calling thread, and returns a completed future.
+ */
+public class ImmediateZnodeReader implements AsyncZnodeReader {
+
+    private final ZnodeReader reader;
+
+    public ImmediateZnodeReader(ZnodeReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public ListenableFuture<byte[]> getDataAsync(String path, Stat stat) {
+        try {
+            return Futures.immediateFuture(reader.getData(path, stat));
+        } catch (final Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<List<String>> getChildrenAsync(String path) {
+        try {
+            return Futures.immediateFuture(reader.getChildren(path));
+        } catch (final Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<Stat> checkExistsAsync(String path) {
+        try {
+            return Futures.immediateFuture(reader.checkExists(path));
+        } catch (final Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Stat>> getChildStatsAsync(String parent, List<String> children) {
+        try {
+            return Futures.immediateFuture(reader.getChildStats(parent, children));
+        } catch (final Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.BackgroundPathable;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Fetches the stats of many children of a node by pipelining background {@code exists} requests, rather than
+ * issuing them one after the other. At most {@code maxInFlightRequests} requests are outstanding at any time, and
+ * the results are collected by the callbacks as they complete, so the latency of fetching the stats of a wide node
+ * is roughly {@code numChildren / maxInFlightRequests} round trips. Each callback issues the next request, so no
+ * thread waits for the fetch unless the caller does.
+ */
+public class PipelinedStatFetcher {
+
+    private final int maxInFlightRequests;
+    private final long timeoutMs;
+    private final ZkMetrics metrics;
+
+    public PipelinedStatFetcher(ZooKeeperConfiguration config, ZkMetrics metrics) {
+        this.maxInFlightRequests = config.getMaxInFlightRequests();
+        this.timeoutMs = config.getRequestTimeout().toMilliseconds();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the stats of the given children of {@code parent}, keyed by child name. Children which do not exist are
+     * omitted from the result. If {@code watcher} is not {@code null}, it is set as an exists watch on every child.
+     */
+    public Map<String, Stat> fetch(CuratorFramework curatorFramework, String parent, List<String> children,
+            CuratorWatcher watcher) throws Exception {
+        final ListenableFuture<Map<String, Stat>> stats = fetchAsync(curatorFramework, parent, children, watcher);
+        try {
+            return stats.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw e;
+        } catch (@SuppressWarnings("unused") final TimeoutException e) {
+            stats.cancel(false);
+            throw new TimeoutException(String.format(Locale.ROOT,
+                    "Timed out while fetching the stats of the children of [%s]", parent));
+        }
+    }
+
+    /**
+     * Fetches the stats like {@link #fetch} does, but without waiting for them. Cancelling the returned future stops
+     * issuing requests. The requests count towards the calling thread's request, see {@link ZkMetrics}.
+     */
+    public ListenableFuture<Map<String, Stat>> fetchAsync(CuratorFramework curatorFramework, String parent,
+            List<String> children, CuratorWatcher watcher) {
+        final Fetch fetch = new Fetch(curatorFramework, parent, children, watcher,
+                ZkMetrics.requestExecutor(ZkMetrics.currentRequest()));
+        if (children.isEmpty()) {
+            fetch.result.set(fetch.stats);
+        }
+        for (int i = 0; i < Math.min(maxInFlightRequests, children.size()); i++) {
+            fetch.next();
+        }
+        return fetch.result;
+    }
+
+    /** A single fetch, whose requests are issued by {@link #next()} until all children were requested. */
+    private final class Fetch {
+        private final CuratorFramework curatorFramework;
+        private final String parent;
+        private final List<String> children;
+        private final CuratorWatcher watcher;
+        private final Executor requestExecutor;
+        private final ConcurrentMap<String, Stat> stats = Maps.newConcurrentMap();
+        private final SettableFuture<Map<String, Stat>> result = SettableFuture.create();
+        private final AtomicInteger numIssued = new AtomicInteger();
+        private final AtomicInteger numCompleted = new AtomicInteger();
+
+        private final Runnable issueNext = new Runnable() {
+            @Override
+            public void run() {
+                next();
+            }
+        };
+
+        Fetch(CuratorFramework curatorFramework, String parent, List<String> children, CuratorWatcher watcher,
+                Executor requestExecutor) {
+            this.curatorFramework = curatorFramework;
+            this.parent = parent;
+            this.children = children;
+            this.watcher = watcher;
+            this.requestExecutor = requestExecutor;
+        }
+
+        /** Issues the request of the next child, if any is left and the fetch was not failed or cancelled. */
+        void next() {
+            final int index = numIssued.getAndIncrement();
+            if (index >= children.size() || result.isDone()) {
+                return;
+            }
+            final String child = children.get(index);
+            final String childPath = ZKPaths.makePath(parent, child);
+            final long startNanos = metrics.started(ZkMetrics.Operation.EXISTS);
+            final BackgroundCallback callback = new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    metrics.completed(ZkMetrics.Operation.EXISTS, startNanos, event);
+                    final Code code = Code.get(event.getResultCode());
+                    if (code == Code.OK) {
+                        stats.put(child, event.getStat());
+                    } else if (code != Code.NONODE) {
+                        result.setException(KeeperException.create(code, childPath));
+                    }
+                    if (numCompleted.incrementAndGet() == children.size()) {
+                        result.set(stats);
+                    } else {
+                        requestExecutor.execute(issueNext);
+                    }
+                }
+            };
+            try {
+                final BackgroundPathable<Stat> exists = watcher == null
+                        ? curatorFramework.checkExists()
+                        : curatorFramework.checkExists().usingWatcher(watcher);
+                exists.inBackground(callback).forPath(childPath);
+            } catch (final Exception e) {
+                metrics.failed(ZkMetrics.Operation.EXISTS, startNanos, e);
+                result.setException(e);
+            }
+        }
+    }
+
+}
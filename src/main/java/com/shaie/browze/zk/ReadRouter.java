@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.shaie.browze.model.ZooStatus;
+
+/**
+ * Spreads the reads of a {@link ZkSession} across the servers of its ensemble, each of which is read through a
+ * Curator session of its own. Every read goes to the better of two randomly chosen connected servers, the one whose
+ * outstanding reads would be expected to complete first by its recent latency. Choosing between two rather than
+ * taking the best of all keeps concurrent reads from all piling onto the server which was the best a moment ago.
+ * Reads go to the session's own server if there are no other servers, or none of them is connected.
+ */
+public class ReadRouter {
+
+    /** The weight of a new sample in the moving average of a server's latency. */
+    private static final double LATENCY_ALPHA = 0.2;
+
+    /** The latency which servers are assumed to have until they were read from. */
+    private static final long INITIAL_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Member sessionMember;
+    private final List<Member> members;
+
+    /**
+     * Creates a router which routes reads to the given sessions, by server, which it takes ownership of. Reads go to
+     * {@code sessionFramework} only if none of them is connected.
+     */
+    ReadRouter(CuratorFramework sessionFramework, Map<String, CuratorFramework> memberFrameworks,
+            PipelinedStatFetcher statFetcher, ZkMetrics metrics) {
+        this.sessionMember = new Member("session", sessionFramework, statFetcher, metrics);
+        final ImmutableList.Builder<Member> builder = ImmutableList.builder();
+        for (final Map.Entry<String, CuratorFramework> member : memberFrameworks.entrySet()) {
+            builder.add(new Member(member.getKey(), member.getValue(), statFetcher, metrics));
+        }
+        this.members = builder.build();
+    }
+
+    /**
+     * Returns the servers which reads are routed to, with their current load, or an empty list if all reads go to the
+     * session's own server.
+     */
+    public List<ZooStatus.ReadServer> getStatus() {
+        final ImmutableList.Builder<ZooStatus.ReadServer> servers = ImmutableList.builder();
+        for (final Member member : members) {
+            servers.add(new ZooStatus.ReadServer(member.server, member.isConnected(), member.outstanding.get(),
+                    member.latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+        return servers.build();
+    }
+
+    /**
+     * Returns the session of a randomly chosen server, for long-lived readers such as the search index, which must
+     * stick to a single session.
+     */
+    CuratorFramework pickSession() {
+        return members.isEmpty()
+                ? sessionMember.curatorFramework
+                : members.get(ThreadLocalRandom.current().nextInt(members.size())).curatorFramework;
+    }
+
+    /** Returns the server which the next read should go to. */
+    Member pick() {
+        final int numMembers = members.size();
+        if (numMembers == 0) {
+            return sessionMember;
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(numMembers);
+        final Member member = numMembers == 1
+                ? members.get(first)
+                : better(members.get(first), members.get((first + 1 + random.nextInt(numMembers - 1)) % numMembers));
+        if (member != null) {
+            return member;
+        }
+        for (final Member other : members) {
+            if (other.isConnected()) {
+                return other;
+            }
+        }
+        return sessionMember;
+    }
+
+    /** Returns the connected server whose reads are expected to complete first, or {@code null} if neither is. */
+    private static Member better(Member first, Member second) {
+        if (!first.isConnected()) {
+            return second.isConnected() ? second : null;
+        }
+        if (!second.isConnected()) {
+            return first;
+        }
+        return first.expectedNanos() <= second.expectedNanos() ? first : second;
+    }
+
+    /** Closes the sessions of the servers, but not the session which the router was created for. */
+    void close() {
+        for (final Member member : members) {
+            member.curatorFramework.close();
+        }
+    }
+
+    /** A server which reads are routed to, along with its load. */
+    static final class Member {
+
+        private final String server;
+        private final CuratorFramework curatorFramework;
+        private final CuratorZnodeReader reader;
+        private final ZkMetrics metrics;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile long latencyNanos = INITIAL_LATENCY_NANOS;
+
+        /** The sync which is in flight, if any, and the one which the reads that came after it wait for. */
+        private SettableFuture<Void> syncing;
+        private SettableFuture<Void> nextSync;
+
+        Member(String server, CuratorFramework curatorFramework, PipelinedStatFetcher statFetcher,
+                ZkMetrics metrics) {
+            this.server = server;
+            this.curatorFramework = curatorFramework;
+            this.reader = new CuratorZnodeReader(curatorFramework, statFetcher, metrics);
+            this.metrics = metrics;
+        }
+
+        CuratorZnodeReader getReader() {
+            return reader;
+        }
+
+        boolean isConnected() {
+            return curatorFramework.getZookeeperClient().isConnected();
+        }
+
+        /** Returns how long a new read is expected to take, given the reads which are outstanding. */
+        long expectedNanos() {
+            return (outstanding.get() + 1) * latencyNanos;
+        }
+
+        /** Records the start of a read and returns its start time, to be passed to {@link #completed}. */
+        long started() {
+            outstanding.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /**
+         * Records the completion of a read, and adds its latency to the average if {@code sample}. Reads which make
+         * many requests, e.g. of the stats of all children, are not sampled as they would skew the average.
+         */
+        void completed(long startNanos, boolean sample) {
+            outstanding.decrementAndGet();
+            if (sample) {
+                // racy updates merely lose a sample
+                final long latency = latencyNanos;
+                final long sampleNanos = System.nanoTime() - startNanos;
+                latencyNanos = Math.max(1, latency + (long) (LATENCY_ALPHA * (sampleNanos - latency)));
+            }
+        }
+
+        /**
+         * Returns a future which completes once the server caught up with the leader, as of some time after this
+         * call. Concurrent reads share their syncs: a read which comes while a sync is in flight cannot use it, as it
+         * may have been issued before the writes which the read must see, so it waits for the next sync, which is
+         * issued once the one in flight completes, on behalf of all the reads that came in the meantime.
+         */
+        ListenableFuture<Void> sync() {
+            final SettableFuture<Void> future;
+            final boolean issue;
+            synchronized (this) {
+                if (nextSync == null) {
+                    nextSync = SettableFuture.create();
+                }
+                future = nextSync;
+                issue = syncing == null;
+                if (issue) {
+                    syncing = nextSync;
+                    nextSync = null;
+                }
+            }
+            if (issue) {
+                issueSync(future);
+            }
+            return future;
+        }
+
+        private void issueSync(final SettableFuture<Void> future) {
+            Futures.addCallback(metrics.syncAsync(curatorFramework, "/"), new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    syncCompleted(future, null);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    syncCompleted(future, t);
+                }
+            });
+        }
+
+        private void syncCompleted(SettableFuture<Void> future, Throwable failure) {
+            final SettableFuture<Void> next;
+            synchronized (this) {
+                next = nextSync;
+                syncing = next;
+                nextSync = null;
+            }
+            if (failure == null) {
+                future.set(null);
+            } else {
+                future.setException(failure);
+            }
+            if (next != null) {
+                issueSync(next);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.Maps;
+
+/** Configures how the reads of a session are spread across the servers of its ensemble, see {@link ReadRouter}. */
+public class ReadRoutingConfiguration {
+
+    /**
+     * Whether reads are routed across the servers of an ensemble, each through a session of its own. Otherwise all
+     * reads go to the single server which the cluster's session is connected to.
+     */
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * The servers to route the reads of a cluster to, as {@code host:port}, by cluster name, e.g. the ensemble's
+     * observers. Clusters which are not listed route their reads to every server of their connect string.
+     */
+    @NotNull
+    @JsonProperty
+    private Map<String, List<String>> servers = Maps.newLinkedHashMap();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Map<String, List<String>> getServers() {
+        return servers;
+    }
+
+    public void setServers(Map<String, List<String>> servers) {
+        this.servers = servers;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("enabled", enabled)
+                .append("servers", servers)
+                .build();
+    }
+
+}
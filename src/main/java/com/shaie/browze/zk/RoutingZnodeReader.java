@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.shaie.browze.zk.ReadRouter.Member;
+
+/**
+ * A {@link ZnodeReader} and {@link AsyncZnodeReader} which reads directly from ZooKeeper, routing every read to a
+ * server picked by a {@link ReadRouter}. If {@code sync}, every read first makes its server catch up with the leader,
+ * so that it sees every write which completed before it was made, at the cost of a round trip to the leader which is
+ * shared by concurrent reads.
+ */
+public class RoutingZnodeReader implements ZnodeReader, AsyncZnodeReader {
+
+    private final ReadRouter router;
+    private final boolean sync;
+
+    public RoutingZnodeReader(ReadRouter router, boolean sync) {
+        this.router = router;
+        this.sync = sync;
+    }
+
+    @Override
+    public byte[] getData(String path, Stat stat) throws Exception {
+        final Member member = router.pick();
+        final long startNanos = member.started();
+        try {
+            awaitSync(member);
+            return member.getReader().getData(path, stat);
+        } finally {
+            member.completed(startNanos, true);
+        }
+    }
+
+    @Override
+    public List<String> getChildren(String path) throws Exception {
+        final Member member = router.pick();
+        final long startNanos = member.started();
+        try {
+            awaitSync(member);
+            return member.getReader().getChildren(path);
+        } finally {
+            member.completed(startNanos, true);
+        }
+    }
+
+    @Override
+    public Stat checkExists(String path) throws Exception {
+        final Member member = router.pick();
+        final long startNanos = member.started();
+        try {
+            awaitSync(member);
+            return member.getReader().checkExists(path);
+        } finally {
+            member.completed(startNanos, true);
+        }
+    }
+
+    @Override
+    public Map<String, Stat> getChildStats(String parent, List<String> children) throws Exception {
+        final Member member = router.pick();
+        final long startNanos = member.started();
+        try {
+            awaitSync(member);
+            return member.getReader().getChildStats(parent, children);
+        } finally {
+            member.completed(startNanos, false);
+        }
+    }
+
+    @Override
+    public ListenableFuture<byte[]> getDataAsync(final String path, final Stat stat) {
+        return route(new Read<byte[]>() {
+            @Override
+            ListenableFuture<byte[]> read(CuratorZnodeReader reader) {
+                return reader.getDataAsync(path, stat);
+            }
+        }, true);
+    }
+
+    @Override
+    public ListenableFuture<List<String>> getChildrenAsync(final String path) {
+        return route(new Read<List<String>>() {
+            @Override
+            ListenableFuture<List<String>> read(CuratorZnodeReader reader) {
+                return reader.getChildrenAsync(path);
+            }
+        }, true);
+    }
+
+    @Override
+    public ListenableFuture<Stat> checkExistsAsync(final String path) {
+        return route(new Read<Stat>() {
+            @Override
+            ListenableFuture<Stat> read(CuratorZnodeReader reader) {
+                return reader.checkExistsAsync(path);
+            }
+        }, true);
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Stat>> getChildStatsAsync(final String parent, final List<String> children) {
+        return route(new Read<Map<String, Stat>>() {
+            @Override
+            ListenableFuture<Map<String, Stat>> read(CuratorZnodeReader reader) {
+                return reader.getChildStatsAsync(parent, children);
+            }
+        }, false);
+    }
+
+    private void awaitSync(Member member) throws Exception {
+        if (!sync) {
+            return;
+        }
+        try {
+            member.sync().get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /** Makes the read on the picked server, once it synced if needed, see {@link Member#completed}. */
+    private <T> ListenableFuture<T> route(final Read<T> read, final boolean sample) {
+        final Member member = router.pick();
+        final long startNanos = member.started();
+        final ListenableFuture<T> result;
+        if (sync) {
+            // the read is made on the thread which completes the sync, so count it towards the current request
+            result = Futures.transform(member.sync(), new AsyncFunction<Void, T>() {
+                @Override
+                public ListenableFuture<T> apply(Void input) {
+                    return read.read(member.getReader());
+                }
+            }, ZkMetrics.requestExecutor(ZkMetrics.currentRequest()));
+        } else {
+            result = read.read(member.getReader());
+        }
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                member.completed(startNanos, sample);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /** A single read, made on whichever server it is routed to. */
+    private abstract static class Read<T> {
+        abstract ListenableFuture<T> read(CuratorZnodeReader reader);
+    }
+
+}
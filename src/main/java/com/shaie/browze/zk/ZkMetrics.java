@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.BackgroundPathable;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.DataTree;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Records the ZooKeeper operations which are made on behalf of requests, reads and writes alike, in the
+ * {@link MetricRegistry}: a latency timer and an error meter per operation, a meter of the bytes read, a histogram of
+ * the number of operations per request, and a gauge of the operations which are in flight. A missing node is a result
+ * rather than an error, so it does not count as one.
+ * <p>
+ * Operations which are made on a request's thread between {@link #beginRequest()} and {@link #endRequest} are also
+ * counted towards the request. Background operations count towards the request which issued them, and so do the
+ * operations which are made by code that runs on the request's {@link #requestExecutor}, e.g. in the callbacks of
+ * asynchronous requests.
+ */
+public class ZkMetrics {
+
+    /** The instrumented operations. */
+    public enum Operation {
+        GET_DATA("getData"),
+        GET_CHILDREN("getChildren"),
+        EXISTS("exists"),
+        CREATE("create"),
+        SET_DATA("setData"),
+        DELETE("delete"),
+        MULTI("multi"),
+        SYNC("sync");
+
+        private final String metricName;
+
+        private Operation(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    /** The number of operations of the request which is handled by the current thread, if any. */
+    private static final ThreadLocal<AtomicInteger> REQUEST_OPERATIONS = new ThreadLocal<>();
+
+    private final Map<Operation, Timer> timers = Maps.newEnumMap(Operation.class);
+    private final Map<Operation, Meter> errors = Maps.newEnumMap(Operation.class);
+    private final Meter bytesRead;
+    private final Histogram requestOperations;
+    private final AtomicInteger inFlightOperations = new AtomicInteger();
+
+    public ZkMetrics(MetricRegistry registry) {
+        for (final Operation operation : Operation.values()) {
+            timers.put(operation, registry.timer(MetricRegistry.name(ZkMetrics.class, operation.metricName)));
+            errors.put(operation,
+                    registry.meter(MetricRegistry.name(ZkMetrics.class, operation.metricName, "errors")));
+        }
+        this.bytesRead = registry.meter(MetricRegistry.name(ZkMetrics.class, "bytesRead"));
+        this.requestOperations = registry.histogram(MetricRegistry.name(ZkMetrics.class, "requestOperations"));
+        registry.register(MetricRegistry.name(ZkMetrics.class, "inFlightOperations"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return inFlightOperations.get();
+            }
+        });
+    }
+
+    /**
+     * Starts counting the operations of the request which is handled by the current thread, and returns their count,
+     * which must be passed to {@link #endRequest} once the request is done, on whichever thread.
+     */
+    public static AtomicInteger beginRequest() {
+        final AtomicInteger requestOperations = new AtomicInteger();
+        REQUEST_OPERATIONS.set(requestOperations);
+        return requestOperations;
+    }
+
+    /**
+     * Returns the operation count of the request which is handled by the current thread, or {@code null} if there is
+     * none, so that the operations which other threads make on its behalf can count towards it, see
+     * {@link #joinRequest}.
+     */
+    public static AtomicInteger currentRequest() {
+        return REQUEST_OPERATIONS.get();
+    }
+
+    /** Counts the operations of the current thread towards the given request, until {@link #leaveRequest}. */
+    public static void joinRequest(AtomicInteger requestOperations) {
+        if (requestOperations != null) {
+            REQUEST_OPERATIONS.set(requestOperations);
+        }
+    }
+
+    public static void leaveRequest() {
+        REQUEST_OPERATIONS.remove();
+    }
+
+    /**
+     * Returns an executor which runs tasks right away on the calling thread, counting the operations which they make
+     * towards the given request, if any. Asynchronous requests run their callbacks on it, which would otherwise run
+     * on threads that count towards no request.
+     */
+    public static Executor requestExecutor(final AtomicInteger requestOperations) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                final AtomicInteger previous = REQUEST_OPERATIONS.get();
+                joinRequest(requestOperations);
+                try {
+                    command.run();
+                } finally {
+                    if (previous == null) {
+                        leaveRequest();
+                    } else {
+                        joinRequest(previous);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Stops counting the operations of a request, records their number and returns it. Asynchronous requests may end
+     * on another thread than the one which began them.
+     */
+    public int endRequest(AtomicInteger count) {
+        if (REQUEST_OPERATIONS.get() == count) {
+            REQUEST_OPERATIONS.remove();
+        }
+        requestOperations.update(count.get());
+        return count.get();
+    }
+
+    /** Returns the number of operations which were started and have not completed yet, across all clusters. */
+    public int getInFlightOperations() {
+        return inFlightOperations.get();
+    }
+
+    public byte[] getData(CuratorFramework curatorFramework, String path, Stat stat, CuratorWatcher watcher)
+            throws Exception {
+        final long startNanos = started(Operation.GET_DATA);
+        try {
+            final byte[] data = watcher == null
+                    ? curatorFramework.getData().storingStatIn(stat).forPath(path)
+                    : curatorFramework.getData().storingStatIn(stat).usingWatcher(watcher).forPath(path);
+            completed(Operation.GET_DATA, startNanos, Code.OK.intValue(), data == null ? 0 : data.length);
+            return data;
+        } catch (final Exception e) {
+            failed(Operation.GET_DATA, startNanos, e);
+            throw e;
+        }
+    }
+
+    public List<String> getChildren(CuratorFramework curatorFramework, String path, CuratorWatcher watcher)
+            throws Exception {
+        final long startNanos = started(Operation.GET_CHILDREN);
+        try {
+            final List<String> children = watcher == null
+                    ? curatorFramework.getChildren().forPath(path)
+                    : curatorFramework.getChildren().usingWatcher(watcher).forPath(path);
+            completed(Operation.GET_CHILDREN, startNanos, Code.OK.intValue(), sizeOf(children));
+            return children;
+        } catch (final Exception e) {
+            failed(Operation.GET_CHILDREN, startNanos, e);
+            throw e;
+        }
+    }
+
+    public Stat checkExists(CuratorFramework curatorFramework, String path, CuratorWatcher watcher)
+            throws Exception {
+        final long startNanos = started(Operation.EXISTS);
+        try {
+            final Stat stat = watcher == null
+                    ? curatorFramework.checkExists().forPath(path)
+                    : curatorFramework.checkExists().usingWatcher(watcher).forPath(path);
+            completed(Operation.EXISTS, startNanos, Code.OK.intValue(), 0);
+            return stat;
+        } catch (final Exception e) {
+            failed(Operation.EXISTS, startNanos, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the data of a node in the background, storing its stat in {@code stat} before the returned future
+     * completes. The future fails with {@link org.apache.zookeeper.KeeperException.NoNodeException} if the node does
+     * not exist.
+     */
+    public ListenableFuture<byte[]> getDataAsync(CuratorFramework curatorFramework, String path, final Stat stat,
+            CuratorWatcher watcher) {
+        final BackgroundPathable<byte[]> getData = watcher == null
+                ? curatorFramework.getData()
+                : curatorFramework.getData().usingWatcher(watcher);
+        return inBackground(Operation.GET_DATA, getData, path, new Function<CuratorEvent, byte[]>() {
+            @Override
+            public byte[] apply(CuratorEvent event) {
+                DataTree.copyStat(event.getStat(), stat);
+                return event.getData();
+            }
+        });
+    }
+
+    /** Lists the children of a node in the background, see {@link #getDataAsync}. */
+    public ListenableFuture<List<String>> getChildrenAsync(CuratorFramework curatorFramework, String path,
+            CuratorWatcher watcher) {
+        final BackgroundPathable<List<String>> getChildren = watcher == null
+                ? curatorFramework.getChildren()
+                : curatorFramework.getChildren().usingWatcher(watcher);
+        return inBackground(Operation.GET_CHILDREN, getChildren, path, new Function<CuratorEvent, List<String>>() {
+            @Override
+            public List<String> apply(CuratorEvent event) {
+                return event.getChildren();
+            }
+        });
+    }
+
+    /** Reads the stat of a node in the background. The returned future yields {@code null} if it does not exist. */
+    public ListenableFuture<Stat> checkExistsAsync(CuratorFramework curatorFramework, String path,
+            CuratorWatcher watcher) {
+        final BackgroundPathable<Stat> checkExists = watcher == null
+                ? curatorFramework.checkExists()
+                : curatorFramework.checkExists().usingWatcher(watcher);
+        return inBackground(Operation.EXISTS, checkExists, path, new Function<CuratorEvent, Stat>() {
+            @Override
+            public Stat apply(CuratorEvent event) {
+                return event.getStat();
+            }
+        });
+    }
+
+    public String create(CuratorFramework curatorFramework, String path, byte[] data, boolean createParents)
+            throws Exception {
+        final long startNanos = started(Operation.CREATE);
+        try {
+            final String createdPath = createParents
+                    ? curatorFramework.create().creatingParentsIfNeeded().forPath(path, data)
+                    : curatorFramework.create().forPath(path, data);
+            completed(Operation.CREATE, startNanos, Code.OK.intValue(), 0);
+            return createdPath;
+        } catch (final Exception e) {
+            failed(Operation.CREATE, startNanos, e);
+            throw e;
+        }
+    }
+
+    public Stat setData(CuratorFramework curatorFramework, String path, byte[] data, int version) throws Exception {
+        final long startNanos = started(Operation.SET_DATA);
+        try {
+            final Stat stat = curatorFramework.setData().withVersion(version).forPath(path, data);
+            completed(Operation.SET_DATA, startNanos, Code.OK.intValue(), 0);
+            return stat;
+        } catch (final Exception e) {
+            failed(Operation.SET_DATA, startNanos, e);
+            throw e;
+        }
+    }
+
+    public void delete(CuratorFramework curatorFramework, String path, int version, boolean deleteChildren)
+            throws Exception {
+        final long startNanos = started(Operation.DELETE);
+        try {
+            if (deleteChildren) {
+                curatorFramework.delete().deletingChildrenIfNeeded().withVersion(version).forPath(path);
+            } else {
+                curatorFramework.delete().withVersion(version).forPath(path);
+            }
+            completed(Operation.DELETE, startNanos, Code.OK.intValue(), 0);
+        } catch (final Exception e) {
+            failed(Operation.DELETE, startNanos, e);
+            throw e;
+        }
+    }
+
+    /** Commits a transaction, which is a single operation however many operations it holds. */
+    public Collection<CuratorTransactionResult> commit(CuratorTransactionFinal transaction) throws Exception {
+        final long startNanos = started(Operation.MULTI);
+        try {
+            final Collection<CuratorTransactionResult> results = transaction.commit();
+            completed(Operation.MULTI, startNanos, Code.OK.intValue(), 0);
+            return results;
+        } catch (final Exception e) {
+            failed(Operation.MULTI, startNanos, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Counts a background operation towards the current request, if any, and returns its start time, which must be
+     * passed to {@link #completed} once the operation completes.
+     */
+    public long started(Operation operation) {
+        final AtomicInteger count = REQUEST_OPERATIONS.get();
+        if (count != null) {
+            count.incrementAndGet();
+        }
+        inFlightOperations.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /** Records the completion of a background operation. */
+    public void completed(Operation operation, long startNanos, CuratorEvent event) {
+        final byte[] data = event.getData();
+        completed(operation, startNanos, event.getResultCode(),
+                (data == null ? 0 : data.length) + sizeOf(event.getChildren()));
+    }
+
+    /** Records the completion of an operation with the given result code. */
+    public void completed(Operation operation, long startNanos, int resultCode, int numBytesRead) {
+        inFlightOperations.decrementAndGet();
+        timers.get(operation).update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (resultCode != Code.OK.intValue() && resultCode != Code.NONODE.intValue()) {
+            errors.get(operation).mark();
+        }
+        if (numBytesRead > 0) {
+            bytesRead.mark(numBytesRead);
+        }
+    }
+
+    /** Records an operation which failed with an exception. */
+    public void failed(Operation operation, long startNanos, Exception e) {
+        completed(operation, startNanos, e instanceof KeeperException
+                ? ((KeeperException) e).code().intValue()
+                : Code.SYSTEMERROR.intValue(), 0);
+    }
+
+    /**
+     * Makes the server of the session catch up with the leader in the background, so that reads which are made after
+     * the returned future completes see every write which completed before it was called.
+     */
+    public ListenableFuture<Void> syncAsync(CuratorFramework curatorFramework, String path) {
+        return inBackground(Operation.SYNC, curatorFramework.sync(), path, new Function<CuratorEvent, Void>() {
+            @Override
+            public Void apply(CuratorEvent event) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Makes the operation in the background and completes the returned future from its callback, with the result
+     * which {@code result} extracts from its event. A missing node fails the future, except for {@code exists}.
+     */
+    private <T> ListenableFuture<T> inBackground(final Operation operation, BackgroundPathable<?> builder,
+            final String path, final Function<CuratorEvent, T> result) {
+        final SettableFuture<T> future = SettableFuture.create();
+        final long startNanos = started(operation);
+        try {
+            builder.inBackground(new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    completed(operation, startNanos, event);
+                    final Code code = Code.get(event.getResultCode());
+                    if (code == Code.OK) {
+                        future.set(result.apply(event));
+                    } else if (code == Code.NONODE && operation == Operation.EXISTS) {
+                        future.set(null);
+                    } else {
+                        future.setException(KeeperException.create(code, path));
+                    }
+                }
+            }).forPath(path);
+        } catch (final Exception e) {
+            failed(operation, startNanos, e);
+            future.setException(e);
+        }
+        return future;
+    }
+
+    /** Returns the size of the names of the given children, counting characters rather than encoded bytes. */
+    private static int sizeOf(List<String> children) {
+        int size = 0;
+        if (children != null) {
+            for (final String child : children) {
+                size += child.length();
+            }
+        }
+        return size;
+    }
+
+}
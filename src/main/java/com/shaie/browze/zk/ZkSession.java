@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.curator.framework.CuratorFramework;
+
+import com.shaie.browze.cache.ZnodeCache;
+import com.shaie.browze.changes.ChangeFeeds;
+import com.shaie.browze.search.SearchIndex;
+
+/**
+ * A long-lived Curator session to a single ensemble, shared by all users of that ensemble. A session is acquired from
+ * {@link ZkSessions} for the duration of a request and must be {@link #release() released} afterwards, so that it is
+ * not closed while in use.
+ */
+public class ZkSession {
+
+    private final String cluster;
+    private final String connectString;
+    private final CuratorFramework curatorFramework;
+    private final ZnodeCache znodeCache;
+    private final ZnodeReader znodeReader;
+    private final AsyncZnodeReader asyncZnodeReader;
+    private final ReadRouter readRouter;
+    private final RoutingZnodeReader routedReader;
+    private final RoutingZnodeReader syncedReader;
+    private final SearchIndex searchIndex;
+    private final ChangeFeeds changeFeeds;
+
+    private int inUse = 0;
+    private long lastUsedNanos = System.nanoTime();
+    private boolean closed = false;
+
+    ZkSession(String cluster, String connectString, CuratorFramework curatorFramework, ZnodeCache znodeCache,
+            ZnodeReader znodeReader, AsyncZnodeReader asyncZnodeReader, ReadRouter readRouter,
+            RoutingZnodeReader routedReader, RoutingZnodeReader syncedReader, SearchIndex searchIndex,
+            ChangeFeeds changeFeeds) {
+        this.cluster = cluster;
+        this.connectString = connectString;
+        this.curatorFramework = curatorFramework;
+        this.znodeCache = znodeCache;
+        this.znodeReader = znodeReader;
+        this.asyncZnodeReader = asyncZnodeReader;
+        this.readRouter = readRouter;
+        this.routedReader = routedReader;
+        this.syncedReader = syncedReader;
+        this.searchIndex = searchIndex;
+        this.changeFeeds = changeFeeds;
+    }
+
+    public String getCluster() {
+        return cluster;
+    }
+
+    public String getConnectString() {
+        return connectString;
+    }
+
+    public CuratorFramework getCuratorFramework() {
+        return curatorFramework;
+    }
+
+    /** Returns the session's cache, or {@code null} if caching is disabled. */
+    public ZnodeCache getZnodeCache() {
+        return znodeCache;
+    }
+
+    /** Returns the reader which should be used to browse the ensemble, which is the cache if it is enabled. */
+    public ZnodeReader getZnodeReader() {
+        return znodeReader;
+    }
+
+    /** Returns the reader which should be used to browse the ensemble without blocking, see {@link #getZnodeReader}. */
+    public AsyncZnodeReader getAsyncZnodeReader() {
+        return asyncZnodeReader;
+    }
+
+    /** Returns the router which spreads the session's reads across the servers of the ensemble. */
+    public ReadRouter getReadRouter() {
+        return readRouter;
+    }
+
+    /**
+     * Returns the reader which reads directly from ZooKeeper, spread across the servers of the ensemble, for reads
+     * which should bypass the cache, such as exports.
+     */
+    public RoutingZnodeReader getRoutedReader() {
+        return routedReader;
+    }
+
+    /**
+     * Returns the reader which reads directly from ZooKeeper like {@link #getRoutedReader}, but syncs each server with
+     * the leader before reading from it, so that reads see every write which completed before they were made.
+     */
+    public RoutingZnodeReader getSyncedReader() {
+        return syncedReader;
+    }
+
+    /** Returns the session's search index, or {@code null} if search is disabled. The index is built lazily. */
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /** Returns the session's change feeds, which are opened by their first subscriber. */
+    public ChangeFeeds getChangeFeeds() {
+        return changeFeeds;
+    }
+
+    public boolean isConnected() {
+        return curatorFramework.getZookeeperClient().isConnected();
+    }
+
+    public synchronized void release() {
+        --inUse;
+        lastUsedNanos = System.nanoTime();
+    }
+
+    /** Marks the session as in use, unless it was already closed. */
+    synchronized boolean tryAcquire() {
+        if (closed) {
+            return false;
+        }
+        ++inUse;
+        lastUsedNanos = System.nanoTime();
+        return true;
+    }
+
+    /** Marks the session as closed if it is not in use and was idle for at least the given time. */
+    synchronized boolean closeIfIdle(long idleNanos) {
+        if (closed || inUse > 0 || System.nanoTime() - lastUsedNanos < idleNanos) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    /** Closes the session, regardless of whether it is in use. */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        if (znodeCache != null) {
+            znodeCache.close();
+        }
+        if (searchIndex != null) {
+            searchIndex.close();
+        }
+        changeFeeds.close();
+        readRouter.close();
+        curatorFramework.close();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("cluster", cluster)
+                .append("connectString", connectString)
+                .build();
+    }
+
+}
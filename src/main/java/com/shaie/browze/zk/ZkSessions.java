@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.zookeeper.client.ConnectStringParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.shaie.browze.cache.ZnodeCache;
+import com.shaie.browze.cache.ZnodeCacheConfiguration;
+import com.shaie.browze.changes.ChangeFeedConfiguration;
+import com.shaie.browze.changes.ChangeFeeds;
+import com.shaie.browze.search.SearchConfiguration;
+import com.shaie.browze.search.SearchIndex;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * A registry of named, long-lived {@link ZkSession sessions}, one per ensemble. Sessions are created lazily on their
+ * first use, shared by all requests to the same ensemble, and closed once they have been idle for the configured
+ * time. Creating a session does not wait for the connection to be established; the first reads simply wait for it as
+ * part of Curator's retry logic.
+ * <p>
+ * Ad-hoc clusters, which are registered at runtime through {@code /zoo/connect}, are unregistered together with their
+ * idle session, and only a configured number of them may exist at the same time, so that clients cannot grow the
+ * registry, or the ensembles which the {@code EnsembleMonitor} polls, without bound. Configured clusters are never
+ * unregistered.
+ */
+public class ZkSessions implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZkSessions.class);
+
+    private final ZooKeeperConfiguration zkConfig;
+    private final ZnodeCacheConfiguration cacheConfig;
+    private final SearchConfiguration searchConfig;
+    private final ChangeFeedConfiguration changesConfig;
+    private final ZkMetrics metrics;
+    private final PipelinedStatFetcher statFetcher;
+
+    /** The connect strings of all known clusters, configured and ad-hoc. */
+    private final ConcurrentMap<String, String> clusters = Maps.newConcurrentMap();
+    /** The names of the ad-hoc clusters, which are unregistered once their session was closed for being idle. */
+    private final Set<String> adHocClusters = Sets.newConcurrentHashSet();
+    private final ConcurrentMap<String, ZkSession> sessions = Maps.newConcurrentMap();
+
+    private ScheduledExecutorService reaper;
+
+    public ZkSessions(ZooKeeperConfiguration zkConfig, ZnodeCacheConfiguration cacheConfig,
+            SearchConfiguration searchConfig, ChangeFeedConfiguration changesConfig, ZkMetrics metrics) {
+        this.zkConfig = zkConfig;
+        this.cacheConfig = cacheConfig;
+        this.searchConfig = searchConfig;
+        this.changesConfig = changesConfig;
+        this.metrics = metrics;
+        this.statFetcher = new PipelinedStatFetcher(zkConfig, metrics);
+        clusters.putAll(zkConfig.getClusters());
+    }
+
+    @Override
+    public void start() {
+        final long idleMs = zkConfig.getSessionIdleTimeout().toMilliseconds();
+        final long periodMs = Math.max(1000, Math.min(idleMs / 2, TimeUnit.MINUTES.toMillis(1)));
+        reaper = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("zk-session-reaper").setDaemon(true).build());
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                closeIdleSessions(TimeUnit.MILLISECONDS.toNanos(idleMs));
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+        for (final ZkSession session : sessions.values()) {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * Acquires the session of the cluster with the given connect string, first registering it as an ad-hoc cluster if
+     * it is not known yet. The session must be {@link ZkSession#release() released} when done.
+     *
+     * @throws IllegalStateException if the maximum number of ad-hoc clusters are already registered
+     */
+    public ZkSession connect(String connectString) {
+        while (true) {
+            final ZkSession session = acquireSession(register(connectString));
+            if (session != null) {
+                return session;
+            }
+            // unregistered for being idle right after it was found, register it again
+        }
+    }
+
+    /**
+     * Registers an ad-hoc cluster for the given connect string and returns its name. If a cluster with the same
+     * connect string is already known, its name is returned instead.
+     */
+    private synchronized String register(String connectString) {
+        for (final Map.Entry<String, String> cluster : clusters.entrySet()) {
+            if (cluster.getValue().equals(connectString)) {
+                return cluster.getKey();
+            }
+        }
+        if (adHocClusters.size() >= zkConfig.getMaxAdHocClusters()) {
+            throw new IllegalStateException("Cannot connect to more than " + zkConfig.getMaxAdHocClusters()
+                    + " ad-hoc clusters, try again once some of them are idle for " + zkConfig.getSessionIdleTimeout());
+        }
+        clusters.put(connectString, connectString);
+        adHocClusters.add(connectString);
+        LOGGER.info("Registered ad-hoc cluster [{}]", connectString);
+        return connectString;
+    }
+
+    /** Unregisters the given cluster if it is an ad-hoc one. */
+    private synchronized void unregisterAdHoc(String cluster) {
+        if (adHocClusters.remove(cluster)) {
+            clusters.remove(cluster);
+            LOGGER.info("Unregistered idle ad-hoc cluster [{}]", cluster);
+        }
+    }
+
+    /**
+     * Returns the name of the given cluster, or of the default cluster if {@code cluster} is {@code null}. The default
+     * cluster is the configured one, or the only known cluster if there is exactly one.
+     */
+    public String resolve(String cluster) {
+        if (cluster == null) {
+            cluster = zkConfig.getDefaultCluster();
+        }
+        if (cluster == null) {
+            final Set<String> names = getClusters();
+            if (names.size() != 1) {
+                throw new IllegalStateException("Must first /connect to ZK, or specify a cluster!");
+            }
+            cluster = names.iterator().next();
+        }
+        if (!clusters.containsKey(cluster)) {
+            throw new IllegalArgumentException("Unknown cluster: " + cluster);
+        }
+        return cluster;
+    }
+
+    /** Returns the metrics which instrument the ZooKeeper operations of all sessions. */
+    public ZkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Returns the connect string of the given cluster, or {@code null} if it is unknown. */
+    public String getConnectString(String cluster) {
+        return clusters.get(cluster);
+    }
+
+    /** Returns the names of all known clusters. */
+    public Set<String> getClusters() {
+        return ImmutableSet.copyOf(clusters.keySet());
+    }
+
+    /** Returns the open session of the given cluster, or {@code null} if there isn't one. Does not acquire it. */
+    public ZkSession getOpenSession(String cluster) {
+        return sessions.get(cluster);
+    }
+
+    /**
+     * Acquires the session of the given cluster, or of the default cluster if {@code cluster} is {@code null},
+     * opening it if needed. The session must be {@link ZkSession#release() released} when done.
+     */
+    public ZkSession acquire(String cluster) {
+        final String name = resolve(cluster);
+        final ZkSession session = acquireSession(name);
+        if (session == null) {
+            throw new IllegalArgumentException("Unknown cluster: " + name);
+        }
+        return session;
+    }
+
+    /** Acquires the session of the given cluster, opening it if needed, or returns {@code null} if it is unknown. */
+    private ZkSession acquireSession(String name) {
+        while (true) {
+            ZkSession session = sessions.get(name);
+            if (session == null) {
+                final String connectString = clusters.get(name);
+                if (connectString == null) {
+                    // an ad-hoc cluster which was unregistered for being idle
+                    return null;
+                }
+                final ZkSession newSession = openSession(name, connectString);
+                session = sessions.putIfAbsent(name, newSession);
+                if (session == null) {
+                    session = newSession;
+                } else {
+                    // lost the race to another request
+                    newSession.close();
+                }
+            }
+            if (session.tryAcquire()) {
+                return session;
+            }
+            // closed by the reaper after we got it, replace it with a new one
+            sessions.remove(name, session);
+        }
+    }
+
+    private ZkSession openSession(String cluster, String connectString) {
+        LOGGER.info("Opening session to cluster [{}] at [{}]", cluster, connectString);
+        final CuratorFramework curatorFramework = startCuratorFramework(connectString);
+        final Map<String, CuratorFramework> memberFrameworks = Maps.newLinkedHashMap();
+        for (final String server : getRoutedServers(cluster, connectString)) {
+            memberFrameworks.put(server, startCuratorFramework(server));
+        }
+        if (!memberFrameworks.isEmpty()) {
+            LOGGER.info("Routing reads of cluster [{}] to {}", cluster, memberFrameworks.keySet());
+        }
+        final ReadRouter readRouter = new ReadRouter(curatorFramework, memberFrameworks, statFetcher, metrics);
+        final RoutingZnodeReader routedReader = new RoutingZnodeReader(readRouter, false);
+        final ZnodeCache znodeCache;
+        final ZnodeReader znodeReader;
+        final AsyncZnodeReader asyncZnodeReader;
+        if (cacheConfig.isEnabled()) {
+            // the cache stays on the session's own server, where its watches are set
+            znodeCache = new ZnodeCache(curatorFramework, statFetcher, metrics, cacheConfig);
+            znodeReader = znodeCache;
+            asyncZnodeReader = znodeCache;
+        } else {
+            znodeCache = null;
+            znodeReader = routedReader;
+            asyncZnodeReader = routedReader;
+        }
+        final SearchIndex searchIndex = searchConfig.isEnabled()
+                ? new SearchIndex(readRouter.pickSession(), searchConfig)
+                : null;
+        return new ZkSession(cluster, connectString, curatorFramework, znodeCache, znodeReader, asyncZnodeReader,
+                readRouter, routedReader, new RoutingZnodeReader(readRouter, true), searchIndex,
+                new ChangeFeeds(curatorFramework, changesConfig));
+    }
+
+    private static CuratorFramework startCuratorFramework(String connectString) {
+        final CuratorFramework curatorFramework = CuratorFrameworkFactory.builder()
+                .connectString(connectString)
+                .connectionTimeoutMs(30000)
+                .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+                .build();
+        curatorFramework.start();
+        return curatorFramework;
+    }
+
+    /**
+     * Returns the connect strings of the servers which the reads of the given cluster are routed to, each with the
+     * cluster's chroot, or an empty list if they all go to the session's own server. A cluster whose connect string
+     * lists a single server is not routed, unless its servers are configured.
+     */
+    private List<String> getRoutedServers(String cluster, String connectString) {
+        final ReadRoutingConfiguration routingConfig = zkConfig.getReadRouting();
+        if (!routingConfig.isEnabled()) {
+            return Lists.newArrayList();
+        }
+        final ConnectStringParser parser = new ConnectStringParser(connectString);
+        final String chroot = parser.getChrootPath() == null ? "" : parser.getChrootPath();
+        final List<String> servers = Lists.newArrayList();
+        final List<String> configured = routingConfig.getServers().get(cluster);
+        if (configured != null && !configured.isEmpty()) {
+            for (final String server : configured) {
+                servers.add(server + chroot);
+            }
+        } else if (parser.getServerAddresses().size() > 1) {
+            for (final InetSocketAddress address : parser.getServerAddresses()) {
+                servers.add(address.getHostString() + ":" + address.getPort() + chroot);
+            }
+        }
+        return servers;
+    }
+
+    private void closeIdleSessions(long idleNanos) {
+        for (final ZkSession session : sessions.values()) {
+            if (session.closeIfIdle(idleNanos)) {
+                sessions.remove(session.getCluster(), session);
+                LOGGER.info("Closing idle session to cluster [{}]", session.getCluster());
+                closeSession(session);
+                unregisterAdHoc(session.getCluster());
+            }
+        }
+    }
+
+    private static void closeSession(ZkSession session) {
+        try {
+            session.close();
+        } catch (final Exception e) {
+            LOGGER.warn("Failed to close session to cluster [{}]", session.getCluster(), e);
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.zookeeper.data.Stat;
+
+/** Reads znodes on behalf of the resources. */
+public interface ZnodeReader {
+
+    /**
+     * Returns the data of the node at the given path and stores its stat in {@code stat}. Throws
+     * {@link org.apache.zookeeper.KeeperException.NoNodeException} if the node does not exist.
+     */
+    byte[] getData(String path, Stat stat) throws Exception;
+
+    /** Returns the names of the children of the node at the given path, in no particular order. */
+    List<String> getChildren(String path) throws Exception;
+
+    /** Returns the stat of the node at the given path, or {@code null} if it does not exist. */
+    Stat checkExists(String path) throws Exception;
+
+    /**
+     * Returns the stats of the given children of {@code parent}, keyed by child name. Children which no longer exist
+     * are omitted from the result.
+     */
+    Map<String, Stat> getChildStats(String parent, List<String> children) throws Exception;
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.zk;
+
+import java.util.Map;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.Maps;
+
+import io.dropwizard.util.Duration;
+
+/** Configures how browze talks to ZooKeeper. */
+public class ZooKeeperConfiguration {
+
+    /** The known ensembles, by name. More ensembles can be added at runtime through {@code /zoo/connect}. */
+    @NotNull
+    @JsonProperty
+    private Map<String, String> clusters = Maps.newLinkedHashMap();
+
+    /** The cluster to use by requests which do not specify one. */
+    @JsonProperty
+    private String defaultCluster;
+
+    /** How long {@code /zoo/connect} waits for the connection to be established. */
+    @NotNull
+    @JsonProperty
+    private Duration connectTimeout = Duration.seconds(10);
+
+    /** Sessions which were not used for this long are closed, and reopened on their next use. */
+    @NotNull
+    @JsonProperty
+    private Duration sessionIdleTimeout = Duration.minutes(30);
+
+    /**
+     * The maximum number of ad-hoc clusters which may be registered through {@code /zoo/connect} at the same time. An
+     * ad-hoc cluster is unregistered once its session was closed for being idle. Configured clusters do not count.
+     */
+    @Min(0)
+    @JsonProperty
+    private int maxAdHocClusters = 100;
+
+    /** The maximum number of pipelined background requests a single read may have in flight. */
+    @Min(1)
+    @JsonProperty
+    private int maxInFlightRequests = 500;
+
+    /** The maximum time to wait for a batch of pipelined requests to complete. */
+    @NotNull
+    @JsonProperty
+    private Duration requestTimeout = Duration.seconds(30);
+
+    /**
+     * The number of threads which write the responses of asynchronous requests, so that they are never written by
+     * ZooKeeper's event thread, which would hold up the callbacks and watches of the entire session.
+     */
+    @Min(1)
+    @JsonProperty
+    private int responseThreads = 16;
+
+    /** How reads are spread across the servers of an ensemble. */
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ReadRoutingConfiguration readRouting = new ReadRoutingConfiguration();
+
+    public Map<String, String> getClusters() {
+        return clusters;
+    }
+
+    public void setClusters(Map<String, String> clusters) {
+        this.clusters = clusters;
+    }
+
+    public String getDefaultCluster() {
+        return defaultCluster;
+    }
+
+    public void setDefaultCluster(String defaultCluster) {
+        this.defaultCluster = defaultCluster;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getSessionIdleTimeout() {
+        return sessionIdleTimeout;
+    }
+
+    public void setSessionIdleTimeout(Duration sessionIdleTimeout) {
+        this.sessionIdleTimeout = sessionIdleTimeout;
+    }
+
+    public int getMaxAdHocClusters() {
+        return maxAdHocClusters;
+    }
+
+    public void setMaxAdHocClusters(int maxAdHocClusters) {
+        this.maxAdHocClusters = maxAdHocClusters;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public int getResponseThreads() {
+        return responseThreads;
+    }
+
+    public void setResponseThreads(int responseThreads) {
+        this.responseThreads = responseThreads;
+    }
+
+    public ReadRoutingConfiguration getReadRouting() {
+        return readRouting;
+    }
+
+    public void setReadRouting(ReadRoutingConfiguration readRouting) {
+        this.readRouting = readRouting;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("clusters", clusters)
+                .append("defaultCluster", defaultCluster)
+                .append("connectTimeout", connectTimeout)
+                .append("sessionIdleTimeout", sessionIdleTimeout)
+                .append("maxAdHocClusters", maxAdHocClusters)
+                .append("maxInFlightRequests", maxInFlightRequests)
+                .append("requestTimeout", requestTimeout)
+                .append("responseThreads", responseThreads)
+                .append("readRouting", readRouting)
+                .build();
+    }
+
+}
@@ -89,12 +89,18 @@
     $scope.selectedNode = null;
     $scope.expandedNodes = [ ];
     $scope.selectedNodeData = null;
+    $scope.selectedNodeDataInfo = null;
     $scope.selectedNodeStat = null;
     $scope.errorMsg = null;
     $scope.connectString = null;
+    $scope.cluster = null;
     $scope.connectStringEdit = false;
     $scope.connecting = false;
 
+    /* The feed of changes to the browsed node and its children, which refreshes the view when they change. */
+    var changes = null;
+    var changesUrl = null;
+
     /* Register a listener for browser's path changes. */
     $scope.$on("$locationChangeSuccess", function (event) {
       if (!$scope.connected) {
@@ -121,7 +127,7 @@
       var fullHierarchyExists = path == '/' ? false : isFullHierarchyExists(path);
       
       $scope.browsing = true;
-      Browze.get({path : path, full_hierarchy : !fullHierarchyExists}, function (success) {
+      Browze.get({path : path, cluster : $scope.cluster, full_hierarchy : !fullHierarchyExists}, function (success) {
         if (!fullHierarchyExists) {
           $scope.treedata = [success.tree];
           removeRootFromExpandedNodes();
@@ -139,16 +145,42 @@
         
         setSelectedPath(path);
         $scope.selectedNodeData = success.data;
+        $scope.selectedNodeDataInfo = success.dataInfo;
         $scope.selectedNodeStat = success.stat;
         expandAllNodesOnPath(treeNode.leaf ? treeNode.parent : path);
         $scope.errorMsg = null;
         $scope.browsing = false;
+        watchChanges(path);
       }, function (error) {
         $scope.browsing = false;
         $scope.errorMsg = error.data;
       });
     };
 
+    var watchChanges = function (path) {
+      var url = 'api/zoo/changes' + path + '?depth=1';
+      if ($scope.cluster != null) {
+        url += '&cluster=' + encodeURIComponent($scope.cluster);
+      }
+      if (url == changesUrl || typeof EventSource === 'undefined') {
+        return;
+      }
+      if (changes != null) {
+        changes.close();
+      }
+      changesUrl = url;
+      changes = new EventSource(url);
+      var refresh = function () {
+        if (!$scope.browsing) {
+          $scope.$apply(function () {
+            browseTree();
+          });
+        }
+      };
+      changes.addEventListener('changes', refresh);
+      changes.addEventListener('reset', refresh);
+    };
+
     var isFullHierarchyExists = function (path){
       if ($scope.treedata.length == 0) {
         return false; // root element not obtained yet.
@@ -255,6 +287,15 @@
       }
     };
 
+    /* Returns the URL of the full data of the selected node. */
+    $scope.selectedDataUrl = function () {
+      var url = 'api/zoo/data' + $scope.selectedFullPath($scope.selectedPath.length - 1);
+      if ($scope.selectedNodeDataInfo != null && $scope.selectedNodeDataInfo.gzip) {
+        url += '?gunzip=true';
+      }
+      return $scope.cluster == null ? url : url + (url.indexOf('?') == -1 ? '?' : '&') + 'cluster=' + encodeURIComponent($scope.cluster);
+    };
+
     $scope.selectedFullPath = function (nodeIdx) {
       return "/" + $scope.selectedPath.slice(1, nodeIdx + 1).join('/');
     };
@@ -262,6 +303,7 @@
     $scope.init = function () {
       Browze.status({}, function (success) {
         $scope.connectString = success.connectString;
+        $scope.cluster = success.cluster;
         $scope.connected = $scope.connectString != null && $scope.connectString.length > 0;
         if ($scope.connected) {
           browseTree();
@@ -276,6 +318,7 @@
       $scope.connecting = true;
       $scope.connected = false;
       Browze.connect({ connectString: $scope.connectString }, function (success) {
+        $scope.cluster = success.cluster;
         $scope.connectStringEdit = false;
         $scope.curConnectString = $scope.connectString;
         $scope.connected = $scope.connectString != null && $scope.connectString.length > 0;
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.backup;
+
+import static com.shaie.browze.backup.BackupArchive.ROOT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.shaie.browze.backup.BackupArchive.Metadata;
+
+/** Writes archives with an {@link ArchiveWriter} and reads them back with a {@link BackupArchive}. */
+public class BackupArchiveTest {
+
+    private static final int BLOCK_SIZE = 64;
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testWriteThenRead() throws Exception {
+        final byte[] large = new byte[3 * BLOCK_SIZE];
+        new Random(42).nextBytes(large);
+        final byte[] small = "small".getBytes(Charsets.UTF_8);
+        final File file = tmp.newFile("archive.zkb");
+
+        // /apps/{a/{x,y},b,c}, where b was deleted while the archive was written
+        try (final ArchiveWriter writer = new ArchiveWriter(file, BLOCK_SIZE)) {
+            // entries may be written in any order
+            writer.writeEntry(4, "x", stat(5, 0), large, 0, 0);
+            writer.writeEntry(ROOT, "/apps", stat(1, 7), new byte[0], 1, 3);
+            writer.writeEntry(2, "b", null, null, 0, 0);
+            writer.writeEntry(1, "a", stat(3, 6), small, 4, 2);
+            writer.writeEntry(3, "c", stat(4, 0), null, 0, 0);
+            writer.writeEntry(5, "y", stat(6, 0), small, 0, 0);
+            writer.finish(6, new Metadata("local", "/apps", "base", 1234L, 5, 4, 2));
+        }
+        assertEquals(ImmutableSet.of(file), ImmutableSet.copyOf(tmp.getRoot().listFiles()));
+
+        final BackupArchive archive = BackupArchive.open(file, 4);
+        assertEquals("archive", archive.getName());
+        assertEquals("local", archive.getCluster());
+        assertEquals("/apps", archive.getPath());
+        assertEquals("base", archive.getBase());
+        assertEquals(1234L, archive.getCreated());
+        assertEquals(5, archive.getNumNodes());
+        assertEquals(4, archive.getNumDataReads());
+        assertEquals(2, archive.getNumChildrenReads());
+        assertEquals(7, archive.getHighWaterMark());
+
+        assertEquals(ImmutableList.of("a", "c"), archive.getChildren("/apps"));
+        assertEquals(ImmutableList.of("x", "y"), archive.getChildren("/apps/a"));
+        assertEquals(ImmutableList.of(), archive.getChildren("/apps/c"));
+        assertNull(archive.checkExists("/apps/b"));
+        try {
+            archive.getData("/apps/b", new Stat());
+            fail("deleted node was read");
+        } catch (@SuppressWarnings("unused") final NoNodeException e) {
+            // expected
+        }
+
+        assertNode(archive, "/apps", stat(1, 7), new byte[0], 2);
+        assertNode(archive, "/apps/a", stat(3, 6), small, 2);
+        assertNode(archive, "/apps/c", stat(4, 0), null, 0);
+        assertNode(archive, "/apps/a/x", stat(5, 0), large, 0);
+        assertNode(archive, "/apps/a/y", stat(6, 0), small, 0);
+
+        final Map<String, Stat> childStats = archive.getChildStats("/apps", ImmutableList.of("a", "b", "c"));
+        assertEquals(ImmutableSet.of("a", "c"), childStats.keySet());
+        assertEquals(archive.checkExists("/apps/a"), childStats.get("a"));
+
+        // the nodes above the root lead to it
+        assertEquals(ImmutableList.of("apps"), archive.getChildren("/"));
+        assertEquals(1, archive.checkExists("/").getNumChildren());
+        assertNull(archive.checkExists("/other"));
+    }
+
+    @Test
+    public void testIncompleteArchiveIsRejected() throws Exception {
+        final File file = tmp.newFile("incomplete.zkb");
+        try (final ArchiveWriter writer = new ArchiveWriter(file, BLOCK_SIZE)) {
+            writer.writeEntry(ROOT, "/apps", stat(1, 1), null, 0, 0);
+        }
+        try {
+            BackupArchive.open(file, 4);
+            fail("an archive which was never finished was opened");
+        } catch (final IOException e) {
+            assertFalse(e.getMessage().isEmpty());
+        }
+    }
+
+    private static void assertNode(BackupArchive archive, String path, Stat expected, byte[] data, int numChildren)
+            throws Exception {
+        expected.setDataLength(data == null ? 0 : data.length);
+        expected.setNumChildren(numChildren);
+        final Stat stat = new Stat();
+        final byte[] actual = archive.getData(path, stat);
+        assertEquals(path, expected, stat);
+        assertEquals(path, expected, archive.checkExists(path));
+        if (data == null) {
+            assertNull(path, actual);
+        } else {
+            assertArrayEquals(path, data, actual);
+        }
+    }
+
+    /** Returns the stat of a node which was created by {@code czxid} and last changed by {@code pzxid}. */
+    private static Stat stat(long czxid, long pzxid) {
+        final Stat stat = new Stat();
+        stat.setCzxid(czxid);
+        stat.setMzxid(czxid);
+        stat.setPzxid(Math.max(czxid, pzxid));
+        stat.setCtime(1000 * czxid);
+        stat.setMtime(1000 * czxid);
+        stat.setVersion(1);
+        return stat;
+    }
+
+}
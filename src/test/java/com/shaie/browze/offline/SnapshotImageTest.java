@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.browze.offline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException.NodeExistsException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.ZKDatabase;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.apache.zookeeper.server.persistence.FileTxnSnapLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares {@link SnapshotImage images} of the data directory of a ZooKeeper test server with its live tree. The tests
+ * {@link #snapshot() snapshot} the server's tree at a known point, so the changes made afterwards are only in its
+ * transaction logs.
+ */
+public class SnapshotImageTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dataDir;
+    private TestingServer server;
+    private CuratorFramework client;
+
+    @Before
+    public void setUp() throws Exception {
+        dataDir = tmp.newFolder("zk");
+        server = new TestingServer(-1, dataDir);
+        client = connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testSnapshotOnly() throws Exception {
+        createTree();
+        snapshot();
+
+        final SnapshotImage image = newImage();
+        assertSameTree(image, "/");
+        assertEquals(0, image.getNumReplayedTxns());
+    }
+
+    @Test
+    public void testSnapshotAndLogs() throws Exception {
+        createTree();
+        final CuratorFramework owner = connect();
+        owner.create().withMode(CreateMode.EPHEMERAL).forPath("/apps/ephemeral", bytes("owned"));
+        snapshot();
+        waitUntilConnected(owner);
+
+        // only in the log from here on
+        client.inTransaction()
+                .create().forPath("/apps/m", bytes("created by a multi")).and()
+                .setData().forPath("/apps/a", bytes("set by a multi")).and()
+                .delete().forPath("/apps/b/x").and()
+                .commit();
+        try {
+            client.inTransaction()
+                    .create().forPath("/apps/failed", bytes("never created")).and()
+                    .create().forPath("/apps/a").and()
+                    .commit();
+            fail("a multi which creates an existing node succeeded");
+        } catch (@SuppressWarnings("unused") final NodeExistsException e) {
+            // expected, and logged as a multi of error transactions
+        }
+        client.delete().forPath("/gone/y");
+        client.delete().forPath("/gone");
+        client.delete().forPath("/recreated");
+        client.create().forPath("/recreated", bytes("second incarnation"));
+        client.setData().forPath("/apps/c", bytes("set"));
+        client.setACL().withACL(ZooDefs.Ids.READ_ACL_UNSAFE).forPath("/apps/c");
+        owner.close();
+        waitUntilDeleted("/apps/ephemeral");
+
+        final SnapshotImage image = newImage();
+        assertSameTree(image, "/");
+        assertTrue(image.getNumReplayedTxns() > 0);
+        assertTrue(image.getLastZxid() > image.getSnapshotZxid());
+        assertNull(image.checkExists("/gone"));
+        assertNull(image.checkExists("/apps/failed"));
+        assertNull(image.checkExists("/apps/ephemeral"));
+        assertArrayEquals(bytes("second incarnation"), image.getData("/recreated", new Stat()));
+    }
+
+    /** Creates nodes of every kind which the later changes in {@link #testSnapshotAndLogs} touch. */
+    private void createTree() throws Exception {
+        client.create().forPath("/apps", new byte[0]);
+        client.create().forPath("/apps/a", bytes("a"));
+        client.create().forPath("/apps/b", null);
+        client.create().forPath("/apps/b/x", bytes("x"));
+        client.create().forPath("/apps/c", new byte[1000]);
+        client.create().creatingParentsIfNeeded().forPath("/gone/y", bytes("y"));
+        client.create().forPath("/recreated", bytes("first incarnation"));
+        client.create().withMode(CreateMode.PERSISTENT_SEQUENTIAL).forPath("/apps/seq-", bytes("sequential"));
+    }
+
+    /**
+     * Stops the server and snapshots its database the way {@link ZooKeeperServer#takeSnapshot()} does, which a
+     * standalone server otherwise only does after a random number of transactions.
+     */
+    private void snapshot() throws Exception {
+        server.stop();
+        final FileTxnSnapLog snapLog = new FileTxnSnapLog(dataDir, dataDir);
+        try {
+            final ZKDatabase database = new ZKDatabase(snapLog);
+            database.loadDataBase();
+            snapLog.save(database.getDataTree(), database.getSessionWithTimeOuts());
+        } finally {
+            snapLog.close();
+        }
+        server.restart();
+        waitUntilConnected(client);
+    }
+
+    /** Asserts that the subtree at {@code path} of the image is the same as the live one. */
+    private void assertSameTree(SnapshotImage image, String path) throws Exception {
+        final Stat liveStat = new Stat();
+        final byte[] liveData = client.getData().storingStatIn(liveStat).forPath(path);
+        final Stat stat = new Stat();
+        final byte[] data = image.getData(path, stat);
+        assertEquals(path, liveStat, stat);
+        assertEquals(path, liveStat, image.checkExists(path));
+        assertArrayEquals(path, liveData == null ? new byte[0] : liveData, data == null ? new byte[0] : data);
+
+        final List<String> liveChildren = sorted(client.getChildren().forPath(path));
+        assertEquals(path, liveChildren, sorted(image.getChildren(path)));
+
+        final Map<String, Stat> liveChildStats = Maps.newHashMap();
+        for (final String child : liveChildren) {
+            liveChildStats.put(child, client.checkExists().forPath(ZKPaths.makePath(path, child)));
+        }
+        final List<String> withMissing = Lists.newArrayList(liveChildren);
+        withMissing.add("missing");
+        assertEquals(path, liveChildStats, image.getChildStats(path, withMissing));
+
+        for (final String child : liveChildren) {
+            assertSameTree(image, ZKPaths.makePath(path, child));
+        }
+    }
+
+    private SnapshotImage newImage() {
+        return new SnapshotImage("test", new File(dataDir, "version-2"));
+    }
+
+    private CuratorFramework connect() throws InterruptedException {
+        final CuratorFramework framework = CuratorFrameworkFactory.newClient(server.getConnectString(),
+                new RetryOneTime(100));
+        framework.start();
+        waitUntilConnected(framework);
+        return framework;
+    }
+
+    private void waitUntilDeleted(String path) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (client.checkExists().forPath(path) != null) {
+            assertTrue(path + " was not deleted", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void waitUntilConnected(CuratorFramework framework) throws InterruptedException {
+        assertTrue(framework.blockUntilConnected(10, TimeUnit.SECONDS));
+    }
+
+    private static List<String> sorted(List<String> list) {
+        final List<String> sorted = Lists.newArrayList(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(Charsets.UTF_8);
+    }
+
+}